@@ -0,0 +1,78 @@
+package com.medical.benchmark;
+
+import com.medical.util.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT基准：签发、带缓存验证、无缓存验证（每次都做HMAC-SHA512验签和JSON解析）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+    
+    private static final String SECRET =
+            "medical-platform-secret-key-2024-this-is-a-very-long-secret-key-for-hs512-algorithm-which-requires-at-least-64-bytes";
+    
+    private JwtUtil cachedJwt;
+    
+    private JwtUtil uncachedJwt;
+    
+    private String token;
+    
+    private String[] alternatingTokens;
+    
+    private int next;
+    
+    @Setup
+    public void setup() {
+        cachedJwt = newJwtUtil(10000);
+        // 缓存容量为1且交替验证两个Token，保证每次都未命中
+        uncachedJwt = newJwtUtil(1);
+        token = cachedJwt.generateToken("admin", 1L);
+        alternatingTokens = new String[]{
+                uncachedJwt.generateToken("admin", 1L),
+                uncachedJwt.generateToken("doctor", 2L)
+        };
+    }
+    
+    private static JwtUtil newJwtUtil(int cacheMaxSize) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "expiration", 86400000L);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxSize", cacheMaxSize);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+    
+    @Benchmark
+    public String generateToken() {
+        return cachedJwt.generateToken("admin", 1L);
+    }
+    
+    @Benchmark
+    public Boolean validateTokenCached() {
+        return cachedJwt.validateToken(token, "admin");
+    }
+    
+    @Benchmark
+    public Boolean validateTokenUncached() {
+        int i = next ^= 1;
+        return uncachedJwt.validateToken(alternatingTokens[i], i == 0 ? "admin" : "doctor");
+    }
+}
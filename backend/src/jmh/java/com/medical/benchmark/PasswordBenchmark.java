@@ -0,0 +1,49 @@
+package com.medical.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 登录密码校验基准：与UserService.login相同的BCryptPasswordEncoder（默认强度10）
+ * 
+ * 单次耗时在数十毫秒量级，按平均耗时报告
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordBenchmark {
+    
+    private BCryptPasswordEncoder passwordEncoder;
+    
+    private String hash;
+    
+    @Setup
+    public void setup() {
+        passwordEncoder = new BCryptPasswordEncoder();
+        hash = passwordEncoder.encode("admin123");
+    }
+    
+    @Benchmark
+    public boolean matches() {
+        return passwordEncoder.matches("admin123", hash);
+    }
+    
+    @Benchmark
+    public boolean mismatches() {
+        return passwordEncoder.matches("wrong-password", hash);
+    }
+}
@@ -0,0 +1,108 @@
+package com.medical.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medical.cache.CompactRedisSerializer;
+import com.medical.common.Result;
+import com.medical.dto.TrendDataDTO;
+import com.medical.entity.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应序列化基准：Result<List<Patient>> 与 Result<List<TrendDataDTO>>
+ * 
+ * ObjectMapper按Spring MVC默认方式构建；行数对应分页大小（50/500）和一次性导出（10000）
+ * 另比较Redis缓存值的JSON（带类型信息）与二进制编码读写，趋势点数取同一行数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+    
+    @Param({"50", "500", "10000"})
+    public int rows;
+    
+    private ObjectMapper objectMapper;
+    
+    private Result<List<Patient>> patientResult;
+    
+    private Result<List<TrendDataDTO>> trendResult;
+    
+    private Jackson2JsonRedisSerializer<Object> redisJson;
+    
+    private CompactRedisSerializer redisBinary;
+    
+    private List<TrendDataDTO> cachedTrend;
+    
+    private byte[] cachedTrendJson;
+    
+    private byte[] cachedTrendBinary;
+    
+    @Setup
+    public void setup() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        patientResult = Result.success(SyntheticData.patients(rows, 7L));
+        // 趋势接口最多返回30个点
+        trendResult = Result.success(SyntheticData.trend(30, 7L));
+        
+        // 与RedisConfig相同的配置
+        redisJson = new Jackson2JsonRedisSerializer<>(Object.class);
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        mapper.activateDefaultTyping(mapper.getPolymorphicTypeValidator(), ObjectMapper.DefaultTyping.NON_FINAL);
+        redisJson.setObjectMapper(mapper);
+        redisBinary = new CompactRedisSerializer(redisJson, true, 1024);
+        cachedTrend = SyntheticData.trend(rows, 7L);
+        cachedTrendJson = redisJson.serialize(cachedTrend);
+        cachedTrendBinary = redisBinary.serialize(cachedTrend);
+    }
+    
+    @Benchmark
+    public byte[] patientList() throws Exception {
+        return objectMapper.writeValueAsBytes(patientResult);
+    }
+    
+    @Benchmark
+    public byte[] outpatientTrend() throws Exception {
+        return objectMapper.writeValueAsBytes(trendResult);
+    }
+    
+    @Benchmark
+    public byte[] redisTrendJsonWrite() {
+        return redisJson.serialize(cachedTrend);
+    }
+    
+    @Benchmark
+    public byte[] redisTrendBinaryWrite() {
+        return redisBinary.serialize(cachedTrend);
+    }
+    
+    @Benchmark
+    public Object redisTrendJsonRead() {
+        return redisJson.deserialize(cachedTrendJson);
+    }
+    
+    @Benchmark
+    public Object redisTrendBinaryRead() {
+        return redisBinary.deserialize(cachedTrendBinary);
+    }
+}
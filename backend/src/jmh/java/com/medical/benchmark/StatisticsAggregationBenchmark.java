@@ -0,0 +1,218 @@
+package com.medical.benchmark;
+
+import com.medical.dto.OverviewDTO;
+import com.medical.entity.Patient;
+import com.medical.mapper.PatientMapper;
+import com.medical.mapper.StatisticsMapper;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.LocalCacheScope;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 统计聚合基准：概览（总患者数/今日就诊/科室数/总就诊数）和科室分布
+ * 
+ * 数据写入H2内存库（MySQL兼容模式），通过项目中的PatientMapper.xml、StatisticsMapper.xml执行：
+ * legacy*：原StatisticsService的做法，selectAll全表加载后用多次Stream遍历聚合
+ * sql*：当前StatisticsService查库时走的selectOverview、selectDepartmentDistribution
+ * 
+ * H2与MySQL的执行计划不同，结果只用于比较两种做法的量级差异
+ * 
+ * 100万行时GC后堆峰值约520MB（H2内存表 + legacy*一次加载的全部Patient对象），1000万行约需5GB，
+ * 测量进程使用-Xmx12g留出余量；物理内存不足的机器用 -p rows=10000,1000000 跳过该档
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g"})
+public class StatisticsAggregationBenchmark {
+    
+    private static final int INSERT_CHUNK = 1000;
+    
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+    
+    private JdbcDataSource dataSource;
+    
+    private SqlSession session;
+    
+    private PatientMapper patientMapper;
+    
+    private StatisticsMapper statisticsMapper;
+    
+    private String today;
+    
+    @Setup
+    public void setup() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:statistics_" + rows + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE;OPTIMIZE_REUSE_RESULTS=FALSE;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE patient_visit ("
+                + " id BIGINT AUTO_INCREMENT,"
+                + " patient_id VARCHAR(50) NOT NULL,"
+                + " visit_date DATE NOT NULL,"
+                + " department VARCHAR(50) NOT NULL DEFAULT '',"
+                + " diagnosis VARCHAR(200),"
+                + " disease_code VARCHAR(50),"
+                + " cost DECIMAL(10,2) DEFAULT 0.00,"
+                + " visit_type VARCHAR(20),"
+                + " PRIMARY KEY (id, visit_date))");
+            stmt.execute("CREATE TABLE department_operation ("
+                + " id BIGINT PRIMARY KEY AUTO_INCREMENT,"
+                + " department VARCHAR(50) NOT NULL,"
+                + " stat_date DATE NOT NULL,"
+                + " outpatient_count INT DEFAULT 0,"
+                + " inpatient_count INT DEFAULT 0,"
+                + " total_revenue DECIMAL(12,2) DEFAULT 0.00,"
+                + " UNIQUE KEY uk_dept_date (department, stat_date))");
+        }
+        
+        SqlSessionFactory factory = sessionFactory(dataSource);
+        try (SqlSession load = factory.openSession(false)) {
+            PatientMapper mapper = load.getMapper(PatientMapper.class);
+            List<Patient> chunk = new ArrayList<>(INSERT_CHUNK);
+            // 边生成边分批写入，千万行时不在堆中同时保留全部合成记录
+            SyntheticData.forEachPatient(rows, 42L, p -> {
+                // 合成数据中约1%缺少科室，表上NOT NULL，按空科室写入
+                if (p.getDepartment() == null) {
+                    p.setDepartment("");
+                }
+                chunk.add(p);
+                if (chunk.size() == INSERT_CHUNK) {
+                    mapper.insertBatch(chunk);
+                    chunk.clear();
+                }
+            });
+            if (!chunk.isEmpty()) {
+                mapper.insertBatch(chunk);
+            }
+            load.commit();
+        }
+        // 科室运营日汇总与DepartmentRollupService增量维护的结果一致
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO department_operation (department, stat_date, outpatient_count, inpatient_count, total_revenue)"
+                + " SELECT department, visit_date,"
+                + " SUM(CASE WHEN visit_type = '住院' THEN 0 ELSE 1 END),"
+                + " SUM(CASE WHEN visit_type = '住院' THEN 1 ELSE 0 END),"
+                + " SUM(cost)"
+                + " FROM patient_visit GROUP BY department, visit_date");
+        }
+        
+        session = factory.openSession(true);
+        patientMapper = session.getMapper(PatientMapper.class);
+        statisticsMapper = session.getMapper(StatisticsMapper.class);
+        today = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+    }
+    
+    @TearDown
+    public void tearDown() throws Exception {
+        session.close();
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+    }
+    
+    @Benchmark
+    public Map<String, Object> overviewLegacyStream() {
+        List<Patient> allPatients = patientMapper.selectAll();
+        
+        long totalPatients = allPatients.stream()
+                .map(Patient::getPatientId)
+                .distinct()
+                .count();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        long todayVisits = allPatients.stream()
+                .filter(p -> p.getVisitDate() != null && dateFormat.format(p.getVisitDate()).equals(today))
+                .count();
+        long departmentCount = allPatients.stream()
+                .map(Patient::getDepartment)
+                .filter(d -> d != null && !d.isEmpty())
+                .distinct()
+                .count();
+        
+        Map<String, Object> overview = new HashMap<>();
+        overview.put("totalPatients", totalPatients);
+        overview.put("todayVisits", todayVisits);
+        overview.put("departmentCount", departmentCount);
+        overview.put("totalVisits", allPatients.size());
+        return overview;
+    }
+    
+    @Benchmark
+    public OverviewDTO overviewSql() {
+        return statisticsMapper.selectOverview(today);
+    }
+    
+    @Benchmark
+    public List<Map<String, Object>> distributionLegacyStream() {
+        List<Patient> allPatients = patientMapper.selectAll();
+        Map<String, Long> departmentMap = allPatients.stream()
+                .filter(p -> p.getDepartment() != null && !p.getDepartment().isEmpty())
+                .collect(Collectors.groupingBy(Patient::getDepartment, Collectors.counting()));
+        
+        return departmentMap.entrySet().stream()
+                .map(entry -> {
+                    Map<String, Object> item = new HashMap<>();
+                    item.put("name", entry.getKey());
+                    item.put("value", entry.getValue());
+                    return item;
+                })
+                .collect(Collectors.toList());
+    }
+    
+    @Benchmark
+    public List<Map<String, Object>> distributionSql() {
+        return statisticsMapper.selectDepartmentDistribution();
+    }
+    
+    /**
+     * 与application.yml的mybatis配置一致，只加载基准用到的Mapper XML
+     */
+    private static SqlSessionFactory sessionFactory(JdbcDataSource dataSource) throws Exception {
+        Configuration configuration = new Configuration(
+            new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        // Spring中每次调用Mapper都是新的SqlSession，这里关闭会话级一级缓存，保证每次都真正执行SQL
+        configuration.setLocalCacheScope(LocalCacheScope.STATEMENT);
+        configuration.getTypeAliasRegistry().registerAliases("com.medical.entity");
+        for (String resource : new String[] {"mapper/PatientMapper.xml", "mapper/StatisticsMapper.xml"}) {
+            try (InputStream in = Resources.getResourceAsStream(resource)) {
+                new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+            }
+        }
+        return new SqlSessionFactoryBuilder().build(configuration);
+    }
+}
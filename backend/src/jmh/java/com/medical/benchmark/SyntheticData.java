@@ -0,0 +1,102 @@
+package com.medical.benchmark;
+
+import com.medical.dto.TrendDataDTO;
+import com.medical.entity.Patient;
+import com.medical.util.DateConvertUtil;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * 基准测试用合成数据
+ * 
+ * 固定随机种子保证每次运行数据一致；科室、诊断、日期、金额等取值来自小的对象池，
+ * 使千万级行数时的堆占用主要来自Patient对象本身，而不是重复的字符串
+ */
+final class SyntheticData {
+    
+    static final String[] DEPARTMENTS = {
+            "内科", "外科", "儿科", "妇产科", "骨科", "眼科", "耳鼻喉科", "口腔科",
+            "皮肤科", "中医科", "康复科", "急诊科", "全科", "预防保健科"
+    };
+    
+    static final String[] DIAGNOSES = {
+            "高血压", "2型糖尿病", "上呼吸道感染", "急性胃肠炎", "腰椎间盘突出",
+            "冠心病", "支气管炎", "骨折", "结膜炎", "龋齿", "湿疹", "慢性胃炎"
+    };
+    
+    static final String[] VISIT_TYPES = {"门诊", "门诊", "门诊", "急诊", "住院"};
+    
+    /**
+     * 就诊日期覆盖最近两年
+     */
+    static final int DAYS = 730;
+    
+    private SyntheticData() {
+    }
+    
+    /**
+     * 生成指定行数的就诊记录，患者数约为行数的1/4（同一患者多次就诊）
+     */
+    static List<Patient> patients(int rows, long seed) {
+        List<Patient> list = new ArrayList<>(rows);
+        forEachPatient(rows, seed, list::add);
+        return list;
+    }
+    
+    /**
+     * 逐条生成就诊记录（与patients相同的数据），写库时不必在堆中同时保留全部记录
+     */
+    static void forEachPatient(int rows, long seed, Consumer<Patient> consumer) {
+        SplittableRandom random = new SplittableRandom(seed);
+        LocalDate start = LocalDate.now().minusDays(DAYS - 1);
+        Date[] dates = new Date[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            dates[i] = DateConvertUtil.toDate(start.plusDays(i));
+        }
+        BigDecimal[] costs = new BigDecimal[2000];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = BigDecimal.valueOf(i * 25L + 1999, 2);
+        }
+        int patientCount = Math.max(1, rows / 4);
+        String[] patientIds = new String[patientCount];
+        for (int i = 0; i < patientCount; i++) {
+            patientIds[i] = "P" + i;
+        }
+        
+        for (int i = 0; i < rows; i++) {
+            Patient p = new Patient();
+            p.setId((long) (i + 1));
+            p.setPatientId(patientIds[random.nextInt(patientCount)]);
+            p.setVisitDate(dates[random.nextInt(DAYS)]);
+            // 约1%记录缺少科室，覆盖空值过滤分支
+            p.setDepartment(random.nextInt(100) == 0 ? null : DEPARTMENTS[random.nextInt(DEPARTMENTS.length)]);
+            p.setDiagnosis(DIAGNOSES[random.nextInt(DIAGNOSES.length)]);
+            p.setCost(costs[random.nextInt(costs.length)]);
+            p.setVisitType(VISIT_TYPES[random.nextInt(VISIT_TYPES.length)]);
+            consumer.accept(p);
+        }
+    }
+    
+    /**
+     * 生成趋势数据（与/api/statistics/outpatient-trend返回结构一致）
+     */
+    static List<TrendDataDTO> trend(int points, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        LocalDate start = LocalDate.now().minusDays(points - 1);
+        List<TrendDataDTO> list = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            TrendDataDTO dto = new TrendDataDTO();
+            dto.setDate(DateConvertUtil.toDate(start.plusDays(i)));
+            dto.setCount(100 + random.nextInt(400));
+            dto.setAmount(10000 + random.nextInt(90000) + random.nextDouble());
+            list.add(dto);
+        }
+        return list;
+    }
+}
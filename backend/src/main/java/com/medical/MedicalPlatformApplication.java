@@ -1,5 +1,6 @@
 package com.medical;
 
+import com.medical.util.DiagnosticLog;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -10,10 +11,6 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.time.Instant;
-
 /**
  * 区域基层医疗机构运营数据分析平台 - 主启动类
  * 
@@ -30,24 +27,7 @@ import java.time.Instant;
 public class MedicalPlatformApplication {
 
     private static void logDebug(String location, String message, Object data, String hypothesisId) {
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"%s\",\"message\":\"%s\",\"data\":%s,\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"%s\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                Instant.now().toEpochMilli(),
-                location,
-                message,
-                data != null ? "\"" + data.toString().replace("\"", "\\\"") + "\"" : "null",
-                hypothesisId
-            );
-            try (FileWriter writer = new FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (IOException e) {
-            // 忽略日志写入错误
-        }
+        DiagnosticLog.event(location, message, "data", data, "hypothesisId", hypothesisId);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,885 @@
+package com.medical.analytics;
+
+import com.medical.archive.ColdArchiveStore;
+import com.medical.dto.OverviewDTO;
+import com.medical.entity.Patient;
+import com.medical.event.VisitChangeEvent;
+import com.medical.mapper.PatientMapper;
+import com.medical.util.DateConvertUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * patient_visit 的列式只读副本
+ * 
+ * 每列一个基本类型数组：就诊日期存epochDay（int），费用存分（long），
+ * 患者ID/科室/诊断/疾病编码/就诊类型按字典编码为int。
+ * 启动后从数据库流式加载（与冷数据归档中的记录按ID归并），之后订阅就诊记录变更事件，在事务提交后增量维护；
+ * 删除先打墓碑标记，墓碑过多时整理压缩。
+ * 
+ * 扫描在读锁内进行，行数超过阈值时按块并行扫描后合并，写入只在写锁内短暂修改数组。
+ * 通过 analytics.columnar.enabled 开启，未开启或未加载完成时isReady()为false，调用方应回退到SQL
+ */
+@Slf4j
+@Component
+public class ColumnarVisitStore {
+    
+    /**
+     * 缺失就诊日期时的占位值，不会落在任何日期范围内
+     */
+    private static final int NO_DAY = Integer.MIN_VALUE;
+    
+    /**
+     * 并行扫描时每块的最少行数
+     */
+    private static final int MIN_CHUNK_ROWS = 16384;
+    
+    /**
+     * 墓碑整理阈值：墓碑数超过该值且超过总行数1/4时压缩
+     */
+    private static final int COMPACT_MIN_TOMBSTONES = 1024;
+    
+    /**
+     * 乱序行合并阈值：overflow中的行数超过该值时归并回有序数组
+     */
+    private static final int OVERFLOW_MERGE_ROWS = 4096;
+    
+    @Value("${analytics.columnar.enabled:false}")
+    private boolean enabled;
+    
+    /**
+     * 行数达到该值才并行扫描
+     */
+    @Value("${analytics.columnar.parallel-threshold:100000}")
+    private int parallelThreshold;
+    
+    /**
+     * 扫描线程数，0表示CPU核数
+     */
+    @Value("${analytics.columnar.parallelism:0}")
+    private int parallelism;
+    
+    @Autowired
+    private PatientMapper patientMapper;
+    
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /**
+     * 当前副本（读写锁保护）
+     */
+    private Columns columns = new Columns();
+    
+    /**
+     * 加载期间是否记录增量（写锁保护）
+     */
+    private boolean loading;
+    
+    /**
+     * 加载期间提交的增量，加载完成后重放到新副本（写锁保护）
+     */
+    private final List<Consumer<Columns>> pending = new ArrayList<>();
+    
+    private final AtomicBoolean reloading = new AtomicBoolean(false);
+    
+    private volatile boolean ready;
+    
+    private volatile long lastLoadMillis;
+    
+    private volatile long lastLoadRows;
+    
+    private final LongAdder scans = new LongAdder();
+    
+    private final LongAdder scanNanos = new LongAdder();
+    
+    private ForkJoinPool pool;
+    
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("columnar-scan-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * 应用启动完成后在后台线程加载，不阻塞启动；数据库不可用时保持未就绪
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(() -> {
+            try {
+                reload();
+            } catch (Exception e) {
+                log.error("列式分析副本加载失败，统计查询继续使用SQL: {}", e.getMessage());
+            }
+        }, "columnar-visit-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    /**
+     * 从数据库全量重建副本
+     * 
+     * 加载期间提交的写入同时记入待重放队列，新副本加载完成后在写锁内重放再替换，保证不丢增量
+     * 
+     * @return 加载后的有效行数
+     */
+    public long reload() {
+        if (!enabled) {
+            throw new RuntimeException("列式分析副本未启用");
+        }
+        if (!reloading.compareAndSet(false, true)) {
+            throw new RuntimeException("列式分析副本正在加载，请稍后再试");
+        }
+        try {
+            lock.writeLock().lock();
+            try {
+                loading = true;
+                pending.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            
+            long start = System.currentTimeMillis();
+            Columns fresh = new Columns();
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setReadOnly(true);
+            tx.execute(status -> {
+                // 在线表与归档都按ID升序，归并后仍按ID顺序追加
+                Iterator<Patient> archived = coldArchiveStore.visitsOrderById();
+                Patient nextArchived = archived.hasNext() ? archived.next() : null;
+                try (Cursor<Patient> cursor = patientMapper.selectAllCursorOrderById()) {
+                    for (Patient patient : cursor) {
+                        if (patient.getId() == null) {
+                            continue;
+                        }
+                        while (nextArchived != null && nextArchived.getId() < patient.getId()) {
+                            fresh.upsert(VisitRow.of(nextArchived));
+                            nextArchived = archived.hasNext() ? archived.next() : null;
+                        }
+                        fresh.upsert(VisitRow.of(patient));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                while (nextArchived != null) {
+                    fresh.upsert(VisitRow.of(nextArchived));
+                    nextArchived = archived.hasNext() ? archived.next() : null;
+                }
+                return null;
+            });
+            
+            int replayed;
+            lock.writeLock().lock();
+            try {
+                replayed = pending.size();
+                for (Consumer<Columns> op : pending) {
+                    op.accept(fresh);
+                }
+                pending.clear();
+                loading = false;
+                columns = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ready = true;
+            lastLoadMillis = System.currentTimeMillis() - start;
+            lastLoadRows = fresh.liveCount();
+            log.info("列式分析副本加载完成：{} 行，重放增量 {} 条，耗时 {} ms", lastLoadRows, replayed, lastLoadMillis);
+            return lastLoadRows;
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                loading = false;
+                pending.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        } finally {
+            reloading.set(false);
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * 副本已加载完成，可以替代SQL回答统计查询
+     */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+    
+    /**
+     * 新增或修改一条就诊记录（应在事务提交后调用）
+     */
+    public void upsert(Patient patient) {
+        if (!enabled || patient == null || patient.getId() == null) {
+            return;
+        }
+        VisitRow row = VisitRow.of(patient);
+        lock.writeLock().lock();
+        try {
+            columns.upsert(row);
+            if (loading) {
+                pending.add(c -> c.upsert(row));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 删除一条就诊记录（应在事务提交后调用）
+     */
+    public void delete(Long id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        long visitId = id;
+        lock.writeLock().lock();
+        try {
+            columns.delete(visitId);
+            if (loading) {
+                pending.add(c -> c.delete(visitId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 就诊记录变更已提交：删除按ID移除，新增和修改按ID覆盖
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onVisitChange(VisitChangeEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (event.getType() == VisitChangeEvent.Type.DELETE) {
+            for (Patient visit : event.getBefore()) {
+                delete(visit.getId());
+            }
+        } else {
+            for (Patient visit : event.getAfter()) {
+                upsert(visit);
+            }
+        }
+    }
+    
+    /**
+     * 按维度分组统计人次与费用，空分组键（null/空字符串）和零人次分组不返回
+     * 
+     * 维度为DAY时结果按日期升序
+     */
+    public List<GroupStats> groupBy(VisitDimension dimension, VisitFilter filter) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            final Columns c = columns;
+            final Predicate p = Predicate.compile(c, filter);
+            if (p.empty) {
+                return Collections.emptyList();
+            }
+            final int[] keys;
+            final int base;
+            final int width;
+            final StringDictionary dictionary;
+            if (dimension == VisitDimension.DAY) {
+                int lo = Math.max(p.fromDay, c.minDay);
+                int hi = Math.min(p.toDay, c.maxDay);
+                if (lo > hi) {
+                    return Collections.emptyList();
+                }
+                keys = c.days;
+                base = lo;
+                width = hi - lo + 1;
+                dictionary = null;
+            } else {
+                keys = c.column(dimension);
+                dictionary = c.dictionary(dimension);
+                base = 0;
+                width = dictionary.size();
+            }
+            
+            long[][] totals = scan(c, (from, to) -> {
+                long[] counts = new long[width];
+                long[] sums = new long[width];
+                long[] cost = c.costCents;
+                for (int r = from; r < to; r++) {
+                    if (!p.matches(c, r)) {
+                        continue;
+                    }
+                    int k = keys[r] - base;
+                    if (k < 0 || k >= width) {
+                        continue;
+                    }
+                    counts[k]++;
+                    sums[k] += cost[r];
+                }
+                return new long[][]{counts, sums};
+            }, (a, b) -> {
+                for (int i = 0; i < width; i++) {
+                    a[0][i] += b[0][i];
+                    a[1][i] += b[1][i];
+                }
+                return a;
+            });
+            
+            List<GroupStats> result = new ArrayList<>();
+            for (int k = 0; k < width; k++) {
+                if (totals[0][k] == 0 || (dictionary != null && k == StringDictionary.NULL_CODE)) {
+                    continue;
+                }
+                String key = dictionary != null ? dictionary.decode(k) : LocalDate.ofEpochDay(base + k).toString();
+                result.add(new GroupStats(key, totals[0][k], totals[1][k]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+            recordScan(start);
+        }
+    }
+    
+    /**
+     * 统计满足条件的就诊人次
+     */
+    public long count(VisitFilter filter) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            final Columns c = columns;
+            final Predicate p = Predicate.compile(c, filter);
+            if (p.empty) {
+                return 0;
+            }
+            return scan(c, (from, to) -> {
+                long n = 0;
+                for (int r = from; r < to; r++) {
+                    if (p.matches(c, r)) {
+                        n++;
+                    }
+                }
+                return n;
+            }, Long::sum);
+        } finally {
+            lock.readLock().unlock();
+            recordScan(start);
+        }
+    }
+    
+    /**
+     * 统计概览（与StatisticsMapper.selectOverview口径一致），一次扫描完成
+     */
+    public OverviewDTO overview(LocalDate today) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            final Columns c = columns;
+            final int todayDay = (int) today.toEpochDay();
+            final BitSet deleted = c.deleted;
+            final boolean hasTombstones = c.deletedCount > 0;
+            OverviewPartial total = scan(c, (from, to) -> {
+                OverviewPartial part = new OverviewPartial();
+                int[] days = c.days;
+                int[] patients = c.patients;
+                int[] departments = c.departments;
+                for (int r = from; r < to; r++) {
+                    if (hasTombstones && deleted.get(r)) {
+                        continue;
+                    }
+                    part.visits++;
+                    if (days[r] == todayDay) {
+                        part.today++;
+                    }
+                    if (patients[r] != StringDictionary.NULL_CODE) {
+                        part.patients.set(patients[r]);
+                    }
+                    if (departments[r] != StringDictionary.NULL_CODE) {
+                        part.departments.set(departments[r]);
+                    }
+                }
+                return part;
+            }, OverviewPartial::merge);
+            
+            OverviewDTO overview = new OverviewDTO();
+            overview.setTotalVisits(total.visits);
+            overview.setTotalPatients((long) total.patients.cardinality());
+            overview.setTodayVisits(total.today);
+            overview.setDepartmentCount((long) total.departments.cardinality());
+            return overview;
+        } finally {
+            lock.readLock().unlock();
+            recordScan(start);
+        }
+    }
+    
+    /**
+     * 副本运行统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        lock.readLock().lock();
+        try {
+            Columns c = columns;
+            stats.put("rows", c.liveCount());
+            stats.put("tombstones", c.deletedCount);
+            stats.put("overflow", c.overflow.size());
+            stats.put("capacity", c.ids.length);
+            stats.put("estimatedBytes", c.estimatedBytes());
+            Map<String, Integer> dictionaries = new LinkedHashMap<>();
+            dictionaries.put("patient", c.patientDict.size() - 1);
+            dictionaries.put("department", c.departmentDict.size() - 1);
+            dictionaries.put("diagnosis", c.diagnosisDict.size() - 1);
+            dictionaries.put("diseaseCode", c.diseaseCodeDict.size() - 1);
+            dictionaries.put("visitType", c.visitTypeDict.size() - 1);
+            stats.put("dictionaries", dictionaries);
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("lastLoadRows", lastLoadRows);
+        stats.put("lastLoadMillis", lastLoadMillis);
+        long scanCount = scans.sum();
+        stats.put("scans", scanCount);
+        stats.put("avgScanMicros", scanCount == 0 ? 0 : scanNanos.sum() / scanCount / 1000);
+        return stats;
+    }
+    
+    private void recordScan(long startNanos) {
+        scans.increment();
+        scanNanos.add(System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * 按块扫描并合并：行数小于阈值时在当前线程直接扫描，否则切分后提交到扫描线程池
+     * 
+     * 调用方持有读锁，写线程在扫描结束前无法修改数组
+     */
+    private <P> P scan(Columns c, ChunkScanner<P> scanner, BinaryOperator<P> merger) {
+        int size = c.size;
+        if (pool == null || size < parallelThreshold) {
+            return scanner.scan(0, size);
+        }
+        int chunks = Math.min(pool.getParallelism() * 4, (size + MIN_CHUNK_ROWS - 1) / MIN_CHUNK_ROWS);
+        int chunkSize = (size + chunks - 1) / chunks;
+        List<Callable<P>> tasks = new ArrayList<>(chunks);
+        for (int from = 0; from < size; from += chunkSize) {
+            final int lo = from;
+            final int hi = Math.min(size, from + chunkSize);
+            tasks.add(() -> scanner.scan(lo, hi));
+        }
+        try {
+            P result = null;
+            for (Future<P> future : pool.invokeAll(tasks)) {
+                P part = future.get();
+                result = result == null ? part : merger.apply(result, part);
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("列式扫描被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("列式扫描失败", cause);
+        }
+    }
+    
+    @FunctionalInterface
+    private interface ChunkScanner<P> {
+        P scan(int from, int to);
+    }
+    
+    private static final class OverviewPartial {
+        long visits;
+        long today;
+        final BitSet patients = new BitSet();
+        final BitSet departments = new BitSet();
+        
+        OverviewPartial merge(OverviewPartial other) {
+            visits += other.visits;
+            today += other.today;
+            patients.or(other.patients);
+            departments.or(other.departments);
+            return this;
+        }
+    }
+    
+    /**
+     * 编译后的过滤条件：字符串条件提前转换为字典编码
+     */
+    private static final class Predicate {
+        int fromDay = Integer.MIN_VALUE + 1;
+        int toDay = Integer.MAX_VALUE;
+        int department = -1;
+        int visitType = -1;
+        boolean tombstones;
+        BitSet deleted;
+        boolean empty;
+        
+        static Predicate compile(Columns c, VisitFilter filter) {
+            Predicate p = new Predicate();
+            p.tombstones = c.deletedCount > 0;
+            p.deleted = c.deleted;
+            if (filter == null) {
+                return p;
+            }
+            if (filter.getStartDate() != null) {
+                p.fromDay = (int) filter.getStartDate().toEpochDay();
+            }
+            if (filter.getEndDate() != null) {
+                p.toDay = (int) filter.getEndDate().toEpochDay();
+            }
+            if (filter.getDepartment() != null) {
+                p.department = c.departmentDict.lookup(filter.getDepartment());
+                p.empty |= p.department < 0;
+            }
+            if (filter.getVisitType() != null) {
+                p.visitType = c.visitTypeDict.lookup(filter.getVisitType());
+                p.empty |= p.visitType < 0;
+            }
+            p.empty |= p.fromDay > p.toDay;
+            return p;
+        }
+        
+        boolean matches(Columns c, int r) {
+            if (tombstones && deleted.get(r)) {
+                return false;
+            }
+            int day = c.days[r];
+            if (day < fromDay || day > toDay) {
+                return false;
+            }
+            if (department >= 0 && c.departments[r] != department) {
+                return false;
+            }
+            return visitType < 0 || c.visitTypes[r] == visitType;
+        }
+    }
+    
+    /**
+     * 一行就诊记录的列值快照，写入时立即从Patient取值，避免调用方后续修改对象
+     */
+    private static final class VisitRow {
+        long id;
+        int day;
+        long costCents;
+        String patientId;
+        String department;
+        String diagnosis;
+        String diseaseCode;
+        String visitType;
+        
+        static VisitRow of(Patient patient) {
+            VisitRow row = new VisitRow();
+            row.id = patient.getId();
+            row.day = patient.getVisitDate() != null
+                ? (int) DateConvertUtil.toLocalDate(patient.getVisitDate()).toEpochDay()
+                : NO_DAY;
+            BigDecimal cost = patient.getCost();
+            row.costCents = cost != null ? cost.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue() : 0L;
+            row.patientId = patient.getPatientId();
+            row.department = patient.getDepartment();
+            row.diagnosis = patient.getDiagnosis();
+            row.diseaseCode = patient.getDiseaseCode();
+            row.visitType = patient.getVisitType();
+            return row;
+        }
+    }
+    
+    /**
+     * 列数组与字典
+     * 
+     * 数组布局为有序前缀[0, sortedCount)加乱序区[sortedCount, size)：
+     * ID大于有序前缀末尾的行总是进入有序前缀（乱序区非空时把乱序区第一行挪到末尾腾出位置），
+     * 只有ID小于有序前缀末尾的迟到行（并发事务提交顺序与ID顺序不一致）才进入乱序区并记录在overflow中；
+     * 乱序区超过OVERFLOW_MERGE_ROWS行或整理墓碑时归并回有序前缀
+     */
+    private static final class Columns {
+        long[] ids = new long[1024];
+        int[] days = new int[1024];
+        long[] costCents = new long[1024];
+        int[] patients = new int[1024];
+        int[] departments = new int[1024];
+        int[] diagnoses = new int[1024];
+        int[] diseaseCodes = new int[1024];
+        int[] visitTypes = new int[1024];
+        final BitSet deleted = new BitSet();
+        int size;
+        int sortedCount;
+        int deletedCount;
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        final Map<Long, Integer> overflow = new HashMap<>();
+        final StringDictionary patientDict = new StringDictionary();
+        final StringDictionary departmentDict = new StringDictionary();
+        final StringDictionary diagnosisDict = new StringDictionary();
+        final StringDictionary diseaseCodeDict = new StringDictionary();
+        final StringDictionary visitTypeDict = new StringDictionary();
+        
+        int[] column(VisitDimension dimension) {
+            switch (dimension) {
+                case DEPARTMENT:
+                    return departments;
+                case DIAGNOSIS:
+                    return diagnoses;
+                case DISEASE_CODE:
+                    return diseaseCodes;
+                case VISIT_TYPE:
+                    return visitTypes;
+                default:
+                    return days;
+            }
+        }
+        
+        StringDictionary dictionary(VisitDimension dimension) {
+            switch (dimension) {
+                case DEPARTMENT:
+                    return departmentDict;
+                case DIAGNOSIS:
+                    return diagnosisDict;
+                case DISEASE_CODE:
+                    return diseaseCodeDict;
+                case VISIT_TYPE:
+                    return visitTypeDict;
+                default:
+                    throw new IllegalArgumentException("维度没有字典: " + dimension);
+            }
+        }
+        
+        int liveCount() {
+            return size - deletedCount;
+        }
+        
+        long estimatedBytes() {
+            // 每行：id 8 + 日期 4 + 费用 8 + 5个字典编码列 4×5
+            return (long) ids.length * (8 + 4 + 8 + 4 * 5);
+        }
+        
+        int find(long id) {
+            int r = Arrays.binarySearch(ids, 0, sortedCount, id);
+            if (r >= 0) {
+                return r;
+            }
+            Integer o = overflow.get(id);
+            return o != null ? o : -1;
+        }
+        
+        void upsert(VisitRow row) {
+            int r = find(row.id);
+            if (r < 0) {
+                r = append(row.id);
+            } else if (deleted.get(r)) {
+                deleted.clear(r);
+                deletedCount--;
+            }
+            days[r] = row.day;
+            costCents[r] = row.costCents;
+            patients[r] = patientDict.encode(row.patientId);
+            departments[r] = departmentDict.encode(row.department);
+            diagnoses[r] = diagnosisDict.encode(row.diagnosis);
+            diseaseCodes[r] = diseaseCodeDict.encode(row.diseaseCode);
+            visitTypes[r] = visitTypeDict.encode(row.visitType);
+            if (row.day != NO_DAY) {
+                minDay = Math.min(minDay, row.day);
+                maxDay = Math.max(maxDay, row.day);
+            }
+        }
+        
+        void delete(long id) {
+            int r = find(id);
+            if (r < 0 || deleted.get(r)) {
+                return;
+            }
+            deleted.set(r);
+            deletedCount++;
+            if (deletedCount > COMPACT_MIN_TOMBSTONES && deletedCount > size / 4) {
+                compact();
+            }
+        }
+        
+        private int append(long id) {
+            if (size == ids.length) {
+                grow();
+            }
+            if (sortedCount == 0 || ids[sortedCount - 1] < id) {
+                int r = sortedCount;
+                if (r < size) {
+                    moveRow(r, size);
+                    overflow.put(ids[size], size);
+                }
+                size++;
+                sortedCount++;
+                ids[r] = id;
+                deleted.clear(r);
+                return r;
+            }
+            int r = size++;
+            ids[r] = id;
+            deleted.clear(r);
+            overflow.put(id, r);
+            if (overflow.size() > OVERFLOW_MERGE_ROWS) {
+                mergeOverflow();
+                r = Arrays.binarySearch(ids, 0, sortedCount, id);
+            }
+            return r;
+        }
+        
+        /**
+         * 把乱序区按ID排序后与有序前缀从后向前归并，归并后全部行有序、overflow清空
+         * 
+         * 乱序区的行先按ID顺序复制到size之后的暂存位置，归并只移动ID大于乱序区最小ID的那部分前缀
+         */
+        private void mergeOverflow() {
+            int k = size - sortedCount;
+            if (k == 0) {
+                return;
+            }
+            while (ids.length < size + k) {
+                grow();
+            }
+            List<Map.Entry<Long, Integer>> late = new ArrayList<>(overflow.entrySet());
+            late.sort(Map.Entry.comparingByKey());
+            for (int j = 0; j < k; j++) {
+                moveRow(late.get(j).getValue(), size + j);
+            }
+            int i = sortedCount - 1;
+            int j = k - 1;
+            for (int w = size - 1; j >= 0; w--) {
+                if (i >= 0 && ids[i] > ids[size + j]) {
+                    moveRow(i--, w);
+                } else {
+                    moveRow(size + j--, w);
+                }
+            }
+            deleted.clear(size, size + k);
+            sortedCount = size;
+            overflow.clear();
+        }
+        
+        private void moveRow(int from, int to) {
+            ids[to] = ids[from];
+            days[to] = days[from];
+            costCents[to] = costCents[from];
+            patients[to] = patients[from];
+            departments[to] = departments[from];
+            diagnoses[to] = diagnoses[from];
+            diseaseCodes[to] = diseaseCodes[from];
+            visitTypes[to] = visitTypes[from];
+            deleted.set(to, deleted.get(from));
+        }
+        
+        private void grow() {
+            int capacity = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            days = Arrays.copyOf(days, capacity);
+            costCents = Arrays.copyOf(costCents, capacity);
+            patients = Arrays.copyOf(patients, capacity);
+            departments = Arrays.copyOf(departments, capacity);
+            diagnoses = Arrays.copyOf(diagnoses, capacity);
+            diseaseCodes = Arrays.copyOf(diseaseCodes, capacity);
+            visitTypes = Arrays.copyOf(visitTypes, capacity);
+        }
+        
+        /**
+         * 移除墓碑行并把乱序区归并回有序前缀（字典不回收）
+         */
+        private void compact() {
+            int w = 0;
+            boolean prefix = true;
+            int newSorted = 0;
+            overflow.clear();
+            for (int r = 0; r < size; r++) {
+                if (deleted.get(r)) {
+                    continue;
+                }
+                if (w != r) {
+                    ids[w] = ids[r];
+                    days[w] = days[r];
+                    costCents[w] = costCents[r];
+                    patients[w] = patients[r];
+                    departments[w] = departments[r];
+                    diagnoses[w] = diagnoses[r];
+                    diseaseCodes[w] = diseaseCodes[r];
+                    visitTypes[w] = visitTypes[r];
+                }
+                if (prefix && (w == 0 || ids[w - 1] < ids[w])) {
+                    newSorted = w + 1;
+                } else {
+                    prefix = false;
+                    overflow.put(ids[w], w);
+                }
+                w++;
+            }
+            size = w;
+            sortedCount = newSorted;
+            deleted.clear();
+            deletedCount = 0;
+            mergeOverflow();
+        }
+    }
+}
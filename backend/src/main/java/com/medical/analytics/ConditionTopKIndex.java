@@ -0,0 +1,681 @@
+package com.medical.analytics;
+
+import com.medical.archive.ColdArchiveStore;
+import com.medical.dto.ConditionSummaryDTO;
+import com.medical.dto.VisitConditionCountDTO;
+import com.medical.entity.Patient;
+import com.medical.event.VisitChangeEvent;
+import com.medical.mapper.ConditionSummaryMapper;
+import com.medical.util.DateConvertUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 疾病编码/诊断频繁项索引：每个(日期, 科室)保存疾病编码、诊断各一个SpaceSaving摘要，
+ * 任意日期范围、科室组合的Top-K由摘要合并得出，并给出每项的误差范围
+ * 
+ * 维护方式：
+ * 1. 就诊记录提交后直接计入内存中的摘要，标记该日期待重新统计
+ * 2. 修改、删除不能从摘要中扣除，同样标记日期待重新统计
+ * 3. 定时同步：待重新统计的日期从patient_visit按(科室, 编码, 诊断)聚合后生成摘要，覆盖内存和
+ *    patient_visit_condition；再读取其他实例更新过的摘要
+ * 重新统计以明细为准，多实例各自写入同一天时结果相同，不会重复计数
+ * 
+ * 整月都在查询范围内时使用按(月, 科室)缓存的合并结果，一年的查询只需合并12个（每个科室）摘要
+ */
+@Slf4j
+@Component
+public class ConditionTopKIndex {
+    
+    /**
+     * 增量读取时向前多读的时间，覆盖同步期间提交的写入和各实例的时钟差
+     */
+    private static final long PULL_OVERLAP_SECONDS = 300;
+    
+    /**
+     * 每次从明细重新统计的最大天数（结果在内存中汇总后再写入）
+     */
+    private static final int REGENERATE_CHUNK_DAYS = 31;
+    
+    /**
+     * 月缓存中表示"全部科室"的键
+     */
+    private static final String ALL_DEPARTMENTS = "";
+    
+    @Value("${analytics.topk.enabled:true}")
+    private boolean enabled;
+    
+    /**
+     * 每个(日期, 科室)摘要保留的计数器个数，当天的种类不超过该值时摘要是精确的
+     */
+    @Value("${analytics.topk.daily-capacity:256}")
+    private int dailyCapacity;
+    
+    /**
+     * 按月合并结果保留的计数器个数
+     */
+    @Value("${analytics.topk.monthly-capacity:2000}")
+    private int monthlyCapacity;
+    
+    @Autowired
+    private ConditionSummaryMapper conditionSummaryMapper;
+    
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private final ConcurrentSkipListMap<LocalDate, ConcurrentHashMap<String, Bucket>> days = new ConcurrentSkipListMap<>();
+    
+    /**
+     * 有新增、修改或删除，需要从明细重新统计的日期
+     */
+    private final Set<LocalDate> dirtyDays = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * 每个月的变更版本，月缓存的版本与之不同时失效
+     */
+    private final ConcurrentHashMap<YearMonth, Long> monthVersions = new ConcurrentHashMap<>();
+    
+    private final ConcurrentHashMap<MonthKey, MonthSummary> monthCache = new ConcurrentHashMap<>();
+    
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    
+    private volatile boolean ready;
+    
+    /**
+     * 上次读取摘要时的数据库时间
+     */
+    private LocalDateTime lastPull;
+    
+    private volatile long lastLoadMillis;
+    
+    private final LongAdder adds = new LongAdder();
+    private final LongAdder regeneratedDays = new LongAdder();
+    private final LongAdder pulled = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final LongAdder mergedSummaries = new LongAdder();
+    private final LongAdder monthCacheHits = new LongAdder();
+    private final LongAdder monthCacheMisses = new LongAdder();
+    
+    /**
+     * 应用启动完成后在后台线程加载，不阻塞启动；数据库不可用时保持未就绪，由定时同步重试
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::sync, "condition-topk-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    @Scheduled(fixedDelayString = "${analytics.topk.sync-interval-ms:10000}",
+               initialDelayString = "${analytics.topk.sync-interval-ms:10000}")
+    public void scheduledSync() {
+        if (enabled) {
+            sync();
+        }
+    }
+    
+    /**
+     * 未就绪时全量加载；之后重新统计有变化的日期，再读取其他实例的更新
+     */
+    public void sync() {
+        if (!maintenanceLock.tryLock()) {
+            return;
+        }
+        try {
+            if (!ready) {
+                long start = System.currentTimeMillis();
+                pull();
+                ready = true;
+                lastLoadMillis = System.currentTimeMillis() - start;
+                log.info("疾病频繁项摘要加载完成：{} 天，耗时 {} ms", days.size(), lastLoadMillis);
+            }
+            regenerateDirty();
+            pull();
+        } catch (RuntimeException e) {
+            log.warn("疾病频繁项摘要同步失败，稍后重试: {}", e.getMessage());
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+    
+    public boolean isReady() {
+        return enabled && ready;
+    }
+    
+    /**
+     * 新增就诊记录已提交
+     */
+    public void add(Patient visit) {
+        if (!enabled || visit == null || visit.getVisitDate() == null || visit.getDepartment() == null) {
+            return;
+        }
+        LocalDate day = DateConvertUtil.toLocalDate(visit.getVisitDate());
+        String diseaseCode = normalize(visit.getDiseaseCode());
+        String diagnosis = normalize(visit.getDiagnosis());
+        if (diseaseCode != null || diagnosis != null) {
+            Bucket bucket = days.computeIfAbsent(day, d -> new ConcurrentHashMap<>())
+                .computeIfAbsent(visit.getDepartment(), d -> new Bucket(dailyCapacity));
+            synchronized (bucket) {
+                if (diseaseCode != null) {
+                    bucket.diseaseCodes.add(diseaseCode);
+                }
+                if (diagnosis != null) {
+                    bucket.diagnoses.add(diagnosis);
+                }
+            }
+            monthChanged(day);
+            adds.increment();
+        }
+        dirtyDays.add(day);
+    }
+    
+    public void addAll(Collection<Patient> visits) {
+        for (Patient visit : visits) {
+            add(visit);
+        }
+    }
+    
+    /**
+     * 就诊记录变更已提交（PatientService、VisitIngestionService发布）
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onVisitChange(VisitChangeEvent event) {
+        switch (event.getType()) {
+            case INSERT:
+                addAll(event.getAfter());
+                break;
+            case UPDATE:
+                for (int i = 0; i < event.size(); i++) {
+                    update(event.getBefore().get(i), event.getAfter().get(i));
+                }
+                break;
+            default:
+                event.getBefore().forEach(this::remove);
+        }
+    }
+    
+    /**
+     * 就诊记录的修改已提交：日期、科室、编码、诊断都没变时摘要不变，否则重新统计旧日期、计入新值
+     */
+    public void update(Patient before, Patient after) {
+        if (before != null && after != null
+            && Objects.equals(before.getDepartment(), after.getDepartment())
+            && Objects.equals(normalize(before.getDiseaseCode()), normalize(after.getDiseaseCode()))
+            && Objects.equals(normalize(before.getDiagnosis()), normalize(after.getDiagnosis()))
+            && Objects.equals(DateConvertUtil.toLocalDate(before.getVisitDate()),
+                DateConvertUtil.toLocalDate(after.getVisitDate()))) {
+            return;
+        }
+        remove(before);
+        add(after);
+    }
+    
+    /**
+     * 就诊记录的删除已提交：在下次同步时重新统计该日期
+     */
+    public void remove(Patient visit) {
+        if (!enabled || visit == null || visit.getVisitDate() == null) {
+            return;
+        }
+        dirtyDays.add(DateConvertUtil.toLocalDate(visit.getVisitDate()));
+    }
+    
+    /**
+     * 合并日期范围内（闭区间）的摘要
+     * 
+     * @param dimension   DISEASE_CODE或DIAGNOSIS
+     * @param departments 科室，为空表示全部科室
+     * @param capacity    合并结果保留的计数器个数
+     */
+    public SpaceSaving merge(VisitDimension dimension, LocalDate startDate, LocalDate endDate,
+                             Collection<String> departments, int capacity) {
+        checkDimension(dimension);
+        long start = System.nanoTime();
+        Collection<String> targets = departments == null || departments.isEmpty()
+            ? Collections.singletonList(ALL_DEPARTMENTS) : departments;
+        SpaceSaving.Merger merger = new SpaceSaving.Merger();
+        for (YearMonth month = YearMonth.from(startDate); !month.isAfter(YearMonth.from(endDate));
+             month = month.plusMonths(1)) {
+            LocalDate monthStart = month.atDay(1);
+            LocalDate monthEnd = month.atEndOfMonth();
+            if (!startDate.isAfter(monthStart) && !endDate.isBefore(monthEnd)) {
+                for (String department : targets) {
+                    merger.add(monthSummary(dimension, month, department));
+                }
+            } else {
+                addDays(merger, dimension, startDate.isAfter(monthStart) ? startDate : monthStart,
+                    endDate.isBefore(monthEnd) ? endDate : monthEnd, targets);
+            }
+        }
+        SpaceSaving result = merger.toSummary(capacity);
+        queries.increment();
+        queryNanos.add(System.nanoTime() - start);
+        mergedSummaries.add(merger.getMerged());
+        return result;
+    }
+    
+    /**
+     * 按日期范围（闭区间）从patient_visit重新统计
+     * 
+     * @return 重新统计的天数
+     */
+    public int rebuild(LocalDate startDate, LocalDate endDate) {
+        if (!enabled) {
+            throw new RuntimeException("疾病频繁项摘要未启用");
+        }
+        if (startDate == null || endDate == null || startDate.isAfter(endDate)) {
+            throw new RuntimeException("日期范围不正确");
+        }
+        maintenanceLock.lock();
+        try {
+            log.info("重建疾病频繁项摘要: {} ~ {}", startDate, endDate);
+            int count = 0;
+            for (LocalDate from = startDate; !from.isAfter(endDate); from = from.plusDays(REGENERATE_CHUNK_DAYS)) {
+                LocalDate to = from.plusDays(REGENERATE_CHUNK_DAYS - 1);
+                count += regenerate(from, to.isAfter(endDate) ? endDate : to);
+            }
+            log.info("疾病频繁项摘要重建完成: {} ~ {}, {} 天", startDate, endDate, count);
+            return count;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+    
+    public Map<String, Object> stats() {
+        int buckets = 0;
+        long counters = 0;
+        for (ConcurrentHashMap<String, Bucket> departments : days.values()) {
+            for (Bucket bucket : departments.values()) {
+                synchronized (bucket) {
+                    buckets++;
+                    counters += bucket.diseaseCodes.size() + bucket.diagnoses.size();
+                }
+            }
+        }
+        long queryCount = queries.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("dailyCapacity", dailyCapacity);
+        stats.put("monthlyCapacity", monthlyCapacity);
+        stats.put("days", days.size());
+        stats.put("firstDay", days.isEmpty() ? null : days.firstKey().toString());
+        stats.put("lastDay", days.isEmpty() ? null : days.lastKey().toString());
+        stats.put("buckets", buckets);
+        stats.put("counters", counters);
+        stats.put("monthCacheSize", monthCache.size());
+        stats.put("monthCacheHits", monthCacheHits.sum());
+        stats.put("monthCacheMisses", monthCacheMisses.sum());
+        stats.put("dirtyDays", dirtyDays.size());
+        stats.put("lastLoadMillis", lastLoadMillis);
+        stats.put("adds", adds.sum());
+        stats.put("regeneratedDays", regeneratedDays.sum());
+        stats.put("pulled", pulled.sum());
+        stats.put("queries", queryCount);
+        stats.put("avgQueryMicros", queryCount > 0 ? queryNanos.sum() / 1000.0 / queryCount : 0.0);
+        stats.put("mergedSummaries", mergedSummaries.sum());
+        return stats;
+    }
+    
+    private SpaceSaving monthSummary(VisitDimension dimension, YearMonth month, String department) {
+        MonthKey key = new MonthKey(dimension, month, department);
+        long version = monthVersions.getOrDefault(month, 0L);
+        MonthSummary cached = monthCache.get(key);
+        if (cached != null && cached.version == version) {
+            monthCacheHits.increment();
+            return cached.summary;
+        }
+        monthCacheMisses.increment();
+        SpaceSaving.Merger merger = new SpaceSaving.Merger();
+        addDays(merger, dimension, month.atDay(1), month.atEndOfMonth(),
+            Collections.singletonList(department));
+        SpaceSaving summary = merger.toSummary(monthlyCapacity);
+        // 计算期间该月有变化时版本已不同，下次查询会重新计算
+        monthCache.put(key, new MonthSummary(version, summary));
+        return summary;
+    }
+    
+    private void addDays(SpaceSaving.Merger merger, VisitDimension dimension, LocalDate from, LocalDate to,
+                         Collection<String> departments) {
+        for (ConcurrentHashMap<String, Bucket> day : days.subMap(from, true, to, true).values()) {
+            if (departments.size() == 1 && departments.contains(ALL_DEPARTMENTS)) {
+                for (Bucket bucket : day.values()) {
+                    addBucket(merger, dimension, bucket);
+                }
+            } else {
+                for (String department : departments) {
+                    Bucket bucket = day.get(department);
+                    if (bucket != null) {
+                        addBucket(merger, dimension, bucket);
+                    }
+                }
+            }
+        }
+    }
+    
+    private static void addBucket(SpaceSaving.Merger merger, VisitDimension dimension, Bucket bucket) {
+        synchronized (bucket) {
+            merger.add(bucket.summary(dimension));
+        }
+    }
+    
+    private void monthChanged(LocalDate day) {
+        monthVersions.merge(YearMonth.from(day), 1L, Long::sum);
+    }
+    
+    /**
+     * 重新统计有变化的日期（连续的日期合并为一次查询）
+     */
+    private void regenerateDirty() {
+        if (dirtyDays.isEmpty()) {
+            return;
+        }
+        List<LocalDate> dirty = new ArrayList<>(dirtyDays);
+        dirtyDays.removeAll(dirty);
+        Collections.sort(dirty);
+        int i = 0;
+        try {
+            while (i < dirty.size()) {
+                int j = i;
+                while (j + 1 < dirty.size() && j + 1 - i < REGENERATE_CHUNK_DAYS
+                    && dirty.get(j + 1).equals(dirty.get(j).plusDays(1))) {
+                    j++;
+                }
+                regenerate(dirty.get(i), dirty.get(j));
+                i = j + 1;
+            }
+        } catch (RuntimeException e) {
+            dirtyDays.addAll(dirty.subList(i, dirty.size()));
+            throw e;
+        }
+    }
+    
+    /**
+     * 从patient_visit重新统计日期范围（闭区间），覆盖内存和数据库中的摘要
+     * 期间提交的新增会再次标记日期，由下次同步补上
+     * 
+     * @return 天数
+     */
+    private int regenerate(LocalDate from, LocalDate to) {
+        Map<LocalDate, Map<String, Counts>> counts = new TreeMap<>();
+        TransactionTemplate readTx = new TransactionTemplate(transactionManager);
+        readTx.setReadOnly(true);
+        readTx.execute(status -> {
+            try (Cursor<VisitConditionCountDTO> cursor = conditionSummaryMapper.selectDailyCounts(from, to)) {
+                for (VisitConditionCountDTO row : cursor) {
+                    if (row.getDepartment() == null) {
+                        continue;
+                    }
+                    Counts c = counts.computeIfAbsent(row.getVisitDate(), d -> new HashMap<>())
+                        .computeIfAbsent(row.getDepartment(), d -> new Counts());
+                    long visits = row.getVisitCount() != null ? row.getVisitCount() : 0;
+                    String diseaseCode = normalize(row.getDiseaseCode());
+                    String diagnosis = normalize(row.getDiagnosis());
+                    if (diseaseCode != null) {
+                        c.diseaseCodes.merge(diseaseCode, visits, Long::sum);
+                    }
+                    if (diagnosis != null) {
+                        c.diagnoses.merge(diagnosis, visits, Long::sum);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        // 已归档月份的明细在段文件中
+        coldArchiveStore.scanVisits(from, to, visit -> {
+            if (visit.getDepartment() == null) {
+                return;
+            }
+            Counts c = counts.computeIfAbsent(DateConvertUtil.toLocalDate(visit.getVisitDate()), d -> new HashMap<>())
+                .computeIfAbsent(visit.getDepartment(), d -> new Counts());
+            String diseaseCode = normalize(visit.getDiseaseCode());
+            String diagnosis = normalize(visit.getDiagnosis());
+            if (diseaseCode != null) {
+                c.diseaseCodes.merge(diseaseCode, 1L, Long::sum);
+            }
+            if (diagnosis != null) {
+                c.diagnoses.merge(diagnosis, 1L, Long::sum);
+            }
+        });
+        
+        // 内存中有而明细中已没有的科室写入空摘要，其他实例读取后同样清空
+        for (Map.Entry<LocalDate, ConcurrentHashMap<String, Bucket>> day : days.subMap(from, true, to, true).entrySet()) {
+            for (String department : day.getValue().keySet()) {
+                counts.computeIfAbsent(day.getKey(), d -> new HashMap<>()).computeIfAbsent(department, d -> new Counts());
+            }
+        }
+        Map<LocalDate, Map<String, Bucket>> fresh = new TreeMap<>();
+        for (Map.Entry<LocalDate, Map<String, Counts>> day : counts.entrySet()) {
+            Map<String, Bucket> buckets = new HashMap<>();
+            for (Map.Entry<String, Counts> entry : day.getValue().entrySet()) {
+                buckets.put(entry.getKey(), new Bucket(
+                    SpaceSaving.fromCounts(entry.getValue().diseaseCodes, dailyCapacity),
+                    SpaceSaving.fromCounts(entry.getValue().diagnoses, dailyCapacity)));
+            }
+            fresh.put(day.getKey(), buckets);
+        }
+        
+        TransactionTemplate writeTx = new TransactionTemplate(transactionManager);
+        writeTx.executeWithoutResult(status -> {
+            for (Map.Entry<LocalDate, Map<String, Bucket>> day : fresh.entrySet()) {
+                for (Map.Entry<String, Bucket> entry : day.getValue().entrySet()) {
+                    write(day.getKey(), entry.getKey(), VisitDimension.DISEASE_CODE, entry.getValue().diseaseCodes);
+                    write(day.getKey(), entry.getKey(), VisitDimension.DIAGNOSIS, entry.getValue().diagnoses);
+                }
+            }
+        });
+        for (Map.Entry<LocalDate, Map<String, Bucket>> day : fresh.entrySet()) {
+            ConcurrentHashMap<String, Bucket> departments = days.computeIfAbsent(day.getKey(), d -> new ConcurrentHashMap<>());
+            for (Map.Entry<String, Bucket> entry : day.getValue().entrySet()) {
+                Bucket bucket = departments.computeIfAbsent(entry.getKey(), d -> new Bucket(dailyCapacity));
+                synchronized (bucket) {
+                    bucket.diseaseCodes = entry.getValue().diseaseCodes;
+                    bucket.diagnoses = entry.getValue().diagnoses;
+                }
+            }
+            monthChanged(day.getKey());
+        }
+        int dayCount = (int) (to.toEpochDay() - from.toEpochDay() + 1);
+        regeneratedDays.add(dayCount);
+        return dayCount;
+    }
+    
+    private void write(LocalDate day, String department, VisitDimension dimension, SpaceSaving summary) {
+        conditionSummaryMapper.upsert(day, department, columnOf(dimension), summary.toBytes(), summary.getTotal());
+    }
+    
+    /**
+     * 读取上次同步之后更新过的摘要（首次读取全部），待重新统计的日期跳过
+     */
+    private void pull() {
+        LocalDateTime since = lastPull != null ? lastPull.minusSeconds(PULL_OVERLAP_SECONDS) : null;
+        LocalDateTime now = conditionSummaryMapper.selectNow();
+        long[] rows = new long[1];
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.execute(status -> {
+            try (Cursor<ConditionSummaryDTO> cursor = conditionSummaryMapper.selectUpdatedSince(since)) {
+                for (ConditionSummaryDTO row : cursor) {
+                    if (dirtyDays.contains(row.getStatDate())) {
+                        continue;
+                    }
+                    VisitDimension dimension = dimensionOf(row.getDimension());
+                    SpaceSaving summary = decode(row);
+                    if (dimension == null || summary == null) {
+                        continue;
+                    }
+                    Bucket bucket = days.computeIfAbsent(row.getStatDate(), d -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(row.getDepartment(), d -> new Bucket(dailyCapacity));
+                    synchronized (bucket) {
+                        if (dimension == VisitDimension.DISEASE_CODE) {
+                            bucket.diseaseCodes = summary;
+                        } else {
+                            bucket.diagnoses = summary;
+                        }
+                    }
+                    monthChanged(row.getStatDate());
+                    rows[0]++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        lastPull = now;
+        pulled.add(rows[0]);
+    }
+    
+    private static SpaceSaving decode(ConditionSummaryDTO row) {
+        try {
+            return SpaceSaving.fromBytes(row.getSummary());
+        } catch (IllegalArgumentException e) {
+            // 格式无法识别时跳过，等待重建覆盖
+            log.warn("疾病频繁项摘要无法解析: {} {} {}，{}", row.getStatDate(), row.getDepartment(),
+                row.getDimension(), e.getMessage());
+            return null;
+        }
+    }
+    
+    private static void checkDimension(VisitDimension dimension) {
+        if (dimension != VisitDimension.DISEASE_CODE && dimension != VisitDimension.DIAGNOSIS) {
+            throw new IllegalArgumentException("频繁项只支持疾病编码和诊断: " + dimension);
+        }
+    }
+    
+    private static String columnOf(VisitDimension dimension) {
+        return dimension == VisitDimension.DISEASE_CODE ? "disease_code" : "diagnosis";
+    }
+    
+    private static VisitDimension dimensionOf(String column) {
+        if ("disease_code".equals(column)) {
+            return VisitDimension.DISEASE_CODE;
+        }
+        if ("diagnosis".equals(column)) {
+            return VisitDimension.DIAGNOSIS;
+        }
+        return null;
+    }
+    
+    private static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+    
+    /**
+     * 单个(日期, 科室)的两个摘要，读写时以自身为锁
+     */
+    private static final class Bucket {
+        
+        private SpaceSaving diseaseCodes;
+        
+        private SpaceSaving diagnoses;
+        
+        Bucket(int capacity) {
+            this(new SpaceSaving(capacity), new SpaceSaving(capacity));
+        }
+        
+        Bucket(SpaceSaving diseaseCodes, SpaceSaving diagnoses) {
+            this.diseaseCodes = diseaseCodes;
+            this.diagnoses = diagnoses;
+        }
+        
+        SpaceSaving summary(VisitDimension dimension) {
+            return dimension == VisitDimension.DISEASE_CODE ? diseaseCodes : diagnoses;
+        }
+    }
+    
+    /**
+     * 重新统计时单个(日期, 科室)的精确计数
+     */
+    private static final class Counts {
+        
+        private final Map<String, Long> diseaseCodes = new HashMap<>();
+        
+        private final Map<String, Long> diagnoses = new HashMap<>();
+    }
+    
+    private static final class MonthKey {
+        
+        private final VisitDimension dimension;
+        
+        private final YearMonth month;
+        
+        private final String department;
+        
+        MonthKey(VisitDimension dimension, YearMonth month, String department) {
+            this.dimension = dimension;
+            this.month = month;
+            this.department = department;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MonthKey)) {
+                return false;
+            }
+            MonthKey other = (MonthKey) o;
+            return dimension == other.dimension && month.equals(other.month) && department.equals(other.department);
+        }
+        
+        @Override
+        public int hashCode() {
+            return (dimension.hashCode() * 31 + month.hashCode()) * 31 + department.hashCode();
+        }
+    }
+    
+    private static final class MonthSummary {
+        
+        private final long version;
+        
+        private final SpaceSaving summary;
+        
+        MonthSummary(long version, SpaceSaving summary) {
+            this.version = version;
+            this.summary = summary;
+        }
+    }
+}
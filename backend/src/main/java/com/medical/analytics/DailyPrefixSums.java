@@ -0,0 +1,226 @@
+package com.medical.analytics;
+
+import com.medical.dto.DepartmentDailyStatDTO;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按天的就诊人次/收入前缀和（每个科室一组，另有全院一组）
+ * 
+ * 第i个位置存放从起始日期到第i-1天的累计值，任意日期范围的合计 = 两次数组读取相减；
+ * 新的一天结束后在末尾追加，历史某天的数据变化时修正该天之后的累计值。
+ * 收入按分存为long。本类不做同步，由调用方加锁
+ */
+public final class DailyPrefixSums {
+    
+    /**
+     * 第0天的epochDay
+     */
+    private final long originDay;
+    
+    /**
+     * 已覆盖的天数
+     */
+    private int days;
+    
+    private final Map<String, Integer> departmentIndex = new HashMap<>();
+    
+    /**
+     * 每个科室的人次、收入前缀和
+     */
+    private final List<long[]> counts = new ArrayList<>();
+    private final List<long[]> cents = new ArrayList<>();
+    
+    private long[] totalCounts;
+    private long[] totalCents;
+    
+    public DailyPrefixSums(LocalDate origin) {
+        this.originDay = origin.toEpochDay();
+        this.totalCounts = new long[64];
+        this.totalCents = new long[64];
+    }
+    
+    /**
+     * 从起始日期到给定日期（含）的数据，未覆盖到的日期按0处理
+     */
+    public static DailyPrefixSums build(LocalDate origin, LocalDate through, List<DepartmentDailyStatDTO> rows) {
+        DailyPrefixSums sums = new DailyPrefixSums(origin);
+        sums.appendThrough(through, rows);
+        return sums;
+    }
+    
+    public LocalDate getOrigin() {
+        return LocalDate.ofEpochDay(originDay);
+    }
+    
+    /**
+     * 已覆盖的最后一天，尚未覆盖任何一天时为起始日期前一天
+     */
+    public LocalDate getLastDay() {
+        return LocalDate.ofEpochDay(originDay + days - 1);
+    }
+    
+    public int getDays() {
+        return days;
+    }
+    
+    public int getDepartmentCount() {
+        return departmentIndex.size();
+    }
+    
+    /**
+     * 追加到给定日期（含），rows为新追加日期范围内的汇总行
+     */
+    public void appendThrough(LocalDate through, List<DepartmentDailyStatDTO> rows) {
+        int target = (int) (through.toEpochDay() - originDay + 1);
+        if (target <= days) {
+            return;
+        }
+        Map<Integer, List<DepartmentDailyStatDTO>> byDay = new HashMap<>();
+        for (DepartmentDailyStatDTO row : rows) {
+            int day = dayIndex(row.getStatDate());
+            if (day >= days && day < target) {
+                byDay.computeIfAbsent(day, k -> new ArrayList<>()).add(row);
+            }
+        }
+        ensureCapacity(target + 1);
+        for (int day = days; day < target; day++) {
+            int next = day + 1;
+            totalCounts[next] = totalCounts[day];
+            totalCents[next] = totalCents[day];
+            for (int d = 0; d < counts.size(); d++) {
+                counts.get(d)[next] = counts.get(d)[day];
+                cents.get(d)[next] = cents.get(d)[day];
+            }
+            days = next;
+            for (DepartmentDailyStatDTO row : byDay.getOrDefault(day, Collections.emptyList())) {
+                int d = department(row.getDepartment());
+                long count = row.getVisitCount() != null ? row.getVisitCount() : 0;
+                long amount = toCents(row.getRevenue());
+                counts.get(d)[next] += count;
+                cents.get(d)[next] += amount;
+                totalCounts[next] += count;
+                totalCents[next] += amount;
+            }
+        }
+    }
+    
+    /**
+     * 用数据库中该天的最新汇总行修正已覆盖的某一天
+     * 
+     * @return 该天不在已覆盖范围内时返回false（需要整体重建）
+     */
+    public boolean repairDay(LocalDate date, List<DepartmentDailyStatDTO> rows) {
+        int day = dayIndex(date);
+        if (day < 0 || day >= days) {
+            return false;
+        }
+        Map<Integer, long[]> fresh = new HashMap<>();
+        for (DepartmentDailyStatDTO row : rows) {
+            if (date.equals(row.getStatDate())) {
+                long[] value = fresh.computeIfAbsent(department(row.getDepartment()), k -> new long[2]);
+                value[0] += row.getVisitCount() != null ? row.getVisitCount() : 0;
+                value[1] += toCents(row.getRevenue());
+            }
+        }
+        for (int d = 0; d < counts.size(); d++) {
+            long[] value = fresh.get(d);
+            long[] count = counts.get(d);
+            long[] amount = cents.get(d);
+            long countDelta = (value != null ? value[0] : 0) - (count[day + 1] - count[day]);
+            long centsDelta = (value != null ? value[1] : 0) - (amount[day + 1] - amount[day]);
+            if (countDelta != 0 || centsDelta != 0) {
+                addSuffix(count, day + 1, countDelta);
+                addSuffix(amount, day + 1, centsDelta);
+                addSuffix(totalCounts, day + 1, countDelta);
+                addSuffix(totalCents, day + 1, centsDelta);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 日期范围（闭区间）内的合计，超出已覆盖范围的部分按0计
+     * 
+     * @param department 科室，为null时为全院
+     * @return [人次, 收入（分）]
+     */
+    public long[] sum(String department, LocalDate from, LocalDate to) {
+        int start = Math.max(0, dayIndex(from));
+        int end = Math.min(days - 1, dayIndex(to));
+        if (start > end) {
+            return new long[2];
+        }
+        long[] count;
+        long[] amount;
+        if (department == null) {
+            count = totalCounts;
+            amount = totalCents;
+        } else {
+            Integer d = departmentIndex.get(department);
+            if (d == null) {
+                return new long[2];
+            }
+            count = counts.get(d);
+            amount = cents.get(d);
+        }
+        return new long[] {count[end + 1] - count[start], amount[end + 1] - amount[start]};
+    }
+    
+    /**
+     * 数组占用的内存估算（字节）
+     */
+    public long memoryBytes() {
+        return (long) (departmentIndex.size() + 1) * totalCounts.length * 2 * Long.BYTES;
+    }
+    
+    public static long toCents(BigDecimal amount) {
+        return amount != null ? amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue() : 0;
+    }
+    
+    private int dayIndex(LocalDate date) {
+        long day = date.toEpochDay() - originDay;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, day));
+    }
+    
+    private int department(String name) {
+        Integer d = departmentIndex.get(name);
+        if (d == null) {
+            d = counts.size();
+            departmentIndex.put(name, d);
+            counts.add(new long[totalCounts.length]);
+            cents.add(new long[totalCounts.length]);
+        }
+        return d;
+    }
+    
+    private void ensureCapacity(int length) {
+        if (totalCounts.length >= length) {
+            return;
+        }
+        int capacity = Math.max(length, totalCounts.length * 2);
+        totalCounts = Arrays.copyOf(totalCounts, capacity);
+        totalCents = Arrays.copyOf(totalCents, capacity);
+        for (int d = 0; d < counts.size(); d++) {
+            counts.set(d, Arrays.copyOf(counts.get(d), capacity));
+            cents.set(d, Arrays.copyOf(cents.get(d), capacity));
+        }
+    }
+    
+    /**
+     * 从位置from开始到已覆盖末尾的累计值都加上delta
+     */
+    private void addSuffix(long[] prefix, int from, long delta) {
+        for (int i = from; i <= days; i++) {
+            prefix[i] += delta;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.medical.analytics;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 分组统计结果：人次与费用合计
+ */
+@Data
+public class GroupStats implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 分组键（维度为DAY时为yyyy-MM-dd）
+     */
+    private String key;
+    
+    /**
+     * 就诊人次
+     */
+    private long count;
+    
+    /**
+     * 费用合计（分）
+     */
+    private long costCents;
+    
+    public GroupStats() {
+    }
+    
+    public GroupStats(String key, long count, long costCents) {
+        this.key = key;
+        this.count = count;
+        this.costCents = costCents;
+    }
+    
+    /**
+     * 费用合计（元）
+     */
+    public BigDecimal getCost() {
+        return BigDecimal.valueOf(costCents, 2);
+    }
+}
@@ -0,0 +1,596 @@
+package com.medical.analytics;
+
+import com.medical.archive.ColdArchiveStore;
+import com.medical.dto.PatientSketchDTO;
+import com.medical.dto.PatientVisitKeyDTO;
+import com.medical.entity.Patient;
+import com.medical.event.VisitChangeEvent;
+import com.medical.mapper.PatientSketchMapper;
+import com.medical.util.DateConvertUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * 去重患者草图索引：每个(日期, 科室)一个HyperLogLog，任意日期范围、科室组合的去重患者数由草图合并得出
+ * 
+ * 维护方式：
+ * 1. 就诊记录提交后把患者ID加入对应草图（内存中立即生效），标记为待写入
+ * 2. 修改、删除无法从草图中扣除，标记该(日期, 科室)待修复，同步时从patient_visit重新生成
+ * 3. 定时同步：待修复的草图整体覆盖，待写入的草图在行锁内与库中的草图合并后写回
+ *    （多实例各自写入的患者取并集），再读取其他实例更新过的草图
+ * 
+ * 草图持久化在patient_visit_sketch，启动时在后台加载，未加载完成时isReady()为false；
+ * 草图缺失或不一致（历史数据、直接改库）时调用rebuild按日期范围重建
+ */
+@Slf4j
+@Component
+public class PatientSketchIndex {
+    
+    /**
+     * 增量读取时向前多读的时间，覆盖同步期间提交的写入和各实例的时钟差
+     */
+    private static final long PULL_OVERLAP_SECONDS = 300;
+    
+    @Value("${analytics.cardinality.enabled:true}")
+    private boolean enabled;
+    
+    @Autowired
+    private PatientSketchMapper patientSketchMapper;
+    
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private final ConcurrentSkipListMap<LocalDate, ConcurrentHashMap<String, Bucket>> days = new ConcurrentSkipListMap<>();
+    
+    /**
+     * 内存中有新增、尚未写入数据库的(日期, 科室)
+     */
+    private final Set<Key> pendingWrites = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * 有修改或删除、需要从patient_visit重新生成的(日期, 科室)
+     */
+    private final Set<Key> pendingRepairs = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * 同步、重建互斥执行
+     */
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    
+    /**
+     * 修复/重建读取明细期间提交的新增（captureLock保护），完成后补入新草图，避免被覆盖丢失
+     */
+    private final Object captureLock = new Object();
+    
+    private volatile boolean capturing;
+    
+    private final Map<Key, HyperLogLog> captured = new HashMap<>();
+    
+    private volatile boolean ready;
+    
+    /**
+     * 上次读取草图时的数据库时间
+     */
+    private LocalDateTime lastPull;
+    
+    private volatile long lastLoadMillis;
+    
+    private final LongAdder adds = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder repairs = new LongAdder();
+    private final LongAdder pulled = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder mergedSketches = new LongAdder();
+    
+    /**
+     * 应用启动完成后在后台线程加载，不阻塞启动；数据库不可用时保持未就绪，由定时同步重试
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::sync, "patient-sketch-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    @Scheduled(fixedDelayString = "${analytics.cardinality.sync-interval-ms:10000}",
+               initialDelayString = "${analytics.cardinality.sync-interval-ms:10000}")
+    public void scheduledSync() {
+        if (enabled) {
+            sync();
+        }
+    }
+    
+    /**
+     * 未就绪时全量加载；之后写入待修复、待写入的草图，再读取其他实例的更新
+     */
+    public void sync() {
+        if (!maintenanceLock.tryLock()) {
+            return;
+        }
+        try {
+            if (!ready) {
+                long start = System.currentTimeMillis();
+                pull();
+                ready = true;
+                lastLoadMillis = System.currentTimeMillis() - start;
+                log.info("去重患者草图加载完成：{} 个，耗时 {} ms", bucketCount(), lastLoadMillis);
+            }
+            repairPending();
+            writePending();
+            pull();
+        } catch (RuntimeException e) {
+            log.warn("去重患者草图同步失败，稍后重试: {}", e.getMessage());
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+    
+    public boolean isReady() {
+        return enabled && ready;
+    }
+    
+    /**
+     * 新增就诊记录已提交
+     */
+    public void add(Patient visit) {
+        if (!enabled || visit == null || visit.getVisitDate() == null || visit.getDepartment() == null
+            || visit.getPatientId() == null) {
+            return;
+        }
+        Key key = new Key(DateConvertUtil.toLocalDate(visit.getVisitDate()), visit.getDepartment());
+        if (capturing) {
+            synchronized (captureLock) {
+                if (capturing) {
+                    captured.computeIfAbsent(key, k -> new HyperLogLog()).add(visit.getPatientId());
+                }
+            }
+        }
+        Bucket bucket = bucket(key);
+        synchronized (bucket) {
+            // 与pull()的判断在同一把锁内：标记待写入后才更新，读取时不会用库中的草图覆盖掉这次新增
+            pendingWrites.add(key);
+            bucket.sketch.add(visit.getPatientId());
+        }
+        adds.increment();
+    }
+    
+    public void addAll(Collection<Patient> visits) {
+        for (Patient visit : visits) {
+            add(visit);
+        }
+    }
+    
+    /**
+     * 就诊记录变更已提交（PatientService、VisitIngestionService发布）
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onVisitChange(VisitChangeEvent event) {
+        switch (event.getType()) {
+            case INSERT:
+                addAll(event.getAfter());
+                break;
+            case UPDATE:
+                for (int i = 0; i < event.size(); i++) {
+                    update(event.getBefore().get(i), event.getAfter().get(i));
+                }
+                break;
+            default:
+                event.getBefore().forEach(this::remove);
+        }
+    }
+    
+    /**
+     * 就诊记录的修改已提交：日期、科室、患者ID都没变时草图不变，否则修复旧分组、加入新分组
+     */
+    public void update(Patient before, Patient after) {
+        if (before != null && after != null
+            && Objects.equals(before.getPatientId(), after.getPatientId())
+            && Objects.equals(before.getDepartment(), after.getDepartment())
+            && Objects.equals(DateConvertUtil.toLocalDate(before.getVisitDate()),
+                DateConvertUtil.toLocalDate(after.getVisitDate()))) {
+            return;
+        }
+        remove(before);
+        add(after);
+    }
+    
+    /**
+     * 就诊记录的删除已提交：该患者可能还有同日同科室的其他就诊，只能整体修复
+     */
+    public void remove(Patient visit) {
+        if (!enabled || visit == null || visit.getVisitDate() == null || visit.getDepartment() == null) {
+            return;
+        }
+        pendingRepairs.add(new Key(DateConvertUtil.toLocalDate(visit.getVisitDate()), visit.getDepartment()));
+    }
+    
+    /**
+     * 合并日期范围内（闭区间）的草图
+     * 
+     * @param departments 科室，为空表示全部科室
+     * @param groupKey    由(日期, 科室)得到分组名，各分组分别合并
+     * @return 分组名 → 合并后的草图（副本），按分组名排序
+     */
+    public TreeMap<String, HyperLogLog> union(LocalDate startDate, LocalDate endDate, Collection<String> departments,
+                                              BiFunction<LocalDate, String, String> groupKey) {
+        TreeMap<String, HyperLogLog> groups = new TreeMap<>();
+        long merged = 0;
+        for (Map.Entry<LocalDate, ConcurrentHashMap<String, Bucket>> day
+            : days.subMap(startDate, true, endDate, true).entrySet()) {
+            if (departments == null || departments.isEmpty()) {
+                for (Map.Entry<String, Bucket> entry : day.getValue().entrySet()) {
+                    mergeInto(groups, groupKey.apply(day.getKey(), entry.getKey()), entry.getValue());
+                    merged++;
+                }
+            } else {
+                for (String department : departments) {
+                    Bucket bucket = day.getValue().get(department);
+                    if (bucket != null) {
+                        mergeInto(groups, groupKey.apply(day.getKey(), department), bucket);
+                        merged++;
+                    }
+                }
+            }
+        }
+        queries.increment();
+        mergedSketches.add(merged);
+        return groups;
+    }
+    
+    /**
+     * 按日期范围（闭区间）从patient_visit重建草图，已归档月份同时读取段文件中的记录
+     * 
+     * @return 重建后的草图个数
+     */
+    public int rebuild(LocalDate startDate, LocalDate endDate) {
+        if (!enabled) {
+            throw new RuntimeException("去重患者草图未启用");
+        }
+        if (startDate == null || endDate == null || startDate.isAfter(endDate)) {
+            throw new RuntimeException("日期范围不正确");
+        }
+        maintenanceLock.lock();
+        try {
+            log.info("重建去重患者草图: {} ~ {}", startDate, endDate);
+            startCapture();
+            Map<Key, HyperLogLog> fresh = new HashMap<>();
+            try {
+                TransactionTemplate tx = new TransactionTemplate(transactionManager);
+                tx.setReadOnly(true);
+                tx.execute(status -> {
+                    try (Cursor<PatientVisitKeyDTO> cursor = patientSketchMapper.selectVisitKeys(startDate, endDate)) {
+                        for (PatientVisitKeyDTO row : cursor) {
+                            if (row.getDepartment() != null && row.getPatientId() != null) {
+                                fresh.computeIfAbsent(new Key(row.getVisitDate(), row.getDepartment()),
+                                    k -> new HyperLogLog()).add(row.getPatientId());
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                });
+                coldArchiveStore.scanVisits(startDate, endDate, visit -> {
+                    if (visit.getDepartment() != null && visit.getPatientId() != null) {
+                        fresh.computeIfAbsent(new Key(DateConvertUtil.toLocalDate(visit.getVisitDate()),
+                            visit.getDepartment()), k -> new HyperLogLog()).add(visit.getPatientId());
+                    }
+                });
+                // 范围内已不存在的草图清空
+                for (Map.Entry<LocalDate, ConcurrentHashMap<String, Bucket>> day
+                    : days.subMap(startDate, true, endDate, true).entrySet()) {
+                    for (String department : day.getValue().keySet()) {
+                        fresh.computeIfAbsent(new Key(day.getKey(), department), k -> new HyperLogLog());
+                    }
+                }
+                replaceCaptured(fresh);
+            } finally {
+                stopCapture();
+            }
+            
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.executeWithoutResult(status -> {
+                patientSketchMapper.deleteByDateRange(startDate, endDate);
+                for (Map.Entry<Key, HyperLogLog> entry : fresh.entrySet()) {
+                    if (!entry.getValue().isEmpty()) {
+                        write(entry.getKey(), entry.getValue());
+                    }
+                }
+            });
+            for (Key key : fresh.keySet()) {
+                pendingRepairs.remove(key);
+            }
+            repairs.add(fresh.size());
+            log.info("去重患者草图重建完成: {} ~ {}, 草图 {} 个", startDate, endDate, fresh.size());
+            return fresh.size();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+    
+    public Map<String, Object> stats() {
+        int buckets = 0;
+        int dense = 0;
+        long memoryBytes = 0;
+        for (ConcurrentHashMap<String, Bucket> departments : days.values()) {
+            for (Bucket bucket : departments.values()) {
+                synchronized (bucket) {
+                    buckets++;
+                    dense += bucket.sketch.isSparse() ? 0 : 1;
+                    memoryBytes += bucket.sketch.memoryBytes();
+                }
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("days", days.size());
+        stats.put("firstDay", days.isEmpty() ? null : days.firstKey().toString());
+        stats.put("lastDay", days.isEmpty() ? null : days.lastKey().toString());
+        stats.put("sketches", buckets);
+        stats.put("denseSketches", dense);
+        stats.put("memoryBytes", memoryBytes);
+        stats.put("relativeStandardError", HyperLogLog.RELATIVE_STANDARD_ERROR);
+        stats.put("pendingWrites", pendingWrites.size());
+        stats.put("pendingRepairs", pendingRepairs.size());
+        stats.put("lastLoadMillis", lastLoadMillis);
+        stats.put("adds", adds.sum());
+        stats.put("writes", writes.sum());
+        stats.put("repairs", repairs.sum());
+        stats.put("pulled", pulled.sum());
+        stats.put("queries", queries.sum());
+        stats.put("mergedSketches", mergedSketches.sum());
+        return stats;
+    }
+    
+    private static void mergeInto(Map<String, HyperLogLog> groups, String group, Bucket bucket) {
+        HyperLogLog target = groups.computeIfAbsent(group, g -> new HyperLogLog());
+        synchronized (bucket) {
+            target.merge(bucket.sketch);
+        }
+    }
+    
+    private Bucket bucket(Key key) {
+        return days.computeIfAbsent(key.day, d -> new ConcurrentHashMap<>())
+            .computeIfAbsent(key.department, d -> new Bucket());
+    }
+    
+    private int bucketCount() {
+        int count = 0;
+        for (ConcurrentHashMap<String, Bucket> departments : days.values()) {
+            count += departments.size();
+        }
+        return count;
+    }
+    
+    /**
+     * 从patient_visit（及已归档月份的段文件）重新生成待修复的草图并覆盖写入
+     */
+    private void repairPending() {
+        if (pendingRepairs.isEmpty()) {
+            return;
+        }
+        List<Key> keys = new ArrayList<>(pendingRepairs);
+        pendingRepairs.removeAll(keys);
+        Map<Key, HyperLogLog> fresh = new HashMap<>();
+        try {
+            startCapture();
+            try {
+                for (Key key : keys) {
+                    HyperLogLog sketch = new HyperLogLog();
+                    for (String patientId : patientSketchMapper.selectPatientIds(key.day, key.department)) {
+                        sketch.add(patientId);
+                    }
+                    coldArchiveStore.scanVisits(key.day, key.day, visit -> {
+                        if (key.department.equals(visit.getDepartment()) && visit.getPatientId() != null) {
+                            sketch.add(visit.getPatientId());
+                        }
+                    });
+                    fresh.put(key, sketch);
+                }
+                replaceCaptured(fresh);
+            } finally {
+                stopCapture();
+            }
+            for (Map.Entry<Key, HyperLogLog> entry : fresh.entrySet()) {
+                if (entry.getValue().isEmpty()) {
+                    patientSketchMapper.delete(entry.getKey().day, entry.getKey().department);
+                } else {
+                    write(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (RuntimeException e) {
+            pendingRepairs.addAll(keys);
+            throw e;
+        }
+        repairs.add(keys.size());
+    }
+    
+    /**
+     * 待写入的草图在行锁内与库中的草图合并后写回
+     */
+    private void writePending() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        List<Key> keys = new ArrayList<>(pendingWrites);
+        pendingWrites.removeAll(keys);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            try {
+                HyperLogLog snapshot;
+                Bucket bucket = bucket(key);
+                synchronized (bucket) {
+                    snapshot = bucket.sketch.copy();
+                }
+                tx.executeWithoutResult(status -> {
+                    PatientSketchDTO stored = patientSketchMapper.selectForUpdate(key.day, key.department);
+                    if (stored != null) {
+                        snapshot.merge(decode(stored));
+                    }
+                    write(key, snapshot);
+                });
+            } catch (RuntimeException e) {
+                pendingWrites.addAll(keys.subList(i, keys.size()));
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * 读取上次同步之后更新过的草图（首次读取全部）
+     * 本实例有未写入新增的取并集，有待修复的跳过，其余以库中为准
+     */
+    private void pull() {
+        LocalDateTime since = lastPull != null ? lastPull.minusSeconds(PULL_OVERLAP_SECONDS) : null;
+        LocalDateTime now = patientSketchMapper.selectNow();
+        long[] rows = new long[1];
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.execute(status -> {
+            try (Cursor<PatientSketchDTO> cursor = patientSketchMapper.selectUpdatedSince(since)) {
+                for (PatientSketchDTO row : cursor) {
+                    Key key = new Key(row.getStatDate(), row.getDepartment());
+                    if (pendingRepairs.contains(key)) {
+                        continue;
+                    }
+                    HyperLogLog stored = decode(row);
+                    Bucket bucket = bucket(key);
+                    synchronized (bucket) {
+                        if (pendingWrites.contains(key)) {
+                            bucket.sketch.merge(stored);
+                        } else {
+                            bucket.sketch = stored;
+                        }
+                    }
+                    rows[0]++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        lastPull = now;
+        pulled.add(rows[0]);
+    }
+    
+    private void write(Key key, HyperLogLog sketch) {
+        patientSketchMapper.upsert(key.day, key.department, sketch.toBytes(), sketch.estimate());
+        writes.increment();
+    }
+    
+    private static HyperLogLog decode(PatientSketchDTO row) {
+        try {
+            return HyperLogLog.fromBytes(row.getSketch());
+        } catch (IllegalArgumentException e) {
+            // 格式无法识别时视为空草图，等待重建覆盖
+            log.warn("去重患者草图无法解析: {} {}，{}", row.getStatDate(), row.getDepartment(), e.getMessage());
+            return new HyperLogLog();
+        }
+    }
+    
+    private void startCapture() {
+        synchronized (captureLock) {
+            captured.clear();
+            capturing = true;
+        }
+    }
+    
+    private void stopCapture() {
+        synchronized (captureLock) {
+            capturing = false;
+            captured.clear();
+        }
+    }
+    
+    /**
+     * 把读取明细期间提交的新增补入新草图，再替换内存中的草图（持有captureLock，之后的新增直接进入新草图）
+     */
+    private void replaceCaptured(Map<Key, HyperLogLog> fresh) {
+        synchronized (captureLock) {
+            for (Map.Entry<Key, HyperLogLog> entry : fresh.entrySet()) {
+                HyperLogLog added = captured.get(entry.getKey());
+                if (added != null) {
+                    entry.getValue().merge(added);
+                }
+                Bucket bucket = bucket(entry.getKey());
+                synchronized (bucket) {
+                    bucket.sketch = entry.getValue().copy();
+                }
+            }
+            capturing = false;
+        }
+    }
+    
+    /**
+     * 单个(日期, 科室)的草图，读写时以自身为锁
+     */
+    private static final class Bucket {
+        
+        private HyperLogLog sketch = new HyperLogLog();
+    }
+    
+    private static final class Key {
+        
+        private final LocalDate day;
+        
+        private final String department;
+        
+        Key(LocalDate day, String department) {
+            this.day = day;
+            this.department = department;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return day.equals(other.day) && department.equals(other.department);
+        }
+        
+        @Override
+        public int hashCode() {
+            return day.hashCode() * 31 + department.hashCode();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.medical.analytics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving频繁项摘要：最多保留capacity个计数器，记录出现次数最多的值
+ * 
+ * 每个计数器记录上界count和误差error（真实次数在 [count - error, count] 之间）；
+ * 不在摘要中的值真实次数不超过floor。值的种类不超过capacity时摘要是精确的（floor = 0）
+ * 
+ * 多个摘要用Merger合并：同一个值的上界、误差分别相加，某个摘要中没有的值按该摘要的floor计入，
+ * 合并结果仍满足上述界限（Agarwal等的可合并摘要），因此可以按天保存、按任意日期范围合并
+ * 
+ * 非线程安全，由调用方同步
+ */
+public final class SpaceSaving {
+    
+    private static final byte FORMAT_VERSION = 1;
+    
+    private final int capacity;
+    
+    private final Map<String, Counter> counters;
+    
+    /**
+     * 不在摘要中的值的次数上界
+     */
+    private long floor;
+    
+    /**
+     * 计入的总次数（精确值）
+     */
+    private long total;
+    
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity必须大于0");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(Math.min(capacity, 64) * 2);
+    }
+    
+    /**
+     * 由精确计数生成摘要：保留次数最多的capacity个，其余的最大次数作为floor
+     */
+    public static SpaceSaving fromCounts(Map<String, Long> counts, int capacity) {
+        SpaceSaving summary = new SpaceSaving(capacity);
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        for (int i = 0; i < entries.size(); i++) {
+            Map.Entry<String, Long> entry = entries.get(i);
+            summary.total += entry.getValue();
+            if (i < capacity) {
+                summary.counters.put(entry.getKey(), new Counter(entry.getValue(), 0));
+            } else if (i == capacity) {
+                summary.floor = entry.getValue();
+            }
+        }
+        return summary;
+    }
+    
+    /**
+     * 计入一次：已有计数器时加一；未满时新建；已满时替换次数最少的计数器（新计数 = 被替换者 + 1）
+     */
+    public void add(String item) {
+        total++;
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            counter.count++;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(item, new Counter(floor + 1, floor));
+            return;
+        }
+        String minItem = null;
+        Counter min = null;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (min == null || entry.getValue().count < min.count) {
+                minItem = entry.getKey();
+                min = entry.getValue();
+            }
+        }
+        counters.remove(minItem);
+        floor = Math.max(floor, min.count);
+        counters.put(item, new Counter(min.count + 1, min.count));
+    }
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    public long getFloor() {
+        return floor;
+    }
+    
+    public int size() {
+        return counters.size();
+    }
+    
+    public boolean isEmpty() {
+        return total == 0;
+    }
+    
+    /**
+     * 摘要是否精确（没有丢弃过任何值）
+     */
+    public boolean isExact() {
+        return floor == 0;
+    }
+    
+    /**
+     * 按上界从大到小取前k个
+     */
+    public List<Item> top(int k) {
+        List<Item> items = new ArrayList<>(counters.size());
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            items.add(new Item(entry.getKey(), entry.getValue().count, entry.getValue().error));
+        }
+        items.sort(null);
+        return items.size() > k ? new ArrayList<>(items.subList(0, k)) : items;
+    }
+    
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(capacity);
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            copy.counters.put(entry.getKey(), new Counter(entry.getValue().count, entry.getValue().error));
+        }
+        copy.floor = floor;
+        copy.total = total;
+        return copy;
+    }
+    
+    /**
+     * 序列化：版本 + 容量 + 总次数 + floor + 计数器个数 + 各计数器（值、上界、误差）
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + counters.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(capacity);
+            out.writeLong(total);
+            out.writeLong(floor);
+            out.writeInt(counters.size());
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().count);
+                out.writeLong(entry.getValue().error);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    public static SpaceSaving fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length == 0 || bytes[0] != FORMAT_VERSION) {
+            throw new IllegalArgumentException("无法识别的频繁项摘要格式");
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            in.readByte();
+            SpaceSaving summary = new SpaceSaving(in.readInt());
+            summary.total = in.readLong();
+            summary.floor = in.readLong();
+            int size = in.readInt();
+            if (size < 0 || size > summary.capacity) {
+                throw new IllegalArgumentException("频繁项摘要计数器个数不正确: " + size);
+            }
+            for (int i = 0; i < size; i++) {
+                String item = in.readUTF();
+                summary.counters.put(item, new Counter(in.readLong(), in.readLong()));
+            }
+            return summary;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("频繁项摘要数据不完整", e);
+        }
+    }
+    
+    private static final class Counter {
+        
+        private long count;
+        
+        private long error;
+        
+        Counter(long count, long error) {
+            this.count = count;
+            this.error = error;
+        }
+    }
+    
+    /**
+     * 一个值的次数：上界count、误差error，真实次数不小于count - error
+     */
+    public static final class Item implements Comparable<Item> {
+        
+        private final String value;
+        
+        private final long count;
+        
+        private final long error;
+        
+        Item(String value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+        
+        public String getValue() {
+            return value;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        public long getError() {
+            return error;
+        }
+        
+        public long getLowerBound() {
+            return count - error;
+        }
+        
+        /**
+         * 上界从大到小，相同时下界从大到小，再按值排序保证结果稳定
+         */
+        @Override
+        public int compareTo(Item other) {
+            int c = Long.compare(other.count, count);
+            if (c == 0) {
+                c = Long.compare(other.getLowerBound(), getLowerBound());
+            }
+            return c != 0 ? c : value.compareTo(other.value);
+        }
+    }
+    
+    /**
+     * 合并多个摘要
+     * 
+     * 不逐个两两合并：每个值累加出现时的上界、误差和所在摘要的floor，
+     * 结束时再补上未出现的摘要的floor（floor之和 - 出现时的floor之和），总代价与计数器总数成正比
+     */
+    public static final class Merger {
+        
+        private final Map<String, long[]> sums = new HashMap<>();
+        
+        private long floorSum;
+        
+        private long total;
+        
+        private int merged;
+        
+        public void add(SpaceSaving summary) {
+            if (summary == null || summary.isEmpty()) {
+                return;
+            }
+            floorSum += summary.floor;
+            total += summary.total;
+            merged++;
+            for (Map.Entry<String, Counter> entry : summary.counters.entrySet()) {
+                long[] sum = sums.get(entry.getKey());
+                if (sum == null) {
+                    sum = new long[3];
+                    sums.put(entry.getKey(), sum);
+                }
+                sum[0] += entry.getValue().count;
+                sum[1] += entry.getValue().error;
+                sum[2] += summary.floor;
+            }
+        }
+        
+        public int getMerged() {
+            return merged;
+        }
+        
+        /**
+         * 合并结果，保留上界最大的capacity个
+         */
+        public SpaceSaving toSummary(int capacity) {
+            List<Item> items = new ArrayList<>(sums.size());
+            for (Map.Entry<String, long[]> entry : sums.entrySet()) {
+                long[] sum = entry.getValue();
+                long missing = floorSum - sum[2];
+                items.add(new Item(entry.getKey(), sum[0] + missing, sum[1] + missing));
+            }
+            Collections.sort(items);
+            SpaceSaving summary = new SpaceSaving(capacity);
+            summary.total = total;
+            summary.floor = floorSum;
+            for (int i = 0; i < items.size(); i++) {
+                Item item = items.get(i);
+                if (i < capacity) {
+                    summary.counters.put(item.value, new Counter(item.count, item.error));
+                } else {
+                    summary.floor = Math.max(summary.floor, item.count);
+                    break;
+                }
+            }
+            return summary;
+        }
+    }
+}
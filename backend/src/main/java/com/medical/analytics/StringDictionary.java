@@ -0,0 +1,65 @@
+package com.medical.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字符串字典编码
+ * 
+ * 把低基数的字符串列（科室、诊断、疾病编码、就诊类型等）映射为连续的int编码，
+ * 编码0固定表示null/空字符串，分组统计时可直接用编码作为数组下标
+ * 
+ * 非线程安全，由ColumnarVisitStore的读写锁保护
+ */
+final class StringDictionary {
+    
+    static final int NULL_CODE = 0;
+    
+    private final Map<String, Integer> codes = new HashMap<>();
+    
+    private final List<String> values = new ArrayList<>();
+    
+    StringDictionary() {
+        values.add(null);
+    }
+    
+    /**
+     * 取得编码，不存在时分配新编码
+     */
+    int encode(String value) {
+        if (value == null || value.isEmpty()) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+    
+    /**
+     * 只查询编码，不存在返回-1
+     */
+    int lookup(String value) {
+        if (value == null || value.isEmpty()) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+    
+    String decode(int code) {
+        return values.get(code);
+    }
+    
+    /**
+     * 编码个数（含null编码）
+     */
+    int size() {
+        return values.size();
+    }
+}
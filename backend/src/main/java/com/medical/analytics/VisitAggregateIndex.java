@@ -0,0 +1,721 @@
+package com.medical.analytics;
+
+import com.medical.archive.ArchiveTable;
+import com.medical.cache.ClusterMembership;
+import com.medical.archive.ColdArchiveStore;
+import com.medical.dto.OverviewDTO;
+import com.medical.dto.TrendDataDTO;
+import com.medical.dto.VisitAggregateDTO;
+import com.medical.entity.Patient;
+import com.medical.event.VisitChangeEvent;
+import com.medical.mapper.VisitAggregateMapper;
+import com.medical.util.DateConvertUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 就诊记录实时聚合：总人次、总费用、去重患者数、各科室人次与费用、最近各天人次与费用
+ * 
+ * 维护方式：
+ * 1. 启动时从patient_visit（合并冷数据归档）加载一次
+ * 2. 订阅就诊记录变更事件，事务提交后按变更前后的记录扣减、累加，每条变更只修改几个计数器，
+ *    概览、门诊量趋势、科室分布在写入提交后立即反映，不需要过期缓存后整体重新聚合
+ * 3. 定时对账：重新加载一份快照，与内存中的聚合逐项比较，记录偏差后用快照替换
+ *    （直接改库、其他实例的写入、遗漏的事件都在这里修正）；
+ *    加载要全表按患者分组并解压全部归档，默认每6小时一次
+ * 
+ * 聚合只能看到本实例发布的变更事件，因此只在单实例运行时使用（ClusterMembership）：
+ * 有其他实例运行时isReady()为false，调用方回退到SQL；其他实例退出、重新只剩本实例后，
+ * 重新加载一份快照再使用（其他实例期间的写入都在新快照中）
+ * 
+ * 快照与增量的衔接：事件发布时登记所在的事务，事务结束（提交、回滚或状态未知）时移除；
+ * 第一条查询建立可重复读的一致性视图，建立视图前后没有未结束的事务时，
+ * 视图之前提交的写入都已在快照中，之后提交的写入都记入待重放队列，加载完成后在写锁内重放到快照再替换；
+ * 否则放弃本次加载稍后重试。加载期间段文件有变化（归档导出）时同样重试
+ * 
+ * 去重患者数按患者ID保存人次（约每个患者100字节）。
+ * 通过 analytics.aggregates.enabled 开启（默认关闭），未加载完成时isReady()为false，调用方应回退到SQL
+ */
+@Slf4j
+@Component
+public class VisitAggregateIndex {
+    
+    /**
+     * 门诊量趋势的日期范围（与selectOutpatientTrend一致：最近2年内有就诊的最近30天）
+     */
+    private static final int TREND_DAYS = 730;
+    
+    private static final int TREND_POINTS = 30;
+    
+    /**
+     * 一次对账最多尝试取得一致快照的次数，以及每次失败后的等待时间
+     */
+    private static final int LOAD_ATTEMPTS = 20;
+    
+    private static final long RETRY_MILLIS = 50;
+    
+    @Value("${analytics.aggregates.enabled:false}")
+    private boolean enabled;
+    
+    /**
+     * 登记超过该时长仍未结束的写入事务不再阻止加载（连接泄漏等情况下事务同步可能永远不回调），
+     * 其提交若落在加载期间会重复计入，由下次对账修正
+     */
+    @Value("${analytics.aggregates.in-flight-timeout-ms:600000}")
+    private long inFlightTimeoutMillis;
+    
+    @Autowired
+    private VisitAggregateMapper visitAggregateMapper;
+    
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ClusterMembership clusterMembership;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /**
+     * 当前聚合（读写锁保护），未加载时为null
+     */
+    private Aggregates aggregates;
+    
+    /**
+     * 加载期间是否记录事件（写锁保护）
+     */
+    private boolean loading;
+    
+    /**
+     * 加载期间提交的事件，加载完成后重放到快照（写锁保护）
+     */
+    private final List<VisitChangeEvent> pending = new ArrayList<>();
+    
+    /**
+     * 已发布的事件数
+     */
+    private final AtomicLong published = new AtomicLong();
+    
+    private final AtomicLong inFlightKeys = new AtomicLong();
+    
+    /**
+     * 已发布事件、尚未结束的写入事务：登记编号 → 发布时间，事务结束时（任何状态）移除
+     */
+    private final ConcurrentMap<Long, Long> inFlight = new ConcurrentHashMap<>();
+    
+    private final LongAdder expiredInFlight = new LongAdder();
+    
+    private final AtomicBoolean reconciling = new AtomicBoolean(false);
+    
+    private final AtomicBoolean loaderRunning = new AtomicBoolean(false);
+    
+    private volatile boolean ready;
+    
+    private volatile long lastReconcileMillis;
+    
+    private volatile LocalDateTime lastReconcileTime;
+    
+    private volatile Map<String, Object> lastDrift = Collections.emptyMap();
+    
+    private final LongAdder events = new LongAdder();
+    
+    private final LongAdder changes = new LongAdder();
+    
+    private final LongAdder reconciles = new LongAdder();
+    
+    private final LongAdder retries = new LongAdder();
+    
+    private final LongAdder drifts = new LongAdder();
+    
+    private final LongAdder queries = new LongAdder();
+    
+    /**
+     * 应用启动完成后在后台线程加载，不阻塞启动；数据库不可用时保持未就绪，由定时检查重试
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        loadIfSingleInstance();
+    }
+    
+    /**
+     * 只有本实例运行、而当前聚合是在此之前加载的（或尚未加载）时，在后台线程重新加载
+     */
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-interval-ms:10000}",
+               initialDelayString = "${cluster.heartbeat-interval-ms:10000}")
+    public void loadIfSingleInstance() {
+        if (!enabled || !clusterMembership.isSingleInstance() || reconciling.get()) {
+            return;
+        }
+        long loadedAt;
+        lock.readLock().lock();
+        try {
+            loadedAt = aggregates != null ? aggregates.loadedAtMillis : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (loadedAt >= 0 && clusterMembership.isSingleInstanceSince(loadedAt)) {
+            return;
+        }
+        if (!loaderRunning.compareAndSet(false, true)) {
+            return;
+        }
+        Thread loader = new Thread(() -> {
+            try {
+                scheduledReconcile();
+            } finally {
+                loaderRunning.set(false);
+            }
+        }, "visit-aggregate-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    @Scheduled(fixedDelayString = "${analytics.aggregates.reconcile-interval-ms:21600000}",
+               initialDelayString = "${analytics.aggregates.reconcile-interval-ms:21600000}")
+    public void scheduledReconcile() {
+        if (!enabled || reconciling.get()) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("就诊实时聚合对账失败，统计查询{}: {}", ready ? "继续使用当前聚合" : "继续读取数据库", e.getMessage());
+        }
+    }
+    
+    /**
+     * 已加载，且加载开始时已经只有本实例在运行
+     */
+    public boolean isReady() {
+        if (!enabled || !ready) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            return aggregates != null && clusterMembership.isSingleInstanceSince(aggregates.loadedAtMillis);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 事件在写入事务内发布：登记该事务，事务结束时提交则应用事件，任何状态都移除登记；
+     * 不在事务内发布时写入已生效，直接应用
+     */
+    @EventListener
+    public void onPublished(VisitChangeEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            published.incrementAndGet();
+            apply(event);
+            return;
+        }
+        // 先登记再计数：加载读到的发布数已包含本事件时，登记一定可见
+        Long key = inFlightKeys.incrementAndGet();
+        inFlight.put(key, System.currentTimeMillis());
+        published.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        apply(event);
+                    }
+                } finally {
+                    // 应用之后才移除：加载在移除之后开始时，该写入要么已在聚合中、要么已在视图中，不会重复计入
+                    inFlight.remove(key);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 就诊记录变更已提交：扣减变更前的记录、累加变更后的记录
+     */
+    private void apply(VisitChangeEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (aggregates != null) {
+                aggregates.apply(event);
+            }
+            if (loading) {
+                pending.add(event);
+            }
+            events.increment();
+            changes.add(event.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 统计概览（与StatisticsMapper.selectOverview口径一致）
+     */
+    public OverviewDTO overview(LocalDate today) {
+        queries.increment();
+        lock.readLock().lock();
+        try {
+            OverviewDTO overview = new OverviewDTO();
+            overview.setTotalVisits(aggregates.visits);
+            overview.setTotalPatients((long) aggregates.patients.size());
+            Counter day = aggregates.days.get(today);
+            overview.setTodayVisits(day != null ? day.visits : 0L);
+            long departmentCount = 0;
+            for (Map.Entry<String, Counter> entry : aggregates.departments.entrySet()) {
+                if (!entry.getKey().isEmpty() && entry.getValue().visits > 0) {
+                    departmentCount++;
+                }
+            }
+            overview.setDepartmentCount(departmentCount);
+            return overview;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 门诊量趋势：最近2年内有就诊的最近30天，按日期倒序
+     */
+    public List<TrendDataDTO> outpatientTrend(LocalDate today) {
+        queries.increment();
+        LocalDate floor = today.minusDays(TREND_DAYS);
+        List<TrendDataDTO> result = new ArrayList<>(TREND_POINTS);
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<LocalDate, Counter> entry : aggregates.days.descendingMap().entrySet()) {
+                if (result.size() >= TREND_POINTS || entry.getKey().isBefore(floor)) {
+                    break;
+                }
+                Counter counter = entry.getValue();
+                if (counter.visits <= 0) {
+                    continue;
+                }
+                TrendDataDTO dto = new TrendDataDTO();
+                dto.setDate(DateConvertUtil.toDate(entry.getKey()));
+                dto.setCount((int) counter.visits);
+                dto.setAmount(counter.costCents / 100.0);
+                result.add(dto);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    /**
+     * 科室分布：各科室（忽略空科室）的就诊人次，按科室名排序
+     */
+    public List<Map<String, Object>> departmentDistribution() {
+        queries.increment();
+        List<Map<String, Object>> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Counter> entry : new TreeMap<>(aggregates.departments).entrySet()) {
+                if (entry.getKey().isEmpty() || entry.getValue().visits <= 0) {
+                    continue;
+                }
+                Map<String, Object> item = new HashMap<>();
+                item.put("name", entry.getKey());
+                item.put("value", entry.getValue().visits);
+                result.add(item);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    /**
+     * 重新加载快照，与当前聚合比较后替换
+     * 
+     * @return 本次对账的结果：耗时、重放的事件数、各项偏差
+     */
+    public Map<String, Object> reconcile() {
+        if (!enabled) {
+            throw new RuntimeException("就诊实时聚合未启用");
+        }
+        if (!reconciling.compareAndSet(false, true)) {
+            throw new RuntimeException("就诊实时聚合正在对账，请稍后再试");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Aggregates fresh = null;
+            for (int attempt = 1; fresh == null && attempt <= LOAD_ATTEMPTS; attempt++) {
+                fresh = load();
+                if (fresh == null) {
+                    retries.increment();
+                    sleep(RETRY_MILLIS * attempt);
+                }
+            }
+            if (fresh == null) {
+                throw new RuntimeException("写入持续进行，" + LOAD_ATTEMPTS + "次尝试均未取得一致的快照");
+            }
+            
+            int replayed;
+            Map<String, Object> drift;
+            boolean initial;
+            lock.writeLock().lock();
+            try {
+                replayed = pending.size();
+                for (VisitChangeEvent event : pending) {
+                    fresh.apply(event);
+                }
+                pending.clear();
+                loading = false;
+                initial = aggregates == null;
+                drift = initial ? Collections.emptyMap() : aggregates.diff(fresh);
+                aggregates = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ready = true;
+            reconciles.increment();
+            lastReconcileMillis = System.currentTimeMillis() - start;
+            lastReconcileTime = LocalDateTime.now();
+            if (initial) {
+                log.info("就诊实时聚合加载完成：{} 人次，{} 名患者，重放事件 {} 个，耗时 {} ms",
+                    fresh.visits, fresh.patients.size(), replayed, lastReconcileMillis);
+            } else if (!drift.isEmpty()) {
+                drifts.increment();
+                lastDrift = drift;
+                log.warn("就诊实时聚合与数据库不一致，已按数据库修正: {}", drift);
+            } else {
+                log.debug("就诊实时聚合对账一致，耗时 {} ms", lastReconcileMillis);
+            }
+            
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("initial", initial);
+            result.put("elapsedMillis", lastReconcileMillis);
+            result.put("replayedEvents", replayed);
+            result.put("drift", drift);
+            return result;
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                loading = false;
+                pending.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        } finally {
+            reconciling.set(false);
+        }
+    }
+    
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", isReady());
+        stats.put("loaded", ready);
+        stats.put("singleInstance", clusterMembership.isSingleInstance());
+        lock.readLock().lock();
+        try {
+            if (aggregates != null) {
+                stats.put("visits", aggregates.visits);
+                stats.put("totalCost", BigDecimal.valueOf(aggregates.costCents, 2));
+                stats.put("patients", aggregates.patients.size());
+                stats.put("departments", aggregates.departments.size());
+                stats.put("days", aggregates.days.size());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("events", events.sum());
+        stats.put("changes", changes.sum());
+        stats.put("inFlightEvents", inFlight.size());
+        stats.put("expiredInFlight", expiredInFlight.sum());
+        stats.put("queries", queries.sum());
+        stats.put("reconciles", reconciles.sum());
+        stats.put("reconcileRetries", retries.sum());
+        stats.put("drifts", drifts.sum());
+        stats.put("lastDrift", lastDrift);
+        stats.put("lastReconcileMillis", lastReconcileMillis);
+        stats.put("lastReconcileTime", lastReconcileTime != null ? lastReconcileTime.toString() : null);
+        return stats;
+    }
+    
+    /**
+     * 是否还有已发布事件、未结束的写入事务；登记超过in-flight-timeout-ms的移除并记录
+     */
+    private boolean hasInFlight() {
+        long expireBefore = System.currentTimeMillis() - inFlightTimeoutMillis;
+        for (Map.Entry<Long, Long> entry : inFlight.entrySet()) {
+            if (entry.getValue() < expireBefore && inFlight.remove(entry.getKey(), entry.getValue())) {
+                expiredInFlight.increment();
+                log.warn("写入事务{}ms未结束，不再等待（登记编号{}）", inFlightTimeoutMillis, entry.getKey());
+            }
+        }
+        return !inFlight.isEmpty();
+    }
+    
+    /**
+     * 加载一份快照；有未结束的写入事务跨过视图建立、或段文件在加载期间变化时返回null
+     */
+    private Aggregates load() {
+        long startedAt = System.currentTimeMillis();
+        LocalDate floor = LocalDate.now().minusDays(TREND_DAYS);
+        long archiveVersion = coldArchiveStore.getVersion();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        Aggregates fresh = tx.execute(status -> {
+            long mark;
+            lock.writeLock().lock();
+            try {
+                loading = true;
+                pending.clear();
+                mark = published.get();
+                if (hasInFlight()) {
+                    return null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            // 第一条查询建立一致性视图，期间没有新发布的事件时，之后提交的写入都在pending中
+            VisitAggregateDTO totals = visitAggregateMapper.selectTotals();
+            if (published.get() != mark) {
+                return null;
+            }
+            Aggregates snapshot = new Aggregates(floor, startedAt);
+            snapshot.visits = count(totals);
+            snapshot.costCents = cents(totals != null ? totals.getCost() : null);
+            for (VisitAggregateDTO row : visitAggregateMapper.selectDepartmentTotals()) {
+                if (row.getName() != null) {
+                    snapshot.departments.put(row.getName(), new Counter(count(row), cents(row.getCost())));
+                }
+            }
+            for (VisitAggregateDTO row : visitAggregateMapper.selectDailyTotals(floor)) {
+                snapshot.days.put(row.getVisitDate(), new Counter(count(row), cents(row.getCost())));
+            }
+            try (Cursor<VisitAggregateDTO> cursor = visitAggregateMapper.selectPatientVisitCounts()) {
+                for (VisitAggregateDTO row : cursor) {
+                    if (row.getName() != null) {
+                        snapshot.patients.put(row.getName(), (int) count(row));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return snapshot;
+        });
+        if (fresh == null || coldArchiveStore.getVersion() != archiveVersion) {
+            return null;
+        }
+        if (coldArchiveStore.hasSegments(ArchiveTable.VISIT)) {
+            Iterator<Patient> archived = coldArchiveStore.visitsOrderById();
+            while (archived.hasNext()) {
+                fresh.add(archived.next(), 1);
+            }
+            if (coldArchiveStore.getVersion() != archiveVersion) {
+                return null;
+            }
+        }
+        return fresh;
+    }
+    
+    private static long count(VisitAggregateDTO row) {
+        return row != null && row.getVisitCount() != null ? row.getVisitCount() : 0L;
+    }
+    
+    private static long cents(BigDecimal cost) {
+        return cost != null ? cost.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue() : 0L;
+    }
+    
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("就诊实时聚合对账被中断");
+        }
+    }
+    
+    /**
+     * 人次与费用（分）
+     */
+    private static final class Counter {
+        private long visits;
+        private long costCents;
+        
+        private Counter(long visits, long costCents) {
+            this.visits = visits;
+            this.costCents = costCents;
+        }
+        
+        private boolean sameAs(Counter other) {
+            return other != null && visits == other.visits && costCents == other.costCents;
+        }
+    }
+    
+    /**
+     * 一份聚合（不加锁，由外层读写锁保护）
+     */
+    private static final class Aggregates {
+        
+        /**
+         * 只保存不早于该日期的各天汇总
+         */
+        private final LocalDate floor;
+        
+        /**
+         * 开始加载快照的时间，此前提交的写入都在快照中
+         */
+        private final long loadedAtMillis;
+        
+        private long visits;
+        
+        private long costCents;
+        
+        private final Map<String, Counter> departments = new HashMap<>();
+        
+        private final TreeMap<LocalDate, Counter> days = new TreeMap<>();
+        
+        /**
+         * 患者ID → 就诊人次，人次减到0时移除
+         */
+        private final Map<String, Integer> patients = new HashMap<>();
+        
+        private Aggregates(LocalDate floor, long loadedAtMillis) {
+            this.floor = floor;
+            this.loadedAtMillis = loadedAtMillis;
+        }
+        
+        private void apply(VisitChangeEvent event) {
+            for (Patient visit : event.getBefore()) {
+                add(visit, -1);
+            }
+            for (Patient visit : event.getAfter()) {
+                add(visit, 1);
+            }
+        }
+        
+        /**
+         * 累加（sign=1）或扣减（sign=-1）一条就诊记录
+         */
+        private void add(Patient visit, int sign) {
+            if (visit == null) {
+                return;
+            }
+            long cost = sign * cents(visit.getCost());
+            visits += sign;
+            costCents += cost;
+            if (visit.getDepartment() != null) {
+                addTo(departments, visit.getDepartment(), sign, cost);
+            }
+            if (visit.getVisitDate() != null) {
+                LocalDate day = DateConvertUtil.toLocalDate(visit.getVisitDate());
+                if (!day.isBefore(floor)) {
+                    addTo(days, day, sign, cost);
+                }
+            }
+            if (visit.getPatientId() != null) {
+                patients.compute(visit.getPatientId(), (k, count) -> {
+                    int next = (count != null ? count : 0) + sign;
+                    return next > 0 ? next : null;
+                });
+            }
+        }
+        
+        private static <K> void addTo(Map<K, Counter> counters, K key, int sign, long cost) {
+            Counter counter = counters.get(key);
+            if (counter == null) {
+                counters.put(key, new Counter(sign, cost));
+                return;
+            }
+            counter.visits += sign;
+            counter.costCents += cost;
+            if (counter.visits == 0 && counter.costCents == 0) {
+                counters.remove(key);
+            }
+        }
+        
+        /**
+         * 与快照比较，返回有偏差的项（没有偏差时为空）：总人次、总费用之差，以及不一致的科室、日期、患者个数
+         */
+        private Map<String, Object> diff(Aggregates snapshot) {
+            Map<String, Object> drift = new LinkedHashMap<>();
+            if (visits != snapshot.visits) {
+                drift.put("visits", visits - snapshot.visits);
+            }
+            if (costCents != snapshot.costCents) {
+                drift.put("totalCost", BigDecimal.valueOf(costCents - snapshot.costCents, 2));
+            }
+            int departmentDiff = countDiff(departments, snapshot.departments);
+            if (departmentDiff > 0) {
+                drift.put("departments", departmentDiff);
+            }
+            Map<LocalDate, Counter> comparableDays = days.tailMap(snapshot.floor, true);
+            int dayDiff = countDiff(comparableDays, snapshot.days);
+            if (dayDiff > 0) {
+                drift.put("days", dayDiff);
+            }
+            int patientDiff = 0;
+            for (Map.Entry<String, Integer> entry : patients.entrySet()) {
+                if (!entry.getValue().equals(snapshot.patients.get(entry.getKey()))) {
+                    patientDiff++;
+                }
+            }
+            for (String patientId : snapshot.patients.keySet()) {
+                if (!patients.containsKey(patientId)) {
+                    patientDiff++;
+                }
+            }
+            if (patientDiff > 0) {
+                drift.put("patients", patientDiff);
+            }
+            return drift;
+        }
+        
+        private static <K> int countDiff(Map<K, Counter> current, Map<K, Counter> snapshot) {
+            int diff = 0;
+            for (Map.Entry<K, Counter> entry : current.entrySet()) {
+                if (!entry.getValue().sameAs(snapshot.get(entry.getKey()))) {
+                    diff++;
+                }
+            }
+            for (K key : snapshot.keySet()) {
+                if (!current.containsKey(key)) {
+                    diff++;
+                }
+            }
+            return diff;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.medical.analytics;
+
+/**
+ * 列式副本支持的分组维度
+ */
+public enum VisitDimension {
+    
+    /**
+     * 科室
+     */
+    DEPARTMENT,
+    
+    /**
+     * 诊断
+     */
+    DIAGNOSIS,
+    
+    /**
+     * 疾病编码（ICD-10）
+     */
+    DISEASE_CODE,
+    
+    /**
+     * 就诊类型（门诊/急诊/住院）
+     */
+    VISIT_TYPE,
+    
+    /**
+     * 就诊日期（按天）
+     */
+    DAY
+}
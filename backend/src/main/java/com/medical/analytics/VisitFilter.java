@@ -0,0 +1,49 @@
+package com.medical.analytics;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 列式副本扫描条件，字段为null表示不限制
+ */
+@Data
+public class VisitFilter {
+    
+    /**
+     * 起始就诊日期（含）
+     */
+    private LocalDate startDate;
+    
+    /**
+     * 结束就诊日期（含）
+     */
+    private LocalDate endDate;
+    
+    /**
+     * 科室
+     */
+    private String department;
+    
+    /**
+     * 就诊类型
+     */
+    private String visitType;
+    
+    /**
+     * 不限条件
+     */
+    public static VisitFilter all() {
+        return new VisitFilter();
+    }
+    
+    /**
+     * 按就诊日期范围过滤
+     */
+    public static VisitFilter between(LocalDate startDate, LocalDate endDate) {
+        VisitFilter filter = new VisitFilter();
+        filter.setStartDate(startDate);
+        filter.setEndDate(endDate);
+        return filter;
+    }
+}
@@ -0,0 +1,278 @@
+package com.medical.analytics;
+
+import com.medical.dto.DepartmentDailyStatDTO;
+import com.medical.mapper.DepartmentOperationMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 已结束日期的就诊人次/收入前缀和索引（来源为department_operation）
+ * 
+ * 覆盖从最早统计日期到昨天的每一天，趋势查询的每个时间段只需两次数组读取，不查库；
+ * 当天仍在变化，由调用方单独读取。定时任务负责：
+ * 1. 日期结束后把新的一天追加到末尾
+ * 2. 已结束日期的汇总被修改（补录、修改、删除、重建）时，重新读取该天并修正之后的累计值
+ * 
+ * 通过 analytics.trend.enabled 开启，未加载完成时isReady()为false，调用方应直接读取汇总表
+ */
+@Slf4j
+@Component
+public class VisitTrendIndex {
+    
+    @Value("${analytics.trend.enabled:true}")
+    private boolean enabled;
+    
+    /**
+     * 待修正的天数超过该值时整体重建
+     */
+    @Value("${analytics.trend.max-repair-days:366}")
+    private int maxRepairDays;
+    
+    @Autowired
+    private DepartmentOperationMapper departmentOperationMapper;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /**
+     * 当前前缀和（读写锁保护）
+     */
+    private DailyPrefixSums sums;
+    
+    /**
+     * 汇总已变化、待重新读取的已结束日期
+     */
+    private final Set<LocalDate> dirtyDays = ConcurrentHashMap.newKeySet();
+    
+    private volatile boolean reloadRequested;
+    
+    private volatile boolean ready;
+    
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    
+    private volatile long lastLoadMillis;
+    
+    private final LongAdder reloads = new LongAdder();
+    
+    private final LongAdder appendedDays = new LongAdder();
+    
+    private final LongAdder repairedDays = new LongAdder();
+    
+    private final LongAdder queries = new LongAdder();
+    
+    /**
+     * 应用启动完成后在后台线程加载，不阻塞启动；数据库不可用时保持未就绪，由定时任务重试
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::refresh, "visit-trend-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    @Scheduled(fixedDelayString = "${analytics.trend.refresh-interval-ms:60000}",
+               initialDelayString = "${analytics.trend.refresh-interval-ms:60000}")
+    public void scheduledRefresh() {
+        if (enabled) {
+            refresh();
+        }
+    }
+    
+    /**
+     * 未就绪或需要重建时全量加载，否则追加新结束的日期并修正有变化的日期
+     */
+    public void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (!ready || reloadRequested) {
+                reload();
+            } else {
+                closeDays();
+                repairDirtyDays();
+            }
+        } catch (RuntimeException e) {
+            log.warn("就诊趋势前缀和刷新失败，趋势查询继续读取汇总表: {}", e.getMessage());
+        } finally {
+            refreshing.set(false);
+        }
+    }
+    
+    /**
+     * 某天的汇总已提交变化（由DepartmentRollupService在事务提交后调用）
+     */
+    public void markDirty(LocalDate day) {
+        if (!enabled || day == null) {
+            return;
+        }
+        dirtyDays.add(day);
+        if (dirtyDays.size() > maxRepairDays) {
+            reloadRequested = true;
+        }
+    }
+    
+    /**
+     * 日期范围（闭区间）的汇总已提交变化，范围过大时整体重建
+     */
+    public void markDirty(LocalDate startDate, LocalDate endDate) {
+        if (!enabled) {
+            return;
+        }
+        if (ChronoUnit.DAYS.between(startDate, endDate) >= maxRepairDays) {
+            reloadRequested = true;
+            return;
+        }
+        for (LocalDate day = startDate; !day.isAfter(endDate); day = day.plusDays(1)) {
+            markDirty(day);
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * 已覆盖的最后一天（通常是昨天）
+     */
+    public LocalDate getClosedThrough() {
+        lock.readLock().lock();
+        try {
+            return sums != null ? sums.getLastDay() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 日期范围（闭区间）内已结束日期部分的合计
+     * 
+     * @param department 科室，为null时为全院
+     * @return [人次, 收入（分）]
+     */
+    public long[] sum(String department, LocalDate from, LocalDate to) {
+        queries.increment();
+        lock.readLock().lock();
+        try {
+            return sums != null ? sums.sum(department, from, to) : new long[2];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void reload() {
+        reloadRequested = false;
+        dirtyDays.clear();
+        long start = System.currentTimeMillis();
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate origin = departmentOperationMapper.selectMinStatDate();
+        if (origin == null || origin.isAfter(yesterday)) {
+            origin = yesterday.plusDays(1);
+        }
+        DailyPrefixSums fresh = new DailyPrefixSums(origin);
+        if (!origin.isAfter(yesterday)) {
+            fresh.appendThrough(yesterday, departmentOperationMapper.selectDailyStats(origin, yesterday));
+        }
+        lock.writeLock().lock();
+        try {
+            sums = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+        reloads.increment();
+        lastLoadMillis = System.currentTimeMillis() - start;
+        log.info("就诊趋势前缀和加载完成：{} ~ {}，{} 天，{} 个科室，耗时 {} ms",
+            origin, yesterday, fresh.getDays(), fresh.getDepartmentCount(), lastLoadMillis);
+    }
+    
+    private void closeDays() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate closedThrough = getClosedThrough();
+        if (!closedThrough.isBefore(yesterday)) {
+            return;
+        }
+        LocalDate from = closedThrough.plusDays(1);
+        List<DepartmentDailyStatDTO> rows = departmentOperationMapper.selectDailyStats(from, yesterday);
+        lock.writeLock().lock();
+        try {
+            sums.appendThrough(yesterday, rows);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appendedDays.add(ChronoUnit.DAYS.between(closedThrough, yesterday));
+        log.info("就诊趋势前缀和追加 {} ~ {}", from, yesterday);
+    }
+    
+    private void repairDirtyDays() {
+        LocalDate closedThrough = getClosedThrough();
+        for (LocalDate day : new ArrayList<>(dirtyDays)) {
+            // 先移除再读取：读取期间再次变化的日期会重新加入，下一轮再修正
+            dirtyDays.remove(day);
+            if (day.isAfter(closedThrough)) {
+                continue;
+            }
+            List<DepartmentDailyStatDTO> rows = departmentOperationMapper.selectDailyStats(day, day);
+            boolean repaired;
+            lock.writeLock().lock();
+            try {
+                repaired = sums.repairDay(day, rows);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (!repaired) {
+                // 早于起始日期的补录，需要整体重建
+                reloadRequested = true;
+                return;
+            }
+            repairedDays.increment();
+        }
+    }
+    
+    /**
+     * 索引统计：覆盖范围、科室数、内存估算、加载/追加/修正/查询次数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        lock.readLock().lock();
+        try {
+            if (sums != null) {
+                stats.put("origin", sums.getOrigin().toString());
+                stats.put("closedThrough", sums.getLastDay().toString());
+                stats.put("days", sums.getDays());
+                stats.put("departments", sums.getDepartmentCount());
+                stats.put("memoryBytes", sums.memoryBytes());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("dirtyDays", dirtyDays.size());
+        stats.put("reloads", reloads.sum());
+        stats.put("lastLoadMillis", lastLoadMillis);
+        stats.put("appendedDays", appendedDays.sum());
+        stats.put("repairedDays", repairedDays.sum());
+        stats.put("queries", queries.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,160 @@
+package com.medical.archive;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * 段文件中的一列
+ * 
+ * 字符串列按字典编码为int（编码0表示null）；其他列编码为定长整数，null用MIN_VALUE表示：
+ * 日期存epochDay（int），时间存当天秒数（int），金额存分（long），日期时间存按UTC换算的秒数（long，只用于保存墙上时间）
+ */
+public final class ArchiveColumn {
+    
+    public static final int NULL_INT = Integer.MIN_VALUE;
+    
+    public static final long NULL_LONG = Long.MIN_VALUE;
+    
+    public enum Type {
+        LONG(1, true),
+        STRING(2, false),
+        DATE(3, false),
+        TIME(4, false),
+        DECIMAL(5, true),
+        DATETIME(6, true);
+        
+        private final int code;
+        
+        /**
+         * 每行8字节（long），否则4字节（int）
+         */
+        private final boolean wide;
+        
+        Type(int code, boolean wide) {
+            this.code = code;
+            this.wide = wide;
+        }
+        
+        public int getCode() {
+            return code;
+        }
+        
+        public boolean isWide() {
+            return wide;
+        }
+        
+        public static Type ofCode(int code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("未知的列类型编号: " + code);
+        }
+    }
+    
+    private final String name;
+    
+    private final Type type;
+    
+    public ArchiveColumn(String name, Type type) {
+        this.name = name;
+        this.type = type;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    /**
+     * 把JDBC读到的值编码为int（DATE、TIME列）
+     */
+    int encodeInt(Object value) {
+        if (value == null) {
+            return NULL_INT;
+        }
+        if (type == Type.DATE) {
+            return (int) toLocalDate(value).toEpochDay();
+        }
+        if (type == Type.TIME) {
+            return toLocalTime(value).toSecondOfDay();
+        }
+        throw new IllegalStateException("列" + name + "不是int编码");
+    }
+    
+    /**
+     * 把JDBC读到的值编码为long（LONG、DECIMAL、DATETIME列）
+     */
+    long encodeLong(Object value) {
+        if (value == null) {
+            return NULL_LONG;
+        }
+        switch (type) {
+            case LONG:
+                return ((Number) value).longValue();
+            case DECIMAL:
+                BigDecimal decimal = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+                return decimal.setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+            case DATETIME:
+                return toLocalDateTime(value).toEpochSecond(ZoneOffset.UTC);
+            default:
+                throw new IllegalStateException("列" + name + "不是long编码");
+        }
+    }
+    
+    public static LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).toLocalDate();
+        }
+        if (value instanceof Date) {
+            return new java.sql.Date(((Date) value).getTime()).toLocalDate();
+        }
+        return LocalDate.parse(value.toString());
+    }
+    
+    private static LocalTime toLocalTime(Object value) {
+        if (value instanceof LocalTime) {
+            return (LocalTime) value;
+        }
+        if (value instanceof java.sql.Time) {
+            return ((java.sql.Time) value).toLocalTime();
+        }
+        return LocalTime.parse(value.toString());
+    }
+    
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        if (value instanceof java.sql.Timestamp) {
+            return ((java.sql.Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof Date) {
+            return new java.sql.Timestamp(((Date) value).getTime()).toLocalDateTime();
+        }
+        return LocalDateTime.parse(value.toString().replace(' ', 'T'));
+    }
+    
+    public static LocalDate decodeDate(int value) {
+        return value == NULL_INT ? null : LocalDate.ofEpochDay(value);
+    }
+    
+    public static BigDecimal decodeDecimal(long value) {
+        return value == NULL_LONG ? null : BigDecimal.valueOf(value, 2);
+    }
+}
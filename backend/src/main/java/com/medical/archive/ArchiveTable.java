@@ -0,0 +1,99 @@
+package com.medical.archive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 可归档的表：表名、按月划分所用的日期列和段文件中保存的列
+ * 
+ * 列覆盖表的全部字段，归档后删除的明细可以从段文件完整还原
+ */
+public enum ArchiveTable {
+    
+    VISIT(1, "patient_visit", "visit_date", "visit",
+        new ArchiveColumn("id", ArchiveColumn.Type.LONG),
+        new ArchiveColumn("patient_id", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("visit_date", ArchiveColumn.Type.DATE),
+        new ArchiveColumn("visit_time", ArchiveColumn.Type.TIME),
+        new ArchiveColumn("department", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("doctor_id", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("diagnosis", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("disease_code", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("cost", ArchiveColumn.Type.DECIMAL),
+        new ArchiveColumn("payment_method", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("visit_type", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("status", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("create_time", ArchiveColumn.Type.DATETIME),
+        new ArchiveColumn("update_time", ArchiveColumn.Type.DATETIME)),
+    
+    SETTLEMENT(2, "insurance_settlement", "settlement_date", "settlement",
+        new ArchiveColumn("id", ArchiveColumn.Type.LONG),
+        new ArchiveColumn("settlement_no", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("patient_id", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("visit_id", ArchiveColumn.Type.LONG),
+        new ArchiveColumn("settlement_date", ArchiveColumn.Type.DATE),
+        new ArchiveColumn("total_cost", ArchiveColumn.Type.DECIMAL),
+        new ArchiveColumn("insurance_pay", ArchiveColumn.Type.DECIMAL),
+        new ArchiveColumn("personal_pay", ArchiveColumn.Type.DECIMAL),
+        new ArchiveColumn("insurance_type", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("drg_group", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("status", ArchiveColumn.Type.STRING),
+        new ArchiveColumn("create_time", ArchiveColumn.Type.DATETIME));
+    
+    private final int code;
+    
+    private final String tableName;
+    
+    private final String dateColumn;
+    
+    private final String filePrefix;
+    
+    private final List<ArchiveColumn> columns;
+    
+    ArchiveTable(int code, String tableName, String dateColumn, String filePrefix, ArchiveColumn... columns) {
+        this.code = code;
+        this.tableName = tableName;
+        this.dateColumn = dateColumn;
+        this.filePrefix = filePrefix;
+        this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+    }
+    
+    public static ArchiveTable ofCode(int code) {
+        for (ArchiveTable table : values()) {
+            if (table.code == code) {
+                return table;
+            }
+        }
+        throw new IllegalArgumentException("未知的归档表编号: " + code);
+    }
+    
+    public int getCode() {
+        return code;
+    }
+    
+    public String getTableName() {
+        return tableName;
+    }
+    
+    public String getDateColumn() {
+        return dateColumn;
+    }
+    
+    public String getFilePrefix() {
+        return filePrefix;
+    }
+    
+    public List<ArchiveColumn> getColumns() {
+        return columns;
+    }
+    
+    public List<String> getColumnNames() {
+        List<String> names = new ArrayList<>(columns.size());
+        for (ArchiveColumn column : columns) {
+            names.add(column.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,829 @@
+package com.medical.archive;
+
+import com.medical.dto.InsuranceGroupStatDTO;
+import com.medical.entity.Patient;
+import com.medical.util.DateConvertUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 冷数据归档存储：管理archive.directory下的段文件，为统计查询提供已归档月份的数据
+ * 
+ * 段文件由ArchiveService从patient_visit、insurance_settlement按月导出后写入，之后只读；
+ * 启动时打开全部段文件（只读内存映射，不占堆内存），查询用到的列解压后放入按字节数限制的LRU缓存。
+ * 多实例共享目录时，其他实例归档或隔离的段文件由ArchiveService定时调用rescan加入、移出。
+ * 同一月份可以有多个段文件（归档后又补录到该月份的数据下次再归档为新的段文件）
+ * 
+ * 查询接口与在线表的SQL口径一致，调用方把在线表的结果与归档结果合并：
+ * 日期范围不涉及已归档月份时不读取任何段文件
+ */
+@Slf4j
+@Component
+public class ColdArchiveStore {
+    
+    public static final String ORPHAN_SUFFIX = ".orphan";
+    
+    /**
+     * 段文件目录，多实例部署时应为共享存储
+     */
+    @Value("${archive.directory:./data/archive}")
+    private String directory;
+    
+    /**
+     * 解压列缓存上限（MB）
+     */
+    @Value("${archive.column-cache-mb:256}")
+    private long columnCacheMb;
+    
+    /**
+     * 本实例标识，写入临时文件名以区分共享目录中各实例的临时文件；为空时取主机名（重启后不变）
+     */
+    @Value("${archive.instance-id:}")
+    private String instanceId;
+    
+    /**
+     * 不属于本实例的临时文件超过该时长未修改才删除（视为导出中断），应大于单个月份的导出耗时
+     */
+    @Value("${archive.temp-file-max-age-minutes:360}")
+    private long tempFileMaxAgeMinutes;
+    
+    private Path root;
+    
+    private ColumnCache cache;
+    
+    /**
+     * 表 → 月份 → 段文件（按最小id排序，列表整体替换）
+     */
+    private final Map<ArchiveTable, ConcurrentSkipListMap<YearMonth, List<Segment>>> segments =
+        new EnumMap<>(ArchiveTable.class);
+    
+    /**
+     * 段文件变化次数，用于判断汇总缓存是否过期
+     */
+    private final AtomicLong version = new AtomicLong();
+    
+    private volatile VisitTotals visitTotals;
+    
+    /**
+     * 打开失败的段文件名，重新扫描时不再重复打开和记录错误
+     */
+    private final Set<String> unreadable = ConcurrentHashMap.newKeySet();
+    
+    private final LongAdder rescans = new LongAdder();
+    private final LongAdder discoveredSegments = new LongAdder();
+    private final LongAdder droppedSegments = new LongAdder();
+    private final LongAdder deletedTempFiles = new LongAdder();
+    
+    private final LongAdder scans = new LongAdder();
+    private final LongAdder scannedRows = new LongAdder();
+    private final LongAdder decodedColumns = new LongAdder();
+    private final LongAdder decodedBytes = new LongAdder();
+    
+    public ColdArchiveStore() {
+        for (ArchiveTable table : ArchiveTable.values()) {
+            segments.put(table, new ConcurrentSkipListMap<>());
+        }
+    }
+    
+    /**
+     * 打开目录下的全部段文件；本实例上次运行中断留下的临时文件和过期的临时文件删除，
+     * 其他实例正在写出的临时文件保留；无法打开的段文件记录错误后跳过
+     */
+    @PostConstruct
+    public void init() {
+        cache = new ColumnCache(columnCacheMb * 1024 * 1024);
+        root = Paths.get(directory).toAbsolutePath().normalize();
+        instanceId = fileToken(instanceId != null && !instanceId.trim().isEmpty() ? instanceId.trim() : hostName());
+        if (!Files.isDirectory(root)) {
+            log.info("冷数据归档目录不存在，暂无已归档数据: {}", root);
+            return;
+        }
+        List<Segment> opened = scanDirectory(segment -> true, true);
+        log.info("冷数据归档已加载 {} 个段文件: {}", opened.size(), root);
+    }
+    
+    /**
+     * 重新扫描目录：加入其他实例归档的新段文件，移出已被其他实例删除或改名为.orphan的段文件，
+     * 删除过期的临时文件（本实例的临时文件可能正在写出，不删除）
+     * 
+     * @param accept 新发现的段文件能否加入，例如其中的行已不在在线表中（归档事务已提交）；不能加入的下次扫描再判断
+     * @return 本次加入的段文件
+     */
+    public synchronized List<Segment> rescan(Predicate<Segment> accept) {
+        if (!Files.isDirectory(root)) {
+            return Collections.emptyList();
+        }
+        rescans.increment();
+        return scanDirectory(accept, false);
+    }
+    
+    public Path getDirectory() {
+        return root;
+    }
+    
+    /**
+     * 本实例的临时文件后缀（.实例标识.tmp），由SegmentWriter写出时使用
+     */
+    public String getTempSuffix() {
+        return "." + instanceId + SegmentWriter.TEMP_SUFFIX;
+    }
+    
+    /**
+     * 段文件集合的版本，加入或隔离段文件时递增
+     */
+    public long getVersion() {
+        return version.get();
+    }
+    
+    /**
+     * 加入一个段文件（启动加载或归档提交后）
+     */
+    public void register(Segment segment) {
+        segments.get(segment.getTable()).compute(segment.getMonth(), (month, current) -> {
+            List<Segment> list = current != null ? new ArrayList<>(current) : new ArrayList<>();
+            list.removeIf(s -> s.getName().equals(segment.getName()));
+            list.add(segment);
+            list.sort(Comparator.comparingLong(Segment::getMinId));
+            return Collections.unmodifiableList(list);
+        });
+        version.incrementAndGet();
+    }
+    
+    /**
+     * 移出段文件并改名为.orphan（其中的数据仍在在线表中，不能重复计入），返回新路径
+     */
+    public Path quarantine(Segment segment) throws IOException {
+        unregister(segment);
+        Path target = segment.getPath().resolveSibling(segment.getName() + ORPHAN_SUFFIX);
+        return Files.move(segment.getPath(), target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private void unregister(Segment segment) {
+        segments.get(segment.getTable()).computeIfPresent(segment.getMonth(), (month, current) -> {
+            List<Segment> list = new ArrayList<>(current);
+            list.removeIf(s -> s.getName().equals(segment.getName()));
+            return list.isEmpty() ? null : Collections.unmodifiableList(list);
+        });
+        version.incrementAndGet();
+        cache.removeSegment(segment.getName());
+    }
+    
+    private List<Segment> scanDirectory(Predicate<Segment> accept, boolean startup) {
+        Map<String, Segment> registered = new HashMap<>();
+        for (ArchiveTable table : ArchiveTable.values()) {
+            for (Segment segment : getSegments(table)) {
+                registered.put(segment.getName(), segment);
+            }
+        }
+        Set<String> present = new HashSet<>();
+        List<Segment> added = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SegmentWriter.TEMP_SUFFIX)) {
+                    deleteIfAbandoned(file, startup);
+                } else if (name.endsWith(SegmentWriter.SEGMENT_SUFFIX)) {
+                    present.add(name);
+                    if (registered.containsKey(name) || unreadable.contains(name)) {
+                        continue;
+                    }
+                    Segment segment;
+                    try {
+                        segment = Segment.open(file);
+                    } catch (IOException e) {
+                        unreadable.add(name);
+                        log.error("归档段文件无法打开，已跳过: {}", e.getMessage());
+                        continue;
+                    }
+                    if (accept.test(segment)) {
+                        register(segment);
+                        added.add(segment);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("读取冷数据归档目录失败: " + root, e);
+        }
+        unreadable.retainAll(present);
+        for (Segment segment : registered.values()) {
+            if (!present.contains(segment.getName())) {
+                unregister(segment);
+                droppedSegments.increment();
+                log.warn("归档段文件已被移出目录，不再计入: {}", segment.getName());
+            }
+        }
+        if (!startup) {
+            discoveredSegments.add(added.size());
+        }
+        return added;
+    }
+    
+    /**
+     * 删除中断的导出留下的临时文件：启动时本实例的临时文件都是上次运行留下的；
+     * 其他实例的（以及旧版本不带实例标识的）超过temp-file-max-age-minutes未修改才删除
+     */
+    private void deleteIfAbandoned(Path file, boolean startup) {
+        String name = file.getFileName().toString();
+        try {
+            if (name.endsWith(getTempSuffix())) {
+                if (!startup) {
+                    return;
+                }
+            } else {
+                Instant modified = Files.getLastModifiedTime(file).toInstant();
+                if (Duration.between(modified, Instant.now()).toMinutes() < tempFileMaxAgeMinutes) {
+                    return;
+                }
+            }
+            if (Files.deleteIfExists(file)) {
+                deletedTempFiles.increment();
+                log.warn("删除未完成的归档临时文件: {}", name);
+            }
+        } catch (IOException e) {
+            log.warn("删除归档临时文件失败: {}", e.getMessage());
+        }
+    }
+    
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("无法获取主机名，请配置archive.instance-id", e);
+        }
+    }
+    
+    /**
+     * 实例标识只保留文件名安全的字符，'.'也替换掉，保证按后缀区分实例时不会误配
+     */
+    private static String fileToken(String value) {
+        return value.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+    
+    /**
+     * 按月份、最小id排序的全部段文件
+     */
+    public List<Segment> getSegments(ArchiveTable table) {
+        List<Segment> all = new ArrayList<>();
+        for (List<Segment> list : segments.get(table).values()) {
+            all.addAll(list);
+        }
+        return all;
+    }
+    
+    public boolean hasSegments(ArchiveTable table) {
+        return !segments.get(table).isEmpty();
+    }
+    
+    public boolean isArchived(ArchiveTable table, YearMonth month) {
+        return segments.get(table).containsKey(month);
+    }
+    
+    /**
+     * 日期范围（闭区间）是否涉及已归档月份
+     */
+    public boolean overlaps(ArchiveTable table, LocalDate startDate, LocalDate endDate) {
+        return !months(table, startDate, endDate).isEmpty();
+    }
+    
+    /**
+     * 最后一个已归档月份，没有时返回null
+     */
+    public YearMonth getLastArchivedMonth(ArchiveTable table) {
+        ConcurrentSkipListMap<YearMonth, List<Segment>> months = segments.get(table);
+        return months.isEmpty() ? null : months.lastKey();
+    }
+    
+    /**
+     * 遍历日期范围（闭区间）内的归档就诊记录
+     */
+    public void scanVisits(LocalDate startDate, LocalDate endDate, Consumer<Patient> consumer) {
+        int startDay = (int) startDate.toEpochDay();
+        int endDay = (int) endDate.toEpochDay();
+        for (List<Segment> list : months(ArchiveTable.VISIT, startDate, endDate).values()) {
+            for (Segment segment : list) {
+                VisitColumns columns = visitColumns(segment);
+                scans.increment();
+                scannedRows.add(segment.getRowCount());
+                for (int r = 0; r < segment.getRowCount(); r++) {
+                    int day = columns.days[r];
+                    if (day >= startDay && day <= endDay) {
+                        consumer.accept(columns.toPatient(r));
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * 患者的全部归档就诊记录：在各段文件的患者字典中二分查找，不在字典中的段文件只解压字典
+     */
+    public List<Patient> selectVisitsByPatientId(String patientId) {
+        List<Patient> visits = new ArrayList<>();
+        if (patientId == null) {
+            return visits;
+        }
+        for (Segment segment : getSegments(ArchiveTable.VISIT)) {
+            String[] dictionary = dictionary(segment, "patient_id");
+            int code = Arrays.binarySearch(dictionary, 1, dictionary.length, patientId);
+            if (code < 0) {
+                continue;
+            }
+            VisitColumns columns = visitColumns(segment);
+            scans.increment();
+            scannedRows.add(segment.getRowCount());
+            for (int r = 0; r < segment.getRowCount(); r++) {
+                if (columns.patients[r] == code) {
+                    visits.add(columns.toPatient(r));
+                }
+            }
+        }
+        return visits;
+    }
+    
+    /**
+     * 归档就诊记录所属的患者ID，记录不在归档中时返回null
+     */
+    public String selectPatientIdByVisitId(long visitId) {
+        for (Segment segment : getSegments(ArchiveTable.VISIT)) {
+            if (visitId < segment.getMinId() || visitId > segment.getMaxId()) {
+                continue;
+            }
+            int row = Arrays.binarySearch(longs(segment, "id"), visitId);
+            if (row >= 0) {
+                return dictionary(segment, "patient_id")[ints(segment, "patient_id")[row]];
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 按id升序遍历全部归档就诊记录（多路归并），用于列式副本全量加载
+     * 
+     * 段文件按最小id依次打开，只有id范围重叠的段文件同时解压；解压结果不放入列缓存
+     */
+    public Iterator<Patient> visitsOrderById() {
+        return new MergingVisitIterator(getSegments(ArchiveTable.VISIT));
+    }
+    
+    /**
+     * 全部归档就诊记录的行数、科室和去重患者，段文件变化后重新计算
+     */
+    public VisitTotals getVisitTotals() {
+        long current = version.get();
+        VisitTotals totals = visitTotals;
+        if (totals != null && totals.version == current) {
+            return totals;
+        }
+        long rows = 0;
+        Set<String> departments = new HashSet<>();
+        Set<String> patients = new HashSet<>();
+        for (Segment segment : getSegments(ArchiveTable.VISIT)) {
+            rows += segment.getRowCount();
+            for (String department : dictionary(segment, "department")) {
+                if (department != null && !department.isEmpty()) {
+                    departments.add(department);
+                }
+            }
+            String[] dictionary = dictionary(segment, "patient_id");
+            patients.addAll(Arrays.asList(dictionary).subList(1, dictionary.length));
+        }
+        String[] patientIds = patients.toArray(new String[0]);
+        Arrays.sort(patientIds);
+        totals = new VisitTotals(current, rows, Collections.unmodifiableSet(departments), patientIds);
+        visitTotals = totals;
+        return totals;
+    }
+    
+    /**
+     * 某个月已归档的医保结算按(医保类型, DRG病组)汇总，与InsuranceSettlementMapper.selectGroupStats口径一致
+     */
+    public List<InsuranceGroupStatDTO> selectSettlementGroupStats(YearMonth month) {
+        List<Segment> list = segments.get(ArchiveTable.SETTLEMENT).get(month);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        Map<List<String>, long[]> groups = new LinkedHashMap<>();
+        for (Segment segment : list) {
+            String[] types = dictionary(segment, "insurance_type");
+            String[] drgGroups = dictionary(segment, "drg_group");
+            int[] typeCodes = ints(segment, "insurance_type");
+            int[] drgCodes = ints(segment, "drg_group");
+            long[] totalCost = longs(segment, "total_cost");
+            long[] insurancePay = longs(segment, "insurance_pay");
+            long[] personalPay = longs(segment, "personal_pay");
+            scans.increment();
+            scannedRows.add(segment.getRowCount());
+            for (int r = 0; r < segment.getRowCount(); r++) {
+                long[] sums = groups.computeIfAbsent(Arrays.asList(types[typeCodes[r]], drgGroups[drgCodes[r]]),
+                    k -> new long[4]);
+                sums[0]++;
+                sums[1] += nullToZero(totalCost[r]);
+                sums[2] += nullToZero(insurancePay[r]);
+                sums[3] += nullToZero(personalPay[r]);
+            }
+        }
+        List<InsuranceGroupStatDTO> rows = new ArrayList<>(groups.size());
+        for (Map.Entry<List<String>, long[]> entry : groups.entrySet()) {
+            InsuranceGroupStatDTO row = new InsuranceGroupStatDTO();
+            row.setInsuranceType(entry.getKey().get(0));
+            row.setDrgGroup(entry.getKey().get(1));
+            row.setSettlementCount(entry.getValue()[0]);
+            row.setTotalCost(BigDecimal.valueOf(entry.getValue()[1], 2));
+            row.setInsurancePay(BigDecimal.valueOf(entry.getValue()[2], 2));
+            row.setPersonalPay(BigDecimal.valueOf(entry.getValue()[3], 2));
+            rows.add(row);
+        }
+        return rows;
+    }
+    
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("directory", root != null ? root.toString() : directory);
+        stats.put("instanceId", instanceId);
+        stats.put("rescans", rescans.sum());
+        stats.put("discoveredSegments", discoveredSegments.sum());
+        stats.put("droppedSegments", droppedSegments.sum());
+        stats.put("deletedTempFiles", deletedTempFiles.sum());
+        for (ArchiveTable table : ArchiveTable.values()) {
+            long rows = 0;
+            long fileBytes = 0;
+            long rawBytes = 0;
+            List<Segment> list = getSegments(table);
+            for (Segment segment : list) {
+                rows += segment.getRowCount();
+                fileBytes += segment.getFileBytes();
+                rawBytes += segment.getRawBytes();
+            }
+            Map<String, Object> item = new HashMap<>();
+            item.put("segments", list.size());
+            item.put("months", segments.get(table).size());
+            YearMonth first = list.isEmpty() ? null : list.get(0).getMonth();
+            YearMonth last = getLastArchivedMonth(table);
+            item.put("firstMonth", first != null ? first.toString() : null);
+            item.put("lastMonth", last != null ? last.toString() : null);
+            item.put("rows", rows);
+            item.put("fileBytes", fileBytes);
+            item.put("rawBytes", rawBytes);
+            item.put("compressionRatio", fileBytes > 0 ? (double) rawBytes / fileBytes : 0.0);
+            stats.put(table.getFilePrefix(), item);
+        }
+        stats.put("scans", scans.sum());
+        stats.put("scannedRows", scannedRows.sum());
+        stats.put("decodedColumns", decodedColumns.sum());
+        stats.put("decodedBytes", decodedBytes.sum());
+        stats.put("columnCache", cache.stats());
+        return stats;
+    }
+    
+    private NavigableMap<YearMonth, List<Segment>> months(ArchiveTable table, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            return Collections.emptyNavigableMap();
+        }
+        return segments.get(table).subMap(YearMonth.from(startDate), true, YearMonth.from(endDate), true);
+    }
+    
+    private VisitColumns visitColumns(Segment segment) {
+        return new VisitColumns(segment, longs(segment, "id"), ints(segment, "visit_date"), longs(segment, "cost"),
+            ints(segment, "patient_id"), dictionary(segment, "patient_id"),
+            ints(segment, "department"), dictionary(segment, "department"),
+            ints(segment, "diagnosis"), dictionary(segment, "diagnosis"),
+            ints(segment, "disease_code"), dictionary(segment, "disease_code"),
+            ints(segment, "visit_type"), dictionary(segment, "visit_type"));
+    }
+    
+    private int[] ints(Segment segment, String column) {
+        String key = segment.getName() + "/" + column;
+        int[] values = (int[]) cache.get(key);
+        if (values == null) {
+            values = segment.readInts(column);
+            decoded(values.length * 4L);
+            cache.put(key, values, 16 + values.length * 4L);
+        }
+        return values;
+    }
+    
+    private long[] longs(Segment segment, String column) {
+        String key = segment.getName() + "/" + column;
+        long[] values = (long[]) cache.get(key);
+        if (values == null) {
+            values = segment.readLongs(column);
+            decoded(values.length * 8L);
+            cache.put(key, values, 16 + values.length * 8L);
+        }
+        return values;
+    }
+    
+    private String[] dictionary(Segment segment, String column) {
+        String key = segment.getName() + "/" + column + "#dictionary";
+        String[] values = (String[]) cache.get(key);
+        if (values == null) {
+            values = segment.readDictionary(column);
+            long weight = 16 + values.length * 4L;
+            for (String value : values) {
+                weight += value != null ? 40 + value.length() * 2L : 0;
+            }
+            decoded(weight);
+            cache.put(key, values, weight);
+        }
+        return values;
+    }
+    
+    private void decoded(long bytes) {
+        decodedColumns.increment();
+        decodedBytes.add(bytes);
+    }
+    
+    private static long nullToZero(long cents) {
+        return cents == ArchiveColumn.NULL_LONG ? 0 : cents;
+    }
+    
+    /**
+     * 全部归档就诊记录的汇总
+     */
+    public static final class VisitTotals {
+        
+        private final long version;
+        
+        private final long rows;
+        
+        private final Set<String> departments;
+        
+        /**
+         * 去重后按升序排列的患者ID
+         */
+        private final String[] patientIds;
+        
+        VisitTotals(long version, long rows, Set<String> departments, String[] patientIds) {
+            this.version = version;
+            this.rows = rows;
+            this.departments = departments;
+            this.patientIds = patientIds;
+        }
+        
+        public long getRows() {
+            return rows;
+        }
+        
+        public Set<String> getDepartments() {
+            return departments;
+        }
+        
+        public int getPatientCount() {
+            return patientIds.length;
+        }
+        
+        public boolean containsPatient(String patientId) {
+            return patientId != null && Arrays.binarySearch(patientIds, patientId) >= 0;
+        }
+    }
+    
+    /**
+     * 一个段文件中构造Patient所需的列
+     */
+    private static final class VisitColumns {
+        final Segment segment;
+        final long[] ids;
+        final int[] days;
+        final long[] costs;
+        final int[] patients;
+        final String[] patientValues;
+        final int[] departments;
+        final String[] departmentValues;
+        final int[] diagnoses;
+        final String[] diagnosisValues;
+        final int[] diseaseCodes;
+        final String[] diseaseCodeValues;
+        final int[] visitTypes;
+        final String[] visitTypeValues;
+        
+        VisitColumns(Segment segment, long[] ids, int[] days, long[] costs, int[] patients, String[] patientValues,
+                     int[] departments, String[] departmentValues, int[] diagnoses, String[] diagnosisValues,
+                     int[] diseaseCodes, String[] diseaseCodeValues, int[] visitTypes, String[] visitTypeValues) {
+            this.segment = segment;
+            this.ids = ids;
+            this.days = days;
+            this.costs = costs;
+            this.patients = patients;
+            this.patientValues = patientValues;
+            this.departments = departments;
+            this.departmentValues = departmentValues;
+            this.diagnoses = diagnoses;
+            this.diagnosisValues = diagnosisValues;
+            this.diseaseCodes = diseaseCodes;
+            this.diseaseCodeValues = diseaseCodeValues;
+            this.visitTypes = visitTypes;
+            this.visitTypeValues = visitTypeValues;
+        }
+        
+        static VisitColumns decode(Segment segment) {
+            return new VisitColumns(segment, segment.readLongs("id"), segment.readInts("visit_date"),
+                segment.readLongs("cost"),
+                segment.readInts("patient_id"), segment.readDictionary("patient_id"),
+                segment.readInts("department"), segment.readDictionary("department"),
+                segment.readInts("diagnosis"), segment.readDictionary("diagnosis"),
+                segment.readInts("disease_code"), segment.readDictionary("disease_code"),
+                segment.readInts("visit_type"), segment.readDictionary("visit_type"));
+        }
+        
+        Patient toPatient(int r) {
+            Patient patient = new Patient();
+            patient.setId(ids[r]);
+            patient.setPatientId(patientValues[patients[r]]);
+            LocalDate day = ArchiveColumn.decodeDate(days[r]);
+            patient.setVisitDate(day != null ? DateConvertUtil.toDate(day) : null);
+            patient.setDepartment(departmentValues[departments[r]]);
+            patient.setDiagnosis(diagnosisValues[diagnoses[r]]);
+            patient.setDiseaseCode(diseaseCodeValues[diseaseCodes[r]]);
+            patient.setCost(ArchiveColumn.decodeDecimal(costs[r]));
+            patient.setVisitType(visitTypeValues[visitTypes[r]]);
+            return patient;
+        }
+    }
+    
+    /**
+     * 多个段文件按id升序归并
+     */
+    private static final class MergingVisitIterator implements Iterator<Patient> {
+        
+        private final List<Segment> pending;
+        
+        private int nextSegment;
+        
+        private final PriorityQueue<SegmentCursor> open =
+            new PriorityQueue<>(Comparator.comparingLong(SegmentCursor::currentId));
+        
+        MergingVisitIterator(List<Segment> segments) {
+            this.pending = new ArrayList<>(segments);
+            this.pending.sort(Comparator.comparingLong(Segment::getMinId));
+        }
+        
+        @Override
+        public boolean hasNext() {
+            openOverlapping();
+            return !open.isEmpty();
+        }
+        
+        @Override
+        public Patient next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SegmentCursor cursor = open.poll();
+            Patient patient = cursor.columns.toPatient(cursor.row++);
+            if (cursor.row < cursor.columns.segment.getRowCount()) {
+                open.add(cursor);
+            }
+            return patient;
+        }
+        
+        /**
+         * 打开最小id不大于当前最小id的段文件（没有打开的段文件时打开下一个）
+         */
+        private void openOverlapping() {
+            while (nextSegment < pending.size()
+                && (open.isEmpty() || pending.get(nextSegment).getMinId() <= open.peek().currentId())) {
+                Segment segment = pending.get(nextSegment++);
+                if (segment.getRowCount() > 0) {
+                    open.add(new SegmentCursor(VisitColumns.decode(segment)));
+                }
+            }
+        }
+    }
+    
+    private static final class SegmentCursor {
+        
+        private final VisitColumns columns;
+        
+        private int row;
+        
+        SegmentCursor(VisitColumns columns) {
+            this.columns = columns;
+        }
+        
+        long currentId() {
+            return columns.ids[row];
+        }
+    }
+    
+    /**
+     * 解压列的LRU缓存，按估算的字节数淘汰
+     */
+    private static final class ColumnCache {
+        
+        private final long maxBytes;
+        
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        
+        private long bytes;
+        
+        private long hits;
+        
+        private long misses;
+        
+        private long evictions;
+        
+        ColumnCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+        
+        synchronized Object get(String key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.value;
+        }
+        
+        /**
+         * 放入缓存，超过上限的单列不缓存
+         */
+        synchronized void put(String key, Object value, long weight) {
+            if (weight > maxBytes) {
+                return;
+            }
+            Entry previous = entries.put(key, new Entry(value, weight));
+            bytes += weight - (previous != null ? previous.weight : 0);
+            Iterator<Entry> it = entries.values().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                bytes -= eldest.weight;
+                evictions++;
+            }
+        }
+        
+        synchronized void removeSegment(String segmentName) {
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> entry = it.next();
+                if (entry.getKey().startsWith(segmentName + "/")) {
+                    it.remove();
+                    bytes -= entry.getValue().weight;
+                }
+            }
+        }
+        
+        synchronized Map<String, Object> stats() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("entries", entries.size());
+            stats.put("bytes", bytes);
+            stats.put("maxBytes", maxBytes);
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+            stats.put("evictions", evictions);
+            return stats;
+        }
+        
+        private static final class Entry {
+            
+            private final Object value;
+            
+            private final long weight;
+            
+            Entry(Object value, long weight) {
+                this.value = value;
+                this.weight = weight;
+            }
+        }
+    }
+}
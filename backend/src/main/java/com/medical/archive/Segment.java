@@ -0,0 +1,323 @@
+package com.medical.archive;
+
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 只读的归档段文件：一张表一个月份（的一批）数据，按id升序，每列单独LZ4压缩
+ * 
+ * 文件格式（大端）：
+ * - 头部：魔数、版本、表编号、月份(yyyyMM)、行数、最小/最大id、写入时间、列数、列目录、头部校验和
+ * - 列目录：列名、类型、数据块位置/压缩长度/原始长度/校验和，字符串列另有字典块（同样的四项 + 字典项数）
+ * - 数据块：int列每行4字节、long列每行8字节；字典块：每项为长度 + UTF-8字节，按字符串升序，编码 = 下标 + 1
+ * 
+ * 打开时整个文件只读映射到内存，列在第一次读取时解压并校验XXHash32，解压结果由ColdArchiveStore缓存；
+ * 段文件写入后不再修改，可以被多个线程同时读取
+ */
+public final class Segment {
+    
+    static final int MAGIC = 0x4D415243;
+    
+    static final byte FORMAT_VERSION = 1;
+    
+    static final int CHECKSUM_SEED = 0x5EED;
+    
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+    
+    private static final XXHash32 HASH = XXHashFactory.fastestInstance().hash32();
+    
+    private final Path path;
+    
+    private final ArchiveTable table;
+    
+    private final YearMonth month;
+    
+    private final int rowCount;
+    
+    private final long minId;
+    
+    private final long maxId;
+    
+    private final long createdAt;
+    
+    private final long fileBytes;
+    
+    private final Map<String, ColumnEntry> columns;
+    
+    private final MappedByteBuffer buffer;
+    
+    private Segment(Path path, ArchiveTable table, YearMonth month, int rowCount, long minId, long maxId,
+                    long createdAt, long fileBytes, Map<String, ColumnEntry> columns, MappedByteBuffer buffer) {
+        this.path = path;
+        this.table = table;
+        this.month = month;
+        this.rowCount = rowCount;
+        this.minId = minId;
+        this.maxId = maxId;
+        this.createdAt = createdAt;
+        this.fileBytes = fileBytes;
+        this.columns = columns;
+        this.buffer = buffer;
+    }
+    
+    /**
+     * 映射并解析头部，格式或头部校验和不正确时抛出IOException
+     */
+    public static Segment open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        long size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("段文件过大: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer header = buffer.duplicate();
+        try {
+            if (header.getInt() != MAGIC) {
+                throw new IOException("不是归档段文件: " + path);
+            }
+            byte version = header.get();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("不支持的段文件版本" + version + ": " + path);
+            }
+            ArchiveTable table = ArchiveTable.ofCode(header.get());
+            int yearMonth = header.getInt();
+            YearMonth month = YearMonth.of(yearMonth / 100, yearMonth % 100);
+            int rowCount = header.getInt();
+            long minId = header.getLong();
+            long maxId = header.getLong();
+            long createdAt = header.getLong();
+            int columnCount = header.getShort();
+            Map<String, ColumnEntry> columns = new LinkedHashMap<>();
+            for (int i = 0; i < columnCount; i++) {
+                byte[] name = new byte[header.getShort()];
+                header.get(name);
+                ArchiveColumn.Type type = ArchiveColumn.Type.ofCode(header.get());
+                Block data = Block.read(header);
+                Block dictionary = Block.read(header);
+                int dictionarySize = header.getInt();
+                String columnName = new String(name, StandardCharsets.UTF_8);
+                columns.put(columnName, new ColumnEntry(columnName, type, data, dictionary, dictionarySize));
+            }
+            int headerLength = header.position();
+            int checksum = header.getInt();
+            ByteBuffer headerBytes = buffer.duplicate();
+            headerBytes.limit(headerLength);
+            if (HASH.hash(headerBytes, 0, headerLength, CHECKSUM_SEED) != checksum) {
+                throw new IOException("段文件头部校验失败: " + path);
+            }
+            for (ArchiveColumn column : table.getColumns()) {
+                ColumnEntry entry = columns.get(column.getName());
+                if (entry == null || entry.type != column.getType()) {
+                    throw new IOException("段文件缺少列或列类型不一致(" + column.getName() + "): " + path);
+                }
+                entry.data.check(size, path);
+                entry.dictionary.check(size, path);
+            }
+            return new Segment(path, table, month, rowCount, minId, maxId, createdAt, size,
+                Collections.unmodifiableMap(columns), buffer);
+        } catch (RuntimeException e) {
+            throw new IOException("段文件格式不正确(" + e.getMessage() + "): " + path, e);
+        }
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    public String getName() {
+        return path.getFileName().toString();
+    }
+    
+    public ArchiveTable getTable() {
+        return table;
+    }
+    
+    public YearMonth getMonth() {
+        return month;
+    }
+    
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    public long getMinId() {
+        return minId;
+    }
+    
+    public long getMaxId() {
+        return maxId;
+    }
+    
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    public long getFileBytes() {
+        return fileBytes;
+    }
+    
+    /**
+     * 全部列解压后的字节数
+     */
+    public long getRawBytes() {
+        long bytes = 0;
+        for (ColumnEntry entry : columns.values()) {
+            bytes += entry.data.rawLength + entry.dictionary.rawLength;
+        }
+        return bytes;
+    }
+    
+    /**
+     * 解压int编码的列（DATE、TIME，以及STRING列的字典编码）
+     */
+    public int[] readInts(String column) {
+        ColumnEntry entry = entry(column);
+        if (entry.type.isWide()) {
+            throw new IllegalArgumentException("列" + column + "不是int编码");
+        }
+        int[] values = new int[rowCount];
+        ByteBuffer.wrap(decompress(entry.data, column)).asIntBuffer().get(values);
+        return values;
+    }
+    
+    /**
+     * 解压long编码的列（LONG、DECIMAL、DATETIME）
+     */
+    public long[] readLongs(String column) {
+        ColumnEntry entry = entry(column);
+        if (!entry.type.isWide()) {
+            throw new IllegalArgumentException("列" + column + "不是long编码");
+        }
+        long[] values = new long[rowCount];
+        ByteBuffer.wrap(decompress(entry.data, column)).asLongBuffer().get(values);
+        return values;
+    }
+    
+    /**
+     * 解压字符串列的字典，下标0为null，其余按升序排列
+     */
+    public String[] readDictionary(String column) {
+        ColumnEntry entry = entry(column);
+        if (entry.type != ArchiveColumn.Type.STRING) {
+            throw new IllegalArgumentException("列" + column + "不是字符串列");
+        }
+        ByteBuffer raw = ByteBuffer.wrap(decompress(entry.dictionary, column));
+        String[] values = new String[entry.dictionarySize + 1];
+        for (int i = 1; i < values.length; i++) {
+            byte[] bytes = new byte[raw.getInt()];
+            raw.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+    
+    /**
+     * 解压并校验全部列，写入后、删除在线数据之前调用
+     */
+    public void verify() {
+        for (ColumnEntry entry : columns.values()) {
+            decompress(entry.data, entry.name);
+            if (entry.type == ArchiveColumn.Type.STRING) {
+                decompress(entry.dictionary, entry.name);
+            }
+        }
+    }
+    
+    private ColumnEntry entry(String column) {
+        ColumnEntry entry = columns.get(column);
+        if (entry == null) {
+            throw new IllegalArgumentException("段文件中没有列: " + column);
+        }
+        return entry;
+    }
+    
+    private byte[] decompress(Block block, String column) {
+        byte[] raw = new byte[block.rawLength];
+        int read = block.rawLength > 0
+            ? DECOMPRESSOR.decompress(buffer, (int) block.offset, ByteBuffer.wrap(raw), 0, block.rawLength) : block.length;
+        if (read != block.length || HASH.hash(raw, 0, raw.length, CHECKSUM_SEED) != block.checksum) {
+            throw new IllegalStateException("归档段文件" + getName() + "的列" + column + "校验失败");
+        }
+        return raw;
+    }
+    
+    @Override
+    public String toString() {
+        return getName();
+    }
+    
+    private static final class ColumnEntry {
+        
+        private final String name;
+        
+        private final ArchiveColumn.Type type;
+        
+        private final Block data;
+        
+        private final Block dictionary;
+        
+        private final int dictionarySize;
+        
+        ColumnEntry(String name, ArchiveColumn.Type type, Block data, Block dictionary, int dictionarySize) {
+            this.name = name;
+            this.type = type;
+            this.data = data;
+            this.dictionary = dictionary;
+            this.dictionarySize = dictionarySize;
+        }
+    }
+    
+    /**
+     * 一个压缩块在文件中的位置
+     */
+    static final class Block {
+        
+        static final Block EMPTY = new Block(0, 0, 0, 0);
+        
+        final long offset;
+        
+        final int length;
+        
+        final int rawLength;
+        
+        final int checksum;
+        
+        Block(long offset, int length, int rawLength, int checksum) {
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.checksum = checksum;
+        }
+        
+        static Block read(ByteBuffer header) {
+            return new Block(header.getLong(), header.getInt(), header.getInt(), header.getInt());
+        }
+        
+        void write(ByteBuffer header) {
+            header.putLong(offset).putInt(length).putInt(rawLength).putInt(checksum);
+        }
+        
+        void check(long fileSize, Path path) throws IOException {
+            if (offset < 0 || length < 0 || rawLength < 0 || offset + length > fileSize) {
+                throw new IOException("段文件数据块越界: " + path);
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.medical.archive;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 段文件写入器：按id升序逐行加入一个月份的数据，最后一次写成段文件
+ * 
+ * 字符串列先记录原值，写出时生成升序字典再编码；压缩使用LZ4高压缩率模式（只写一次、读多次）。
+ * 写入临时文件并fsync，由调用方校验后改名为正式文件名
+ * 
+ * 非线程安全
+ */
+public final class SegmentWriter {
+    
+    public static final String SEGMENT_SUFFIX = ".seg";
+    
+    public static final String TEMP_SUFFIX = ".tmp";
+    
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().highCompressor();
+    
+    private static final XXHash32 HASH = XXHashFactory.fastestInstance().hash32();
+    
+    private final ArchiveTable table;
+    
+    private final YearMonth month;
+    
+    private final int startDay;
+    
+    private final int endDay;
+    
+    private final List<ArchiveColumn> columns;
+    
+    /**
+     * 每列一个缓冲：int[]、long[]或List<String>
+     */
+    private final Object[] buffers;
+    
+    private final int idColumn;
+    
+    private final int dateColumn;
+    
+    private int rowCount;
+    
+    public SegmentWriter(ArchiveTable table, YearMonth month) {
+        this.table = table;
+        this.month = month;
+        this.startDay = (int) month.atDay(1).toEpochDay();
+        this.endDay = (int) month.atEndOfMonth().toEpochDay();
+        this.columns = table.getColumns();
+        this.buffers = new Object[columns.size()];
+        int id = -1;
+        int date = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            ArchiveColumn column = columns.get(i);
+            if (column.getType() == ArchiveColumn.Type.STRING) {
+                buffers[i] = new ArrayList<String>();
+            } else if (column.getType().isWide()) {
+                buffers[i] = new long[1024];
+            } else {
+                buffers[i] = new int[1024];
+            }
+            if ("id".equals(column.getName())) {
+                id = i;
+            } else if (table.getDateColumn().equals(column.getName())) {
+                date = i;
+            }
+        }
+        this.idColumn = id;
+        this.dateColumn = date;
+    }
+    
+    /**
+     * 加入一行（列名 → JDBC值），id必须严格递增、日期必须在该月份内
+     */
+    @SuppressWarnings("unchecked")
+    public void add(Map<String, Object> row) {
+        for (int i = 0; i < columns.size(); i++) {
+            ArchiveColumn column = columns.get(i);
+            Object value = row.get(column.getName());
+            if (column.getType() == ArchiveColumn.Type.STRING) {
+                ((List<String>) buffers[i]).add(value != null ? value.toString() : null);
+            } else if (column.getType().isWide()) {
+                long[] values = (long[]) buffers[i];
+                if (rowCount == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                    buffers[i] = values;
+                }
+                values[rowCount] = column.encodeLong(value);
+            } else {
+                int[] values = (int[]) buffers[i];
+                if (rowCount == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                    buffers[i] = values;
+                }
+                values[rowCount] = column.encodeInt(value);
+            }
+        }
+        long[] ids = (long[]) buffers[idColumn];
+        if (ids[rowCount] == ArchiveColumn.NULL_LONG || (rowCount > 0 && ids[rowCount] <= ids[rowCount - 1])) {
+            throw new IllegalStateException(table.getTableName() + "的行必须按id严格升序加入: " + ids[rowCount]);
+        }
+        int day = ((int[]) buffers[dateColumn])[rowCount];
+        if (day < startDay || day > endDay) {
+            throw new IllegalStateException(table.getTableName() + "的行(id=" + ids[rowCount] + ")日期"
+                + ArchiveColumn.decodeDate(day) + "不在" + month + "内");
+        }
+        rowCount++;
+    }
+    
+    public ArchiveTable getTable() {
+        return table;
+    }
+    
+    public YearMonth getMonth() {
+        return month;
+    }
+    
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    public long getMinId() {
+        return rowCount > 0 ? ((long[]) buffers[idColumn])[0] : 0;
+    }
+    
+    public long getMaxId() {
+        return rowCount > 0 ? ((long[]) buffers[idColumn])[rowCount - 1] : 0;
+    }
+    
+    /**
+     * 正式文件名：表前缀-yyyyMM-最小id.seg，同一月份之后补归档的批次最小id更大，不会重名
+     */
+    public String getFileName() {
+        return String.format("%s-%d%02d-%d%s", table.getFilePrefix(), month.getYear(), month.getMonthValue(),
+            getMinId(), SEGMENT_SUFFIX);
+    }
+    
+    /**
+     * 写入directory下的临时文件（正式文件名加tempSuffix）并fsync，返回临时文件路径
+     * 
+     * @param tempSuffix 临时文件后缀，带上写入实例的标识（ColdArchiveStore.getTempSuffix），以.tmp结尾
+     */
+    @SuppressWarnings("unchecked")
+    public Path write(Path directory, String tempSuffix) throws IOException {
+        if (rowCount == 0) {
+            throw new IllegalStateException("没有可写入的行");
+        }
+        List<byte[]> blocks = new ArrayList<>();
+        Segment.Block[] data = new Segment.Block[columns.size()];
+        Segment.Block[] dictionaries = new Segment.Block[columns.size()];
+        int[] dictionarySizes = new int[columns.size()];
+        // 先按偏移0计算各块，头部长度确定后再整体平移
+        long offset = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            ArchiveColumn column = columns.get(i);
+            ByteBuffer raw;
+            dictionaries[i] = Segment.Block.EMPTY;
+            if (column.getType() == ArchiveColumn.Type.STRING) {
+                List<String> values = (List<String>) buffers[i];
+                String[] dictionary = dictionary(values);
+                dictionarySizes[i] = dictionary.length;
+                Map<String, Integer> codes = new HashMap<>(dictionary.length * 2);
+                int dictionaryBytes = 0;
+                List<byte[]> encoded = new ArrayList<>(dictionary.length);
+                for (int j = 0; j < dictionary.length; j++) {
+                    codes.put(dictionary[j], j + 1);
+                    byte[] bytes = dictionary[j].getBytes(StandardCharsets.UTF_8);
+                    encoded.add(bytes);
+                    dictionaryBytes += 4 + bytes.length;
+                }
+                ByteBuffer dictionaryRaw = ByteBuffer.allocate(dictionaryBytes);
+                for (byte[] bytes : encoded) {
+                    dictionaryRaw.putInt(bytes.length).put(bytes);
+                }
+                raw = ByteBuffer.allocate(rowCount * 4);
+                for (int r = 0; r < rowCount; r++) {
+                    String value = values.get(r);
+                    raw.putInt(value == null ? 0 : codes.get(value));
+                }
+                byte[] compressed = compress(dictionaryRaw.array());
+                dictionaries[i] = new Segment.Block(offset, compressed.length, dictionaryBytes,
+                    HASH.hash(dictionaryRaw.array(), 0, dictionaryBytes, Segment.CHECKSUM_SEED));
+                blocks.add(compressed);
+                offset += compressed.length;
+            } else if (column.getType().isWide()) {
+                raw = ByteBuffer.allocate(rowCount * 8);
+                raw.asLongBuffer().put((long[]) buffers[i], 0, rowCount);
+            } else {
+                raw = ByteBuffer.allocate(rowCount * 4);
+                raw.asIntBuffer().put((int[]) buffers[i], 0, rowCount);
+            }
+            byte[] compressed = compress(raw.array());
+            data[i] = new Segment.Block(offset, compressed.length, raw.capacity(),
+                HASH.hash(raw.array(), 0, raw.capacity(), Segment.CHECKSUM_SEED));
+            blocks.add(compressed);
+            offset += compressed.length;
+        }
+        
+        byte[][] names = new byte[columns.size()][];
+        int headerLength = 4 + 1 + 1 + 4 + 4 + 8 + 8 + 8 + 2;
+        for (int i = 0; i < columns.size(); i++) {
+            names[i] = columns.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            headerLength += 2 + names[i].length + 1 + 20 + 20 + 4;
+        }
+        ByteBuffer header = ByteBuffer.allocate(headerLength + 4);
+        header.putInt(Segment.MAGIC)
+            .put(Segment.FORMAT_VERSION)
+            .put((byte) table.getCode())
+            .putInt(month.getYear() * 100 + month.getMonthValue())
+            .putInt(rowCount)
+            .putLong(getMinId())
+            .putLong(getMaxId())
+            .putLong(System.currentTimeMillis())
+            .putShort((short) columns.size());
+        long base = header.capacity();
+        for (int i = 0; i < columns.size(); i++) {
+            header.putShort((short) names[i].length).put(names[i]).put((byte) columns.get(i).getType().getCode());
+            shift(data[i], base).write(header);
+            shift(dictionaries[i], base).write(header);
+            header.putInt(dictionarySizes[i]);
+        }
+        header.putInt(HASH.hash(header.array(), 0, headerLength, Segment.CHECKSUM_SEED));
+        header.flip();
+        
+        Files.createDirectories(directory);
+        Path temp = directory.resolve(getFileName() + tempSuffix);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header);
+            for (byte[] block : blocks) {
+                writeFully(channel, ByteBuffer.wrap(block));
+            }
+            channel.force(true);
+        }
+        return temp;
+    }
+    
+    /**
+     * 校验写出的段文件与写入的数据一致：行数、id列逐行相同，全部列校验和正确
+     */
+    public void verify(Segment segment) {
+        if (segment.getTable() != table || !segment.getMonth().equals(month) || segment.getRowCount() != rowCount
+            || segment.getMinId() != getMinId() || segment.getMaxId() != getMaxId()) {
+            throw new IllegalStateException("段文件" + segment.getName() + "的头部与写入的数据不一致");
+        }
+        segment.verify();
+        long[] ids = segment.readLongs("id");
+        long[] expected = (long[]) buffers[idColumn];
+        for (int r = 0; r < rowCount; r++) {
+            if (ids[r] != expected[r]) {
+                throw new IllegalStateException("段文件" + segment.getName() + "的id列与写入的数据不一致");
+            }
+        }
+    }
+    
+    private static String[] dictionary(List<String> values) {
+        Map<String, Boolean> distinct = new HashMap<>();
+        for (String value : values) {
+            if (value != null) {
+                distinct.put(value, Boolean.TRUE);
+            }
+        }
+        String[] dictionary = distinct.keySet().toArray(new String[0]);
+        Arrays.sort(dictionary);
+        return dictionary;
+    }
+    
+    private static byte[] compress(byte[] raw) {
+        byte[] compressed = new byte[COMPRESSOR.maxCompressedLength(raw.length)];
+        int length = COMPRESSOR.compress(raw, 0, raw.length, compressed, 0, compressed.length);
+        return Arrays.copyOf(compressed, length);
+    }
+    
+    private static Segment.Block shift(Segment.Block block, long base) {
+        return block == Segment.Block.EMPTY ? block
+            : new Segment.Block(block.offset + base, block.length, block.rawLength, block.checksum);
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
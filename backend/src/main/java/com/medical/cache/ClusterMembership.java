@@ -0,0 +1,114 @@
+package com.medical.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多实例探测：每个实例定时把心跳写入Redis的有序集合（成员为实例ID，分数为心跳时间），
+ * 最近3个心跳间隔内有心跳的实例数即为运行中的实例数
+ * 
+ * 只对本实例写入可见的内存状态（如就诊实时聚合）据此判断能否使用：
+ * 未配置Redis时按单实例处理；Redis不可用时无法判断，按多实例处理。
+ * 新实例启动后最多一个心跳间隔才会被其他实例看到
+ */
+@Slf4j
+@Component
+public class ClusterMembership {
+    
+    private static final String KEY = "medical:cluster:instances";
+    
+    @Value("${cluster.heartbeat-interval-ms:10000}")
+    private long heartbeatIntervalMillis;
+    
+    @Autowired(required = false)  // Redis不可用时，redisTemplate可以为null，按单实例处理
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    private final String instanceId = UUID.randomUUID().toString();
+    
+    /**
+     * 最近一次心跳看到的实例数，-1表示未知（尚未心跳或Redis不可用）
+     */
+    private volatile int liveInstances = -1;
+    
+    /**
+     * 从该时间起一直只有本实例运行（毫秒），不是单实例时为-1
+     */
+    private volatile long singleSinceMillis = -1;
+    
+    private volatile String lastError;
+    
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        if (redisTemplate == null) {
+            update(1, System.currentTimeMillis());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            redisTemplate.opsForZSet().add(KEY, instanceId, now);
+            redisTemplate.opsForZSet().removeRangeByScore(KEY, 0, now - heartbeatIntervalMillis * 3);
+            redisTemplate.expire(KEY, heartbeatIntervalMillis * 3, TimeUnit.MILLISECONDS);
+            Long count = redisTemplate.opsForZSet().zCard(KEY);
+            update(count != null ? count.intValue() : -1, now);
+            lastError = null;
+        } catch (RuntimeException e) {
+            if (lastError == null) {
+                log.warn("实例心跳写入Redis失败，按多实例处理: {}", e.getMessage());
+            }
+            lastError = e.getMessage();
+            update(-1, now);
+        }
+    }
+    
+    @PreDestroy
+    public void leave() {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForZSet().remove(KEY, instanceId);
+        } catch (RuntimeException e) {
+            log.debug("注销实例心跳失败: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 是否从sinceMillis起（含）一直只有本实例运行；在此之后加载的内存状态包含了全部实例的写入
+     */
+    public boolean isSingleInstanceSince(long sinceMillis) {
+        long since = singleSinceMillis;
+        return since >= 0 && since <= sinceMillis;
+    }
+    
+    public boolean isSingleInstance() {
+        return singleSinceMillis >= 0;
+    }
+    
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("instanceId", instanceId);
+        stats.put("liveInstances", liveInstances);
+        stats.put("singleInstance", isSingleInstance());
+        stats.put("lastError", lastError);
+        return stats;
+    }
+    
+    private void update(int count, long now) {
+        liveInstances = count;
+        if (count != 1) {
+            singleSinceMillis = -1;
+        } else if (singleSinceMillis < 0) {
+            singleSinceMillis = now;
+        }
+    }
+}
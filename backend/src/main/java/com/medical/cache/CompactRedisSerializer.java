@@ -0,0 +1,214 @@
+package com.medical.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis缓存值序列化：紧凑二进制编码 + 大值LZ4压缩，兼容读取旧的JSON缓存
+ * 
+ * 二进制格式：魔数(1字节) + 格式版本(1字节) + 标志(1字节) + 内容
+ * - 标志位0表示内容经LZ4压缩，此时内容为原长度(4字节) + 压缩数据；
+ *   原长度超过MAX_DECOMPRESSED_LENGTH或LZ4可能的最大压缩比时视为损坏，不按其分配内存
+ * - 内容为CompactValueCodec编码，不含类名，读取时不需要反射
+ * 
+ * 兼容方式：
+ * - 首字节不是魔数的按JSON读取（上线前写入Redis的值，JSON不可能以该字节开头）
+ * - 值中有不支持二进制编码的类型时整体写JSON
+ * - 无法识别的格式版本按未命中处理，由加载后的新值覆盖
+ * - binaryWrites=false时只写JSON、两种格式都能读，多实例滚动上线时先全部升级再打开
+ */
+@Slf4j
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+    
+    private static final byte MAGIC = (byte) 0xC7;
+    
+    private static final byte FORMAT_VERSION = 1;
+    
+    private static final byte FLAG_LZ4 = 1;
+    
+    private static final int HEADER_LENGTH = 3;
+    
+    /**
+     * 解压后的最大长度（64MB），远大于实际缓存值
+     */
+    static final int MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+    
+    /**
+     * LZ4每字节压缩数据最多还原出的字节数（匹配长度每255字节多用1字节编码）
+     */
+    private static final int MAX_COMPRESSION_RATIO = 255;
+    
+    private static final byte[] EMPTY = new byte[0];
+    
+    private final RedisSerializer<Object> jsonSerializer;
+    
+    private final boolean binaryWrites;
+    
+    private final int compressionThreshold;
+    
+    private final LZ4Compressor compressor;
+    
+    private final LZ4FastDecompressor decompressor;
+    
+    private final LongAdder binaryWriteCount = new LongAdder();
+    private final LongAdder jsonWriteCount = new LongAdder();
+    private final LongAdder compressedWriteCount = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder binaryReadCount = new LongAdder();
+    private final LongAdder jsonReadCount = new LongAdder();
+    private final LongAdder unreadableCount = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    
+    /**
+     * @param jsonSerializer       原JSON序列化器，用于读取旧值和写入不支持的类型
+     * @param binaryWrites         是否写二进制格式
+     * @param compressionThreshold 编码后超过该字节数时压缩，0表示不压缩
+     */
+    public CompactRedisSerializer(RedisSerializer<Object> jsonSerializer, boolean binaryWrites,
+                                  int compressionThreshold) {
+        this.jsonSerializer = jsonSerializer;
+        this.binaryWrites = binaryWrites;
+        this.compressionThreshold = compressionThreshold;
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+    }
+    
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY;
+        }
+        if (binaryWrites) {
+            byte[] encoded;
+            try {
+                encoded = CompactValueCodec.encode(value);
+            } catch (CompactValueCodec.UnsupportedTypeException e) {
+                log.debug("缓存值改用JSON序列化: {}", e.getMessage());
+                encoded = null;
+            }
+            if (encoded != null) {
+                byte[] bytes = frame(encoded);
+                binaryWriteCount.increment();
+                encodedBytes.add(encoded.length);
+                storedBytes.add(bytes.length);
+                return bytes;
+            }
+        }
+        byte[] json = jsonSerializer.serialize(value);
+        jsonWriteCount.increment();
+        storedBytes.add(json != null ? json.length : 0);
+        return json;
+    }
+    
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            jsonReadCount.increment();
+            return jsonSerializer.deserialize(bytes);
+        }
+        long start = System.nanoTime();
+        if (bytes.length < HEADER_LENGTH || bytes[1] != FORMAT_VERSION) {
+            unreadableCount.increment();
+            return null;
+        }
+        try {
+            Object value;
+            if ((bytes[2] & FLAG_LZ4) != 0) {
+                int length = readInt(bytes, HEADER_LENGTH);
+                int compressedLength = bytes.length - HEADER_LENGTH - 4;
+                if (length <= 0 || length > MAX_DECOMPRESSED_LENGTH
+                    || length > (long) compressedLength * MAX_COMPRESSION_RATIO) {
+                    throw new IllegalArgumentException("解压后长度不正确: " + length);
+                }
+                byte[] encoded = new byte[length];
+                if (decompressor.decompress(bytes, HEADER_LENGTH + 4, encoded, 0, length) != compressedLength) {
+                    throw new IllegalArgumentException("压缩数据长度不正确");
+                }
+                value = CompactValueCodec.decode(encoded, 0);
+            } else {
+                value = CompactValueCodec.decode(bytes, HEADER_LENGTH);
+            }
+            binaryReadCount.increment();
+            decodeNanos.add(System.nanoTime() - start);
+            return value;
+        } catch (RuntimeException e) {
+            // 内容损坏或DTO版本比本实例新：按未命中处理，不把Redis判为不可用
+            unreadableCount.increment();
+            log.warn("缓存值无法解码，按未命中处理: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private byte[] frame(byte[] encoded) {
+        if (compressionThreshold > 0 && encoded.length > compressionThreshold) {
+            int maxLength = compressor.maxCompressedLength(encoded.length);
+            byte[] bytes = new byte[HEADER_LENGTH + 4 + maxLength];
+            int compressedLength = compressor.compress(encoded, 0, encoded.length, bytes, HEADER_LENGTH + 4, maxLength);
+            // 压缩后没有变小（如已是高熵数据）时直接存原编码
+            if (compressedLength + 4 < encoded.length) {
+                writeHeader(bytes, FLAG_LZ4);
+                writeInt(bytes, HEADER_LENGTH, encoded.length);
+                compressedWriteCount.increment();
+                byte[] result = new byte[HEADER_LENGTH + 4 + compressedLength];
+                System.arraycopy(bytes, 0, result, 0, result.length);
+                return result;
+            }
+        }
+        byte[] bytes = new byte[HEADER_LENGTH + encoded.length];
+        writeHeader(bytes, (byte) 0);
+        System.arraycopy(encoded, 0, bytes, HEADER_LENGTH, encoded.length);
+        return bytes;
+    }
+    
+    private static void writeHeader(byte[] bytes, byte flags) {
+        bytes[0] = MAGIC;
+        bytes[1] = FORMAT_VERSION;
+        bytes[2] = flags;
+    }
+    
+    private static void writeInt(byte[] bytes, int offset, int v) {
+        bytes[offset] = (byte) (v >>> 24);
+        bytes[offset + 1] = (byte) (v >>> 16);
+        bytes[offset + 2] = (byte) (v >>> 8);
+        bytes[offset + 3] = (byte) v;
+    }
+    
+    private static int readInt(byte[] bytes, int offset) {
+        if (bytes.length < offset + 4) {
+            throw new IllegalArgumentException("缓存值长度不足");
+        }
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+            | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+    
+    public Map<String, Object> stats() {
+        long binaryReads = binaryReadCount.sum();
+        long encoded = encodedBytes.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("binaryWrites", binaryWrites);
+        stats.put("compressionThreshold", compressionThreshold);
+        stats.put("binaryWriteCount", binaryWriteCount.sum());
+        stats.put("jsonWriteCount", jsonWriteCount.sum());
+        stats.put("compressedWriteCount", compressedWriteCount.sum());
+        stats.put("storedBytes", storedBytes.sum());
+        stats.put("binaryEncodedBytes", encoded);
+        stats.put("binaryReadCount", binaryReads);
+        stats.put("jsonReadCount", jsonReadCount.sum());
+        stats.put("unreadableCount", unreadableCount.sum());
+        stats.put("avgBinaryDecodeMicros", binaryReads > 0 ? decodeNanos.sum() / 1000.0 / binaryReads : 0.0);
+        return stats;
+    }
+}
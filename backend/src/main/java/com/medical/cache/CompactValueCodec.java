@@ -0,0 +1,550 @@
+package com.medical.cache;
+
+import com.medical.dto.EquipmentUsageStatDTO;
+import com.medical.dto.InsuranceGroupStatDTO;
+import com.medical.dto.OverviewDTO;
+import com.medical.dto.TrendDataDTO;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存值的紧凑二进制编码
+ * 
+ * 每个值以1字节类型标记开头：
+ * - 整数、日期用变长编码（zigzag），BigDecimal保存scale和unscaled值，精度不丢失
+ * - 同一个值内重复出现的字符串（科室名、医保类型等）只写一次，之后写引用序号
+ * - DTO按注册的类型号和字段顺序写入，不写类名和字段名；每个DTO带1字节结构版本，
+ *   字段增减时提高版本号，读取时按写入时的版本解析
+ * 
+ * 只支持下列类型：null、Boolean、Integer、Long、Double、String、BigDecimal、Date、
+ * List、Map以及已注册的DTO；遇到其他类型抛出UnsupportedTypeException，由调用方改用JSON
+ */
+public final class CompactValueCodec {
+    
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int DOUBLE = 5;
+    private static final int STRING = 6;
+    private static final int STRING_REF = 7;
+    private static final int DECIMAL = 8;
+    private static final int BIG_DECIMAL = 9;
+    private static final int DATE = 10;
+    private static final int LIST = 11;
+    private static final int MAP = 12;
+    private static final int OBJECT = 13;
+    
+    /**
+     * 已注册的DTO，按类型号索引；类型号一经使用不能改为其他类型
+     */
+    private static final DtoCodec<?>[] CODECS_BY_ID = new DtoCodec<?>[16];
+    
+    private static final Map<Class<?>, DtoCodec<?>> CODECS_BY_TYPE = new HashMap<>();
+    
+    static {
+        register(new TrendDataCodec());
+        register(new OverviewCodec());
+        register(new InsuranceGroupStatCodec());
+        register(new EquipmentUsageStatCodec());
+    }
+    
+    private CompactValueCodec() {
+    }
+    
+    private static void register(DtoCodec<?> codec) {
+        if (CODECS_BY_ID[codec.typeId()] != null) {
+            throw new IllegalStateException("DTO类型号重复: " + codec.typeId());
+        }
+        CODECS_BY_ID[codec.typeId()] = codec;
+        CODECS_BY_TYPE.put(codec.type(), codec);
+    }
+    
+    public static byte[] encode(Object value) {
+        Writer writer = new Writer();
+        writer.writeValue(value);
+        return writer.toByteArray();
+    }
+    
+    public static Object decode(byte[] bytes, int offset) {
+        Reader reader = new Reader(bytes, offset);
+        Object value = reader.readValue();
+        if (reader.pos != bytes.length) {
+            throw new IllegalArgumentException("缓存值末尾有多余字节");
+        }
+        return value;
+    }
+    
+    /**
+     * 值中包含不支持的类型
+     */
+    public static class UnsupportedTypeException extends RuntimeException {
+        
+        public UnsupportedTypeException(Class<?> type) {
+            super("不支持二进制编码的类型: " + type.getName());
+        }
+    }
+    
+    /**
+     * 单个DTO的字段编码
+     * 
+     * 字段按固定顺序逐个写入（每个字段仍带类型标记，可为null）；
+     * 新增字段时追加到末尾并提高version，read中按version判断是否有该字段
+     */
+    interface DtoCodec<T> {
+        
+        int typeId();
+        
+        int version();
+        
+        Class<T> type();
+        
+        void write(T value, Writer out);
+        
+        T read(Reader in, int version);
+    }
+    
+    /**
+     * 编码缓冲区
+     */
+    static final class Writer {
+        
+        private byte[] buf = new byte[256];
+        
+        private int pos;
+        
+        private Map<String, Integer> strings;
+        
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void writeValue(Object value) {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                writeByte(INT);
+                writeVarLong(zigzag((Integer) value));
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeVarLong(zigzag((Long) value));
+            } else if (value instanceof BigDecimal) {
+                writeDecimal((BigDecimal) value);
+            } else if (value instanceof Double) {
+                writeByte(DOUBLE);
+                writeFixedLong(Double.doubleToRawLongBits((Double) value));
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value.getClass() == Date.class) {
+                writeByte(DATE);
+                writeVarLong(zigzag(((Date) value).getTime()));
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                writeByte(LIST);
+                writeVarLong(list.size());
+                for (Object element : list) {
+                    writeValue(element);
+                }
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(MAP);
+                writeVarLong(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else {
+                DtoCodec codec = CODECS_BY_TYPE.get(value.getClass());
+                if (codec == null) {
+                    throw new UnsupportedTypeException(value.getClass());
+                }
+                writeByte(OBJECT);
+                writeByte(codec.typeId());
+                writeByte(codec.version());
+                codec.write(value, this);
+            }
+        }
+        
+        private void writeString(String value) {
+            if (strings == null) {
+                strings = new HashMap<>();
+            }
+            Integer ref = strings.get(value);
+            if (ref != null) {
+                writeByte(STRING_REF);
+                writeVarLong(ref);
+                return;
+            }
+            strings.put(value, strings.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeByte(STRING);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+        
+        private void writeDecimal(BigDecimal value) {
+            BigInteger unscaled = value.unscaledValue();
+            if (unscaled.bitLength() < 64) {
+                writeByte(DECIMAL);
+                writeVarLong(zigzag(value.scale()));
+                writeVarLong(zigzag(unscaled.longValue()));
+            } else {
+                byte[] bytes = unscaled.toByteArray();
+                writeByte(BIG_DECIMAL);
+                writeVarLong(zigzag(value.scale()));
+                writeVarLong(bytes.length);
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, buf, pos, bytes.length);
+                pos += bytes.length;
+            }
+        }
+        
+        private void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+        
+        private void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+        
+        private void writeFixedLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+        
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+        
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+        
+        private static long zigzag(long v) {
+            return (v << 1) ^ (v >> 63);
+        }
+    }
+    
+    /**
+     * 解码游标
+     */
+    static final class Reader {
+        
+        private final byte[] buf;
+        
+        private int pos;
+        
+        private List<String> strings;
+        
+        Reader(byte[] buf, int offset) {
+            this.buf = buf;
+            this.pos = offset;
+        }
+        
+        Object readValue() {
+            int tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case INT:
+                    return (int) unzigzag(readVarLong());
+                case LONG:
+                    return unzigzag(readVarLong());
+                case DOUBLE:
+                    return Double.longBitsToDouble(readFixedLong());
+                case STRING:
+                    return readString();
+                case STRING_REF:
+                    long ref = readVarLong();
+                    if (strings == null || ref >= strings.size()) {
+                        throw new IllegalArgumentException("字符串引用不存在: " + ref);
+                    }
+                    return strings.get((int) ref);
+                case DECIMAL:
+                    int scale = (int) unzigzag(readVarLong());
+                    return BigDecimal.valueOf(unzigzag(readVarLong()), scale);
+                case BIG_DECIMAL:
+                    int bigScale = (int) unzigzag(readVarLong());
+                    return new BigDecimal(new BigInteger(readBytes((int) readVarLong())), bigScale);
+                case DATE:
+                    return new Date(unzigzag(readVarLong()));
+                case LIST:
+                    int size = readCount();
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                case MAP:
+                    int entries = readCount();
+                    Map<Object, Object> map = new LinkedHashMap<>(entries * 4 / 3 + 1);
+                    for (int i = 0; i < entries; i++) {
+                        Object key = readValue();
+                        map.put(key, readValue());
+                    }
+                    return map;
+                case OBJECT:
+                    int typeId = readByte();
+                    int version = readByte();
+                    DtoCodec<?> codec = typeId < CODECS_BY_ID.length ? CODECS_BY_ID[typeId] : null;
+                    if (codec == null || version > codec.version()) {
+                        throw new IllegalArgumentException("无法识别的DTO类型或版本: " + typeId + "/" + version);
+                    }
+                    return codec.read(this, version);
+                default:
+                    throw new IllegalArgumentException("无法识别的类型标记: " + tag);
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        <T> T read(Class<T> type) {
+            Object value = readValue();
+            if (value != null && !type.isInstance(value)) {
+                throw new IllegalArgumentException("字段类型不匹配，应为" + type.getSimpleName()
+                    + "，实际为" + value.getClass().getSimpleName());
+            }
+            return (T) value;
+        }
+        
+        private String readString() {
+            int length = (int) readVarLong();
+            checkAvailable(length);
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            if (strings == null) {
+                strings = new ArrayList<>();
+            }
+            strings.add(value);
+            return value;
+        }
+        
+        private byte[] readBytes(int length) {
+            checkAvailable(length);
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+        
+        private int readByte() {
+            checkAvailable(1);
+            return buf[pos++] & 0xFF;
+        }
+        
+        private long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("变长整数过长");
+        }
+        
+        /**
+         * 列表、Map的元素个数；每个元素至少占1字节，超过剩余字节数的是损坏数据，不按其分配内存
+         */
+        private int readCount() {
+            long count = readVarLong();
+            if (count < 0 || count > buf.length - pos) {
+                throw new IllegalArgumentException("元素个数不正确: " + count);
+            }
+            return (int) count;
+        }
+        
+        private long readFixedLong() {
+            checkAvailable(8);
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+        
+        private void checkAvailable(int length) {
+            if (length < 0 || length > buf.length - pos) {
+                throw new IllegalArgumentException("缓存值长度不足");
+            }
+        }
+        
+        private static long unzigzag(long v) {
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+    
+    private static final class TrendDataCodec implements DtoCodec<TrendDataDTO> {
+        
+        @Override
+        public int typeId() {
+            return 1;
+        }
+        
+        @Override
+        public int version() {
+            return 1;
+        }
+        
+        @Override
+        public Class<TrendDataDTO> type() {
+            return TrendDataDTO.class;
+        }
+        
+        @Override
+        public void write(TrendDataDTO value, Writer out) {
+            out.writeValue(value.getDate());
+            out.writeValue(value.getCount());
+            out.writeValue(value.getAmount());
+        }
+        
+        @Override
+        public TrendDataDTO read(Reader in, int version) {
+            TrendDataDTO dto = new TrendDataDTO();
+            dto.setDate(in.read(Date.class));
+            dto.setCount(in.read(Integer.class));
+            dto.setAmount(in.read(Double.class));
+            return dto;
+        }
+    }
+    
+    private static final class OverviewCodec implements DtoCodec<OverviewDTO> {
+        
+        @Override
+        public int typeId() {
+            return 2;
+        }
+        
+        @Override
+        public int version() {
+            return 1;
+        }
+        
+        @Override
+        public Class<OverviewDTO> type() {
+            return OverviewDTO.class;
+        }
+        
+        @Override
+        public void write(OverviewDTO value, Writer out) {
+            out.writeValue(value.getTotalPatients());
+            out.writeValue(value.getTodayVisits());
+            out.writeValue(value.getDepartmentCount());
+            out.writeValue(value.getTotalVisits());
+        }
+        
+        @Override
+        public OverviewDTO read(Reader in, int version) {
+            OverviewDTO dto = new OverviewDTO();
+            dto.setTotalPatients(in.read(Long.class));
+            dto.setTodayVisits(in.read(Long.class));
+            dto.setDepartmentCount(in.read(Long.class));
+            dto.setTotalVisits(in.read(Long.class));
+            return dto;
+        }
+    }
+    
+    private static final class InsuranceGroupStatCodec implements DtoCodec<InsuranceGroupStatDTO> {
+        
+        @Override
+        public int typeId() {
+            return 3;
+        }
+        
+        @Override
+        public int version() {
+            return 1;
+        }
+        
+        @Override
+        public Class<InsuranceGroupStatDTO> type() {
+            return InsuranceGroupStatDTO.class;
+        }
+        
+        @Override
+        public void write(InsuranceGroupStatDTO value, Writer out) {
+            out.writeValue(value.getInsuranceType());
+            out.writeValue(value.getDrgGroup());
+            out.writeValue(value.getSettlementCount());
+            out.writeValue(value.getTotalCost());
+            out.writeValue(value.getInsurancePay());
+            out.writeValue(value.getPersonalPay());
+        }
+        
+        @Override
+        public InsuranceGroupStatDTO read(Reader in, int version) {
+            InsuranceGroupStatDTO dto = new InsuranceGroupStatDTO();
+            dto.setInsuranceType(in.read(String.class));
+            dto.setDrgGroup(in.read(String.class));
+            dto.setSettlementCount(in.read(Long.class));
+            dto.setTotalCost(in.read(BigDecimal.class));
+            dto.setInsurancePay(in.read(BigDecimal.class));
+            dto.setPersonalPay(in.read(BigDecimal.class));
+            return dto;
+        }
+    }
+    
+    private static final class EquipmentUsageStatCodec implements DtoCodec<EquipmentUsageStatDTO> {
+        
+        @Override
+        public int typeId() {
+            return 4;
+        }
+        
+        @Override
+        public int version() {
+            return 1;
+        }
+        
+        @Override
+        public Class<EquipmentUsageStatDTO> type() {
+            return EquipmentUsageStatDTO.class;
+        }
+        
+        @Override
+        public void write(EquipmentUsageStatDTO value, Writer out) {
+            out.writeValue(value.getEquipmentId());
+            out.writeValue(value.getEquipmentName());
+            out.writeValue(value.getDepartment());
+            out.writeValue(value.getFirstDate());
+            out.writeValue(value.getUsageHours());
+            out.writeValue(value.getUsageCount());
+        }
+        
+        @Override
+        public EquipmentUsageStatDTO read(Reader in, int version) {
+            EquipmentUsageStatDTO dto = new EquipmentUsageStatDTO();
+            dto.setEquipmentId(in.read(String.class));
+            dto.setEquipmentName(in.read(String.class));
+            dto.setDepartment(in.read(String.class));
+            dto.setFirstDate(in.read(Date.class));
+            dto.setUsageHours(in.read(BigDecimal.class));
+            dto.setUsageCount(in.read(Long.class));
+            return dto;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.medical.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medical.common.Result;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 已编码响应缓存（统计接口的条件GET）
+ * 
+ * 每个key（接口 + 参数）缓存一份Result JSON字节、可选的gzip字节和ETag：
+ * 1. 在ttl-ms内：请求带的If-None-Match与ETag一致时直接返回304，否则直接写出缓存的字节，
+ *    不调用Service、不做JSON序列化
+ * 2. 过期后由一个线程重新计算（同一key的并发请求等待同一结果，最多LOAD_WAIT_MILLIS），
+ *    数据的哈希不变时沿用原字节和ETag，客户端仍然得到304
+ * 3. 客户端支持gzip且响应超过gzip-min-bytes时写出预先压缩的字节
+ * 
+ * ETag默认由data计算，不含Result中的timestamp；调用方可以指定只用data的一部分计算ETag
+ * （如排除耗时字段），也可以指定哪些结果不缓存（如部分分区超时的仪表盘）
+ */
+@Component
+public class EncodedResponseCache {
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    /**
+     * 编码结果的有效时间（毫秒），0表示每次都重新计算（仍可返回304）
+     */
+    @Value("${statistics.response.ttl-ms:5000}")
+    private long ttlMillis;
+    
+    /**
+     * 超过该字节数时预先gzip压缩
+     */
+    @Value("${statistics.response.gzip-min-bytes:1024}")
+    private int gzipMinBytes;
+    
+    @Value("${statistics.response.max-entries:1000}")
+    private int maxEntries;
+    
+    /**
+     * 过期条目保留的时间，用于重新计算后比较哈希
+     */
+    private static final long RETAIN_MILLIS = 10 * 60 * 1000L;
+    
+    /**
+     * 等待其他线程重新计算同一key的最长时间
+     */
+    private static final long LOAD_WAIT_MILLIS = 30_000L;
+    
+    private LocalCache<String, EncodedResponse> entries;
+    
+    private final ConcurrentHashMap<String, CompletableFuture<EncodedResponse>> inFlight = new ConcurrentHashMap<>();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder recomputes = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder uncached = new LongAdder();
+    private final LongAdder gzipResponses = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        entries = new LocalCache<>(maxEntries);
+    }
+    
+    /**
+     * 返回key对应的响应：304、缓存的字节，或调用loader重新计算后编码
+     * 
+     * @param loader 计算data，抛出的异常原样传给调用方
+     */
+    public ResponseEntity<byte[]> respond(String key, HttpServletRequest request, Supplier<?> loader) {
+        return respond(key, request, loader, data -> data, data -> true);
+    }
+    
+    /**
+     * 同respond(key, request, loader)
+     * 
+     * @param etagSource 从data中取参与ETag计算的部分，返回data本身时哈希不变可沿用原字节
+     * @param cacheable  返回false的结果不在ttl-ms内复用，下次请求重新计算（仍保留用于比较ETag）
+     */
+    public <T> ResponseEntity<byte[]> respond(String key, HttpServletRequest request, Supplier<T> loader,
+                                              Function<? super T, ?> etagSource, Predicate<? super T> cacheable) {
+        EncodedResponse response = entries.get(key);
+        if (response != null && System.currentTimeMillis() < response.freshUntil) {
+            hits.increment();
+        } else {
+            EncodedResponse previous = response;
+            response = refresh(key, () -> {
+                T data = loader.get();
+                return encode(previous, data, etagSource.apply(data), cacheable.test(data));
+            });
+        }
+        
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), response.etag)) {
+            notModified.increment();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(response.etag)
+                .header(HttpHeaders.CACHE_CONTROL, "private, no-cache")
+                .build();
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .eTag(response.etag)
+            .header(HttpHeaders.CACHE_CONTROL, "private, no-cache")
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        byte[] body = response.json;
+        if (response.gzip != null && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            body = response.gzip;
+            gzipResponses.increment();
+        }
+        bytesSent.add(body.length);
+        return builder.body(body);
+    }
+    
+    /**
+     * 清除全部编码结果（汇总重建、副本重新加载等数据整体变化后调用）
+     */
+    public void clear() {
+        entries.clear();
+    }
+    
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMillis", ttlMillis);
+        stats.put("hits", hits.sum());
+        stats.put("notModified", notModified.sum());
+        stats.put("recomputes", recomputes.sum());
+        stats.put("unchanged", unchanged.sum());
+        stats.put("uncached", uncached.sum());
+        stats.put("gzipResponses", gzipResponses.sum());
+        stats.put("bytesSent", bytesSent.sum());
+        return stats;
+    }
+    
+    private EncodedResponse refresh(String key, Supplier<EncodedResponse> loader) {
+        CompletableFuture<EncodedResponse> future = new CompletableFuture<>();
+        CompletableFuture<EncodedResponse> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.get(LOAD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new CompletionException(e.getCause());
+            } catch (TimeoutException e) {
+                throw new RuntimeException("等待响应计算超时: " + key);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待响应计算被中断: " + key);
+            }
+        }
+        try {
+            EncodedResponse response = loader.get();
+            entries.put(key, response, Math.max(ttlMillis, 0) + RETAIN_MILLIS);
+            future.complete(response);
+            return response;
+        } catch (Throwable e) {
+            // Error也要结束future，否则等待同一key的请求线程永远阻塞
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+    
+    private EncodedResponse encode(EncodedResponse previous, Object data, Object etagContent, boolean cacheable) {
+        recomputes.increment();
+        if (!cacheable) {
+            uncached.increment();
+        }
+        long freshUntil = cacheable ? System.currentTimeMillis() + ttlMillis : 0;
+        try {
+            String etag = etag(objectMapper.writeValueAsBytes(etagContent));
+            // 只用data的一部分计算ETag时，其余字段（如耗时）可能变了，不能沿用原字节
+            if (etagContent == data && previous != null && previous.etag.equals(etag)) {
+                unchanged.increment();
+                return new EncodedResponse(etag, previous.json, previous.gzip, freshUntil);
+            }
+            byte[] json = objectMapper.writeValueAsBytes(Result.success(data));
+            byte[] gzip = json.length >= gzipMinBytes ? gzip(json) : null;
+            return new EncodedResponse(etag, json, gzip != null && gzip.length < json.length ? gzip : null, freshUntil);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("响应序列化失败: " + e.getMessage(), e);
+        }
+    }
+    
+    private static String etag(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            // 取前16字节足以区分内容
+            byte[] head = new byte[16];
+            System.arraycopy(digest, 0, head, 0, head.length);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(head) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * If-None-Match可能带多个ETag、弱ETag前缀W/或*
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] parts = candidate.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].trim().replace(" ", "").equals("q=0");
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 一份已编码的响应
+     */
+    private static final class EncodedResponse {
+        
+        private final String etag;
+        
+        private final byte[] json;
+        
+        private final byte[] gzip;
+        
+        private final long freshUntil;
+        
+        EncodedResponse(String etag, byte[] json, byte[] gzip, long freshUntil) {
+            this.etag = etag;
+            this.json = json;
+            this.gzip = gzip;
+            this.freshUntil = freshUntil;
+        }
+    }
+}
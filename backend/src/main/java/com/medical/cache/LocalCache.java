@@ -0,0 +1,86 @@
+package com.medical.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内有界缓存（L1）
+ * 
+ * 基于访问顺序的LinkedHashMap实现LRU：超过容量时淘汰最久未访问的条目，
+ * 每个条目带过期时间，读到过期条目时当作未命中并移除
+ */
+public class LocalCache<K, V> {
+    
+    private final int maxSize;
+    
+    private final LinkedHashMap<K, Entry<V>> map;
+    
+    public LocalCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > LocalCache.this.maxSize;
+            }
+        };
+    }
+    
+    /**
+     * 读取缓存，未命中或已过期返回null
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            map.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+    
+    /**
+     * 写入缓存
+     * 
+     * @param ttlMillis 存活时间（毫秒）
+     */
+    public void put(K key, V value, long ttlMillis) {
+        putUntil(key, value, System.currentTimeMillis() + ttlMillis);
+    }
+    
+    /**
+     * 写入缓存，指定绝对过期时间（毫秒时间戳）
+     */
+    public synchronized void putUntil(K key, V value, long expireAt) {
+        map.put(key, new Entry<>(value, expireAt));
+    }
+    
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+    
+    public synchronized void clear() {
+        map.clear();
+    }
+    
+    public synchronized int size() {
+        return map.size();
+    }
+    
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    private static final class Entry<V> {
+        private final V value;
+        private final long expireAt;
+        
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.medical.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 两级缓存：进程内L1（LocalCache） + Redis L2
+ * 
+ * 读取顺序：L1 → L2 → loader（查数据库）
+ * - 同一个key同一时刻只有一个线程执行加载，其他线程等待同一结果（最多LOAD_WAIT_MILLIS），避免缓存击穿
+ * - L1、L2的过期时间都加随机抖动，避免大量key同时过期
+ * - Redis不可用时自动跳过L2一段时间，只用L1 + 数据库
+ * - 记录命中/未命中/加载耗时，便于评估容量和过期时间
+ */
+@Slf4j
+public class TwoLevelCache {
+    
+    /**
+     * Redis出错后跳过L2的时间
+     */
+    private static final long REDIS_RETRY_INTERVAL_MILLIS = 30_000L;
+    
+    /**
+     * 等待其他线程加载同一key的最长时间，超时后抛出异常而不是一直阻塞请求线程
+     */
+    private static final long LOAD_WAIT_MILLIS = 30_000L;
+    
+    private final String name;
+    
+    private final LocalCache<String, Object> local;
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    
+    private final long l1TtlMillis;
+    
+    private final long l2TtlMillis;
+    
+    private final double jitterRatio;
+    
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    
+    private volatile long redisRetryAt;
+    
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalescedWaits = new LongAdder();
+    private final LongAdder loadSuccess = new LongAdder();
+    private final LongAdder loadFailure = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private final LongAdder redisErrors = new LongAdder();
+    
+    public TwoLevelCache(String name, int l1MaxSize, long l1TtlMillis, long l2TtlMillis,
+                         double jitterRatio, RedisTemplate<String, Object> redisTemplate) {
+        this.name = name;
+        this.local = new LocalCache<>(l1MaxSize);
+        this.l1TtlMillis = l1TtlMillis;
+        this.l2TtlMillis = l2TtlMillis;
+        this.jitterRatio = Math.max(0, Math.min(jitterRatio, 0.5));
+        this.redisTemplate = redisTemplate;
+    }
+    
+    /**
+     * 读取缓存，未命中时调用loader加载并回填两级缓存
+     * loader返回null时不缓存
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        Object value = local.get(key);
+        if (value != null) {
+            l1Hits.increment();
+            return (T) value;
+        }
+        
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            // 其他线程正在加载同一个key，等待其结果
+            coalescedWaits.increment();
+            return (T) await(key, existing);
+        }
+        
+        try {
+            // 成为加载者后再查一次L1：上一个加载者可能刚刚完成
+            value = local.get(key);
+            if (value != null) {
+                l1Hits.increment();
+                future.complete(value);
+                return (T) value;
+            }
+            value = getFromRedis(key);
+            if (value != null) {
+                l2Hits.increment();
+                local.put(key, value, jitter(l1TtlMillis));
+            } else {
+                misses.increment();
+                value = load(key, loader);
+            }
+            future.complete(value);
+            return (T) value;
+        } catch (Throwable e) {
+            // Error（如OutOfMemoryError）也要结束future，否则等待同一key的线程永远阻塞
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+    
+    /**
+     * 删除指定key（L1和L2）
+     */
+    public void invalidate(String key) {
+        local.remove(key);
+        if (redisAvailable()) {
+            try {
+                redisTemplate.delete(redisKey(key));
+            } catch (Exception e) {
+                onRedisError("删除", e);
+            }
+        }
+    }
+    
+    /**
+     * 清空本机L1（L2按过期时间自然失效）
+     */
+    public void clearLocal() {
+        local.clear();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * 统计信息快照
+     */
+    public Map<String, Object> stats() {
+        long hitsL1 = l1Hits.sum();
+        long hitsL2 = l2Hits.sum();
+        long miss = misses.sum();
+        long loads = loadSuccess.sum() + loadFailure.sum();
+        long requests = hitsL1 + hitsL2 + miss + coalescedWaits.sum();
+        
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("l1Size", local.size());
+        stats.put("l1MaxSize", local.getMaxSize());
+        stats.put("l1TtlMillis", l1TtlMillis);
+        stats.put("l2TtlMillis", l2TtlMillis);
+        stats.put("requests", requests);
+        stats.put("l1Hits", hitsL1);
+        stats.put("l2Hits", hitsL2);
+        stats.put("misses", miss);
+        stats.put("coalescedWaits", coalescedWaits.sum());
+        stats.put("hitRate", requests == 0 ? 0.0 : (double) (requests - miss) / requests);
+        stats.put("loadSuccess", loadSuccess.sum());
+        stats.put("loadFailure", loadFailure.sum());
+        stats.put("avgLoadMillis", loads == 0 ? 0.0 : totalLoadNanos.sum() / 1_000_000.0 / loads);
+        stats.put("redisErrors", redisErrors.sum());
+        return stats;
+    }
+    
+    private Object load(String key, Supplier<?> loader) {
+        long start = System.nanoTime();
+        Object value;
+        try {
+            value = loader.get();
+            loadSuccess.increment();
+        } catch (Throwable e) {
+            loadFailure.increment();
+            throw e;
+        } finally {
+            totalLoadNanos.add(System.nanoTime() - start);
+        }
+        if (value != null) {
+            local.put(key, value, jitter(l1TtlMillis));
+            putToRedis(key, value);
+        }
+        return value;
+    }
+    
+    /**
+     * 等待其他线程的加载结果，加载抛出的RuntimeException原样抛出
+     */
+    private Object await(String key, CompletableFuture<Object> future) {
+        try {
+            return future.get(LOAD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("等待缓存加载超时 [cache=" + name + ", key=" + key + "]");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待缓存加载被中断 [cache=" + name + ", key=" + key + "]");
+        }
+    }
+    
+    private Object getFromRedis(String key) {
+        if (!redisAvailable()) {
+            return null;
+        }
+        try {
+            return redisTemplate.opsForValue().get(redisKey(key));
+        } catch (Exception e) {
+            onRedisError("读取", e);
+            return null;
+        }
+    }
+    
+    private void putToRedis(String key, Object value) {
+        if (!redisAvailable()) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(redisKey(key), value, jitter(l2TtlMillis), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            onRedisError("写入", e);
+        }
+    }
+    
+    private boolean redisAvailable() {
+        return redisTemplate != null && l2TtlMillis > 0 && System.currentTimeMillis() >= redisRetryAt;
+    }
+    
+    private void onRedisError(String action, Exception e) {
+        redisErrors.increment();
+        redisRetryAt = System.currentTimeMillis() + REDIS_RETRY_INTERVAL_MILLIS;
+        log.warn("Redis缓存{}失败，{}秒内跳过L2 [cache={}]: {}", action, REDIS_RETRY_INTERVAL_MILLIS / 1000, name, e.getMessage());
+    }
+    
+    private String redisKey(String key) {
+        return "statistics:" + name + ":" + key;
+    }
+    
+    /**
+     * 在ttl基础上加 ±jitterRatio 的随机抖动
+     */
+    private long jitter(long ttlMillis) {
+        if (jitterRatio <= 0 || ttlMillis <= 0) {
+            return ttlMillis;
+        }
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-jitterRatio, jitterRatio);
+        return Math.max(1, (long) (ttlMillis * factor));
+    }
+}
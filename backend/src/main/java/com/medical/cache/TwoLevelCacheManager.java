@@ -0,0 +1,51 @@
+package com.medical.cache;
+
+import com.medical.config.StatisticsCacheProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 两级缓存管理器
+ * 按名称创建并持有TwoLevelCache，配置来自StatisticsCacheProperties
+ */
+@Component
+public class TwoLevelCacheManager {
+    
+    @Autowired
+    private StatisticsCacheProperties properties;
+    
+    @Autowired(required = false)  // Redis不可用时，redisTemplate可以为null，只使用L1
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    private final ConcurrentHashMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+    
+    /**
+     * 获取（不存在则创建）指定名称的缓存
+     */
+    public TwoLevelCache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+    
+    /**
+     * 所有缓存的统计信息，按名称排序
+     */
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        caches.forEach((name, cache) -> result.put(name, cache.stats()));
+        return result;
+    }
+    
+    private TwoLevelCache createCache(String name) {
+        StatisticsCacheProperties.Spec spec = properties.getSpecs().get(name);
+        int l1MaxSize = spec != null && spec.getL1MaxSize() != null ? spec.getL1MaxSize() : properties.getL1MaxSize();
+        long l1Ttl = spec != null && spec.getL1TtlSeconds() != null ? spec.getL1TtlSeconds() : properties.getL1TtlSeconds();
+        long l2Ttl = spec != null && spec.getL2TtlSeconds() != null ? spec.getL2TtlSeconds() : properties.getL2TtlSeconds();
+        return new TwoLevelCache(name, l1MaxSize, l1Ttl * 1000, l2Ttl * 1000,
+            properties.getJitterRatio(), redisTemplate);
+    }
+}
@@ -1,7 +1,9 @@
 package com.medical.common;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.servlet.NoHandlerFoundException;
@@ -25,6 +27,17 @@ public class GlobalExceptionHandler {
         return Result.error(HttpStatus.NOT_FOUND.value(), "请求路径不存在: " + request.getRequestURI() + "，请查看API文档: http://localhost:8080/swagger-ui/index.html");
     }
     
+    /**
+     * 处理请求过多：返回HTTP 429并带Retry-After
+     */
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<Result<?>> handleTooManyRequests(TooManyRequestsException e) {
+        log.warn("请求过多: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(Result.error(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage()));
+    }
+    
     /**
      * 处理所有异常
      */
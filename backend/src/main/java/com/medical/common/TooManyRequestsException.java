@@ -0,0 +1,24 @@
+package com.medical.common;
+
+/**
+ * 请求过多异常
+ * 服务端资源已满（如密码校验线程池排队已满）时抛出，由GlobalExceptionHandler转换为HTTP 429
+ */
+public class TooManyRequestsException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 建议客户端等待的秒数（Retry-After）
+     */
+    private final int retryAfterSeconds;
+    
+    public TooManyRequestsException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,14 +1,12 @@
 package com.medical.config;
 
+import com.medical.util.DiagnosticLog;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
 
-import java.io.FileWriter;
-import java.time.Instant;
-
 /**
  * 跨域配置
  * 允许前端（Vue）跨域访问后端API
@@ -17,24 +15,7 @@ import java.time.Instant;
 public class CorsConfig {
     
     private static void logDebug(String location, String message, Object data, String hypothesisId) {
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"%s\",\"message\":\"%s\",\"data\":%s,\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"%s\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                Instant.now().toEpochMilli(),
-                location,
-                message,
-                data != null ? "\"" + data.toString().replace("\"", "\\\"") + "\"" : "null",
-                hypothesisId
-            );
-            try (FileWriter writer = new FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (Exception e) {
-            // 忽略日志写入错误
-        }
+        DiagnosticLog.event(location, message, "data", data, "hypothesisId", hypothesisId);
     }
     
     @Bean
@@ -1,5 +1,6 @@
 package com.medical.config;
 
+import com.medical.util.DiagnosticLog;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
@@ -28,20 +29,7 @@ public class DataSourceConfig {
     @PostConstruct
     public void checkDataSource() {
         // #region agent log
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"DataSourceConfig.java:30\",\"message\":\"Checking database connection\",\"data\":{\"url\":\"%s\",\"username\":\"%s\"},\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"C\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                System.currentTimeMillis(),
-                url != null ? url.replace("\"", "\\\"") : "null",
-                username != null ? username : "null"
-            );
-            try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (Exception e) {}
+        DiagnosticLog.event("DataSourceConfig.checkDataSource", "Checking database connection", "url", url, "username", username);
         // #endregion
         
         try {
@@ -55,18 +43,7 @@ public class DataSourceConfig {
             log.info("数据库连接成功！");
             
             // #region agent log
-            try {
-                String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-                String logEntry = String.format(
-                    "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"DataSourceConfig.java:45\",\"message\":\"Database connection successful\",\"data\":{\"status\":\"success\"},\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"C\"}\n",
-                    System.currentTimeMillis(),
-                    Integer.toHexString((int)(Math.random() * 1000000)),
-                    System.currentTimeMillis()
-                );
-                try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                    writer.write(logEntry);
-                }
-            } catch (Exception e) {}
+            DiagnosticLog.event("DataSourceConfig.checkDataSource", "Database connection successful");
             // #endregion
             
         } catch (Exception e) {
@@ -81,19 +58,7 @@ public class DataSourceConfig {
             log.error("==========================================");
             
             // #region agent log
-            try {
-                String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-                String logEntry = String.format(
-                    "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"DataSourceConfig.java:60\",\"message\":\"Database connection failed\",\"data\":{\"error\":\"%s\"},\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"C\"}\n",
-                    System.currentTimeMillis(),
-                    Integer.toHexString((int)(Math.random() * 1000000)),
-                    System.currentTimeMillis(),
-                    e.getMessage() != null ? e.getMessage().replace("\"", "\\\"") : "unknown"
-                );
-                try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                    writer.write(logEntry);
-                }
-            } catch (Exception ex) {}
+            DiagnosticLog.event("DataSourceConfig.checkDataSource", "Database connection failed", "error", e.getMessage());
             // #endregion
             
             // 不抛出异常，让应用继续启动（但数据库操作会失败）
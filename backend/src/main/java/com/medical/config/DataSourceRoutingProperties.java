@@ -0,0 +1,73 @@
+package com.medical.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离配置
+ * 对应application.yml中的datasource.routing，replicas下每个从库单独配置连接池大小
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "datasource.routing")
+public class DataSourceRoutingProperties {
+    
+    /**
+     * 是否开启读写分离；关闭时只使用spring.datasource主库
+     */
+    private boolean enabled = false;
+    
+    /**
+     * 从库健康检查间隔（毫秒）
+     */
+    private long healthCheckIntervalMs = 5000;
+    
+    /**
+     * 健康检查取连接、执行校验的超时时间（毫秒）
+     */
+    private long healthCheckTimeoutMs = 2000;
+    
+    /**
+     * 复制延迟超过该秒数的从库不参与路由，0表示不检查（需要REPLICATION CLIENT权限）
+     */
+    private long maxLagSeconds = 0;
+    
+    /**
+     * 只读从库
+     */
+    private List<Replica> replicas = new ArrayList<>();
+    
+    @Data
+    public static class Replica {
+        
+        /**
+         * 名称，用于日志和监控
+         */
+        private String name;
+        
+        private String url;
+        
+        /**
+         * 为空时与主库相同
+         */
+        private String username;
+        
+        /**
+         * 为空时与主库相同
+         */
+        private String password;
+        
+        private int maxActive = 20;
+        
+        private int minIdle = 0;
+        
+        /**
+         * 取连接最长等待时间（毫秒），超时的查询改走主库
+         */
+        private long maxWait = 3000;
+    }
+}
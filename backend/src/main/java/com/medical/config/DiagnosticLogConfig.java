@@ -0,0 +1,47 @@
+package com.medical.config;
+
+import com.medical.util.DiagnosticLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+
+/**
+ * 诊断事件日志配置
+ * 启动DiagnosticLog的后台写入线程，应用关闭时写完剩余事件
+ */
+@Slf4j
+@Configuration
+public class DiagnosticLogConfig {
+    
+    @Value("${diagnostic.log.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${diagnostic.log.path:logs/diagnostic.log}")
+    private String path;
+    
+    @Value("${diagnostic.log.buffer-capacity:8192}")
+    private int bufferCapacity;
+    
+    @Value("${diagnostic.log.batch-size:256}")
+    private int batchSize;
+    
+    @Value("${diagnostic.log.flush-interval-ms:200}")
+    private long flushIntervalMs;
+    
+    @PostConstruct
+    public void start() {
+        DiagnosticLog.setEnabled(enabled);
+        if (enabled) {
+            DiagnosticLog.start(Paths.get(path), bufferCapacity, batchSize, flushIntervalMs);
+        }
+    }
+    
+    @PreDestroy
+    public void stop() {
+        DiagnosticLog.stop();
+    }
+}
@@ -0,0 +1,62 @@
+package com.medical.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 设备使用率配置
+ * 对应application.yml中的equipment.utilization，available-hours下可按设备ID覆盖每日可用时长
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "equipment.utilization")
+public class EquipmentUtilizationProperties {
+    
+    /**
+     * 默认每台设备每日可用时长（小时），使用率 = 使用时长 / 可用时长
+     */
+    private double availableHoursPerDay = 12;
+    
+    /**
+     * 按设备ID覆盖的每日可用时长
+     */
+    private Map<String, Double> availableHours = new HashMap<>();
+    
+    /**
+     * 一次查询的最大天数
+     */
+    private int maxWindowDays = 3660;
+    
+    /**
+     * 默认查询最近多少天（含当天）
+     */
+    private int defaultWindowDays = 30;
+    
+    /**
+     * 增量汇总时每个事务最多处理的明细行数（按主键范围）
+     */
+    private int refreshBatchSize = 200000;
+    
+    /**
+     * 提交延迟余量（秒）：增量汇总只处理写入时间早于该秒数之前的明细，
+     * 写入事务持续超过该时长时其明细会被水位跳过，需要rebuild
+     */
+    private int commitLagSeconds = 300;
+    
+    /**
+     * 是否启用定时增量汇总
+     */
+    private boolean refreshEnabled = true;
+    
+    /**
+     * 某台设备的每日可用时长
+     */
+    public double availableHoursPerDay(String equipmentId) {
+        Double hours = equipmentId != null ? availableHours.get(equipmentId) : null;
+        return hours != null ? hours : availableHoursPerDay;
+    }
+}
@@ -0,0 +1,61 @@
+package com.medical.config;
+
+import com.medical.service.UserNearCache;
+import com.medical.service.UserService;
+import com.medical.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * JWT认证过滤器
+ * 
+ * 每个请求最多验签一次：从Authorization头取出Bearer Token，
+ * 通过JwtUtil（预构建的密钥/解析器 + 已验证Token缓存）得到Claims后写入SecurityContext，
+ * 同时放入请求属性，供后续Controller直接读取而不必再次解析；
+ * 用户不存在或已被禁用时不认证（经过用户近端缓存，其他实例禁用后最多延迟ttl-seconds）
+ */
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    
+    /**
+     * 请求属性名：已验证的Claims
+     */
+    public static final String CLAIMS_ATTRIBUTE = "com.medical.jwt.claims";
+    
+    private static final String BEARER_PREFIX = "Bearer ";
+    
+    private final JwtUtil jwtUtil;
+    
+    private final UserNearCache userNearCache;
+    
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserNearCache userNearCache) {
+        this.jwtUtil = jwtUtil;
+        this.userNearCache = userNearCache;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String header = request.getHeader("Authorization");
+        if (header != null && header.startsWith(BEARER_PREFIX)
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            Claims claims = jwtUtil.verify(header.substring(BEARER_PREFIX.length()).trim());
+            if (claims != null && UserService.isEnabled(userNearCache.findByUsername(claims.getSubject()))) {
+                UsernamePasswordAuthenticationToken authentication =
+                        new UsernamePasswordAuthenticationToken(claims.getSubject(), null, Collections.emptyList());
+                authentication.setDetails(claims.get("userId"));
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+                request.setAttribute(CLAIMS_ATTRIBUTE, claims);
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+}
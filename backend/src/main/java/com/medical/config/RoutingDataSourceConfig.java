@@ -0,0 +1,70 @@
+package com.medical.config;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.spring.boot.autoconfigure.DruidDataSourceBuilder;
+import com.medical.datasource.RoutingDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离数据源配置（datasource.routing.enabled=true时生效）
+ * 
+ * 主库仍按spring.datasource.druid创建；每个从库复制主库的连接池参数，
+ * 再使用自己的地址、账号和连接池大小。对外只暴露RoutingDataSource，
+ * MyBatis和事务管理器都使用它
+ * 
+ * 本地验证：把replicas指向另一个MySQL实例（或同一实例上的另一个库）即可
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "datasource.routing", name = "enabled", havingValue = "true")
+public class RoutingDataSourceConfig {
+    
+    @Bean(destroyMethod = "close")
+    @ConfigurationProperties("spring.datasource.druid")
+    public DruidDataSource primaryDataSource() {
+        return DruidDataSourceBuilder.create().build();
+    }
+    
+    @Bean
+    @Primary
+    public RoutingDataSource dataSource(@Qualifier("primaryDataSource") DruidDataSource primary,
+                                        DataSourceRoutingProperties properties) {
+        List<DruidDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < properties.getReplicas().size(); i++) {
+            DataSourceRoutingProperties.Replica config = properties.getReplicas().get(i);
+            if (config.getUrl() == null || config.getUrl().isEmpty()) {
+                throw new IllegalStateException("从库url不能为空: datasource.routing.replicas[" + i + "]");
+            }
+            DruidDataSource replica = primary.cloneDruidDataSource();
+            replica.setName(config.getName() != null ? config.getName() : "replica-" + (i + 1));
+            replica.setUrl(config.getUrl());
+            if (config.getUsername() != null) {
+                replica.setUsername(config.getUsername());
+            }
+            if (config.getPassword() != null) {
+                replica.setPassword(config.getPassword());
+            }
+            replica.setMaxActive(config.getMaxActive());
+            replica.setMinIdle(config.getMinIdle());
+            replica.setInitialSize(0);
+            replica.setMaxWait(config.getMaxWait());
+            replicas.add(replica);
+            log.info("读写分离：从库 {} -> {}，连接池上限 {}", replica.getName(),
+                config.getUrl().replaceAll("password=[^&]*", "password=***"), config.getMaxActive());
+        }
+        if (replicas.isEmpty()) {
+            log.warn("读写分离已开启但未配置从库，所有查询仍走主库");
+        }
+        return new RoutingDataSource(primary, replicas, properties.getHealthCheckTimeoutMs(),
+            properties.getMaxLagSeconds());
+    }
+}
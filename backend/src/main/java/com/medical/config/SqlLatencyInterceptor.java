@@ -0,0 +1,295 @@
+package com.medical.config;
+
+import com.medical.util.DiagnosticLog;
+import com.medical.util.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQL耗时统计拦截器
+ * 
+ * 按MappedStatement ID（如PatientMapper.selectAll）记录每次执行的：
+ * - 耗时直方图（微秒，p50/p95/p99/max）
+ * - 返回行数（查询为结果行数，写入为影响行数；游标查询只计打开游标的耗时）
+ * - 失败次数
+ * 记录路径无锁，只有超过慢查询阈值时才解析SQL和参数：
+ * 写入诊断日志（slow-sql事件）并保留最近若干条供接口查看；名称含password的参数以***代替
+ */
+@Slf4j
+@Component
+@Intercepts({
+    @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+    @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+    @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+    @Signature(type = Executor.class, method = "queryCursor", args = {MappedStatement.class, Object.class, RowBounds.class})
+})
+public class SqlLatencyInterceptor implements Interceptor {
+    
+    /**
+     * 慢查询日志中最多记录的参数个数（批量INSERT可能有上千个）
+     */
+    private static final int MAX_LOGGED_PARAMETERS = 50;
+    
+    private static final int MAX_PARAMETER_LENGTH = 200;
+    
+    @Value("${diagnostic.sql.latency-enabled:true}")
+    private boolean enabled;
+    
+    /**
+     * 慢查询阈值（毫秒），0表示不记录慢查询
+     */
+    @Value("${diagnostic.sql.slow-threshold-ms:500}")
+    private long slowThresholdMs;
+    
+    /**
+     * 接口中保留的最近慢查询条数
+     */
+    @Value("${diagnostic.sql.slow-log-size:100}")
+    private int slowLogSize;
+    
+    private final ConcurrentHashMap<String, StatementStats> statements = new ConcurrentHashMap<>();
+    
+    private AtomicReferenceArray<Map<String, Object>> recentSlow;
+    
+    private final AtomicLong slowSequence = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        recentSlow = new AtomicReferenceArray<>(Math.max(1, slowLogSize));
+    }
+    
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!enabled) {
+            return invocation.proceed();
+        }
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        long start = System.nanoTime();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = invocation.proceed();
+            failed = false;
+            return result;
+        } finally {
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            StatementStats stats = statements.get(ms.getId());
+            if (stats == null) {
+                stats = statements.computeIfAbsent(ms.getId(), id -> new StatementStats());
+            }
+            long rows = failed ? -1 : rowCount(result);
+            stats.record(elapsedMicros, rows, failed);
+            if (slowThresholdMs > 0 && elapsedMicros >= slowThresholdMs * 1000) {
+                stats.slow.increment();
+                logSlow(invocation, ms, elapsedMicros, rows, failed);
+            }
+        }
+    }
+    
+    /**
+     * 各语句的统计，按总耗时从高到低排序
+     * 
+     * @param limit 最多返回条数
+     */
+    public List<Map<String, Object>> stats(int limit) {
+        List<Map<String, Object>> result = new ArrayList<>(statements.size());
+        for (Map.Entry<String, StatementStats> entry : statements.entrySet()) {
+            result.add(entry.getValue().toMap(shortId(entry.getKey())));
+        }
+        result.sort(Comparator.comparingLong((Map<String, Object> m) -> (Long) m.get("totalMillis")).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+    
+    /**
+     * 最近的慢查询，最新的在前
+     */
+    public List<Map<String, Object>> recentSlowQueries() {
+        AtomicReferenceArray<Map<String, Object>> ring = recentSlow;
+        List<Map<String, Object>> result = new ArrayList<>();
+        long last = slowSequence.get();
+        for (long seq = last; seq > 0 && seq > last - ring.length(); seq--) {
+            Map<String, Object> entry = ring.get((int) ((seq - 1) % ring.length()));
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+    
+    public void reset() {
+        statements.clear();
+    }
+    
+    private void logSlow(Invocation invocation, MappedStatement ms, long elapsedMicros, long rows, boolean failed) {
+        try {
+            Object[] args = invocation.getArgs();
+            Object parameter = args[1];
+            BoundSql boundSql = args.length == 6 ? (BoundSql) args[5] : ms.getBoundSql(parameter);
+            String sql = boundSql.getSql().replaceAll("\\s+", " ").trim();
+            List<Object> parameters = boundParameters(ms.getConfiguration(), boundSql, parameter);
+            
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("statement", shortId(ms.getId()));
+            entry.put("elapsedMillis", elapsedMicros / 1000.0);
+            entry.put("rows", rows);
+            entry.put("failed", failed);
+            entry.put("sql", sql);
+            entry.put("parameters", parameters);
+            entry.put("time", System.currentTimeMillis());
+            remember(entry);
+            
+            log.warn("慢SQL {} 耗时 {} ms，行数 {}{}", shortId(ms.getId()), elapsedMicros / 1000, rows,
+                failed ? "（执行失败）" : "");
+            DiagnosticLog.event("mybatis", "slow-sql",
+                "statement", ms.getId(),
+                "elapsedMicros", elapsedMicros,
+                "rows", rows,
+                "failed", failed,
+                "sql", sql,
+                "parameters", parameters);
+        } catch (RuntimeException e) {
+            // 记录慢查询失败不能影响业务SQL的结果
+            log.debug("慢SQL记录失败: {}", e.getMessage());
+        }
+    }
+    
+    private void remember(Map<String, Object> entry) {
+        AtomicReferenceArray<Map<String, Object>> ring = recentSlow;
+        long seq = slowSequence.incrementAndGet();
+        ring.set((int) ((seq - 1) % ring.length()), entry);
+    }
+    
+    /**
+     * 按与DefaultParameterHandler相同的规则取出绑定参数
+     */
+    private static List<Object> boundParameters(Configuration configuration, BoundSql boundSql, Object parameter) {
+        List<ParameterMapping> mappings = boundSql.getParameterMappings();
+        List<Object> values = new ArrayList<>(Math.min(mappings.size(), MAX_LOGGED_PARAMETERS + 1));
+        MetaObject metaObject = null;
+        for (int i = 0; i < mappings.size(); i++) {
+            if (i == MAX_LOGGED_PARAMETERS) {
+                values.add("...共" + mappings.size() + "个参数");
+                break;
+            }
+            String property = mappings.get(i).getProperty();
+            Object value;
+            if (property.toLowerCase().contains("password")) {
+                value = "***";
+            } else if (boundSql.hasAdditionalParameter(property)) {
+                value = boundSql.getAdditionalParameter(property);
+            } else if (parameter == null) {
+                value = null;
+            } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameter.getClass())) {
+                value = parameter;
+            } else {
+                if (metaObject == null) {
+                    metaObject = configuration.newMetaObject(parameter);
+                }
+                value = metaObject.getValue(property);
+            }
+            if (value != null && !(value instanceof Number) && !(value instanceof Boolean)) {
+                String text = String.valueOf(value);
+                value = text.length() > MAX_PARAMETER_LENGTH ? text.substring(0, MAX_PARAMETER_LENGTH) + "..." : text;
+            }
+            values.add(value);
+        }
+        return values;
+    }
+    
+    private static long rowCount(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        // BATCH执行器的update返回负的占位值，不是实际行数
+        if (result instanceof Integer && (Integer) result >= 0) {
+            return (Integer) result;
+        }
+        return -1;
+    }
+    
+    /**
+     * com.medical.mapper.PatientMapper.selectAll → PatientMapper.selectAll
+     */
+    private static String shortId(String statementId) {
+        int method = statementId.lastIndexOf('.');
+        int mapper = method > 0 ? statementId.lastIndexOf('.', method - 1) : -1;
+        return statementId.substring(mapper + 1);
+    }
+    
+    /**
+     * 单个语句的统计
+     */
+    private static final class StatementStats {
+        
+        private final LatencyHistogram latency = new LatencyHistogram();
+        
+        private final LongAdder errors = new LongAdder();
+        
+        private final LongAdder slow = new LongAdder();
+        
+        private final LongAdder rows = new LongAdder();
+        
+        private final AtomicLong maxRows = new AtomicLong();
+        
+        void record(long elapsedMicros, long rowCount, boolean failed) {
+            latency.record(elapsedMicros);
+            if (failed) {
+                errors.increment();
+            }
+            if (rowCount > 0) {
+                rows.add(rowCount);
+                long current = maxRows.get();
+                while (rowCount > current && !maxRows.compareAndSet(current, rowCount)) {
+                    current = maxRows.get();
+                }
+            }
+        }
+        
+        Map<String, Object> toMap(String statement) {
+            long count = latency.getCount();
+            long[] percentiles = latency.percentiles(50, 95, 99);
+            Map<String, Object> map = new HashMap<>();
+            map.put("statement", statement);
+            map.put("count", count);
+            map.put("errors", errors.sum());
+            map.put("slow", slow.sum());
+            map.put("totalMillis", latency.getSum() / 1000);
+            map.put("avgMillis", count > 0 ? latency.getSum() / 1000.0 / count : 0.0);
+            map.put("p50Millis", percentiles[0] / 1000.0);
+            map.put("p95Millis", percentiles[1] / 1000.0);
+            map.put("p99Millis", percentiles[2] / 1000.0);
+            map.put("maxMillis", latency.getMax() / 1000.0);
+            map.put("rows", rows.sum());
+            map.put("avgRows", count > 0 ? (double) rows.sum() / count : 0.0);
+            map.put("maxRows", maxRows.get());
+            return map;
+        }
+    }
+}
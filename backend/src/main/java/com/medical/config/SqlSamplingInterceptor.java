@@ -0,0 +1,132 @@
+package com.medical.config;
+
+import com.medical.util.DiagnosticLog;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SQL采样日志拦截器
+ * 
+ * 替代MyBatis的StdOutImpl（每条SQL、每行结果都同步打印到控制台）：
+ * 按Mapper配置采样率，被采样的SQL以诊断事件的形式异步写出（语句ID、SQL、耗时、行数）
+ * 
+ * 配置示例：
+ * diagnostic.sql.default-sample-rate: 0.0
+ * diagnostic.sql.sample-rates.PatientMapper: 0.01
+ * diagnostic.sql.sample-rates[StatisticsMapper.selectOverview]: 1.0
+ */
+@Component
+@ConfigurationProperties(prefix = "diagnostic.sql")
+@Intercepts({
+    @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+    @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+    @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+    @Signature(type = Executor.class, method = "queryCursor", args = {MappedStatement.class, Object.class, RowBounds.class})
+})
+public class SqlSamplingInterceptor implements Interceptor {
+    
+    /**
+     * 默认采样率（0~1），0表示不记录
+     */
+    private double defaultSampleRate = 0.0;
+    
+    /**
+     * 按 Mapper简单类名 或 Mapper简单类名.方法名 配置的采样率
+     */
+    private Map<String, Double> sampleRates = new HashMap<>();
+    
+    /**
+     * 语句ID → 采样率，避免每次都解析语句ID
+     */
+    private final ConcurrentHashMap<String, Double> resolvedRates = new ConcurrentHashMap<>();
+    
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        double rate = resolvedRates.computeIfAbsent(ms.getId(), this::resolveRate);
+        if (rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return invocation.proceed();
+        }
+        
+        long start = System.nanoTime();
+        Object result = null;
+        Throwable error = null;
+        try {
+            result = invocation.proceed();
+            return result;
+        } catch (Throwable t) {
+            error = t;
+            throw t;
+        } finally {
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            Object parameter = invocation.getArgs()[1];
+            String sql = ms.getBoundSql(parameter).getSql().replaceAll("\\s+", " ").trim();
+            DiagnosticLog.event("mybatis", "sql",
+                "statement", ms.getId(),
+                "sql", sql,
+                "elapsedMicros", elapsedMicros,
+                "rows", rowCount(result),
+                "error", error != null ? error.getClass().getSimpleName() + ": " + error.getMessage() : null);
+        }
+    }
+    
+    public double getDefaultSampleRate() {
+        return defaultSampleRate;
+    }
+    
+    public void setDefaultSampleRate(double defaultSampleRate) {
+        this.defaultSampleRate = defaultSampleRate;
+        this.resolvedRates.clear();
+    }
+    
+    public Map<String, Double> getSampleRates() {
+        return sampleRates;
+    }
+    
+    public void setSampleRates(Map<String, Double> sampleRates) {
+        this.sampleRates = sampleRates;
+        this.resolvedRates.clear();
+    }
+    
+    private double resolveRate(String statementId) {
+        // com.medical.mapper.PatientMapper.selectAll → PatientMapper.selectAll / PatientMapper
+        String[] parts = statementId.split("\\.");
+        String method = parts[parts.length - 1];
+        String mapper = parts.length > 1 ? parts[parts.length - 2] : "";
+        Double rate = sampleRates.get(mapper + "." + method);
+        if (rate == null) {
+            rate = sampleRates.get(mapper);
+        }
+        return rate != null ? rate : defaultSampleRate;
+    }
+    
+    private static Object rowCount(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Integer) {
+            return result;
+        }
+        if (result instanceof Cursor) {
+            return "cursor";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,60 @@
+package com.medical.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 统计缓存配置
+ * 对应application.yml中的statistics.cache，specs下可按缓存名覆盖默认值
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "statistics.cache")
+public class StatisticsCacheProperties {
+    
+    /**
+     * 默认L1最大条目数
+     */
+    private int l1MaxSize = 1000;
+    
+    /**
+     * 默认L1存活时间（秒）
+     */
+    private long l1TtlSeconds = 60;
+    
+    /**
+     * 默认L2（Redis）存活时间（秒），0表示不使用Redis
+     */
+    private long l2TtlSeconds = 300;
+    
+    /**
+     * 过期时间随机抖动比例（0.1表示±10%）
+     */
+    private double jitterRatio = 0.1;
+    
+    /**
+     * Redis中缓存值的编码：binary（紧凑二进制）或json；两种格式始终都能读取
+     */
+    private String redisCodec = "binary";
+    
+    /**
+     * 二进制编码后超过该字节数时LZ4压缩，0表示不压缩
+     */
+    private int compressionThresholdBytes = 1024;
+    
+    /**
+     * 按缓存名覆盖的配置
+     */
+    private Map<String, Spec> specs = new HashMap<>();
+    
+    @Data
+    public static class Spec {
+        private Integer l1MaxSize;
+        private Long l1TtlSeconds;
+        private Long l2TtlSeconds;
+    }
+}
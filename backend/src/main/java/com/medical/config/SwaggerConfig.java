@@ -1,5 +1,6 @@
 package com.medical.config;
 
+import com.medical.util.DiagnosticLog;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -10,9 +11,6 @@ import springfox.documentation.service.ApiInfo;
 import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 
-import java.io.FileWriter;
-import java.time.Instant;
-
 /**
  * Swagger配置类
  * 配置API文档
@@ -21,24 +19,7 @@ import java.time.Instant;
 public class SwaggerConfig implements WebMvcConfigurer {
     
     private static void logDebug(String location, String message, Object data, String hypothesisId) {
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"%s\",\"message\":\"%s\",\"data\":%s,\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"%s\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                Instant.now().toEpochMilli(),
-                location,
-                message,
-                data != null ? "\"" + data.toString().replace("\"", "\\\"") + "\"" : "null",
-                hypothesisId
-            );
-            try (FileWriter writer = new FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (Exception e) {
-            // 忽略日志写入错误
-        }
+        DiagnosticLog.event(location, message, "data", data, "hypothesisId", hypothesisId);
     }
     
     @Bean
@@ -1,18 +1,22 @@
 package com.medical.controller;
 
 import com.medical.common.Result;
+import com.medical.common.TooManyRequestsException;
 import com.medical.dto.LoginRequest;
 import com.medical.dto.LoginResponse;
 import com.medical.dto.RegisterRequest;
 import com.medical.entity.User;
 import com.medical.service.UserService;
+import com.medical.util.DiagnosticLog;
 import com.medical.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
 
 /**
  * 认证控制器（登录/注册）
@@ -34,20 +38,9 @@ public class AuthController {
     @PostConstruct
     public void init() {
         // #region agent log
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"AuthController.java:init\",\"message\":\"AuthController init started\",\"data\":{\"userService\":%s,\"jwtUtil\":%s},\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"A\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                System.currentTimeMillis(),
-                userService != null ? "\"injected\"" : "\"null\"",
-                jwtUtil != null ? "\"injected\"" : "\"null\""
-            );
-            try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (Exception e) {}
+        DiagnosticLog.event("AuthController.init", "AuthController init started",
+            "userService", userService != null ? "injected" : "null",
+            "jwtUtil", jwtUtil != null ? "injected" : "null");
         // #endregion
         
         log.info("==========================================");
@@ -58,18 +51,7 @@ public class AuthController {
         log.info("==========================================");
         
         // #region agent log
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"AuthController.java:init\",\"message\":\"AuthController init completed\",\"data\":{\"status\":\"success\"},\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"A\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                System.currentTimeMillis()
-            );
-            try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (Exception e) {}
+        DiagnosticLog.event("AuthController.init", "AuthController init completed");
         // #endregion
     }
     
@@ -93,6 +75,8 @@ public class AuthController {
             response.setUserId(user.getId());
             
             return Result.success("注册成功", response);
+        } catch (TooManyRequestsException e) {
+            throw e;
         } catch (RuntimeException e) {
             log.error("注册失败: {}", e.getMessage());
             return Result.error(e.getMessage());
@@ -107,7 +91,7 @@ public class AuthController {
      * POST /api/auth/login
      */
     @PostMapping("/login")
-    public Result<LoginResponse> login(@RequestBody LoginRequest request) {
+    public Result<LoginResponse> login(@RequestBody LoginRequest request, HttpServletRequest httpRequest) {
         try {
             log.info("收到登录请求: username={}", request.getUsername());
             
@@ -119,7 +103,7 @@ public class AuthController {
                 return Result.error("密码不能为空");
             }
             
-            User user = userService.login(request);
+            User user = userService.login(request, httpRequest.getRemoteAddr());
             log.info("用户验证成功: username={}, role={}", user.getUsername(), user.getRole());
             
             // 生成Token
@@ -134,6 +118,9 @@ public class AuthController {
             response.setUserId(user.getId());
             
             return Result.success("登录成功", response);
+        } catch (TooManyRequestsException e) {
+            // 交给GlobalExceptionHandler返回HTTP 429
+            throw e;
         } catch (RuntimeException e) {
             log.error("登录失败: {}", e.getMessage(), e);
             return Result.error(e.getMessage());
@@ -154,14 +141,21 @@ public class AuthController {
                 return Result.error(401, "未授权");
             }
             
-            // 从Token中提取用户名（去掉"Bearer "前缀）
-            String actualToken = token.replace("Bearer ", "");
-            String username = jwtUtil.getUsernameFromToken(actualToken);
+            // 从Token中提取用户名（去掉"Bearer "前缀），验签结果由JwtUtil缓存
+            String actualToken = token.substring("Bearer ".length()).trim();
+            Claims claims = jwtUtil.verify(actualToken);
+            if (claims == null) {
+                return Result.error(401, "Token无效或已过期");
+            }
+            String username = claims.getSubject();
             
             User user = userService.findByUsername(username);
             if (user == null) {
                 return Result.error(404, "用户不存在");
             }
+            if (!UserService.isEnabled(user)) {
+                return Result.error(403, "用户已被禁用");
+            }
             
             // 不返回密码
             user.setPassword(null);
@@ -1,6 +1,7 @@
 package com.medical.controller;
 
 import com.medical.common.Result;
+import com.medical.util.DiagnosticLog;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -20,18 +21,7 @@ public class IndexController {
     @PostConstruct
     public void init() {
         // #region agent log
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"IndexController.java:18\",\"message\":\"IndexController initialized\",\"data\":\"bean created\",\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"G\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                System.currentTimeMillis()
-            );
-            try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (Exception e) {}
+        DiagnosticLog.event("IndexController.init", "IndexController initialized");
         // #endregion
         log.info("IndexController初始化完成");
     }
@@ -43,18 +33,7 @@ public class IndexController {
     @GetMapping("/")
     public Result<Map<String, Object>> index() {
         // #region agent log
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"IndexController.java:24\",\"message\":\"IndexController.index() called\",\"data\":\"root path accessed\",\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"G\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                System.currentTimeMillis()
-            );
-            try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (Exception e) {}
+        DiagnosticLog.event("IndexController.index", "IndexController.index() called");
         // #endregion
         
         log.info("访问根路径");
@@ -90,18 +69,7 @@ public class IndexController {
     @GetMapping("/test")
     public Result<String> test() {
         // #region agent log
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"IndexController.java:90\",\"message\":\"IndexController.test() called\",\"data\":\"test endpoint accessed\",\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"G\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                System.currentTimeMillis()
-            );
-            try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (Exception e) {}
+        DiagnosticLog.event("IndexController.test", "IndexController.test() called");
         // #endregion
         return Result.success("IndexController工作正常");
     }
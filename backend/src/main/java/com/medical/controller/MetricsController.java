@@ -0,0 +1,309 @@
+package com.medical.controller;
+
+import com.medical.analytics.ColumnarVisitStore;
+import com.medical.analytics.ConditionTopKIndex;
+import com.medical.analytics.PatientSketchIndex;
+import com.medical.analytics.VisitAggregateIndex;
+import com.medical.analytics.VisitTrendIndex;
+import com.medical.cache.CompactRedisSerializer;
+import com.medical.cache.EncodedResponseCache;
+import com.medical.cache.TwoLevelCacheManager;
+import com.medical.common.Result;
+import com.medical.config.SqlLatencyInterceptor;
+import com.medical.datasource.RoutingDataSource;
+import com.medical.service.ArchiveService;
+import com.medical.service.DashboardService;
+import com.medical.service.PasswordHashingService;
+import com.medical.service.PatientTimelineService;
+import com.medical.service.UserNearCache;
+import com.medical.service.VisitPartitionService;
+import com.medical.util.DiagnosticLog;
+import com.medical.util.JwtUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 运行指标Controller
+ * 提供缓存等组件的运行统计，用于容量评估和调优
+ */
+@RestController
+@RequestMapping("/api/metrics")
+@Slf4j
+public class MetricsController {
+    
+    @Autowired
+    private TwoLevelCacheManager cacheManager;
+    
+    @Autowired
+    private JwtUtil jwtUtil;
+    
+    @Autowired
+    private ColumnarVisitStore columnarVisitStore;
+    
+    @Autowired
+    private DashboardService dashboardService;
+    
+    @Autowired
+    private VisitTrendIndex visitTrendIndex;
+    
+    @Autowired
+    private PatientTimelineService patientTimelineService;
+    
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+    
+    @Autowired
+    private UserNearCache userNearCache;
+    
+    @Autowired
+    private CompactRedisSerializer compactRedisSerializer;
+    
+    @Autowired(required = false)  // 未开启读写分离时没有RoutingDataSource
+    private RoutingDataSource routingDataSource;
+    
+    @Autowired
+    private SqlLatencyInterceptor sqlLatencyInterceptor;
+    
+    @Autowired
+    private EncodedResponseCache encodedResponseCache;
+    
+    @Autowired
+    private PatientSketchIndex patientSketchIndex;
+    
+    @Autowired
+    private ConditionTopKIndex conditionTopKIndex;
+    
+    @Autowired
+    private VisitPartitionService visitPartitionService;
+    
+    @Autowired
+    private ArchiveService archiveService;
+    
+    @Autowired
+    private VisitAggregateIndex visitAggregateIndex;
+    
+    /**
+     * 各缓存的命中/未命中/加载耗时统计
+     * GET /api/metrics/caches
+     */
+    @GetMapping("/caches")
+    public Result<Map<String, Map<String, Object>>> getCacheStats() {
+        return Result.success(cacheManager.stats());
+    }
+    
+    /**
+     * 诊断日志管道统计：已发布/已丢弃/已写出/写出失败条数
+     * GET /api/metrics/diagnostic-log
+     */
+    @GetMapping("/diagnostic-log")
+    public Result<Map<String, Object>> getDiagnosticLogStats() {
+        return Result.success(DiagnosticLog.stats());
+    }
+    
+    /**
+     * 已验证Token缓存的命中/未命中/验签失败统计
+     * GET /api/metrics/jwt
+     */
+    @GetMapping("/jwt")
+    public Result<Map<String, Object>> getJwtStats() {
+        return Result.success(jwtUtil.cacheStats());
+    }
+    
+    /**
+     * 列式分析副本：行数、墓碑数、字典大小、内存估算、扫描次数与平均耗时
+     * GET /api/metrics/columnar
+     */
+    @GetMapping("/columnar")
+    public Result<Map<String, Object>> getColumnarStats() {
+        return Result.success(columnarVisitStore.stats());
+    }
+    
+    /**
+     * 仪表盘线程池：活动线程、队列长度，以及分区超时/失败/拒绝次数
+     * GET /api/metrics/dashboard
+     */
+    @GetMapping("/dashboard")
+    public Result<Map<String, Object>> getDashboardStats() {
+        return Result.success(dashboardService.stats());
+    }
+    
+    /**
+     * 就诊趋势前缀和：覆盖范围、科室数、内存估算、追加/修正/查询次数
+     * GET /api/metrics/trend-index
+     */
+    @GetMapping("/trend-index")
+    public Result<Map<String, Object>> getTrendIndexStats() {
+        return Result.success(visitTrendIndex.stats());
+    }
+    
+    /**
+     * 患者时间线缓存：条目数、命中率、清除次数
+     * GET /api/metrics/timeline
+     */
+    @GetMapping("/timeline")
+    public Result<Map<String, Object>> getTimelineStats() {
+        return Result.success(patientTimelineService.stats());
+    }
+    
+    /**
+     * 密码哈希线程池：队列深度、哈希耗时分布、各类拒绝次数、重新加密次数
+     * GET /api/metrics/password-hashing
+     */
+    @GetMapping("/password-hashing")
+    public Result<Map<String, Object>> getPasswordHashingStats() {
+        return Result.success(passwordHashingService.stats());
+    }
+    
+    /**
+     * 用户近端缓存：缓存条数、命中率、"不存在"命中次数、写入次数
+     * GET /api/metrics/users
+     */
+    @GetMapping("/users")
+    public Result<Map<String, Object>> getUserCacheStats() {
+        return Result.success(userNearCache.stats());
+    }
+    
+    /**
+     * Redis缓存值编码：二进制/JSON写入与读取次数、压缩次数、写入字节数、平均解码耗时
+     * GET /api/metrics/redis-codec
+     */
+    @GetMapping("/redis-codec")
+    public Result<Map<String, Object>> getRedisCodecStats() {
+        return Result.success(compactRedisSerializer.stats());
+    }
+    
+    /**
+     * 读写分离：主库/各从库连接池占用、从库健康状态与复制延迟、改走主库次数
+     * GET /api/metrics/datasource
+     */
+    @GetMapping("/datasource")
+    public Result<Map<String, Object>> getDataSourceStats() {
+        if (routingDataSource == null) {
+            return Result.success(Collections.singletonMap("enabled", false));
+        }
+        return Result.success(routingDataSource.stats());
+    }
+    
+    /**
+     * 各SQL语句的执行次数、耗时分布（p50/p95/p99/max）、行数、失败和慢查询次数，按总耗时倒序
+     * GET /api/metrics/sql?limit=50
+     */
+    @GetMapping("/sql")
+    public Result<List<Map<String, Object>>> getSqlStats(@RequestParam(defaultValue = "50") int limit) {
+        return Result.success(sqlLatencyInterceptor.stats(Math.max(1, limit)));
+    }
+    
+    /**
+     * 最近的慢SQL（含绑定参数），最新的在前
+     * GET /api/metrics/sql/slow
+     */
+    @GetMapping("/sql/slow")
+    public Result<List<Map<String, Object>>> getSlowSql() {
+        return Result.success(sqlLatencyInterceptor.recentSlowQueries());
+    }
+    
+    /**
+     * 统计接口预编码响应：命中、304、重新计算（及其中数据未变化）次数、gzip响应数、写出字节数
+     * GET /api/metrics/responses
+     */
+    @GetMapping("/responses")
+    public Result<Map<String, Object>> getResponseCacheStats() {
+        return Result.success(encodedResponseCache.stats());
+    }
+    
+    /**
+     * 去重患者草图：草图个数（其中稠密表示的个数）、内存占用、待写入/待修复数、同步与查询次数
+     * GET /api/metrics/patient-sketches
+     */
+    @GetMapping("/patient-sketches")
+    public Result<Map<String, Object>> getPatientSketchStats() {
+        return Result.success(patientSketchIndex.stats());
+    }
+    
+    /**
+     * 高频疾病摘要：天数、摘要个数、计数器总数、月缓存命中情况、待重新统计天数、查询次数与平均耗时
+     * GET /api/metrics/top-conditions
+     */
+    @GetMapping("/top-conditions")
+    public Result<Map<String, Object>> getConditionTopKStats() {
+        return Result.success(conditionTopKIndex.stats());
+    }
+    
+    /**
+     * 清空SQL统计（调优前后对比时使用）
+     * POST /api/metrics/sql/reset
+     */
+    @PostMapping("/sql/reset")
+    public Result<Void> resetSqlStats() {
+        sqlLatencyInterceptor.reset();
+        return Result.<Void>success();
+    }
+    
+    /**
+     * 就诊记录分区：各分区的日期范围、估计行数、数据/索引大小，以及预建、分离次数
+     * GET /api/metrics/partitions
+     */
+    @GetMapping("/partitions")
+    public Result<Map<String, Object>> getPartitionStats() {
+        return Result.success(visitPartitionService.stats());
+    }
+    
+    /**
+     * 立即执行一次分区维护（预建未来月份、分离过期分区）
+     * POST /api/metrics/partitions/maintain
+     */
+    @PostMapping("/partitions/maintain")
+    public Result<Map<String, Object>> maintainPartitions() {
+        return Result.success("分区维护完成", visitPartitionService.maintain());
+    }
+    
+    /**
+     * 冷数据归档：各表已归档的月份、段文件数、行数、压缩前后字节数，列缓存命中率，归档执行情况
+     * GET /api/metrics/archive
+     */
+    @GetMapping("/archive")
+    public Result<Map<String, Object>> getArchiveStats() {
+        return Result.success(archiveService.stats());
+    }
+    
+    /**
+     * 立即执行一次冷数据归档（导出为段文件并从在线表删除）
+     * POST /api/metrics/archive/run?month=2022-01，不指定月份时按archive.export.min-age-months归档
+     */
+    @PostMapping("/archive/run")
+    public Result<Map<String, Object>> runArchive(@RequestParam(required = false) String month) {
+        log.info("执行冷数据归档: {}", month);
+        Map<String, Object> result = archiveService.archive(month);
+        encodedResponseCache.clear();
+        return Result.success("归档完成", result);
+    }
+    
+    /**
+     * 就诊实时聚合：人次、患者数、已应用的事件数、进行中的写入、对账次数与最近一次的偏差
+     * GET /api/metrics/aggregates
+     */
+    @GetMapping("/aggregates")
+    public Result<Map<String, Object>> getAggregateStats() {
+        return Result.success(visitAggregateIndex.stats());
+    }
+    
+    /**
+     * 立即与数据库对账一次（有偏差时按数据库修正）
+     * POST /api/metrics/aggregates/reconcile
+     */
+    @PostMapping("/aggregates/reconcile")
+    public Result<Map<String, Object>> reconcileAggregates() {
+        Map<String, Object> result = visitAggregateIndex.reconcile();
+        encodedResponseCache.clear();
+        return Result.success("对账完成", result);
+    }
+}
@@ -1,12 +1,31 @@
 package com.medical.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.medical.common.Result;
+import com.medical.dto.CursorPage;
+import com.medical.dto.IngestionReport;
+import com.medical.dto.PatientTimelineDTO;
 import com.medical.entity.Patient;
 import com.medical.service.PatientService;
+import com.medical.service.PatientTimelineService;
+import com.medical.service.VisitIngestionService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -25,15 +44,55 @@ public class PatientController {
     @Autowired
     private PatientService patientService;
     
+    @Autowired
+    private VisitIngestionService visitIngestionService;
+    
+    @Autowired
+    private PatientTimelineService patientTimelineService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
     /**
-     * 查询患者列表
-     * GET /api/patients/list
+     * 游标分页查询患者列表
+     * GET /api/patients/list?size=50&cursor=xxx
+     * 
+     * 第一页不传cursor，之后把上一页返回的nextCursor原样传回
      */
     @GetMapping("/list")
-    public Result<List<Patient>> getPatientList() {
-        log.info("查询患者列表");
-        List<Patient> patients = patientService.getAllPatients();
-        return Result.success(patients);
+    public Result<CursorPage<Patient>> getPatientList(@RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer size) {
+        log.info("查询患者列表，cursor={}, size={}", cursor, size);
+        CursorPage<Patient> page = patientService.getPatientPage(cursor, size);
+        return Result.success(page);
+    }
+    
+    /**
+     * 流式导出患者列表（NDJSON，每行一条JSON记录）
+     * GET /api/patients/list?format=ndjson
+     * 
+     * 从数据库逐行读取、逐行写出，内存占用与表大小无关；
+     * 记录和换行都经同一个JsonGenerator缓冲写出，每行以换行结尾
+     */
+    @GetMapping(value = "/list", params = "format=ndjson")
+    public void streamPatientList(HttpServletResponse response) throws IOException {
+        log.info("流式导出患者列表");
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        OutputStream out = response.getOutputStream();
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            patientService.streamVisits(patient -> {
+                try {
+                    writer.writeValue(generator, patient);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        out.flush();
     }
     
     /**
@@ -54,13 +113,117 @@ public class PatientController {
     @GetMapping("/{id}/visits")
     public Result<List<Patient>> getPatientVisits(@PathVariable Long id) {
         log.info("查询患者就诊记录，ID: {}", id);
-        Patient patient = patientService.getPatientById(id);
-        if (patient == null) {
+        PatientTimelineDTO timeline = patientTimelineService.getByVisitId(id);
+        if (timeline == null) {
+            return Result.error(404, "患者不存在");
+        }
+        log.info("查询到 {} 条就诊记录", timeline.getVisitCount());
+        return Result.success(timeline.getVisits());
+    }
+    
+    /**
+     * 根据任一条就诊记录ID查询患者就诊时间线（含就诊次数、总费用、首次/最近就诊日期）
+     * GET /api/patients/{id}/timeline
+     */
+    @GetMapping("/{id}/timeline")
+    public Result<PatientTimelineDTO> getTimelineByVisitId(@PathVariable Long id) {
+        log.info("查询患者就诊时间线，就诊记录ID: {}", id);
+        PatientTimelineDTO timeline = patientTimelineService.getByVisitId(id);
+        if (timeline == null) {
             return Result.error(404, "患者不存在");
         }
-        List<Patient> visits = patientService.getPatientVisitsByPatientId(patient.getPatientId());
-        log.info("查询到 {} 条就诊记录", visits.size());
-        return Result.success(visits);
+        return Result.success(timeline);
+    }
+    
+    /**
+     * 根据患者ID查询就诊时间线
+     * GET /api/patients/timeline?patientId=P001
+     */
+    @GetMapping("/timeline")
+    public Result<PatientTimelineDTO> getTimelineByPatientId(@RequestParam String patientId) {
+        log.info("查询患者就诊时间线，患者ID: {}", patientId);
+        PatientTimelineDTO timeline = patientTimelineService.getByPatientId(patientId);
+        if (timeline == null) {
+            return Result.error(404, "患者不存在");
+        }
+        return Result.success(timeline);
+    }
+    
+    /**
+     * 新增就诊记录
+     * POST /api/patients
+     */
+    @PostMapping
+    public Result<Patient> createVisit(@RequestBody Patient patient) {
+        log.info("新增就诊记录，患者ID: {}", patient.getPatientId());
+        return Result.success("新增成功", patientService.createVisit(patient));
+    }
+    
+    /**
+     * 修改就诊记录
+     * PUT /api/patients/{id}?visitDate=2024-03-15
+     * 
+     * visitDate为记录修改前的就诊日期（可选），带上时只访问该日期所在的分区
+     */
+    @PutMapping("/{id}")
+    public Result<Patient> updateVisit(@PathVariable Long id, @RequestBody Patient patient,
+                                       @RequestParam(required = false)
+                                       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate visitDate) {
+        log.info("修改就诊记录，ID: {}", id);
+        patient.setId(id);
+        return Result.success("修改成功", patientService.updateVisit(patient, visitDate));
+    }
+    
+    /**
+     * 删除就诊记录
+     * DELETE /api/patients/{id}?visitDate=2024-03-15
+     * 
+     * visitDate为记录的就诊日期（可选），带上时只访问该日期所在的分区
+     */
+    @DeleteMapping("/{id}")
+    public Result<Void> deleteVisit(@PathVariable Long id,
+                                    @RequestParam(required = false)
+                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate visitDate) {
+        log.info("删除就诊记录，ID: {}", id);
+        patientService.deleteVisit(id, visitDate);
+        return Result.<Void>success();
+    }
+    
+    /**
+     * 批量新增就诊记录（JSON数组）
+     * POST /api/patients/batch
+     * 
+     * 不合格的行在报告中列出原因，其余行照常写入
+     */
+    @PostMapping("/batch")
+    public Result<IngestionReport> ingestBatch(@RequestBody List<Patient> visits) {
+        log.info("批量新增就诊记录，共 {} 条", visits.size());
+        return Result.success("导入完成", visitIngestionService.ingest(visits));
+    }
+    
+    /**
+     * 流式导入CSV（请求体直接为CSV内容）
+     * POST /api/patients/import  Content-Type: text/csv
+     * 
+     * 例：curl -X POST -H "Content-Type: text/csv" --data-binary @visits.csv http://localhost:8080/api/patients/import
+     */
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public Result<IngestionReport> importCsv(HttpServletRequest request) throws IOException {
+        log.info("流式导入就诊记录CSV");
+        try (InputStream in = request.getInputStream()) {
+            return Result.success("导入完成", visitIngestionService.ingestCsv(in));
+        }
+    }
+    
+    /**
+     * 上传CSV文件导入
+     * POST /api/patients/import  Content-Type: multipart/form-data，字段名file
+     */
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Result<IngestionReport> importCsvFile(@RequestParam("file") MultipartFile file) throws IOException {
+        log.info("上传导入就诊记录CSV: {}, {} 字节", file.getOriginalFilename(), file.getSize());
+        try (InputStream in = file.getInputStream()) {
+            return Result.success("导入完成", visitIngestionService.ingestCsv(in));
+        }
     }
 }
-
@@ -1,20 +1,38 @@
 package com.medical.controller;
 
+import com.medical.analytics.ColumnarVisitStore;
+import com.medical.analytics.ConditionTopKIndex;
+import com.medical.analytics.PatientSketchIndex;
+import com.medical.cache.EncodedResponseCache;
 import com.medical.common.Result;
-import com.medical.dto.TrendDataDTO;
+import com.medical.service.DashboardService;
+import com.medical.service.DepartmentRollupService;
+import com.medical.service.DistinctPatientService;
+import com.medical.service.EquipmentUtilizationService;
 import com.medical.service.StatisticsService;
+import com.medical.service.TopConditionService;
+import com.medical.service.VisitTrendService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * 统计分析Controller
+ * 
+ * 查询接口返回预先编码的JSON（见EncodedResponseCache）：带ETag，
+ * 请求携带相同的If-None-Match时返回304，客户端支持时返回gzip
  */
 @RestController
 @RequestMapping("/api/statistics")
@@ -24,15 +42,78 @@ public class StatisticsController {
     @Autowired
     private StatisticsService statisticsService;
     
+    @Autowired
+    private DepartmentRollupService departmentRollupService;
+    
+    @Autowired
+    private ColumnarVisitStore columnarVisitStore;
+    
+    @Autowired
+    private EquipmentUtilizationService equipmentUtilizationService;
+    
+    @Autowired
+    private DashboardService dashboardService;
+    
+    @Autowired
+    private VisitTrendService visitTrendService;
+    
+    @Autowired
+    private DistinctPatientService distinctPatientService;
+    
+    @Autowired
+    private PatientSketchIndex patientSketchIndex;
+    
+    @Autowired
+    private TopConditionService topConditionService;
+    
+    @Autowired
+    private ConditionTopKIndex conditionTopKIndex;
+    
+    @Autowired
+    private EncodedResponseCache responseCache;
+    
+    /**
+     * 获取仪表盘全部分区（概览、门诊量趋势、科室分布、医保控费、设备使用率）
+     * GET /api/statistics/dashboard
+     * 
+     * 各分区并发计算，单个分区超时或失败时其余分区照常返回（partial=true）
+     */
+    @GetMapping("/dashboard")
+    public ResponseEntity<byte[]> getDashboard(HttpServletRequest request) {
+        log.info("查询统计仪表盘");
+        return responseCache.respond("dashboard", request, dashboardService::getDashboard,
+            DashboardService::etagContent, DashboardService::isComplete);
+    }
+    
     /**
      * 获取门诊量趋势
      * GET /api/statistics/outpatient-trend
      */
     @GetMapping("/outpatient-trend")
-    public Result<List<TrendDataDTO>> getOutpatientTrend() {
+    public ResponseEntity<byte[]> getOutpatientTrend(HttpServletRequest request) {
         log.info("查询门诊量趋势");
-        List<TrendDataDTO> data = statisticsService.getOutpatientTrend();
-        return Result.success(data);
+        return responseCache.respond("outpatient-trend", request, statisticsService::getOutpatientTrend);
+    }
+    
+    /**
+     * 按粒度查询任意日期范围的就诊人次与收入趋势
+     * GET /api/statistics/trend?granularity=month&startDate=2020-01-01&endDate=2024-12-31&department=内科&compare=year
+     * 
+     * granularity：day/week/month/quarter；compare：previous（环比）/year（同比），不传时不对比
+     */
+    @GetMapping("/trend")
+    public ResponseEntity<byte[]> getTrend(
+            HttpServletRequest request,
+            @RequestParam(required = false) String granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String department,
+            @RequestParam(required = false) String compare) {
+        log.info("查询就诊趋势: granularity={}, {} ~ {}, department={}, compare={}",
+            granularity, startDate, endDate, department, compare);
+        String key = "trend:" + granularity + ":" + startDate + ":" + endDate + ":" + department + ":" + compare;
+        return responseCache.respond(key, request,
+            () -> visitTrendService.getTrend(granularity, startDate, endDate, department, compare));
     }
     
     /**
@@ -40,10 +121,53 @@ public class StatisticsController {
      * GET /api/statistics/overview
      */
     @GetMapping("/overview")
-    public Result<Map<String, Object>> getOverview() {
+    public ResponseEntity<byte[]> getOverview(HttpServletRequest request) {
         log.info("查询统计数据概览");
-        Map<String, Object> overview = statisticsService.getOverview();
-        return Result.success(overview);
+        return responseCache.respond("overview", request, statisticsService::getOverview);
+    }
+    
+    /**
+     * 查询去重患者数
+     * GET /api/statistics/distinct-patients?startDate=2024-01-01&endDate=2024-12-31&departments=内科,外科&groupBy=month&mode=auto
+     * 
+     * groupBy：department/month/day，不传时只返回合计；
+     * mode：auto（短范围精确、长范围估计）/exact（精确）/estimate（HyperLogLog估计，误差约1%）
+     */
+    @GetMapping("/distinct-patients")
+    public ResponseEntity<byte[]> getDistinctPatients(
+            HttpServletRequest request,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) List<String> departments,
+            @RequestParam(required = false) String groupBy,
+            @RequestParam(required = false) String mode) {
+        log.info("查询去重患者数: {} ~ {}, departments={}, groupBy={}, mode={}",
+            startDate, endDate, departments, groupBy, mode);
+        String key = "distinct-patients:" + startDate + ":" + endDate + ":" + departments + ":" + groupBy + ":" + mode;
+        return responseCache.respond(key, request,
+            () -> distinctPatientService.getDistinctPatients(startDate, endDate, departments, groupBy, mode));
+    }
+    
+    /**
+     * 查询高频疾病（就诊人次Top-K）
+     * GET /api/statistics/top-conditions?dimension=diagnosis&startDate=2024-01-01&endDate=2024-12-31&departments=内科&k=20
+     * 
+     * dimension：diseaseCode（疾病编码，默认）/diagnosis（诊断）；
+     * 每项返回人次上界value和下界lowerBound，guaranteed=true表示一定在真实Top-K中
+     */
+    @GetMapping("/top-conditions")
+    public ResponseEntity<byte[]> getTopConditions(
+            HttpServletRequest request,
+            @RequestParam(required = false) String dimension,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) List<String> departments,
+            @RequestParam(required = false) Integer k) {
+        log.info("查询高频疾病: dimension={}, {} ~ {}, departments={}, k={}",
+            dimension, startDate, endDate, departments, k);
+        String key = "top-conditions:" + dimension + ":" + startDate + ":" + endDate + ":" + departments + ":" + k;
+        return responseCache.respond(key, request,
+            () -> topConditionService.getTopConditions(dimension, startDate, endDate, departments, k));
     }
     
     /**
@@ -51,32 +175,133 @@ public class StatisticsController {
      * GET /api/statistics/department-distribution
      */
     @GetMapping("/department-distribution")
-    public Result<List<Map<String, Object>>> getDepartmentDistribution() {
+    public ResponseEntity<byte[]> getDepartmentDistribution(HttpServletRequest request) {
         log.info("查询科室分布统计");
-        List<Map<String, Object>> data = statisticsService.getDepartmentDistribution();
-        return Result.success(data);
+        return responseCache.respond("department-distribution", request, statisticsService::getDepartmentDistribution);
     }
     
     /**
-     * 获取医保控费分析
-     * GET /api/statistics/insurance-cost-control
+     * 获取医保控费分析（月度汇总、医保类型分布、DRG病组汇总）
+     * GET /api/statistics/insurance-cost-control?startMonth=2024-01&endMonth=2024-06
+     * 
+     * 不传月份时返回最近6个月（含当月）
      */
     @GetMapping("/insurance-cost-control")
-    public Result<Map<String, Object>> getInsuranceCostControl() {
-        log.info("查询医保控费分析");
-        Map<String, Object> data = statisticsService.getInsuranceCostControl();
-        return Result.success(data);
+    public ResponseEntity<byte[]> getInsuranceCostControl(HttpServletRequest request,
+                                                          @RequestParam(required = false) String startMonth,
+                                                          @RequestParam(required = false) String endMonth) {
+        log.info("查询医保控费分析: {} ~ {}", startMonth, endMonth);
+        return responseCache.respond("insurance-cost-control:" + startMonth + ":" + endMonth, request,
+            () -> statisticsService.getInsuranceCostControl(startMonth, endMonth));
     }
     
     /**
-     * 获取设备使用率
-     * GET /api/statistics/equipment-usage
+     * 获取设备使用率（每台设备）
+     * GET /api/statistics/equipment-usage?startDate=2024-01-01&endDate=2024-01-31
+     * 
+     * 不传日期时返回最近30天（含当天）
      */
     @GetMapping("/equipment-usage")
-    public Result<List<Map<String, Object>>> getEquipmentUsage() {
-        log.info("查询设备使用率");
-        List<Map<String, Object>> data = statisticsService.getEquipmentUsage();
-        return Result.success(data);
+    public ResponseEntity<byte[]> getEquipmentUsage(
+            HttpServletRequest request,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        log.info("查询设备使用率: {} ~ {}", startDate, endDate);
+        return responseCache.respond("equipment-usage:" + startDate + ":" + endDate, request,
+            () -> equipmentUtilizationService.getDeviceUtilization(startDate, endDate));
+    }
+    
+    /**
+     * 获取科室设备使用率
+     * GET /api/statistics/equipment-usage/departments?startDate=2024-01-01&endDate=2024-01-31
+     */
+    @GetMapping("/equipment-usage/departments")
+    public ResponseEntity<byte[]> getDepartmentEquipmentUsage(
+            HttpServletRequest request,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        log.info("查询科室设备使用率: {} ~ {}", startDate, endDate);
+        return responseCache.respond("equipment-usage-departments:" + startDate + ":" + endDate, request,
+            () -> equipmentUtilizationService.getDepartmentUtilization(startDate, endDate));
+    }
+    
+    /**
+     * 全量重建设备使用日汇总（明细被修改、删除或补录历史数据后调用）
+     * POST /api/statistics/equipment-usage/rebuild
+     */
+    @PostMapping("/equipment-usage/rebuild")
+    public Result<Map<String, Object>> rebuildEquipmentUsage() {
+        log.info("重建设备使用日汇总");
+        long watermark = equipmentUtilizationService.rebuild();
+        responseCache.clear();
+        Map<String, Object> data = new HashMap<>();
+        data.put("watermark", watermark);
+        return Result.success("重建完成", data);
+    }
+    
+    /**
+     * 按日期范围重建科室运营日汇总
+     * POST /api/statistics/rollup/rebuild?startDate=2024-01-01&endDate=2024-12-31
+     */
+    @PostMapping("/rollup/rebuild")
+    public Result<Map<String, Object>> rebuildRollup(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        log.info("重建科室运营日汇总: {} ~ {}", startDate, endDate);
+        int rows = departmentRollupService.rebuild(startDate, endDate);
+        responseCache.clear();
+        Map<String, Object> data = new HashMap<>();
+        data.put("startDate", startDate.toString());
+        data.put("endDate", endDate.toString());
+        data.put("rows", rows);
+        return Result.success("重建完成", data);
+    }
+    
+    /**
+     * 按日期范围从就诊明细重建去重患者草图（历史数据导入、直接改库后调用）
+     * POST /api/statistics/distinct-patients/rebuild?startDate=2024-01-01&endDate=2024-12-31
+     */
+    @PostMapping("/distinct-patients/rebuild")
+    public Result<Map<String, Object>> rebuildPatientSketches(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        log.info("重建去重患者草图: {} ~ {}", startDate, endDate);
+        int sketches = patientSketchIndex.rebuild(startDate, endDate);
+        responseCache.clear();
+        Map<String, Object> data = new HashMap<>();
+        data.put("startDate", startDate.toString());
+        data.put("endDate", endDate.toString());
+        data.put("sketches", sketches);
+        return Result.success("重建完成", data);
+    }
+    
+    /**
+     * 按日期范围从就诊明细重新统计高频疾病摘要（历史数据导入、直接改库后调用）
+     * POST /api/statistics/top-conditions/rebuild?startDate=2024-01-01&endDate=2024-12-31
+     */
+    @PostMapping("/top-conditions/rebuild")
+    public Result<Map<String, Object>> rebuildConditionSummaries(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        log.info("重建高频疾病摘要: {} ~ {}", startDate, endDate);
+        int days = conditionTopKIndex.rebuild(startDate, endDate);
+        responseCache.clear();
+        Map<String, Object> data = new HashMap<>();
+        data.put("startDate", startDate.toString());
+        data.put("endDate", endDate.toString());
+        data.put("days", days);
+        return Result.success("重建完成", data);
+    }
+    
+    /**
+     * 从数据库全量重新加载列式分析副本（需开启analytics.columnar.enabled）
+     * POST /api/statistics/columnar/reload
+     */
+    @PostMapping("/columnar/reload")
+    public Result<Map<String, Object>> reloadColumnar() {
+        log.info("重新加载列式分析副本");
+        columnarVisitStore.reload();
+        responseCache.clear();
+        return Result.success("加载完成", columnarVisitStore.stats());
     }
 }
-
@@ -3,6 +3,7 @@ package com.medical.controller;
 import com.medical.common.Result;
 import com.medical.entity.User;
 import com.medical.service.UserService;
+import com.medical.util.DiagnosticLog;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -39,35 +40,18 @@ public class UserController {
     @GetMapping("/list")
     public Result<List<User>> getUserList() {
         // #region agent log
-        try {
-            java.io.FileWriter fw = new java.io.FileWriter("d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log", true);
-            fw.write(String.format("{\"sessionId\":\"debug-session\",\"runId\":\"user-list-debug\",\"hypothesisId\":\"A\",\"location\":\"UserController.java:35\",\"message\":\"用户列表请求开始\",\"timestamp\":%d}\n", 
-                System.currentTimeMillis()));
-            fw.close();
-        } catch (Exception e) {}
+        DiagnosticLog.event("UserController.getUserList", "用户列表请求开始");
         // #endregion
         log.info("查询用户列表");
         try {
             List<User> users = userService.getAllUsers();
             // #region agent log
-            try {
-                java.io.FileWriter fw = new java.io.FileWriter("d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log", true);
-                fw.write(String.format("{\"sessionId\":\"debug-session\",\"runId\":\"user-list-debug\",\"hypothesisId\":\"B\",\"location\":\"UserController.java:40\",\"message\":\"用户列表查询成功\",\"data\":{\"userCount\":%d},\"timestamp\":%d}\n", 
-                    users != null ? users.size() : 0,
-                    System.currentTimeMillis()));
-                fw.close();
-            } catch (Exception e) {}
+            DiagnosticLog.event("UserController.getUserList", "用户列表查询成功", "userCount", users != null ? users.size() : 0);
             // #endregion
             return Result.success(users);
         } catch (Exception e) {
             // #region agent log
-            try {
-                java.io.FileWriter fw = new java.io.FileWriter("d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log", true);
-                fw.write(String.format("{\"sessionId\":\"debug-session\",\"runId\":\"user-list-debug\",\"hypothesisId\":\"C\",\"location\":\"UserController.java:45\",\"message\":\"用户列表查询失败\",\"data\":{\"error\":\"%s\"},\"timestamp\":%d}\n", 
-                    e.getMessage() != null ? e.getMessage().replace("\"", "\\\"") : "unknown",
-                    System.currentTimeMillis()));
-                fw.close();
-            } catch (Exception ex) {}
+            DiagnosticLog.event("UserController.getUserList", "用户列表查询失败", "error", e.getMessage());
             // #endregion
             log.error("查询用户列表失败", e);
             return Result.error("查询用户列表失败: " + e.getMessage());
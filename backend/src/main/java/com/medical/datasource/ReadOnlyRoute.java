@@ -0,0 +1,21 @@
+package com.medical.datasource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记只读方法：执行期间的查询发往只读从库（datasource.routing.enabled=true且有健康从库时）
+ * 
+ * 使用约定：
+ * - 只加在统计、列表等可以接受复制延迟的查询上；写入后需要立即读到新数据的路径（登录、详情、时间线）不要加
+ * - 方法内不能写库；已在事务中调用时沿用事务的连接，不切换
+ * - 加在类上表示该类所有public方法
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface ReadOnlyRoute {
+}
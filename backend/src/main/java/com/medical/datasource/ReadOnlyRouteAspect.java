@@ -0,0 +1,34 @@
+package com.medical.datasource;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 执行@ReadOnlyRoute方法时把当前线程标记为只读路由
+ * 
+ * 优先级高于事务切面，@Transactional(readOnly = true)的方法开启事务时已经是只读路由；
+ * 调用时已有事务则不切换，事务内的读写都在同一个主库连接上
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ReadOnlyRouteAspect {
+    
+    @Around("@annotation(com.medical.datasource.ReadOnlyRoute) || @within(com.medical.datasource.ReadOnlyRoute)")
+    public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (RoutingDataSource.isReadOnlyRoute() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+        RoutingDataSource.setReadOnlyRoute(true);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            RoutingDataSource.setReadOnlyRoute(false);
+        }
+    }
+}
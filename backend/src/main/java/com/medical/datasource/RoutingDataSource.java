@@ -0,0 +1,257 @@
+package com.medical.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.GetConnectionTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 读写分离数据源
+ * 
+ * 路由规则：
+ * 1. 当前线程处于@ReadOnlyRoute方法中时，轮询选择一个健康的从库
+ * 2. 其他情况（写入、事务、未标注的查询）都使用主库
+ * 3. 从库取连接失败时本次改用主库；非等待超时的失败同时把该从库标记为不可用，
+ *    直到下一次健康检查通过
+ * 
+ * 健康检查：定时从每个从库取连接并校验，可选检查复制延迟（max-lag-seconds）
+ */
+@Slf4j
+public class RoutingDataSource extends AbstractDataSource implements DisposableBean {
+    
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+    
+    private final DataSource primary;
+    
+    private final List<Replica> replicas;
+    
+    private final long healthCheckTimeoutMs;
+    
+    private final long maxLagSeconds;
+    
+    private final AtomicInteger next = new AtomicInteger();
+    
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder readOnlyOnPrimary = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    
+    public RoutingDataSource(DataSource primary, List<DruidDataSource> replicaPools,
+                             long healthCheckTimeoutMs, long maxLagSeconds) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicaPools.size());
+        for (DruidDataSource pool : replicaPools) {
+            replicas.add(new Replica(pool));
+        }
+        this.healthCheckTimeoutMs = healthCheckTimeoutMs;
+        this.maxLagSeconds = maxLagSeconds;
+    }
+    
+    public static boolean isReadOnlyRoute() {
+        return Boolean.TRUE.equals(READ_ONLY.get());
+    }
+    
+    static void setReadOnlyRoute(boolean readOnly) {
+        if (readOnly) {
+            READ_ONLY.set(Boolean.TRUE);
+        } else {
+            READ_ONLY.remove();
+        }
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (isReadOnlyRoute()) {
+            Replica replica = chooseReplica();
+            if (replica != null) {
+                try {
+                    Connection connection = replica.pool.getConnection();
+                    replica.connections.increment();
+                    return connection;
+                } catch (GetConnectionTimeoutException e) {
+                    // 从库连接池已满：本次走主库，不判为故障
+                    replica.timeouts.increment();
+                    fallbacks.increment();
+                } catch (SQLException | RuntimeException e) {
+                    markDown(replica, e.getMessage());
+                    fallbacks.increment();
+                }
+            } else {
+                readOnlyOnPrimary.increment();
+            }
+        }
+        primaryConnections.increment();
+        return primary.getConnection();
+    }
+    
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        primaryConnections.increment();
+        return primary.getConnection(username, password);
+    }
+    
+    private Replica chooseReplica() {
+        int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 定时检查从库：能取到连接、连接有效、复制延迟未超限时参与路由
+     */
+    @Scheduled(fixedDelayString = "${datasource.routing.health-check-interval-ms:5000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            String problem = check(replica);
+            if (problem == null) {
+                if (!replica.healthy) {
+                    log.info("从库恢复，重新参与读路由: {}", replica.pool.getName());
+                }
+                replica.healthy = true;
+                replica.lastError = null;
+            } else {
+                markDown(replica, problem);
+            }
+        }
+    }
+    
+    private String check(Replica replica) {
+        try (Connection connection = replica.pool.getConnection(healthCheckTimeoutMs)) {
+            if (!connection.isValid((int) Math.max(1, healthCheckTimeoutMs / 1000))) {
+                return "连接校验失败";
+            }
+            if (maxLagSeconds > 0) {
+                Long lag = replicationLag(connection);
+                replica.lagSeconds = lag;
+                if (lag != null && lag > maxLagSeconds) {
+                    return "复制延迟" + lag + "秒，超过" + maxLagSeconds + "秒";
+                }
+            }
+            return null;
+        } catch (SQLException | RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+    
+    /**
+     * 读取复制延迟（秒）；不是从库、复制未运行或没有权限时返回null
+     */
+    private static Long replicationLag(Connection connection) {
+        // MySQL 8.0.22起为SHOW REPLICA STATUS，之前的版本只有SHOW SLAVE STATUS
+        String[][] variants = {
+            {"SHOW REPLICA STATUS", "Seconds_Behind_Source"},
+            {"SHOW SLAVE STATUS", "Seconds_Behind_Master"}
+        };
+        for (String[] variant : variants) {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(variant[0])) {
+                if (!rs.next()) {
+                    return null;
+                }
+                long lag = rs.getLong(variant[1]);
+                return rs.wasNull() ? null : lag;
+            } catch (SQLException e) {
+                // 语法不支持时尝试下一种写法
+            }
+        }
+        return null;
+    }
+    
+    private void markDown(Replica replica, String reason) {
+        if (replica.healthy) {
+            log.warn("从库不可用，读路由改走主库: {}，原因: {}", replica.pool.getName(), reason);
+        }
+        replica.healthy = false;
+        replica.lastError = reason;
+        replica.failures.increment();
+    }
+    
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", true);
+        stats.put("primaryConnections", primaryConnections.sum());
+        stats.put("readOnlyOnPrimary", readOnlyOnPrimary.sum());
+        stats.put("fallbacks", fallbacks.sum());
+        if (primary instanceof DruidDataSource) {
+            stats.put("primaryPool", poolStats((DruidDataSource) primary));
+        }
+        List<Map<String, Object>> replicaStats = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            Map<String, Object> item = poolStats(replica.pool);
+            item.put("name", replica.pool.getName());
+            item.put("healthy", replica.healthy);
+            item.put("lagSeconds", replica.lagSeconds);
+            item.put("lastError", replica.lastError);
+            item.put("connections", replica.connections.sum());
+            item.put("timeouts", replica.timeouts.sum());
+            item.put("failures", replica.failures.sum());
+            replicaStats.add(item);
+        }
+        stats.put("replicas", replicaStats);
+        return stats;
+    }
+    
+    private static Map<String, Object> poolStats(DruidDataSource pool) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxActive", pool.getMaxActive());
+        stats.put("activeCount", pool.getActiveCount());
+        stats.put("poolingCount", pool.getPoolingCount());
+        stats.put("waitThreadCount", pool.getWaitThreadCount());
+        return stats;
+    }
+    
+    @Override
+    public void destroy() {
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+    
+    /**
+     * 从库连接池及其状态
+     */
+    private static final class Replica {
+        
+        private final DruidDataSource pool;
+        
+        /**
+         * 启动时先参与路由，由首次健康检查或取连接失败修正
+         */
+        private volatile boolean healthy = true;
+        
+        private volatile Long lagSeconds;
+        
+        private volatile String lastError;
+        
+        private final LongAdder connections = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        
+        Replica(DruidDataSource pool) {
+            this.pool = pool;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 科室单日疾病编码/诊断频繁项摘要（来自patient_visit_condition）
+ */
+@Data
+public class ConditionSummaryDTO {
+    
+    /**
+     * 统计日期
+     */
+    private LocalDate statDate;
+    
+    /**
+     * 科室名称
+     */
+    private String department;
+    
+    /**
+     * 维度：disease_code或diagnosis
+     */
+    private String dimension;
+    
+    /**
+     * SpaceSaving序列化内容
+     */
+    private byte[] summary;
+}
@@ -0,0 +1,36 @@
+package com.medical.dto;
+
+import lombok.Data;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 游标分页结果DTO
+ * 
+ * nextCursor为不透明的续页令牌，原样传回即可获取下一页；hasMore为false时没有下一页
+ */
+@Data
+public class CursorPage<T> implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 本页数据
+     */
+    private List<T> items;
+    
+    /**
+     * 本页条数
+     */
+    private Integer size;
+    
+    /**
+     * 是否还有下一页
+     */
+    private Boolean hasMore;
+    
+    /**
+     * 下一页游标（没有下一页时为null）
+     */
+    private String nextCursor;
+}
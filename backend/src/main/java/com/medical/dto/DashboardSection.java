@@ -0,0 +1,36 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+/**
+ * 仪表盘分区结果
+ * 每个分区独立计算，超时或失败时只影响该分区，其余分区照常返回
+ */
+@Data
+public class DashboardSection {
+    
+    public static final String OK = "ok";
+    public static final String TIMEOUT = "timeout";
+    public static final String ERROR = "error";
+    public static final String REJECTED = "rejected";
+    
+    /**
+     * 状态：ok/timeout/error/rejected（线程池已满）
+     */
+    private String status;
+    
+    /**
+     * 分区数据，非ok时为null
+     */
+    private Object data;
+    
+    /**
+     * 非ok时的原因
+     */
+    private String message;
+    
+    /**
+     * 从提交到完成（或放弃等待）的耗时（毫秒），不参与ETag计算
+     */
+    private long elapsedMillis;
+}
@@ -0,0 +1,33 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 科室单日就诊汇总DTO（来自department_operation）
+ */
+@Data
+public class DepartmentDailyStatDTO {
+    
+    /**
+     * 科室名称
+     */
+    private String department;
+    
+    /**
+     * 统计日期
+     */
+    private LocalDate statDate;
+    
+    /**
+     * 就诊人次（门诊 + 住院）
+     */
+    private Long visitCount;
+    
+    /**
+     * 总收入
+     */
+    private BigDecimal revenue;
+}
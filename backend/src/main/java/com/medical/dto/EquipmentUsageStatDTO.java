@@ -0,0 +1,47 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 设备窗口使用量DTO
+ * 一台设备在某个日期窗口内的使用时长与次数（由累计值相减得到），按窗口缓存
+ */
+@Data
+public class EquipmentUsageStatDTO implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 设备ID
+     */
+    private String equipmentId;
+    
+    /**
+     * 设备名称
+     */
+    private String equipmentName;
+    
+    /**
+     * 所属科室
+     */
+    private String department;
+    
+    /**
+     * 首次有使用记录的日期
+     */
+    private Date firstDate;
+    
+    /**
+     * 窗口内使用时长（小时）
+     */
+    private BigDecimal usageHours;
+    
+    /**
+     * 窗口内使用次数
+     */
+    private Long usageCount;
+}
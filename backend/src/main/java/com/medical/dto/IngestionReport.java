@@ -0,0 +1,84 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入结果报告
+ * 校验失败的行逐条记录原因，不影响其余行写入
+ */
+@Data
+public class IngestionReport implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 读取的总行数
+     */
+    private long totalRows;
+    
+    /**
+     * 成功写入的行数
+     */
+    private long insertedRows;
+    
+    /**
+     * 失败行数（校验失败 + 所在块写库失败）
+     */
+    private long failedRows;
+    
+    /**
+     * 提交的块（事务）数
+     */
+    private int chunks;
+    
+    /**
+     * 总耗时（毫秒）
+     */
+    private long elapsedMillis;
+    
+    /**
+     * 吞吐量（行/秒，按成功写入的行数计算，失败行不计入）
+     */
+    private long rowsPerSecond;
+    
+    /**
+     * 失败明细（最多记录配置的条数）
+     */
+    private List<RowError> errors = new ArrayList<>();
+    
+    /**
+     * 失败明细是否因超过上限被截断
+     */
+    private boolean errorsTruncated;
+    
+    /**
+     * 单行失败原因
+     */
+    @Data
+    public static class RowError implements Serializable {
+        
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * 行号（从1开始，不含CSV表头）
+         */
+        private long row;
+        
+        /**
+         * 失败原因
+         */
+        private String message;
+        
+        public RowError() {
+        }
+        
+        public RowError(long row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+    }
+}
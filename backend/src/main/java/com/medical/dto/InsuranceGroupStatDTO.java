@@ -0,0 +1,46 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 医保结算分组汇总DTO
+ * 一个月内按(医保类型, DRG病组)分组的结算笔数与金额，按月缓存
+ */
+@Data
+public class InsuranceGroupStatDTO implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 医保类型
+     */
+    private String insuranceType;
+    
+    /**
+     * DRG病组
+     */
+    private String drgGroup;
+    
+    /**
+     * 结算笔数
+     */
+    private Long settlementCount;
+    
+    /**
+     * 总费用（元）
+     */
+    private BigDecimal totalCost;
+    
+    /**
+     * 医保支付（元）
+     */
+    private BigDecimal insurancePay;
+    
+    /**
+     * 个人支付（元）
+     */
+    private BigDecimal personalPay;
+}
@@ -0,0 +1,34 @@
+package com.medical.dto;
+
+import lombok.Data;
+import java.io.Serializable;
+
+/**
+ * 统计概览DTO
+ * 由StatisticsMapper.selectOverview在数据库端一次聚合得出
+ */
+@Data
+public class OverviewDTO implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * 总患者数（按patient_id去重）
+     */
+    private Long totalPatients;
+    
+    /**
+     * 今日门诊量
+     */
+    private Long todayVisits;
+    
+    /**
+     * 科室数量（去重，忽略空科室）
+     */
+    private Long departmentCount;
+    
+    /**
+     * 总就诊人次
+     */
+    private Long totalVisits;
+}
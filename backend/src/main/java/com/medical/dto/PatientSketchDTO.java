@@ -0,0 +1,27 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 科室单日去重患者草图（来自patient_visit_sketch）
+ */
+@Data
+public class PatientSketchDTO {
+    
+    /**
+     * 统计日期
+     */
+    private LocalDate statDate;
+    
+    /**
+     * 科室名称
+     */
+    private String department;
+    
+    /**
+     * HyperLogLog序列化内容
+     */
+    private byte[] sketch;
+}
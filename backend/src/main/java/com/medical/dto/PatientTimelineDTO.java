@@ -0,0 +1,46 @@
+package com.medical.dto;
+
+import com.medical.entity.Patient;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 患者就诊时间线DTO
+ * 一个患者的全部就诊记录（按就诊日期、ID倒序）及汇总
+ */
+@Data
+public class PatientTimelineDTO {
+    
+    /**
+     * 患者ID
+     */
+    private String patientId;
+    
+    /**
+     * 就诊次数
+     */
+    private int visitCount;
+    
+    /**
+     * 总费用
+     */
+    private BigDecimal totalCost;
+    
+    /**
+     * 首次就诊日期
+     */
+    private Date firstVisitDate;
+    
+    /**
+     * 最近就诊日期
+     */
+    private Date lastVisitDate;
+    
+    /**
+     * 就诊记录（按就诊日期、ID倒序）
+     */
+    private List<Patient> visits;
+}
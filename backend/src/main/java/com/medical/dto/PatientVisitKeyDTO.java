@@ -0,0 +1,18 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 就诊记录的(日期, 科室, 患者ID)，用于重建去重患者草图
+ */
+@Data
+public class PatientVisitKeyDTO {
+    
+    private LocalDate visitDate;
+    
+    private String department;
+    
+    private String patientId;
+}
@@ -0,0 +1,24 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 就诊记录按某个维度（科室、日期、患者）或全表汇总的人次与费用，用于加载实时聚合
+ */
+@Data
+public class VisitAggregateDTO {
+    
+    /**
+     * 科室或患者ID，按日期、全表汇总时为空
+     */
+    private String name;
+    
+    private LocalDate visitDate;
+    
+    private Long visitCount;
+    
+    private BigDecimal cost;
+}
@@ -0,0 +1,22 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 单日单科室某个(疾病编码, 诊断)组合的就诊人次，用于生成频繁项摘要
+ */
+@Data
+public class VisitConditionCountDTO {
+    
+    private LocalDate visitDate;
+    
+    private String department;
+    
+    private String diseaseCode;
+    
+    private String diagnosis;
+    
+    private Long visitCount;
+}
@@ -0,0 +1,29 @@
+package com.medical.dto;
+
+import lombok.Data;
+
+/**
+ * patient_visit的一个分区（来自information_schema.PARTITIONS）
+ */
+@Data
+public class VisitPartitionDTO {
+    
+    /**
+     * 分区名：p_history（最早月份之前）、pYYYYMM（按月）、p_future（MAXVALUE）
+     */
+    private String partitionName;
+    
+    /**
+     * 分区上界（不含），如 '2024-02-01'，最后一个分区为 MAXVALUE
+     */
+    private String partitionDescription;
+    
+    /**
+     * 行数（InnoDB统计估计值）
+     */
+    private Long tableRows;
+    
+    private Long dataLength;
+    
+    private Long indexLength;
+}
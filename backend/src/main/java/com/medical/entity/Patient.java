@@ -42,9 +42,19 @@ public class Patient implements Serializable {
      */
     private String diagnosis;
     
+    /**
+     * 疾病编码（ICD-10）
+     */
+    private String diseaseCode;
+    
     /**
      * 费用
      */
     private BigDecimal cost;
+    
+    /**
+     * 就诊类型（门诊/急诊/住院）
+     */
+    private String visitType;
 }
 
@@ -0,0 +1,98 @@
+package com.medical.event;
+
+import com.medical.entity.Patient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 就诊记录变更事件
+ * 
+ * PatientService、VisitIngestionService在写入patient_visit的事务内发布，一个事件包含同一类型的一条或多条变更：
+ * 新增只有after，删除只有before，修改的before/after按下标一一对应（before为修改前从库中读到的整行）
+ * 
+ * 数据库之外的派生数据（列式副本、去重患者草图、高频疾病摘要、时间线缓存、实时聚合）
+ * 通过@TransactionalEventListener(phase = AFTER_COMMIT)订阅，事务回滚时不会收到；
+ * 与明细同一事务的科室运营日汇总仍由写入方直接维护
+ */
+public final class VisitChangeEvent {
+    
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+    
+    private final Type type;
+    
+    private final List<Patient> before;
+    
+    private final List<Patient> after;
+    
+    private VisitChangeEvent(Type type, List<Patient> before, List<Patient> after) {
+        this.type = type;
+        this.before = before;
+        this.after = after;
+    }
+    
+    public static VisitChangeEvent inserted(Patient visit) {
+        return new VisitChangeEvent(Type.INSERT, Collections.emptyList(), Collections.singletonList(visit));
+    }
+    
+    /**
+     * 批量新增（同一事务内写入的一块）
+     */
+    public static VisitChangeEvent insertedAll(List<Patient> visits) {
+        return new VisitChangeEvent(Type.INSERT, Collections.emptyList(),
+            Collections.unmodifiableList(new ArrayList<>(visits)));
+    }
+    
+    public static VisitChangeEvent updated(Patient before, Patient after) {
+        return new VisitChangeEvent(Type.UPDATE, Collections.singletonList(before), Collections.singletonList(after));
+    }
+    
+    public static VisitChangeEvent deleted(Patient visit) {
+        return new VisitChangeEvent(Type.DELETE, Collections.singletonList(visit), Collections.emptyList());
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    /**
+     * 变更前的记录（修改、删除）
+     */
+    public List<Patient> getBefore() {
+        return before;
+    }
+    
+    /**
+     * 变更后的记录（新增、修改）
+     */
+    public List<Patient> getAfter() {
+        return after;
+    }
+    
+    public int size() {
+        return type == Type.DELETE ? before.size() : after.size();
+    }
+    
+    /**
+     * 涉及的患者ID（修改了患者ID时新旧都包含）
+     */
+    public Set<String> getPatientIds() {
+        Set<String> patientIds = new LinkedHashSet<>();
+        for (List<Patient> visits : Arrays.asList(before, after)) {
+            for (Patient visit : visits) {
+                if (visit != null && visit.getPatientId() != null) {
+                    patientIds.add(visit.getPatientId());
+                }
+            }
+        }
+        return patientIds;
+    }
+}
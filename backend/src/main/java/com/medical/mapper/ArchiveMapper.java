@@ -0,0 +1,51 @@
+package com.medical.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 冷数据归档Mapper接口
+ * 
+ * 作用：按月读取、删除patient_visit/insurance_settlement的明细，供ArchiveService导出为段文件
+ * 
+ * 表名、日期列、列名来自ArchiveTable枚举，以${}拼接，不接受外部输入；日期范围为半开区间[startDate, endDate)
+ */
+@Mapper
+public interface ArchiveMapper {
+    
+    /**
+     * 流式读取某月的全部行并加行锁（FOR UPDATE），按id升序，必须在事务内遍历
+     * 
+     * @return 每行为列名 → 值
+     */
+    Cursor<Map<String, Object>> selectMonthRows(@Param("table") String table,
+                                                @Param("dateColumn") String dateColumn,
+                                                @Param("columns") List<String> columns,
+                                                @Param("startDate") LocalDate startDate,
+                                                @Param("endDate") LocalDate endDate);
+    
+    /**
+     * 分批删除某月id不大于maxId的行，返回本批删除的行数
+     */
+    int deleteMonthRows(@Param("table") String table,
+                        @Param("dateColumn") String dateColumn,
+                        @Param("startDate") LocalDate startDate,
+                        @Param("endDate") LocalDate endDate,
+                        @Param("maxId") long maxId,
+                        @Param("limit") int limit);
+    
+    /**
+     * 表中最早的日期，表为空时返回null
+     */
+    LocalDate selectMinDate(@Param("table") String table, @Param("dateColumn") String dateColumn);
+    
+    /**
+     * 给定id中仍在表中的行数（检查段文件中的数据是否已从在线表删除）
+     */
+    int countIds(@Param("table") String table, @Param("ids") List<Long> ids);
+}
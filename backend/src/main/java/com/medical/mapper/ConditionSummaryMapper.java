@@ -0,0 +1,47 @@
+package com.medical.mapper;
+
+import com.medical.dto.ConditionSummaryDTO;
+import com.medical.dto.VisitConditionCountDTO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 疾病编码/诊断频繁项摘要Mapper接口
+ * 
+ * 作用：读写patient_visit_condition（每个(日期, 科室, 维度)一个SpaceSaving摘要），
+ * 以及从patient_visit按天重新统计
+ */
+@Mapper
+public interface ConditionSummaryMapper {
+    
+    /**
+     * 数据库当前时间（增量读取的起点以数据库时钟为准）
+     */
+    LocalDateTime selectNow();
+    
+    /**
+     * 流式读取更新时间不早于since的摘要，since为null时读取全部
+     * 必须在事务内遍历
+     */
+    Cursor<ConditionSummaryDTO> selectUpdatedSince(@Param("since") LocalDateTime since);
+    
+    /**
+     * 写入摘要，行不存在时创建
+     */
+    int upsert(@Param("statDate") LocalDate statDate,
+               @Param("department") String department,
+               @Param("dimension") String dimension,
+               @Param("summary") byte[] summary,
+               @Param("total") long total);
+    
+    /**
+     * 流式读取日期范围内（闭区间）每个(日期, 科室, 疾病编码, 诊断)的就诊人次，按日期排序
+     * 必须在事务内遍历
+     */
+    Cursor<VisitConditionCountDTO> selectDailyCounts(@Param("startDate") LocalDate startDate,
+                                                     @Param("endDate") LocalDate endDate);
+}
@@ -0,0 +1,52 @@
+package com.medical.mapper;
+
+import com.medical.dto.DepartmentDailyStatDTO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 科室运营日汇总Mapper接口
+ * 
+ * 作用：维护department_operation表中由就诊记录派生的字段
+ * （outpatient_count、inpatient_count、total_revenue），
+ * 其余字段（成本、利润、床位使用率等）不在这里改动
+ */
+@Mapper
+public interface DepartmentOperationMapper {
+    
+    /**
+     * 按(科室, 日期)累加增量，行不存在时自动创建
+     */
+    int upsertDelta(@Param("department") String department,
+                    @Param("statDate") LocalDate statDate,
+                    @Param("outpatientDelta") int outpatientDelta,
+                    @Param("inpatientDelta") int inpatientDelta,
+                    @Param("revenueDelta") BigDecimal revenueDelta);
+    
+    /**
+     * 将日期范围内的派生字段清零（重建前调用）
+     */
+    int resetByDateRange(@Param("startDate") LocalDate startDate,
+                         @Param("endDate") LocalDate endDate);
+    
+    /**
+     * 从patient_visit重新汇总日期范围内的派生字段
+     */
+    int rebuildByDateRange(@Param("startDate") LocalDate startDate,
+                           @Param("endDate") LocalDate endDate);
+    
+    /**
+     * 最早的统计日期
+     */
+    LocalDate selectMinStatDate();
+    
+    /**
+     * 日期范围内（闭区间）每个(科室, 日期)的就诊人次与收入，按日期排序
+     */
+    List<DepartmentDailyStatDTO> selectDailyStats(@Param("startDate") LocalDate startDate,
+                                                  @Param("endDate") LocalDate endDate);
+}
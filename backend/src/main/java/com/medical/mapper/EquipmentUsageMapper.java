@@ -0,0 +1,84 @@
+package com.medical.mapper;
+
+import com.medical.dto.EquipmentUsageStatDTO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 设备使用Mapper接口
+ * 
+ * 作用：把equipment_usage明细增量汇总到equipment_usage_daily（按设备、日期，含累计值）
+ * 和equipment_device（设备维表），并基于累计值计算任意日期窗口的使用量
+ */
+@Mapper
+public interface EquipmentUsageMapper {
+    
+    /**
+     * 明细表当前最大ID
+     */
+    Long selectMaxId();
+    
+    /**
+     * 初始化水位（已存在时不变）
+     */
+    int initWatermark(@Param("name") String name);
+    
+    /**
+     * 读取并锁定水位行，多实例同时刷新时串行执行
+     */
+    Long selectWatermarkForUpdate(@Param("name") String name);
+    
+    /**
+     * 更新水位
+     */
+    int updateWatermark(@Param("name") String name, @Param("lastId") long lastId);
+    
+    /**
+     * ID在(fromId, toId]内、写入时间早于lagSeconds秒前的明细的最大ID（数据库时钟）
+     * 
+     * 写入超过lagSeconds秒的明细所在事务视为已提交或已回滚，水位只推进到这里，
+     * 避免较小ID的事务晚于较大ID提交时被水位跳过
+     */
+    Long selectSettledMaxId(@Param("fromId") long fromId, @Param("toId") long toId,
+                            @Param("lagSeconds") int lagSeconds);
+    
+    /**
+     * 把ID在(fromId, toId]内的明细按(设备, 日期)累加到日汇总
+     */
+    int upsertDailyByIdRange(@Param("fromId") long fromId, @Param("toId") long toId);
+    
+    /**
+     * 把ID在(fromId, toId]内的明细合并到设备维表
+     */
+    int upsertDevicesByIdRange(@Param("fromId") long fromId, @Param("toId") long toId);
+    
+    /**
+     * 重新计算全部设备的累计值（按设备、日期顺序的前缀和，全量重建时调用）
+     */
+    int refreshCumulative();
+    
+    /**
+     * 增量修正累计值：只重算ID在(fromId, toId]内的明细涉及的设备、从其最早使用日期开始的日汇总行，
+     * 该日期之前最后一行的累计值作为起点
+     */
+    int refreshCumulativeByIdRange(@Param("fromId") long fromId, @Param("toId") long toId);
+    
+    /**
+     * 清空日汇总（全量重建前调用）
+     */
+    int deleteAllDaily();
+    
+    /**
+     * 清空设备维表（全量重建前调用）
+     */
+    int deleteAllDevices();
+    
+    /**
+     * 每台设备在[startDate, endDate]内的使用量：截至endDate的累计值减去startDate之前的累计值
+     */
+    List<EquipmentUsageStatDTO> selectWindowStats(@Param("startDate") LocalDate startDate,
+                                                  @Param("endDate") LocalDate endDate);
+}
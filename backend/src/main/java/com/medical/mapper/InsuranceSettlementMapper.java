@@ -0,0 +1,23 @@
+package com.medical.mapper;
+
+import com.medical.dto.InsuranceGroupStatDTO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 医保结算Mapper接口
+ * 
+ * 作用：按结算日期范围汇总insurance_settlement，供医保控费分析使用
+ */
+@Mapper
+public interface InsuranceSettlementMapper {
+    
+    /**
+     * 按(医保类型, DRG病组)汇总结算日期在[startDate, endDate)内的结算
+     */
+    List<InsuranceGroupStatDTO> selectGroupStats(@Param("startDate") LocalDate startDate,
+                                                 @Param("endDate") LocalDate endDate);
+}
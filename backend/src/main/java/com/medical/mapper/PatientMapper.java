@@ -3,7 +3,10 @@ package com.medical.mapper;
 import com.medical.entity.Patient;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
+import java.time.LocalDate;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -22,29 +25,75 @@ public interface PatientMapper {
      */
     List<Patient> selectAll();
     
+    /**
+     * 键集分页查询：按 (visit_date DESC, id DESC) 顺序，取排在 (lastVisitDate, lastId) 之后的limit条
+     * lastVisitDate为null时从第一条开始
+     * 
+     * @param minVisitDate    只查询不早于该日期的记录，为null时不限
+     * @param beforeVisitDate 只查询早于该日期的记录，为null时不限
+     */
+    List<Patient> selectPage(@Param("lastVisitDate") LocalDate lastVisitDate,
+                             @Param("lastId") Long lastId,
+                             @Param("minVisitDate") LocalDate minVisitDate,
+                             @Param("beforeVisitDate") LocalDate beforeVisitDate,
+                             @Param("limit") int limit);
+    
+    /**
+     * 流式查询所有就诊记录（MySQL逐行读取，不在内存中缓存整个结果集）
+     * 必须在事务内遍历，遍历结束前连接一直被占用
+     */
+    Cursor<Patient> selectAllCursor();
+    
+    /**
+     * 按主键顺序流式查询所有就诊记录（用于加载列式分析副本）
+     */
+    Cursor<Patient> selectAllCursorOrderById();
+    
     /**
      * 根据ID查询患者
      */
     Patient selectById(@Param("id") Long id);
     
+    /**
+     * 根据ID查询并加行锁（SELECT ... FOR UPDATE），须在事务内调用；
+     * 修改、删除前读取旧值用，并发的修改、删除在此排队，不会基于同一旧值重复修正汇总
+     * 
+     * @param visitDate 记录的就诊日期（分区键），传入时只访问、锁定该日期所在的分区；为null时按ID在全部分区中查找
+     */
+    Patient selectByIdForUpdate(@Param("id") Long id, @Param("visitDate") Date visitDate);
+    
     /**
      * 插入患者
      */
     int insert(Patient patient);
     
+    /**
+     * 多行批量插入（一条INSERT ... VALUES (...),(...)），回填自增ID
+     */
+    int insertBatch(@Param("list") List<Patient> list);
+    
     /**
      * 更新患者信息
+     * 
+     * @param currentVisitDate 记录修改前的就诊日期（分区键），为null时按ID在全部分区中查找
      */
-    int update(Patient patient);
+    int update(@Param("visit") Patient visit, @Param("currentVisitDate") Date currentVisitDate);
     
     /**
      * 删除患者
+     * 
+     * @param visitDate 记录的就诊日期（分区键），为null时按ID在全部分区中查找
      */
-    int deleteById(@Param("id") Long id);
+    int deleteById(@Param("id") Long id, @Param("visitDate") Date visitDate);
     
     /**
      * 根据患者ID查询所有就诊记录
      */
     List<Patient> selectByPatientId(@Param("patientId") String patientId);
+    
+    /**
+     * 根据任一条就诊记录ID查询该患者的所有就诊记录（一次查询）
+     */
+    List<Patient> selectTimelineByVisitId(@Param("id") Long id);
 }
 
@@ -0,0 +1,67 @@
+package com.medical.mapper;
+
+import com.medical.dto.PatientSketchDTO;
+import com.medical.dto.PatientVisitKeyDTO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 去重患者草图Mapper接口
+ * 
+ * 作用：读写patient_visit_sketch（每个(日期, 科室)一个HyperLogLog），
+ * 以及重建草图时从patient_visit读取患者ID
+ */
+@Mapper
+public interface PatientSketchMapper {
+    
+    /**
+     * 流式读取更新时间不早于since的草图，since为null时读取全部
+     * 必须在事务内遍历
+     */
+    Cursor<PatientSketchDTO> selectUpdatedSince(@Param("since") LocalDateTime since);
+    
+    /**
+     * 数据库当前时间（增量读取的起点以数据库时钟为准）
+     */
+    LocalDateTime selectNow();
+    
+    /**
+     * 读取并锁定一个草图（合并写入前调用，须在事务内），不存在时返回null
+     */
+    PatientSketchDTO selectForUpdate(@Param("statDate") LocalDate statDate,
+                                     @Param("department") String department);
+    
+    /**
+     * 写入草图，行不存在时创建
+     */
+    int upsert(@Param("statDate") LocalDate statDate,
+               @Param("department") String department,
+               @Param("sketch") byte[] sketch,
+               @Param("estimate") long estimate);
+    
+    int delete(@Param("statDate") LocalDate statDate,
+               @Param("department") String department);
+    
+    /**
+     * 删除日期范围内（闭区间）的草图（重建前调用）
+     */
+    int deleteByDateRange(@Param("startDate") LocalDate startDate,
+                          @Param("endDate") LocalDate endDate);
+    
+    /**
+     * 某个(日期, 科室)当前的全部患者ID（去重）
+     */
+    List<String> selectPatientIds(@Param("statDate") LocalDate statDate,
+                                  @Param("department") String department);
+    
+    /**
+     * 流式读取日期范围内（闭区间）的(日期, 科室, 患者ID)，按日期排序，必须在事务内遍历
+     */
+    Cursor<PatientVisitKeyDTO> selectVisitKeys(@Param("startDate") LocalDate startDate,
+                                               @Param("endDate") LocalDate endDate);
+}
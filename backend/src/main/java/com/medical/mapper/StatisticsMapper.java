@@ -1,10 +1,15 @@
 package com.medical.mapper;
 
+import com.medical.dto.OverviewDTO;
 import com.medical.dto.TrendDataDTO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 统计分析Mapper接口
@@ -13,7 +18,8 @@ import java.util.List;
 public interface StatisticsMapper {
     
     /**
-     * 查询门诊量趋势（最近30天）
+     * 查询门诊量趋势（最近30个有数据的日期）
+     * 读取department_operation日汇总，不再扫描patient_visit
      */
     List<TrendDataDTO> selectOutpatientTrend();
     
@@ -24,5 +30,52 @@ public interface StatisticsMapper {
         @Param("startDate") String startDate,
         @Param("endDate") String endDate
     );
+    
+    /**
+     * 统计概览（总人次、去重患者数、今日门诊量、科室数一次聚合）
+     * 
+     * @param today 今日日期（yyyy-MM-dd），由应用端传入，与JVM时区保持一致
+     */
+    OverviewDTO selectOverview(@Param("today") String today);
+    
+    /**
+     * 就诊记录中出现过的科室（不含空字符串），与冷数据归档合并科室数时使用
+     */
+    List<String> selectVisitDepartments();
+    
+    /**
+     * 流式读取去重后的患者ID，必须在事务内遍历；与冷数据归档合并去重患者数时使用
+     */
+    Cursor<String> selectDistinctPatientIds();
+    
+    /**
+     * 科室分布（各科室就诊人次），读取department_operation日汇总
+     * 每行包含 name（科室）、value（人次）
+     */
+    List<Map<String, Object>> selectDepartmentDistribution();
+    
+    /**
+     * 精确去重患者数（COUNT DISTINCT），每行包含 name（分组名）、value（患者数）
+     * 
+     * @param departments 科室，为空表示全部科室
+     * @param groupBy     department/month/day，为空时不分组（name为空字符串）
+     */
+    List<Map<String, Object>> selectDistinctPatients(@Param("startDate") LocalDate startDate,
+                                                     @Param("endDate") LocalDate endDate,
+                                                     @Param("departments") Collection<String> departments,
+                                                     @Param("groupBy") String groupBy);
+    
+    /**
+     * 精确频繁项（按疾病编码或诊断GROUP BY），每行包含 name（编码/诊断）、value（人次），按人次从大到小
+     * 
+     * @param column      disease_code或diagnosis
+     * @param departments 科室，为空表示全部科室
+     * @param limit       返回的行数
+     */
+    List<Map<String, Object>> selectTopConditions(@Param("column") String column,
+                                                  @Param("startDate") LocalDate startDate,
+                                                  @Param("endDate") LocalDate endDate,
+                                                  @Param("departments") Collection<String> departments,
+                                                  @Param("limit") int limit);
 }
 
@@ -4,6 +4,7 @@ import com.medical.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -32,6 +33,11 @@ public interface UserMapper {
      */
     User selectById(@Param("id") Long id);
     
+    /**
+     * 按主键只读status（登录时校验禁用状态，不经过近端缓存）
+     */
+    Integer selectStatusById(@Param("id") Long id);
+    
     /**
      * 查询所有用户
      */
@@ -42,6 +48,18 @@ public interface UserMapper {
      */
     int update(User user);
     
+    /**
+     * 在数据库中原子切换启用/禁用状态（不依赖调用方读到的旧状态）
+     */
+    int toggleStatus(@Param("id") Long id, @Param("updateTime") Date updateTime);
+    
+    /**
+     * 仅当密码hash仍为oldPassword时替换为newPassword（登录时按新的BCrypt强度重新加密）
+     */
+    int updatePassword(@Param("id") Long id,
+                       @Param("oldPassword") String oldPassword,
+                       @Param("newPassword") String newPassword);
+    
     /**
      * 根据ID删除用户
      */
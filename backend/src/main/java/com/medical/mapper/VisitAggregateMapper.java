@@ -0,0 +1,40 @@
+package com.medical.mapper;
+
+import com.medical.dto.VisitAggregateDTO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 就诊记录实时聚合Mapper接口
+ * 
+ * 作用：启动和定时对账时从patient_visit读取全表、各科室、各日期、各患者的人次与费用，
+ * 应在同一个可重复读事务内依次调用，得到同一时刻的快照
+ */
+@Mapper
+public interface VisitAggregateMapper {
+    
+    /**
+     * 全表人次与费用
+     */
+    VisitAggregateDTO selectTotals();
+    
+    /**
+     * 各科室的人次与费用
+     */
+    List<VisitAggregateDTO> selectDepartmentTotals();
+    
+    /**
+     * 不早于startDate的各日期人次与费用
+     */
+    List<VisitAggregateDTO> selectDailyTotals(@Param("startDate") LocalDate startDate);
+    
+    /**
+     * 流式读取各患者的就诊人次
+     * 必须在事务内遍历
+     */
+    Cursor<VisitAggregateDTO> selectPatientVisitCounts();
+}
@@ -0,0 +1,64 @@
+package com.medical.mapper;
+
+import com.medical.dto.VisitPartitionDTO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * patient_visit分区维护Mapper接口
+ * 
+ * 作用：读取分区信息，执行按月新增分区、分离过期分区的DDL
+ * 
+ * 分区名、表名、日期由VisitPartitionService生成（pYYYYMM、yyyy-MM-dd），DDL中以${}拼接，不接受外部输入
+ */
+@Mapper
+public interface VisitPartitionMapper {
+    
+    /**
+     * 按顺序读取patient_visit的分区，表未分区时返回一行（分区名为null）
+     */
+    List<VisitPartitionDTO> selectPartitions();
+    
+    /**
+     * 获取MySQL命名锁，多实例同时维护时只有一个实例执行DDL，返回1表示获得
+     */
+    Integer acquireLock(@Param("name") String name);
+    
+    Integer releaseLock(@Param("name") String name);
+    
+    /**
+     * 把p_future（MAXVALUE）拆分为按月分区 + 新的p_future
+     * 
+     * @param partitions 每项包含name（分区名）、bound（上界，不含）
+     */
+    int splitFuture(@Param("partitions") List<Map<String, String>> partitions);
+    
+    /**
+     * 表的CREATE_OPTIONS（分区表包含partitioned），表不存在时返回null
+     */
+    String selectTableOptions(@Param("table") String table);
+    
+    /**
+     * 分区中是否有数据（只读取一行）
+     */
+    boolean partitionHasRows(@Param("partition") String partition);
+    
+    boolean tableHasRows(@Param("table") String table);
+    
+    /**
+     * 新建与patient_visit结构相同的表（随后去掉分区，用于交换出过期分区）
+     */
+    int createArchiveTable(@Param("table") String table);
+    
+    int removePartitioning(@Param("table") String table);
+    
+    /**
+     * 把分区中的数据交换到archive表（只交换元数据，不复制行），交换后分区为空
+     */
+    int exchangePartition(@Param("partition") String partition, @Param("table") String table);
+    
+    int dropPartition(@Param("partition") String partition);
+}
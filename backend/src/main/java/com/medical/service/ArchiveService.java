@@ -0,0 +1,387 @@
+package com.medical.service;
+
+import com.medical.archive.ArchiveTable;
+import com.medical.archive.ColdArchiveStore;
+import com.medical.archive.Segment;
+import com.medical.archive.SegmentWriter;
+import com.medical.cache.TwoLevelCacheManager;
+import com.medical.mapper.ArchiveMapper;
+import com.medical.mapper.VisitPartitionMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 冷数据归档Service
+ * 
+ * 作用：把已结束月份的patient_visit、insurance_settlement导出为ColdArchiveStore的段文件，并从在线表删除
+ * 
+ * 每个(表, 月份)一个事务：
+ * 1. SELECT ... FOR UPDATE按id流式读取该月的行，写入临时段文件并fsync
+ * 2. 重新打开临时文件，校验行数、id和每列的校验和
+ * 3. 分批删除该月id不大于最大id的行，删除行数必须等于导出行数，否则回滚
+ * 4. 临时文件改名为正式段文件后提交，提交成功再加入ColdArchiveStore
+ * 
+ * 删除直接执行SQL，不经过PatientService，科室日汇总、去重患者草图、高频疾病摘要和列式副本都保持不变；
+ * 改名后提交前中断时段文件中的数据仍在在线表中，启动时检查并改名为.orphan，避免重复计入
+ * 
+ * 定时归档默认关闭（archive.export.enabled），只归档早于min-age-months的月份；多实例时用MySQL命名锁保证只有一个实例执行，
+ * 其他实例定时重新扫描共享目录（archive.rescan-interval-ms），加入已提交的新段文件
+ */
+@Slf4j
+@Service
+public class ArchiveService {
+    
+    private static final String LOCK_NAME = "medical_platform.cold_archive";
+    
+    @Value("${archive.export.enabled:false}")
+    private boolean enabled;
+    
+    /**
+     * 只归档结束时间早于该月数的月份（当前月为第0个月）
+     */
+    @Value("${archive.export.min-age-months:24}")
+    private int minAgeMonths;
+    
+    /**
+     * 每张表每次最多归档的月份数
+     */
+    @Value("${archive.export.max-months-per-run:12}")
+    private int maxMonthsPerRun;
+    
+    /**
+     * 每批删除的行数
+     */
+    @Value("${archive.export.delete-batch-size:5000}")
+    private int deleteBatchSize;
+    
+    @Autowired
+    private ArchiveMapper archiveMapper;
+    
+    @Autowired
+    private VisitPartitionMapper visitPartitionMapper;
+    
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
+    
+    @Autowired
+    private TwoLevelCacheManager cacheManager;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private final ReentrantLock exportLock = new ReentrantLock();
+    
+    private volatile LocalDateTime lastRun;
+    
+    private volatile String lastError;
+    
+    private final AtomicLong archivedMonths = new AtomicLong();
+    private final AtomicLong archivedRows = new AtomicLong();
+    private final AtomicLong quarantinedSegments = new AtomicLong();
+    
+    /**
+     * 应用启动完成后在后台线程检查段文件，不阻塞启动；数据库不可用时跳过
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyOnStartup() {
+        if (!coldArchiveStore.hasSegments(ArchiveTable.VISIT) && !coldArchiveStore.hasSegments(ArchiveTable.SETTLEMENT)) {
+            return;
+        }
+        Thread worker = new Thread(() -> {
+            try {
+                verifySegments();
+            } catch (Exception e) {
+                log.error("归档段文件检查失败: {}", e.getMessage());
+            }
+        }, "cold-archive-verifier");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    /**
+     * 重新扫描共享目录：新段文件中的行已不在在线表中（归档事务已提交）才加入，
+     * 仍在在线表中的可能正在其他实例上提交，留到下次扫描；加入后清除可能缺少该月的缓存
+     */
+    @Scheduled(fixedDelayString = "${archive.rescan-interval-ms:60000}",
+               initialDelayString = "${archive.rescan-interval-ms:60000}")
+    public void rescanDirectory() {
+        try {
+            List<Segment> added = coldArchiveStore.rescan(segment -> archiveMapper.countIds(
+                segment.getTable().getTableName(), Arrays.asList(segment.getMinId(), segment.getMaxId())) == 0);
+            for (Segment segment : added) {
+                evictCaches(segment);
+                log.info("加入其他实例归档的段文件: {}", segment.getName());
+            }
+        } catch (Exception e) {
+            log.error("重新扫描冷数据归档目录失败: {}", e.getMessage());
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${archive.export.interval-ms:86400000}",
+               initialDelayString = "${archive.export.interval-ms:86400000}")
+    public void scheduledArchive() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            archive(null);
+        } catch (Exception e) {
+            log.error("定时冷数据归档失败: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 执行归档
+     * 
+     * @param month 指定月份（yyyy-MM，必须已结束），为空时按min-age-months归档最早的若干个月
+     * @return 本次归档的段文件
+     */
+    public Map<String, Object> archive(String month) {
+        YearMonth target = parseMonth(month);
+        if (!exportLock.tryLock()) {
+            throw new RuntimeException("冷数据归档正在进行，请稍后再试");
+        }
+        try {
+            List<Map<String, Object>> archived = new ArrayList<>();
+            // 命名锁占用外层事务的连接，各月份在独立的事务中导出
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                Integer locked = visitPartitionMapper.acquireLock(LOCK_NAME);
+                if (locked == null || locked != 1) {
+                    throw new RuntimeException("其他实例正在执行冷数据归档，请稍后再试");
+                }
+                try {
+                    for (ArchiveTable table : ArchiveTable.values()) {
+                        for (YearMonth m : target != null ? Arrays.asList(target) : candidateMonths(table)) {
+                            Segment segment = exportMonth(table, m);
+                            if (segment != null) {
+                                archived.add(describe(segment));
+                            }
+                        }
+                    }
+                } finally {
+                    visitPartitionMapper.releaseLock(LOCK_NAME);
+                }
+            });
+            lastRun = LocalDateTime.now();
+            lastError = null;
+            Map<String, Object> result = new HashMap<>();
+            result.put("segments", archived);
+            return result;
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+            throw e;
+        } finally {
+            exportLock.unlock();
+        }
+    }
+    
+    /**
+     * 检查全部段文件：其中的行仍在在线表中（导出事务未提交）时移出并改名为.orphan
+     * 
+     * @return 移出的段文件数
+     */
+    public int verifySegments() {
+        int quarantined = 0;
+        for (ArchiveTable table : ArchiveTable.values()) {
+            for (Segment segment : coldArchiveStore.getSegments(table)) {
+                if (archiveMapper.countIds(table.getTableName(),
+                    Arrays.asList(segment.getMinId(), segment.getMaxId())) == 0) {
+                    continue;
+                }
+                try {
+                    Path moved = coldArchiveStore.quarantine(segment);
+                    log.warn("段文件{}中的数据仍在{}中（归档未提交），已移出: {}",
+                        segment.getName(), table.getTableName(), moved.getFileName());
+                    quarantined++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        quarantinedSegments.addAndGet(quarantined);
+        return quarantined;
+    }
+    
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("exportEnabled", enabled);
+        stats.put("minAgeMonths", minAgeMonths);
+        stats.put("maxMonthsPerRun", maxMonthsPerRun);
+        stats.put("running", exportLock.isLocked());
+        stats.put("lastRun", lastRun != null ? lastRun.toString() : null);
+        stats.put("lastError", lastError);
+        stats.put("archivedMonths", archivedMonths.get());
+        stats.put("archivedRows", archivedRows.get());
+        stats.put("quarantinedSegments", quarantinedSegments.get());
+        stats.put("store", coldArchiveStore.stats());
+        return stats;
+    }
+    
+    /**
+     * 从表中最早的月份起，到min-age-months之前为止的月份
+     */
+    private List<YearMonth> candidateMonths(ArchiveTable table) {
+        List<YearMonth> months = new ArrayList<>();
+        LocalDate minDate = archiveMapper.selectMinDate(table.getTableName(), table.getDateColumn());
+        if (minDate == null) {
+            return months;
+        }
+        YearMonth cutoff = YearMonth.now().minusMonths(Math.max(minAgeMonths, 1));
+        for (YearMonth m = YearMonth.from(minDate); !m.isAfter(cutoff) && months.size() < maxMonthsPerRun;
+             m = m.plusMonths(1)) {
+            months.add(m);
+        }
+        return months;
+    }
+    
+    /**
+     * 导出并删除一个月的数据，该月没有数据时返回null
+     */
+    private Segment exportMonth(ArchiveTable table, YearMonth month) {
+        Path directory = coldArchiveStore.getDirectory();
+        LocalDate startDate = month.atDay(1);
+        LocalDate endDate = month.plusMonths(1).atDay(1);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Path[] written = new Path[1];
+        Segment segment;
+        try {
+            segment = tx.execute(status -> {
+                SegmentWriter writer = new SegmentWriter(table, month);
+                try (Cursor<Map<String, Object>> cursor = archiveMapper.selectMonthRows(table.getTableName(),
+                    table.getDateColumn(), table.getColumnNames(), startDate, endDate)) {
+                    for (Map<String, Object> row : cursor) {
+                        writer.add(row);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (writer.getRowCount() == 0) {
+                    return null;
+                }
+                try {
+                    written[0] = writer.write(directory, coldArchiveStore.getTempSuffix());
+                    writer.verify(Segment.open(written[0]));
+                    int deleted = 0;
+                    int batch;
+                    do {
+                        batch = archiveMapper.deleteMonthRows(table.getTableName(), table.getDateColumn(),
+                            startDate, endDate, writer.getMaxId(), deleteBatchSize);
+                        deleted += batch;
+                    } while (batch > 0);
+                    if (deleted != writer.getRowCount()) {
+                        throw new RuntimeException(table.getTableName() + " " + month + "删除" + deleted
+                            + "行，与导出的" + writer.getRowCount() + "行不一致，已回滚");
+                    }
+                    Path target = directory.resolve(writer.getFileName());
+                    written[0] = Files.move(written[0], target, StandardCopyOption.ATOMIC_MOVE);
+                    return Segment.open(target);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            discard(table, written[0]);
+            throw e;
+        }
+        if (segment == null) {
+            return null;
+        }
+        coldArchiveStore.register(segment);
+        evictCaches(segment);
+        archivedMonths.incrementAndGet();
+        archivedRows.addAndGet(segment.getRowCount());
+        log.info("{} {} 已归档 {} 行到 {}（{} 字节）", table.getTableName(), month, segment.getRowCount(),
+            segment.getName(), segment.getFileBytes());
+        return segment;
+    }
+    
+    /**
+     * 导出失败时删除写出的文件；正式段文件只在其中的行仍在在线表中（确认未提交）时删除，否则保留并加载
+     */
+    private void discard(ArchiveTable table, Path file) {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            if (file.getFileName().toString().endsWith(SegmentWriter.TEMP_SUFFIX)) {
+                Files.delete(file);
+                return;
+            }
+            Segment segment = Segment.open(file);
+            if (archiveMapper.countIds(table.getTableName(),
+                Arrays.asList(segment.getMinId(), segment.getMaxId())) > 0) {
+                Files.delete(file);
+            } else {
+                log.warn("归档事务提交结果未知但数据已从{}删除，保留段文件: {}", table.getTableName(), segment.getName());
+                coldArchiveStore.register(segment);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("清理归档文件失败，请人工检查{}: {}", file, e.getMessage());
+        }
+    }
+    
+    /**
+     * 提交到加入ColdArchiveStore之间的查询可能缓存了缺少该月的结果，加入后清除
+     */
+    private void evictCaches(Segment segment) {
+        if (segment.getTable() == ArchiveTable.SETTLEMENT) {
+            cacheManager.getCache(StatisticsService.CACHE_INSURANCE_MONTH_CLOSED).invalidate(segment.getMonth().toString());
+        } else {
+            cacheManager.getCache(StatisticsService.CACHE_OVERVIEW).invalidate(LocalDate.now().toString());
+        }
+    }
+    
+    private static Map<String, Object> describe(Segment segment) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("table", segment.getTable().getTableName());
+        item.put("month", segment.getMonth().toString());
+        item.put("file", segment.getName());
+        item.put("rows", segment.getRowCount());
+        item.put("fileBytes", segment.getFileBytes());
+        item.put("rawBytes", segment.getRawBytes());
+        return item;
+    }
+    
+    private static YearMonth parseMonth(String month) {
+        if (month == null || month.isEmpty()) {
+            return null;
+        }
+        YearMonth value;
+        try {
+            value = YearMonth.parse(month);
+        } catch (DateTimeParseException e) {
+            throw new RuntimeException("月份格式应为yyyy-MM: " + month);
+        }
+        if (!value.isBefore(YearMonth.now())) {
+            throw new RuntimeException("只能归档已结束的月份: " + month);
+        }
+        return value;
+    }
+}
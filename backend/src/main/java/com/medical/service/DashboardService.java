@@ -0,0 +1,292 @@
+package com.medical.service;
+
+import com.medical.dto.DashboardSection;
+import com.medical.util.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 统计仪表盘Service
+ * 
+ * 作用：一次请求返回仪表盘全部分区，页面耗时取决于最慢的分区，而不是各分区耗时之和
+ * 
+ * 实现方式：
+ * 1. 各分区在专用的有界线程池上并发计算，池满时该分区直接标记为rejected，不排队等待
+ * 2. 需要同一份数据的分区在请求内共用一次读取（如设备使用率与科室设备使用率共用窗口使用量）
+ * 3. 整体等待不超过timeout-ms，超时的分区返回timeout，其余分区照常返回；
+ *    超时的计算不会被取消，完成后结果写入缓存，下次请求可直接命中
+ * 4. 响应带整体与各分区耗时，同时记入stats()的直方图；
+ *    ETag只由各分区的status和data计算（见etagContent），耗时变化不影响304
+ */
+@Slf4j
+@Service
+public class DashboardService {
+    
+    @Autowired
+    private StatisticsService statisticsService;
+    
+    @Autowired
+    private EquipmentUtilizationService equipmentUtilizationService;
+    
+    /**
+     * 线程数
+     */
+    @Value("${statistics.dashboard.threads:8}")
+    private int threads;
+    
+    /**
+     * 等待队列容量
+     */
+    @Value("${statistics.dashboard.queue-capacity:64}")
+    private int queueCapacity;
+    
+    /**
+     * 一次请求的最长等待时间（毫秒）
+     */
+    @Value("${statistics.dashboard.timeout-ms:3000}")
+    private long timeoutMillis;
+    
+    private ThreadPoolExecutor executor;
+    
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    
+    private final LatencyHistogram latency = new LatencyHistogram();
+    
+    /**
+     * 分区名 → 该分区从提交到完成（或放弃等待）的耗时
+     */
+    private final ConcurrentMap<String, LatencyHistogram> sectionLatency = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "dashboard-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * 计算仪表盘全部分区
+     * 
+     * @return sections（分区名 → DashboardSection）、elapsedMillis、partial（是否有分区未成功）
+     */
+    public Map<String, Object> getDashboard() {
+        requests.incrementAndGet();
+        long startNanos = System.nanoTime();
+        DashboardRequest request = new DashboardRequest();
+        
+        request.section("overview", () -> statisticsService.getOverview());
+        request.section("outpatientTrend", () -> statisticsService.getOutpatientTrend());
+        request.section("departmentDistribution", () -> statisticsService.getDepartmentDistribution());
+        request.section("insuranceCostControl", () -> statisticsService.getInsuranceCostControl(null, null));
+        request.section("equipmentUsage", "equipment-window",
+            () -> equipmentUtilizationService.loadWindow(null, null),
+            equipmentUtilizationService::deviceUtilization);
+        request.section("equipmentDepartments", "equipment-window",
+            () -> equipmentUtilizationService.loadWindow(null, null),
+            equipmentUtilizationService::departmentUtilization);
+        
+        Map<String, DashboardSection> sections = request.await(startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        boolean partial = false;
+        for (DashboardSection section : sections.values()) {
+            partial |= !DashboardSection.OK.equals(section.getStatus());
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        latency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        if (partial) {
+            log.warn("仪表盘部分分区未完成，耗时 {} ms", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("sections", sections);
+        result.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        result.put("partial", partial);
+        return result;
+    }
+    
+    /**
+     * 参与ETag计算的内容：各分区的status和data，不含耗时与message
+     */
+    @SuppressWarnings("unchecked")
+    public static Object etagContent(Map<String, Object> dashboard) {
+        Map<String, Object> content = new LinkedHashMap<>();
+        Map<String, DashboardSection> sections = (Map<String, DashboardSection>) dashboard.get("sections");
+        for (Map.Entry<String, DashboardSection> entry : sections.entrySet()) {
+            Map<String, Object> section = new LinkedHashMap<>();
+            section.put("status", entry.getValue().getStatus());
+            section.put("data", entry.getValue().getData());
+            content.put(entry.getKey(), section);
+        }
+        return content;
+    }
+    
+    /**
+     * 全部分区都成功时才缓存编码结果；partial的响应每次重新计算，
+     * 超时的分区完成后写入了Service缓存，下次请求即可拿到
+     */
+    public static boolean isComplete(Map<String, Object> dashboard) {
+        return !Boolean.TRUE.equals(dashboard.get("partial"));
+    }
+    
+    /**
+     * 线程池与分区结果统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("threads", threads);
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("queueSize", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completedTasks", executor.getCompletedTaskCount());
+        stats.put("requests", requests.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("errors", errors.get());
+        stats.put("rejections", rejections.get());
+        stats.put("latency", latencyStats(latency));
+        Map<String, Object> sectionStats = new LinkedHashMap<>();
+        sectionLatency.forEach((name, histogram) -> sectionStats.put(name, latencyStats(histogram)));
+        stats.put("sectionLatency", sectionStats);
+        return stats;
+    }
+    
+    private static Map<String, Object> latencyStats(LatencyHistogram histogram) {
+        long count = histogram.getCount();
+        long[] percentiles = histogram.percentiles(50, 95, 99);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", count);
+        map.put("avgMillis", count > 0 ? histogram.getSum() / 1000.0 / count : 0.0);
+        map.put("p50Millis", percentiles[0] / 1000.0);
+        map.put("p95Millis", percentiles[1] / 1000.0);
+        map.put("p99Millis", percentiles[2] / 1000.0);
+        map.put("maxMillis", histogram.getMax() / 1000.0);
+        return map;
+    }
+    
+    /**
+     * 一次仪表盘请求：已提交的分区，以及请求内共用的数据读取
+     */
+    private final class DashboardRequest {
+        
+        private final Map<String, Pending> sections = new LinkedHashMap<>();
+        
+        /**
+         * 共用读取：key → 结果，同一请求内相同key只读取一次
+         */
+        private final Map<String, CompletableFuture<?>> shared = new HashMap<>();
+        
+        void section(String name, Supplier<?> supplier) {
+            sections.put(name, new Pending(submit(supplier)));
+        }
+        
+        /**
+         * 依赖共用读取的分区：读取完成后再做后续计算（计算量很小，不再单独提交）
+         */
+        @SuppressWarnings("unchecked")
+        <T> void section(String name, String sharedKey, Supplier<T> fetch, Function<T, ?> compute) {
+            CompletableFuture<T> data = (CompletableFuture<T>) shared.computeIfAbsent(sharedKey, k -> submit(fetch));
+            sections.put(name, new Pending(data.thenApply(compute)));
+        }
+        
+        private <T> CompletableFuture<T> submit(Supplier<T> supplier) {
+            try {
+                return CompletableFuture.supplyAsync(supplier, executor);
+            } catch (RejectedExecutionException e) {
+                CompletableFuture<T> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        
+        Map<String, DashboardSection> await(long deadlineNanos) {
+            Map<String, DashboardSection> result = new LinkedHashMap<>();
+            for (Map.Entry<String, Pending> entry : sections.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().await(entry.getKey(), deadlineNanos));
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * 已提交的分区，完成时记录耗时
+     */
+    private final class Pending {
+        
+        private final long submitNanos = System.nanoTime();
+        
+        private volatile long doneNanos;
+        
+        private final CompletableFuture<?> future;
+        
+        Pending(CompletableFuture<?> future) {
+            this.future = future;
+            future.whenComplete((value, error) -> doneNanos = System.nanoTime());
+        }
+        
+        DashboardSection await(String name, long deadlineNanos) {
+            DashboardSection section = new DashboardSection();
+            try {
+                section.setData(future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS));
+                section.setStatus(DashboardSection.OK);
+            } catch (TimeoutException e) {
+                timeouts.incrementAndGet();
+                section.setStatus(DashboardSection.TIMEOUT);
+                section.setMessage("超过" + timeoutMillis + "ms未完成");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof RejectedExecutionException) {
+                    rejections.incrementAndGet();
+                    section.setStatus(DashboardSection.REJECTED);
+                    section.setMessage("仪表盘线程池已满");
+                } else {
+                    errors.incrementAndGet();
+                    log.error("仪表盘分区 {} 计算失败", name, cause);
+                    section.setStatus(DashboardSection.ERROR);
+                    section.setMessage(cause.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                section.setStatus(DashboardSection.TIMEOUT);
+                section.setMessage("等待被中断");
+            }
+            long elapsedNanos = (doneNanos != 0 ? doneNanos : System.nanoTime()) - submitNanos;
+            section.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            sectionLatency.computeIfAbsent(name, k -> new LatencyHistogram())
+                .record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+            return section;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.medical.service;
+
+import com.medical.analytics.VisitTrendIndex;
+import com.medical.archive.ArchiveTable;
+import com.medical.archive.ColdArchiveStore;
+import com.medical.entity.Patient;
+import com.medical.mapper.DepartmentOperationMapper;
+import com.medical.util.DateConvertUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 科室运营日汇总Service
+ * 
+ * 作用：在就诊记录增删改时增量维护department_operation，
+ * 使门诊量趋势、科室分布查询的代价只与"天数 × 科室数"有关，而不是与就诊总量有关
+ * 
+ * 增量方法由PatientService在同一事务内调用，保证汇总与明细一致；
+ * 历史数据或不一致时可调用rebuild按日期范围重建；
+ * 汇总变化的日期在事务提交后通知VisitTrendIndex，由其修正前缀和
+ */
+@Slf4j
+@Service
+public class DepartmentRollupService {
+    
+    /**
+     * 计入住院量的就诊类型，其余类型（门诊/急诊/未填写）计入门诊量
+     */
+    private static final String INPATIENT = "住院";
+    
+    @Autowired
+    private DepartmentOperationMapper departmentOperationMapper;
+    
+    @Autowired
+    private VisitTrendIndex visitTrendIndex;
+    
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
+    
+    /**
+     * 新增就诊记录后累加汇总
+     */
+    public void applyInsert(Patient visit) {
+        applyDelta(visit, 1);
+    }
+    
+    /**
+     * 批量新增后累加汇总：先在内存中按(科室, 日期)合并，每个分组只执行一次upsert
+     * 
+     * @param mapper 执行更新所用的Mapper，批量导入时传入BATCH会话的Mapper以便与明细写入同一事务、同一批次
+     */
+    public void applyInsertAll(List<Patient> visits, DepartmentOperationMapper mapper) {
+        Map<String, Delta> deltas = new HashMap<>();
+        Set<LocalDate> days = new HashSet<>();
+        for (Patient visit : visits) {
+            if (visit.getVisitDate() == null || visit.getDepartment() == null) {
+                continue;
+            }
+            LocalDate statDate = DateConvertUtil.toLocalDate(visit.getVisitDate());
+            Delta delta = deltas.computeIfAbsent(visit.getDepartment() + '\u0000' + statDate,
+                k -> new Delta(visit.getDepartment(), statDate));
+            if (INPATIENT.equals(visit.getVisitType())) {
+                delta.inpatient++;
+            } else {
+                delta.outpatient++;
+            }
+            delta.revenue = delta.revenue.add(costOf(visit));
+            days.add(statDate);
+        }
+        for (Delta delta : deltas.values()) {
+            mapper.upsertDelta(delta.department, delta.statDate, delta.outpatient, delta.inpatient, delta.revenue);
+        }
+        afterCommit(() -> days.forEach(visitTrendIndex::markDirty));
+    }
+    
+    /**
+     * 删除就诊记录后扣减汇总
+     */
+    public void applyDelete(Patient visit) {
+        applyDelta(visit, -1);
+    }
+    
+    /**
+     * 修改就诊记录后：扣减旧值、累加新值
+     * 科室、日期、类型都没变时合并为一次更新
+     */
+    public void applyUpdate(Patient before, Patient after) {
+        if (sameBucket(before, after)) {
+            BigDecimal revenueDelta = costOf(after).subtract(costOf(before));
+            if (revenueDelta.signum() != 0) {
+                LocalDate statDate = DateConvertUtil.toLocalDate(after.getVisitDate());
+                departmentOperationMapper.upsertDelta(after.getDepartment(), statDate, 0, 0, revenueDelta);
+                afterCommit(() -> visitTrendIndex.markDirty(statDate));
+            }
+            return;
+        }
+        applyDelta(before, -1);
+        applyDelta(after, 1);
+    }
+    
+    /**
+     * 按日期范围从patient_visit重建汇总（闭区间）
+     * 已归档月份的明细不在patient_visit中，重建会丢失这些月份的汇总，范围涉及已归档月份时拒绝
+     * 
+     * @return 写入/更新的汇总行数
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public int rebuild(LocalDate startDate, LocalDate endDate) {
+        if (startDate == null || endDate == null || startDate.isAfter(endDate)) {
+            throw new RuntimeException("日期范围不正确");
+        }
+        if (coldArchiveStore.overlaps(ArchiveTable.VISIT, startDate, endDate)) {
+            throw new RuntimeException("日期范围包含已归档的月份（最后归档月份"
+                + coldArchiveStore.getLastArchivedMonth(ArchiveTable.VISIT) + "），不能从就诊明细重建");
+        }
+        log.info("重建科室运营日汇总: {} ~ {}", startDate, endDate);
+        departmentOperationMapper.resetByDateRange(startDate, endDate);
+        int rows = departmentOperationMapper.rebuildByDateRange(startDate, endDate);
+        afterCommit(() -> visitTrendIndex.markDirty(startDate, endDate));
+        log.info("科室运营日汇总重建完成: {} ~ {}, 影响行数={}", startDate, endDate, rows);
+        return rows;
+    }
+    
+    private void applyDelta(Patient visit, int sign) {
+        if (visit == null || visit.getVisitDate() == null || visit.getDepartment() == null) {
+            return;
+        }
+        boolean inpatient = INPATIENT.equals(visit.getVisitType());
+        LocalDate statDate = DateConvertUtil.toLocalDate(visit.getVisitDate());
+        departmentOperationMapper.upsertDelta(
+            visit.getDepartment(),
+            statDate,
+            inpatient ? 0 : sign,
+            inpatient ? sign : 0,
+            sign > 0 ? costOf(visit) : costOf(visit).negate()
+        );
+        afterCommit(() -> visitTrendIndex.markDirty(statDate));
+    }
+    
+    /**
+     * 事务提交后执行（回滚时不执行）
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    private boolean sameBucket(Patient before, Patient after) {
+        return before != null && after != null
+            && after.getVisitDate() != null && after.getDepartment() != null
+            && Objects.equals(before.getDepartment(), after.getDepartment())
+            && Objects.equals(DateConvertUtil.toLocalDate(before.getVisitDate()),
+                DateConvertUtil.toLocalDate(after.getVisitDate()))
+            && INPATIENT.equals(before.getVisitType()) == INPATIENT.equals(after.getVisitType());
+    }
+    
+    private static BigDecimal costOf(Patient visit) {
+        return visit.getCost() != null ? visit.getCost() : BigDecimal.ZERO;
+    }
+    
+    /**
+     * 单个(科室, 日期)分组的累计增量
+     */
+    private static final class Delta {
+        private final String department;
+        private final LocalDate statDate;
+        private int outpatient;
+        private int inpatient;
+        private BigDecimal revenue = BigDecimal.ZERO;
+        
+        private Delta(String department, LocalDate statDate) {
+            this.department = department;
+            this.statDate = statDate;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.medical.service;
+
+import com.medical.analytics.HyperLogLog;
+import com.medical.analytics.PatientSketchIndex;
+import com.medical.archive.ArchiveTable;
+import com.medical.archive.ColdArchiveStore;
+import com.medical.datasource.ReadOnlyRoute;
+import com.medical.dto.PatientVisitKeyDTO;
+import com.medical.mapper.PatientSketchMapper;
+import com.medical.mapper.StatisticsMapper;
+import com.medical.util.DateConvertUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+
+/**
+ * 去重患者数Service
+ * 
+ * 作用：统计任意日期范围、科室组合内的去重患者数，可按科室/月/日分组
+ * 
+ * 两种方式：
+ * - 估计：合并PatientSketchIndex中每个(日期, 科室)的HyperLogLog，误差约1%，耗时与天数 × 科室数有关，与就诊量无关
+ * - 精确：COUNT(DISTINCT patient_id)扫描就诊明细，只允许较短的日期范围；
+ *   范围涉及已归档月份时读出在线表和段文件中的患者ID，按分组合并集合后计数
+ * mode=auto时短范围精确统计、长范围估计；草图未加载完成时只能精确统计
+ */
+@ReadOnlyRoute
+@Slf4j
+@Service
+public class DistinctPatientService {
+    
+    public static final String MODE_AUTO = "auto";
+    public static final String MODE_EXACT = "exact";
+    public static final String MODE_ESTIMATE = "estimate";
+    
+    private static final String GROUP_DEPARTMENT = "department";
+    private static final String GROUP_MONTH = "month";
+    private static final String GROUP_DAY = "day";
+    
+    @Autowired
+    private PatientSketchIndex patientSketchIndex;
+    
+    @Autowired
+    private StatisticsMapper statisticsMapper;
+    
+    @Autowired
+    private PatientSketchMapper patientSketchMapper;
+    
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    /**
+     * auto模式下不超过该天数时精确统计
+     */
+    @Value("${analytics.cardinality.exact-auto-days:31}")
+    private int exactAutoDays;
+    
+    /**
+     * 精确统计允许的最大天数
+     */
+    @Value("${analytics.cardinality.exact-max-days:366}")
+    private int exactMaxDays;
+    
+    /**
+     * 查询去重患者数
+     * 
+     * @param startDate   起始日期（含），为空时取结束日期前29天
+     * @param endDate     结束日期（含），为空时取当天
+     * @param departments 科室，为空表示全部科室
+     * @param groupBy     department/month/day，为空时只返回合计
+     * @param mode        auto/exact/estimate，默认auto
+     */
+    public Map<String, Object> getDistinctPatients(LocalDate startDate, LocalDate endDate, List<String> departments,
+                                                   String groupBy, String mode) {
+        LocalDate end = endDate != null ? endDate : LocalDate.now();
+        LocalDate start = startDate != null ? startDate : end.minusDays(29);
+        if (start.isAfter(end)) {
+            throw new RuntimeException("起始日期不能晚于结束日期");
+        }
+        String group = parseGroupBy(groupBy);
+        Set<String> departmentSet = departments != null ? new LinkedHashSet<>(departments) : new LinkedHashSet<>();
+        departmentSet.remove("");
+        long days = ChronoUnit.DAYS.between(start, end) + 1;
+        boolean exact = useExact(mode, days);
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("startDate", start.toString());
+        result.put("endDate", end.toString());
+        result.put("departments", new ArrayList<>(departmentSet));
+        result.put("groupBy", group);
+        result.put("exact", exact);
+        result.put("relativeStandardError", exact ? 0.0 : HyperLogLog.RELATIVE_STANDARD_ERROR);
+        if (exact) {
+            exactCounts(result, start, end, departmentSet, group);
+        } else {
+            estimatedCounts(result, start, end, departmentSet, group);
+        }
+        return result;
+    }
+    
+    private boolean useExact(String mode, long days) {
+        String value = mode == null || mode.isEmpty() ? MODE_AUTO : mode.toLowerCase();
+        switch (value) {
+            case MODE_EXACT:
+                if (days > exactMaxDays) {
+                    throw new RuntimeException("精确统计的日期范围不能超过" + exactMaxDays + "天");
+                }
+                return true;
+            case MODE_ESTIMATE:
+                if (!patientSketchIndex.isReady()) {
+                    throw new RuntimeException("去重患者草图尚未加载完成，请稍后再试或改用精确统计");
+                }
+                return false;
+            case MODE_AUTO:
+                if (days <= exactAutoDays) {
+                    return true;
+                }
+                if (patientSketchIndex.isReady()) {
+                    return false;
+                }
+                if (days > exactMaxDays) {
+                    throw new RuntimeException("去重患者草图尚未加载完成，请稍后再试或缩小日期范围至"
+                        + exactMaxDays + "天以内");
+                }
+                return true;
+            default:
+                throw new RuntimeException("统计方式只能是auto/exact/estimate: " + mode);
+        }
+    }
+    
+    private void exactCounts(Map<String, Object> result, LocalDate start, LocalDate end, Set<String> departments,
+                             String group) {
+        if (coldArchiveStore.overlaps(ArchiveTable.VISIT, start, end)) {
+            mergedExactCounts(result, start, end, departments, group);
+            return;
+        }
+        // 去重数不能按分组相加，有分组时合计单独查询
+        List<Map<String, Object>> total = statisticsMapper.selectDistinctPatients(start, end, departments, null);
+        result.put("total", total.isEmpty() ? 0L : ((Number) total.get(0).get("value")).longValue());
+        if (group != null) {
+            List<Map<String, Object>> groups = new ArrayList<>();
+            for (Map<String, Object> row : statisticsMapper.selectDistinctPatients(start, end, departments, group)) {
+                groups.add(groupItem(String.valueOf(row.get("name")), ((Number) row.get("value")).longValue()));
+            }
+            result.put("groups", groups);
+        }
+    }
+    
+    /**
+     * 在线表与归档中的患者ID分别读出，合计和各分组各自合并为集合后计数
+     */
+    private void mergedExactCounts(Map<String, Object> result, LocalDate start, LocalDate end,
+                                   Set<String> departments, String group) {
+        BiFunction<LocalDate, String, String> groupKey = groupKey(group);
+        Set<String> total = new HashSet<>();
+        TreeMap<String, Set<String>> groups = group != null ? new TreeMap<>() : null;
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.execute(status -> {
+            try (Cursor<PatientVisitKeyDTO> cursor = patientSketchMapper.selectVisitKeys(start, end)) {
+                for (PatientVisitKeyDTO row : cursor) {
+                    collect(total, groups, groupKey, departments, row.getVisitDate(), row.getDepartment(),
+                        row.getPatientId());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        coldArchiveStore.scanVisits(start, end, visit -> collect(total, groups, groupKey, departments,
+            DateConvertUtil.toLocalDate(visit.getVisitDate()), visit.getDepartment(), visit.getPatientId()));
+        result.put("total", (long) total.size());
+        if (group != null) {
+            List<Map<String, Object>> items = new ArrayList<>(groups.size());
+            for (Map.Entry<String, Set<String>> entry : groups.entrySet()) {
+                items.add(groupItem(entry.getKey(), entry.getValue().size()));
+            }
+            result.put("groups", items);
+        }
+    }
+    
+    private static void collect(Set<String> total, Map<String, Set<String>> groups,
+                                BiFunction<LocalDate, String, String> groupKey, Set<String> departments,
+                                LocalDate day, String department, String patientId) {
+        if (patientId == null || (!departments.isEmpty() && !departments.contains(department))) {
+            return;
+        }
+        total.add(patientId);
+        if (groups != null) {
+            groups.computeIfAbsent(groupKey.apply(day, department), k -> new HashSet<>()).add(patientId);
+        }
+    }
+    
+    private void estimatedCounts(Map<String, Object> result, LocalDate start, LocalDate end, Set<String> departments,
+                                 String group) {
+        TreeMap<String, HyperLogLog> sketches = patientSketchIndex.union(start, end, departments, groupKey(group));
+        HyperLogLog total = new HyperLogLog();
+        List<Map<String, Object>> groups = new ArrayList<>(sketches.size());
+        for (Map.Entry<String, HyperLogLog> entry : sketches.entrySet()) {
+            total.merge(entry.getValue());
+            groups.add(groupItem(entry.getKey(), entry.getValue().estimate()));
+        }
+        result.put("total", total.estimate());
+        if (group != null) {
+            result.put("groups", groups);
+        }
+    }
+    
+    private static BiFunction<LocalDate, String, String> groupKey(String group) {
+        if (group == null) {
+            return (day, department) -> "";
+        }
+        switch (group) {
+            case GROUP_DEPARTMENT:
+                return (day, department) -> department;
+            case GROUP_MONTH:
+                return (day, department) -> YearMonth.from(day).toString();
+            default:
+                return (day, department) -> day.toString();
+        }
+    }
+    
+    private static String parseGroupBy(String groupBy) {
+        if (groupBy == null || groupBy.isEmpty() || groupBy.equalsIgnoreCase("none")) {
+            return null;
+        }
+        String value = groupBy.toLowerCase();
+        if (!GROUP_DEPARTMENT.equals(value) && !GROUP_MONTH.equals(value) && !GROUP_DAY.equals(value)) {
+            throw new RuntimeException("分组只能是department/month/day: " + groupBy);
+        }
+        return value;
+    }
+    
+    private static Map<String, Object> groupItem(String name, long value) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("name", name);
+        item.put("value", value);
+        return item;
+    }
+}
@@ -0,0 +1,305 @@
+package com.medical.service;
+
+import com.medical.cache.TwoLevelCacheManager;
+import com.medical.config.EquipmentUtilizationProperties;
+import com.medical.datasource.ReadOnlyRoute;
+import com.medical.dto.EquipmentUsageStatDTO;
+import com.medical.mapper.EquipmentUsageMapper;
+import com.medical.util.DateConvertUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 设备使用率Service
+ * 
+ * 作用：基于equipment_usage明细计算任意日期窗口内每台设备、每个科室的使用率
+ * 
+ * 实现方式：
+ * 1. 定时任务按主键水位把新增明细增量汇总到equipment_usage_daily（按设备、日期），
+ *    同时维护每台设备按日期的累计使用时长/次数（只重算本批明细最早日期之后的行）；
+ *    水位只推进到写入已超过commit-lag-seconds的明细，较小ID的事务晚提交时不会被跳过
+ * 2. 窗口使用量 = 截至结束日期的累计值 - 起始日期之前的累计值，
+ *    每台设备只需两次主键定位，查询代价与设备数成正比，与明细行数无关
+ * 3. 结果按窗口缓存
+ * 
+ * 水位只覆盖新增的明细；明细被修改、删除、历史数据补录，或写入事务持续超过commit-lag-seconds时调用rebuild全量重建
+ */
+@Slf4j
+@Service
+public class EquipmentUtilizationService {
+    
+    public static final String CACHE_EQUIPMENT_USAGE = "equipment-usage";
+    
+    /**
+     * aggregate_watermark中本汇总的名称
+     */
+    private static final String WATERMARK = "equipment_usage_daily";
+    
+    @Autowired
+    private EquipmentUsageMapper equipmentUsageMapper;
+    
+    @Autowired
+    private EquipmentUtilizationProperties properties;
+    
+    @Autowired
+    private TwoLevelCacheManager cacheManager;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+    
+    /**
+     * 每台设备在窗口内的使用率，按使用率从高到低排序
+     * 
+     * @param startDate 起始日期（含），为空时取最近default-window-days天
+     * @param endDate   结束日期（含），为空时取当天
+     */
+    @ReadOnlyRoute
+    public List<Map<String, Object>> getDeviceUtilization(LocalDate startDate, LocalDate endDate) {
+        return deviceUtilization(loadWindow(startDate, endDate));
+    }
+    
+    /**
+     * 每个科室在窗口内的使用率（科室内设备使用时长之和 / 可用时长之和）
+     */
+    @ReadOnlyRoute
+    public List<Map<String, Object>> getDepartmentUtilization(LocalDate startDate, LocalDate endDate) {
+        return departmentUtilization(loadWindow(startDate, endDate));
+    }
+    
+    /**
+     * 读取窗口内每台设备的使用量（按窗口缓存），设备与科室使用率可共用同一次读取
+     */
+    @ReadOnlyRoute
+    public UsageWindow loadWindow(LocalDate startDate, LocalDate endDate) {
+        LocalDate end = endDate != null ? endDate : LocalDate.now();
+        LocalDate start = startDate != null ? startDate : end.minusDays(properties.getDefaultWindowDays() - 1);
+        if (start.isAfter(end)) {
+            throw new RuntimeException("起始日期不能晚于结束日期");
+        }
+        if (ChronoUnit.DAYS.between(start, end) >= properties.getMaxWindowDays()) {
+            throw new RuntimeException("日期范围不能超过" + properties.getMaxWindowDays() + "天");
+        }
+        List<EquipmentUsageStatDTO> stats = cacheManager.getCache(CACHE_EQUIPMENT_USAGE).get(start + ":" + end, () -> {
+            log.info("从设备日汇总计算窗口使用量: {} ~ {}", start, end);
+            return equipmentUsageMapper.selectWindowStats(start, end);
+        });
+        return new UsageWindow(start, end, stats);
+    }
+    
+    public List<Map<String, Object>> deviceUtilization(UsageWindow window) {
+        LocalDate today = LocalDate.now();
+        List<Map<String, Object>> result = new ArrayList<>(window.stats.size());
+        for (EquipmentUsageStatDTO stat : window.stats) {
+            Usage usage = new Usage(stat.getEquipmentName());
+            usage.add(stat, availableHours(stat, window.start, window.end, today));
+            Map<String, Object> item = usage.toMap("name");
+            item.remove("deviceCount");
+            item.put("equipmentId", stat.getEquipmentId());
+            item.put("department", stat.getDepartment());
+            result.add(item);
+        }
+        sortByRate(result);
+        return result;
+    }
+    
+    public List<Map<String, Object>> departmentUtilization(UsageWindow window) {
+        LocalDate today = LocalDate.now();
+        Map<String, Usage> byDepartment = new LinkedHashMap<>();
+        for (EquipmentUsageStatDTO stat : window.stats) {
+            String department = stat.getDepartment() != null ? stat.getDepartment() : "未知";
+            byDepartment.computeIfAbsent(department, Usage::new)
+                .add(stat, availableHours(stat, window.start, window.end, today));
+        }
+        List<Map<String, Object>> result = new ArrayList<>(byDepartment.size());
+        for (Usage usage : byDepartment.values()) {
+            result.add(usage.toMap("department"));
+        }
+        sortByRate(result);
+        return result;
+    }
+    
+    /**
+     * 设备在窗口内的可用时长：只计首次使用之后、且不晚于当天的日期
+     */
+    private double availableHours(EquipmentUsageStatDTO stat, LocalDate start, LocalDate end, LocalDate today) {
+        LocalDate from = start;
+        if (stat.getFirstDate() != null) {
+            LocalDate firstDate = DateConvertUtil.toLocalDate(stat.getFirstDate());
+            if (firstDate.isAfter(from)) {
+                from = firstDate;
+            }
+        }
+        LocalDate to = end.isAfter(today) ? today : end;
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        return days > 0 ? days * properties.availableHoursPerDay(stat.getEquipmentId()) : 0;
+    }
+    
+    private static void sortByRate(List<Map<String, Object>> list) {
+        list.sort((a, b) -> ((BigDecimal) b.get("usageRate")).compareTo((BigDecimal) a.get("usageRate")));
+    }
+    
+    /**
+     * 定时增量汇总新增的明细
+     */
+    @Scheduled(fixedDelayString = "${equipment.utilization.refresh-interval-ms:60000}",
+               initialDelayString = "${equipment.utilization.refresh-interval-ms:60000}")
+    public void scheduledRefresh() {
+        if (!properties.isRefreshEnabled()) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("设备使用日汇总增量刷新失败: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 把水位之后的明细全部汇总，每refresh-batch-size行一个事务
+     * 
+     * @return 本次汇总的明细ID跨度
+     */
+    public long refresh() {
+        equipmentUsageMapper.initWatermark(WATERMARK);
+        long total = 0;
+        while (true) {
+            Long applied = transactionTemplate.execute(status -> refreshBatch());
+            if (applied == null || applied == 0) {
+                break;
+            }
+            total += applied;
+        }
+        if (total > 0) {
+            log.info("设备使用日汇总增量刷新完成，明细ID跨度 {}", total);
+        }
+        return total;
+    }
+    
+    /**
+     * 在当前事务内汇总水位之后的一批明细：锁定水位行，多实例同时刷新时串行执行
+     * 
+     * AUTO_INCREMENT按插入顺序分配ID，但事务按各自的结束时间提交：
+     * 只把写入已超过commit-lag-seconds的明细计入本批，更新的明细留到之后的刷新
+     */
+    private long refreshBatch() {
+        Long lastId = equipmentUsageMapper.selectWatermarkForUpdate(WATERMARK);
+        long from = lastId != null ? lastId : 0;
+        Long maxId = equipmentUsageMapper.selectMaxId();
+        if (maxId == null || maxId <= from) {
+            return 0;
+        }
+        long limit = Math.min(maxId, from + properties.getRefreshBatchSize());
+        Long settled = equipmentUsageMapper.selectSettledMaxId(from, limit, properties.getCommitLagSeconds());
+        if (settled == null || settled <= from) {
+            return 0;
+        }
+        long to = settled;
+        if (equipmentUsageMapper.upsertDailyByIdRange(from, to) > 0) {
+            equipmentUsageMapper.upsertDevicesByIdRange(from, to);
+            equipmentUsageMapper.refreshCumulativeByIdRange(from, to);
+        }
+        equipmentUsageMapper.updateWatermark(WATERMARK, to);
+        return to - from;
+    }
+    
+    /**
+     * 全量重建日汇总与设备维表（在一个事务内完成，重建期间查询仍读到旧数据）
+     * 
+     * @return 重建后的水位（明细最大ID）
+     */
+    public long rebuild() {
+        equipmentUsageMapper.initWatermark(WATERMARK);
+        Long watermark = transactionTemplate.execute(status -> {
+            equipmentUsageMapper.selectWatermarkForUpdate(WATERMARK);
+            equipmentUsageMapper.deleteAllDaily();
+            equipmentUsageMapper.deleteAllDevices();
+            Long maxId = equipmentUsageMapper.selectMaxId();
+            long to = maxId != null ? maxId : 0;
+            for (long from = 0; from < to; from += properties.getRefreshBatchSize()) {
+                long batchTo = Math.min(to, from + properties.getRefreshBatchSize());
+                equipmentUsageMapper.upsertDailyByIdRange(from, batchTo);
+                equipmentUsageMapper.upsertDevicesByIdRange(from, batchTo);
+            }
+            equipmentUsageMapper.refreshCumulative();
+            equipmentUsageMapper.updateWatermark(WATERMARK, to);
+            return to;
+        });
+        cacheManager.getCache(CACHE_EQUIPMENT_USAGE).clearLocal();
+        log.info("设备使用日汇总全量重建完成，水位 {}", watermark);
+        return watermark != null ? watermark : 0;
+    }
+    
+    /**
+     * 一个日期窗口及窗口内每台设备的使用量
+     */
+    public static final class UsageWindow {
+        private final LocalDate start;
+        private final LocalDate end;
+        private final List<EquipmentUsageStatDTO> stats;
+        
+        private UsageWindow(LocalDate start, LocalDate end, List<EquipmentUsageStatDTO> stats) {
+            this.start = start;
+            this.end = end;
+            this.stats = stats != null ? stats : new ArrayList<>();
+        }
+    }
+    
+    /**
+     * 使用时长、次数与可用时长累加器
+     */
+    private static final class Usage {
+        private final String key;
+        private int deviceCount;
+        private long usageCount;
+        private BigDecimal usageHours = BigDecimal.ZERO;
+        private double availableHours;
+        
+        private Usage(String key) {
+            this.key = key;
+        }
+        
+        private void add(EquipmentUsageStatDTO stat, double available) {
+            deviceCount++;
+            usageCount += stat.getUsageCount() != null ? stat.getUsageCount() : 0;
+            usageHours = usageHours.add(stat.getUsageHours() != null ? stat.getUsageHours() : BigDecimal.ZERO);
+            availableHours += available;
+        }
+        
+        private Map<String, Object> toMap(String keyName) {
+            Map<String, Object> map = new HashMap<>();
+            map.put(keyName, key);
+            map.put("deviceCount", deviceCount);
+            map.put("usageCount", usageCount);
+            map.put("usageHours", usageHours);
+            map.put("availableHours", BigDecimal.valueOf(availableHours).setScale(2, RoundingMode.HALF_UP));
+            // 使用率（%）= 使用时长 / 可用时长 * 100，保留一位小数
+            map.put("usageRate", availableHours > 0
+                ? usageHours.multiply(BigDecimal.valueOf(100))
+                    .divide(BigDecimal.valueOf(availableHours), 1, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO.setScale(1));
+            return map;
+        }
+    }
+}
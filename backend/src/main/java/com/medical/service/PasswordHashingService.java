@@ -0,0 +1,315 @@
+package com.medical.service;
+
+import com.medical.common.TooManyRequestsException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 密码哈希Service
+ * 
+ * 作用：BCrypt校验/加密很耗CPU，放到专用的有界线程池上执行，不占用Tomcat请求线程，
+ * 登录高峰或暴力尝试时不会把所有核心占满而拖慢统计接口
+ * 
+ * 准入控制（任一不满足立即拒绝，返回HTTP 429）：
+ * 1. 线程池排队已满
+ * 2. 同一用户名、同一IP正在进行的校验数超过上限
+ * 
+ * BCrypt强度可配置；登录成功时若已存hash的强度与配置不同，由调用方按新强度重新加密（见needsRehash）
+ */
+@Slf4j
+@Service
+public class PasswordHashingService {
+    
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[aby]?\\$(\\d{2})\\$");
+    
+    /**
+     * 耗时分布的桶上限（毫秒），最后一个桶为超过最大上限的部分
+     */
+    private static final long[] LATENCY_BUCKETS_MILLIS = {25, 50, 100, 200, 500, 1000, 2000};
+    
+    /**
+     * BCrypt强度（log2轮数），新加密与登录重新加密都使用该值
+     */
+    @Value("${security.password.bcrypt-strength:10}")
+    private int strength;
+    
+    /**
+     * 线程数，0表示CPU核数的一半（至少1）
+     */
+    @Value("${security.password.threads:0}")
+    private int threads;
+    
+    /**
+     * 等待队列容量
+     */
+    @Value("${security.password.queue-capacity:64}")
+    private int queueCapacity;
+    
+    /**
+     * 同一用户名同时进行的校验数上限
+     */
+    @Value("${security.password.max-in-flight-per-user:2}")
+    private int maxInFlightPerUser;
+    
+    /**
+     * 同一IP同时进行的校验数上限
+     */
+    @Value("${security.password.max-in-flight-per-ip:8}")
+    private int maxInFlightPerIp;
+    
+    /**
+     * 请求线程最长等待时间（毫秒）
+     */
+    @Value("${security.password.timeout-ms:5000}")
+    private long timeoutMillis;
+    
+    /**
+     * 拒绝时建议客户端等待的秒数
+     */
+    @Value("${security.password.retry-after-seconds:1}")
+    private int retryAfterSeconds;
+    
+    private BCryptPasswordEncoder encoder;
+    
+    private ThreadPoolExecutor executor;
+    
+    private final ConcurrentHashMap<String, AtomicInteger> inFlightByUser = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> inFlightByIp = new ConcurrentHashMap<>();
+    
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS_MILLIS.length + 1];
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder rejectedQueueFull = new LongAdder();
+    private final LongAdder rejectedUser = new LongAdder();
+    private final LongAdder rejectedIp = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rehashes = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        encoder = new BCryptPasswordEncoder(strength);
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        threads = poolSize;
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "password-hash-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+        log.info("密码哈希线程池已创建: threads={}, queueCapacity={}, bcryptStrength={}", poolSize, queueCapacity, strength);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * 校验密码（登录），受用户名/IP并发上限约束
+     * 
+     * @throws TooManyRequestsException 排队已满、同一用户名或IP的并发校验超过上限、等待超时
+     */
+    public boolean matches(String username, String clientIp, String rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return false;
+        }
+        if (!acquire(inFlightByIp, clientIp, maxInFlightPerIp)) {
+            rejectedIp.increment();
+            throw new TooManyRequestsException("该地址登录请求过于频繁，请稍后重试", retryAfterSeconds);
+        }
+        if (!acquire(inFlightByUser, username, maxInFlightPerUser)) {
+            release(inFlightByIp, clientIp);
+            rejectedUser.increment();
+            throw new TooManyRequestsException("该账号登录请求过于频繁，请稍后重试", retryAfterSeconds);
+        }
+        // 名额在哈希真正结束时归还：请求线程等待超时后任务仍在执行，仍计入并发
+        return await(submit(() -> encoder.matches(rawPassword, encodedPassword), () -> {
+            release(inFlightByUser, username);
+            release(inFlightByIp, clientIp);
+        }));
+    }
+    
+    /**
+     * 按配置的强度加密密码（注册、修改密码）
+     */
+    public String encode(String rawPassword) {
+        return await(submit(() -> encoder.encode(rawPassword), null));
+    }
+    
+    /**
+     * 按配置的强度异步重新加密，完成后回调（登录成功且needsRehash时使用，不阻塞登录）
+     * 线程池已满时放弃，下次登录再试
+     */
+    public void rehashAsync(String rawPassword, Consumer<String> onEncoded) {
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                String encoded = encoder.encode(rawPassword);
+                record(System.nanoTime() - start);
+                rehashes.increment();
+                onEncoded.accept(encoded);
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("密码哈希线程池已满，跳过重新加密");
+        }
+    }
+    
+    /**
+     * 已存hash的BCrypt强度与当前配置不同时返回true
+     */
+    public boolean needsRehash(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+    
+    /**
+     * 线程池与哈希耗时统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("bcryptStrength", strength);
+        stats.put("threads", threads);
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        long count = hashes.sum();
+        stats.put("hashes", count);
+        stats.put("avgHashMillis", count > 0 ? hashNanos.sum() / count / 1_000_000.0 : 0.0);
+        stats.put("maxHashMillis", maxHashNanos.get() / 1_000_000.0);
+        stats.put("avgQueueWaitMillis", count > 0 ? waitNanos.sum() / count / 1_000_000.0 : 0.0);
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+            histogram.put("le" + LATENCY_BUCKETS_MILLIS[i] + "ms", latencyBuckets[i].sum());
+        }
+        histogram.put("gt" + LATENCY_BUCKETS_MILLIS[LATENCY_BUCKETS_MILLIS.length - 1] + "ms",
+            latencyBuckets[LATENCY_BUCKETS_MILLIS.length].sum());
+        stats.put("hashLatency", histogram);
+        stats.put("rejectedQueueFull", rejectedQueueFull.sum());
+        stats.put("rejectedPerUser", rejectedUser.sum());
+        stats.put("rejectedPerIp", rejectedIp.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("rehashes", rehashes.sum());
+        stats.put("inFlightUsers", inFlightByUser.size());
+        stats.put("inFlightIps", inFlightByIp.size());
+        return stats;
+    }
+    
+    /**
+     * 提交哈希任务，记录排队与执行耗时；finished在任务结束（或被拒绝）时执行
+     */
+    private <T> Future<T> submit(Callable<T> task, Runnable finished) {
+        long submitNanos = System.nanoTime();
+        try {
+            return executor.submit(() -> {
+                long start = System.nanoTime();
+                waitNanos.add(start - submitNanos);
+                try {
+                    return task.call();
+                } finally {
+                    record(System.nanoTime() - start);
+                    if (finished != null) {
+                        finished.run();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (finished != null) {
+                finished.run();
+            }
+            rejectedQueueFull.increment();
+            throw new TooManyRequestsException("登录请求过多，请稍后重试", retryAfterSeconds);
+        }
+    }
+    
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new TooManyRequestsException("登录请求过多，请稍后重试", retryAfterSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("密码校验被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("密码校验失败", cause);
+        }
+    }
+    
+    private void record(long nanos) {
+        hashes.increment();
+        hashNanos.add(nanos);
+        maxHashNanos.accumulateAndGet(nanos, Math::max);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS_MILLIS.length && millis > LATENCY_BUCKETS_MILLIS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets[bucket].increment();
+    }
+    
+    /**
+     * 占用一个并发名额，已达上限返回false
+     */
+    private static boolean acquire(ConcurrentHashMap<String, AtomicInteger> inFlight, String key, int limit) {
+        if (key == null || limit <= 0) {
+            return true;
+        }
+        boolean[] acquired = new boolean[1];
+        inFlight.compute(key, (k, count) -> {
+            AtomicInteger current = count != null ? count : new AtomicInteger();
+            if (current.get() < limit) {
+                current.incrementAndGet();
+                acquired[0] = true;
+            }
+            return current.get() > 0 ? current : null;
+        });
+        return acquired[0];
+    }
+    
+    /**
+     * 归还并发名额，计数归零时移除，避免按用户名/IP无限增长
+     */
+    private static void release(ConcurrentHashMap<String, AtomicInteger> inFlight, String key) {
+        if (key == null) {
+            return;
+        }
+        inFlight.computeIfPresent(key, (k, count) -> count.decrementAndGet() > 0 ? count : null);
+    }
+}
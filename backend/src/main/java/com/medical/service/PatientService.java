@@ -1,12 +1,27 @@
 package com.medical.service;
 
+import com.medical.datasource.ReadOnlyRoute;
+import com.medical.dto.CursorPage;
 import com.medical.entity.Patient;
+import com.medical.event.VisitChangeEvent;
 import com.medical.mapper.PatientMapper;
+import com.medical.util.DateConvertUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 患者业务逻辑Service
@@ -22,48 +37,112 @@ public class PatientService {
     @Autowired
     private PatientMapper patientMapper;
     
+    @Autowired
+    private DepartmentRollupService departmentRollupService;
+    
     /**
-     * 查询所有患者
-     * 注意：移除了@Cacheable注解，避免Redis不可用时的连接错误
-     * 如果将来需要缓存，可以手动实现类似StatisticsService的缓存逻辑
+     * 发布就诊记录变更事件，列式副本、草图、摘要、时间线缓存和实时聚合在事务提交后各自应用
      */
-    public List<Patient> getAllPatients() {
-        // #region agent log
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"PatientService.java:31\",\"message\":\"getAllPatients called\",\"data\":{\"mapper\":\"%s\"},\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"E\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                System.currentTimeMillis(),
-                patientMapper != null ? "not null" : "null"
-            );
-            try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                writer.write(logEntry);
-            }
-        } catch (Exception e) {}
-        // #endregion
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    /**
+     * 就诊记录分区信息，分区表上分页按月份窗口查询
+     */
+    @Autowired
+    private VisitPartitionService visitPartitionService;
+    
+    @Value("${patient.page.default-size:50}")
+    private int defaultPageSize;
+    
+    @Value("${patient.page.max-size:500}")
+    private int maxPageSize;
+    
+    /**
+     * 游标分页查询就诊记录（按就诊日期、ID倒序）
+     * 
+     * 使用 (visit_date, id) 作为定位键，每页只读取size+1行，
+     * 翻页代价与页码无关，内存占用只与页大小有关
+     * 
+     * @param cursor 上一页返回的nextCursor，为空表示第一页
+     * @param size   每页条数，超过上限时按上限处理
+     */
+    @ReadOnlyRoute
+    public CursorPage<Patient> getPatientPage(String cursor, Integer size) {
+        int pageSize = size == null || size <= 0 ? defaultPageSize : Math.min(size, maxPageSize);
+        LocalDate lastVisitDate = null;
+        Long lastId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] parts = decodeCursor(cursor);
+            lastVisitDate = LocalDate.ofEpochDay(Long.parseLong(parts[0]));
+            lastId = Long.parseLong(parts[1]);
+        }
         
-        log.info("从数据库查询所有患者");
-        List<Patient> result = patientMapper.selectAll();
+        List<Patient> rows = selectPageRows(lastVisitDate, lastId, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<Patient> items = hasMore ? new ArrayList<>(rows.subList(0, pageSize)) : rows;
         
-        // #region agent log
-        try {
-            String logPath = "d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log";
-            String logEntry = String.format(
-                "{\"id\":\"log_%d_%s\",\"timestamp\":%d,\"location\":\"PatientService.java:34\",\"message\":\"getAllPatients result\",\"data\":{\"count\":%d},\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"E\"}\n",
-                System.currentTimeMillis(),
-                Integer.toHexString((int)(Math.random() * 1000000)),
-                System.currentTimeMillis(),
-                result != null ? result.size() : 0
-            );
-            try (java.io.FileWriter writer = new java.io.FileWriter(logPath, true)) {
-                writer.write(logEntry);
+        CursorPage<Patient> page = new CursorPage<>();
+        page.setItems(items);
+        page.setSize(items.size());
+        page.setHasMore(hasMore);
+        if (hasMore) {
+            Patient last = items.get(items.size() - 1);
+            page.setNextCursor(encodeCursor(DateConvertUtil.toLocalDate(last.getVisitDate()), last.getId()));
+        }
+        return page;
+    }
+    
+    /**
+     * 读取一页：未分区时一次查询；分区表上从游标所在月份（第一页为当前月及以后）开始，
+     * 行数不够时向前扩大日期窗口（1、2、4、8…个月），每次查询只访问窗口内的分区，
+     * 通常第一个窗口就能取满一页，不会打开更早月份的分区
+     */
+    private List<Patient> selectPageRows(LocalDate lastVisitDate, Long lastId, int limit) {
+        LocalDate floor = visitPartitionService.getMonthlyFloor();
+        if (floor == null) {
+            return patientMapper.selectPage(lastVisitDate, lastId, null, null, limit);
+        }
+        List<Patient> rows = new ArrayList<>(limit);
+        LocalDate before = null;
+        LocalDate from = (lastVisitDate != null ? lastVisitDate : LocalDate.now()).withDayOfMonth(1);
+        int months = 1;
+        while (true) {
+            // 到达第一个按月分区后，更早的数据都在p_history中，最后一次查询不设下界
+            boolean lastWindow = !from.isAfter(floor);
+            rows.addAll(patientMapper.selectPage(lastVisitDate, lastId, lastWindow ? null : from, before,
+                limit - rows.size()));
+            if (rows.size() >= limit || lastWindow) {
+                return rows;
             }
-        } catch (Exception e) {}
-        // #endregion
-        
-        return result;
+            before = from;
+            months *= 2;
+            from = from.minusMonths(months);
+        }
+    }
+    
+    /**
+     * 流式遍历所有就诊记录（按就诊日期、ID倒序）
+     * 
+     * 基于MyBatis Cursor逐行读取，每读到一行就交给consumer处理，
+     * 整个遍历期间占用一个数据库连接，需在只读事务内执行
+     * 
+     * @return 遍历的行数
+     */
+    @ReadOnlyRoute
+    @Transactional(readOnly = true)
+    public long streamVisits(Consumer<Patient> consumer) {
+        long count = 0;
+        try (Cursor<Patient> cursor = patientMapper.selectAllCursor()) {
+            for (Patient patient : cursor) {
+                consumer.accept(patient);
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("流式导出就诊记录完成，共 {} 条", count);
+        return count;
     }
     
     /**
@@ -81,5 +160,97 @@ public class PatientService {
         log.info("查询患者就诊记录，患者ID: {}", patientId);
         return patientMapper.selectByPatientId(patientId);
     }
+    
+    /**
+     * 新增就诊记录（同一事务内累加科室运营日汇总，提交后由事件订阅方更新派生数据）
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public Patient createVisit(Patient patient) {
+        patient.setId(null);
+        patientMapper.insert(patient);
+        departmentRollupService.applyInsert(patient);
+        eventPublisher.publishEvent(VisitChangeEvent.inserted(patient));
+        log.info("新增就诊记录成功，ID: {}", patient.getId());
+        return patient;
+    }
+    
+    /**
+     * 修改就诊记录（同一事务内修正科室运营日汇总，提交后由事件订阅方更新派生数据）
+     * 
+     * 旧值以FOR UPDATE读取，并发修改同一条记录时后者等前者提交后再读，汇总增量不会重复扣减
+     * 
+     * @param currentVisitDate 记录修改前的就诊日期（可选），传入时读取旧值只访问一个分区
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public Patient updateVisit(Patient patient, LocalDate currentVisitDate) {
+        Patient existing = lockVisit(patient.getId(), currentVisitDate);
+        if (existing == null) {
+            throw new RuntimeException("就诊记录不存在");
+        }
+        if (patientMapper.update(patient, existing.getVisitDate()) == 0) {
+            throw new RuntimeException("就诊记录已被修改或删除，请刷新后重试");
+        }
+        departmentRollupService.applyUpdate(existing, patient);
+        eventPublisher.publishEvent(VisitChangeEvent.updated(existing, patient));
+        log.info("修改就诊记录成功，ID: {}", patient.getId());
+        return patient;
+    }
+    
+    /**
+     * 删除就诊记录（同一事务内扣减科室运营日汇总，提交后由事件订阅方更新派生数据）
+     * 
+     * 旧值以FOR UPDATE读取，并发删除同一条记录时后者读到的是已删除（不存在）
+     * 
+     * @param visitDate 记录的就诊日期（可选），传入时读取旧值只访问一个分区
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void deleteVisit(Long id, LocalDate visitDate) {
+        Patient existing = lockVisit(id, visitDate);
+        if (existing == null) {
+            throw new RuntimeException("就诊记录不存在");
+        }
+        if (patientMapper.deleteById(id, existing.getVisitDate()) == 0) {
+            throw new RuntimeException("就诊记录已被修改或删除，请刷新后重试");
+        }
+        departmentRollupService.applyDelete(existing);
+        eventPublisher.publishEvent(VisitChangeEvent.deleted(existing));
+        log.info("删除就诊记录成功，ID: {}", id);
+    }
+    
+    /**
+     * 锁定并读取一条就诊记录：调用方给出的就诊日期只作为分区提示，
+     * 按该日期查不到（日期已被修改或提示有误）时再按ID在全部分区中查找
+     */
+    private Patient lockVisit(Long id, LocalDate visitDateHint) {
+        if (visitDateHint != null) {
+            Patient existing = patientMapper.selectByIdForUpdate(id, DateConvertUtil.toDate(visitDateHint));
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return patientMapper.selectByIdForUpdate(id, null);
+    }
+    
+    /**
+     * 游标编码：Base64URL("就诊日期epochDay:ID")
+     */
+    private static String encodeCursor(LocalDate visitDate, Long id) {
+        String raw = visitDate.toEpochDay() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(raw);
+            }
+            Long.parseLong(parts[0]);
+            Long.parseLong(parts[1]);
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
 }
-
@@ -0,0 +1,395 @@
+package com.medical.service;
+
+import com.medical.archive.ArchiveTable;
+import com.medical.archive.ColdArchiveStore;
+import com.medical.cache.ClusterMembership;
+import com.medical.cache.LocalCache;
+import com.medical.dto.PatientTimelineDTO;
+import com.medical.entity.Patient;
+import com.medical.event.VisitChangeEvent;
+import com.medical.mapper.PatientMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 患者就诊时间线Service
+ * 
+ * 作用：按就诊记录ID或患者ID返回该患者完整的就诊时间线及汇总，一次查询完成
+ * 
+ * 缓存：
+ * 1. 时间线按patient_id放在有界LRU中；就诊记录ID → patient_id的映射单独缓存，
+ *    命中时按记录ID查询也不需要访问数据库
+ * 2. 订阅就诊记录变更事件，写入提交后只清除涉及的患者
+ * 3. 加载期间该患者被清除过时不回填，避免把提交前读到的旧时间线放回缓存
+ * 4. 多实例：写入提交后把涉及患者在Redis中的版本号加一，缓存的时间线记下加载前读到的版本号；
+ *    有其他实例运行时命中也要比较版本号，不一致按未命中重新加载，其他实例的写入在提交后立即生效。
+ *    Redis不可用时无法比较，有其他实例运行（或无法判断）就不使用缓存；
+ *    只有本实例时不比较，新实例加入后最多一个心跳间隔（cluster.heartbeat-interval-ms）才开始比较
+ * 
+ * 有冷数据归档时时间线合并段文件中该患者的就诊记录；就诊记录ID只在归档中时按归档中的患者ID查询
+ */
+@Slf4j
+@Service
+public class PatientTimelineService {
+    
+    /**
+     * 版本号分段数（按patient_id哈希），用于判断加载期间是否发生过清除
+     */
+    private static final int STRIPES = 1024;
+    
+    private static final String VERSION_KEY_PREFIX = "medical:timeline:version:";
+    
+    /**
+     * 加载前没有读到Redis中的版本号（Redis不可用或事先不知道patient_id），有其他实例时不使用
+     */
+    private static final long UNVERIFIED = -1L;
+    
+    /**
+     * Redis出错后跳过版本号读写的时间
+     */
+    private static final long REDIS_RETRY_INTERVAL_MILLIS = 30_000L;
+    
+    @Autowired
+    private PatientMapper patientMapper;
+    
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
+    
+    @Autowired
+    private ClusterMembership clusterMembership;
+    
+    @Autowired(required = false)  // Redis不可用时，redisTemplate可以为null，只按本实例的写入清除
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    /**
+     * 最多缓存的患者数
+     */
+    @Value("${patient.timeline.cache-size:10000}")
+    private int cacheSize;
+    
+    /**
+     * 缓存存活时间（秒），兜底绕过应用直接改库、Redis版本号写入失败的情况
+     */
+    @Value("${patient.timeline.ttl-seconds:600}")
+    private long ttlSeconds;
+    
+    private LocalCache<String, CachedTimeline> timelines;
+    
+    private LocalCache<Long, String> visitPatients;
+    
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    
+    /**
+     * 全部清除次数，按记录ID加载且事先不知道patient_id时用来判断
+     */
+    private final AtomicLong globalVersion = new AtomicLong();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder redisErrors = new LongAdder();
+    
+    private volatile long redisRetryAt;
+    
+    @PostConstruct
+    public void init() {
+        timelines = new LocalCache<>(cacheSize);
+        visitPatients = new LocalCache<>(cacheSize * 8);
+    }
+    
+    /**
+     * 根据患者ID查询时间线，患者没有就诊记录时返回null
+     */
+    public PatientTimelineDTO getByPatientId(String patientId) {
+        if (patientId == null || patientId.isEmpty()) {
+            return null;
+        }
+        PatientTimelineDTO timeline = cached(patientId);
+        if (timeline != null) {
+            hits.increment();
+            return timeline;
+        }
+        misses.increment();
+        long version = versions.get(stripe(patientId));
+        long sharedVersion = sharedVersion(patientId);
+        List<Patient> visits = withArchived(patientId, patientMapper.selectByPatientId(patientId));
+        return cache(visits, versions.get(stripe(patientId)) == version, sharedVersion);
+    }
+    
+    /**
+     * 根据任一条就诊记录ID查询所属患者的时间线，记录不存在时返回null
+     */
+    public PatientTimelineDTO getByVisitId(Long visitId) {
+        if (visitId == null) {
+            return null;
+        }
+        String patientId = visitPatients.get(visitId);
+        if (patientId != null) {
+            PatientTimelineDTO timeline = cached(patientId);
+            // 映射可能已过时（其他实例把该记录改到了别的患者）
+            if (timeline != null && containsVisit(timeline, visitId)) {
+                hits.increment();
+                return timeline;
+            }
+        }
+        misses.increment();
+        // 事先知道patient_id时按该患者的版本号判断，否则按全局版本号判断（更保守）
+        long globalBefore = globalVersion.get();
+        long versionBefore = patientId != null ? versions.get(stripe(patientId)) : 0;
+        long sharedVersion = patientId != null ? sharedVersion(patientId) : UNVERIFIED;
+        List<Patient> visits = patientMapper.selectTimelineByVisitId(visitId);
+        if (visits.isEmpty()) {
+            String archivedPatientId = coldArchiveStore.hasSegments(ArchiveTable.VISIT)
+                ? coldArchiveStore.selectPatientIdByVisitId(visitId) : null;
+            return archivedPatientId != null ? getByPatientId(archivedPatientId) : null;
+        }
+        String loadedPatientId = visits.get(0).getPatientId();
+        visits = withArchived(loadedPatientId, visits);
+        boolean unchanged = loadedPatientId.equals(patientId)
+            ? versions.get(stripe(patientId)) == versionBefore
+            : globalVersion.get() == globalBefore;
+        return cache(visits, unchanged, loadedPatientId.equals(patientId) ? sharedVersion : UNVERIFIED);
+    }
+    
+    /**
+     * 清除患者的时间线（写入提交后调用）
+     */
+    public void invalidate(String patientId) {
+        if (patientId == null) {
+            return;
+        }
+        versions.incrementAndGet(stripe(patientId));
+        globalVersion.incrementAndGet();
+        timelines.remove(patientId);
+        invalidations.increment();
+    }
+    
+    /**
+     * 清除多个患者的时间线
+     */
+    public void invalidateAll(Collection<String> patientIds) {
+        for (String patientId : patientIds) {
+            invalidate(patientId);
+        }
+    }
+    
+    /**
+     * 就诊记录被删除或改了患者ID时，同时清除记录ID → 患者ID的映射
+     */
+    public void invalidateVisit(Long visitId) {
+        if (visitId != null) {
+            visitPatients.remove(visitId);
+        }
+    }
+    
+    /**
+     * 就诊记录变更已提交：清除涉及患者（修改了患者ID时新旧患者）的时间线，
+     * 修改、删除同时清除记录ID → 患者ID的映射，并递增这些患者在Redis中的版本号通知其他实例
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onVisitChange(VisitChangeEvent event) {
+        for (Patient visit : event.getBefore()) {
+            invalidateVisit(visit.getId());
+        }
+        invalidateAll(event.getPatientIds());
+        publishVersions(event.getPatientIds());
+    }
+    
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", timelines.size());
+        stats.put("maxSize", timelines.getMaxSize());
+        stats.put("visitMappings", visitPatients.size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+        stats.put("invalidations", invalidations.sum());
+        stats.put("staleHits", staleHits.sum());
+        stats.put("sharedVersions", redisTemplate != null);
+        stats.put("redisErrors", redisErrors.sum());
+        return stats;
+    }
+    
+    /**
+     * 缓存中的时间线；有其他实例时Redis中的版本号与加载前读到的一致才使用
+     */
+    private PatientTimelineDTO cached(String patientId) {
+        CachedTimeline cached = timelines.get(patientId);
+        if (cached == null) {
+            return null;
+        }
+        if (redisTemplate == null || clusterMembership.isSingleInstance()) {
+            return cached.timeline;
+        }
+        if (cached.sharedVersion != UNVERIFIED && cached.sharedVersion == sharedVersion(patientId)) {
+            return cached.timeline;
+        }
+        staleHits.increment();
+        return null;
+    }
+    
+    /**
+     * 患者在Redis中的版本号，没有写入过（或已过期）为0，读取失败为UNVERIFIED
+     */
+    private long sharedVersion(String patientId) {
+        if (!redisAvailable()) {
+            return UNVERIFIED;
+        }
+        try {
+            byte[] key = (VERSION_KEY_PREFIX + patientId).getBytes(StandardCharsets.UTF_8);
+            // 版本号由INCR写入，按原始字节读取，不经过缓存值序列化器
+            byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(key));
+            return value != null ? Long.parseLong(new String(value, StandardCharsets.US_ASCII)) : 0L;
+        } catch (RuntimeException e) {
+            onRedisError("读取", e);
+            return UNVERIFIED;
+        }
+    }
+    
+    /**
+     * 递增患者在Redis中的版本号；键的存活时间是缓存的两倍，键过期时缓存的时间线一定已经过期
+     */
+    private void publishVersions(Collection<String> patientIds) {
+        if (patientIds.isEmpty() || !redisAvailable()) {
+            return;
+        }
+        try {
+            for (String patientId : patientIds) {
+                String key = VERSION_KEY_PREFIX + patientId;
+                redisTemplate.opsForValue().increment(key);
+                redisTemplate.expire(key, ttlSeconds * 2, TimeUnit.SECONDS);
+            }
+        } catch (RuntimeException e) {
+            onRedisError("写入", e);
+        }
+    }
+    
+    private boolean redisAvailable() {
+        return redisTemplate != null && System.currentTimeMillis() >= redisRetryAt;
+    }
+    
+    private void onRedisError(String action, RuntimeException e) {
+        redisErrors.increment();
+        redisRetryAt = System.currentTimeMillis() + REDIS_RETRY_INTERVAL_MILLIS;
+        log.warn("时间线版本号{}Redis失败，{}秒内跳过（有其他实例时不使用缓存）: {}",
+            action, REDIS_RETRY_INTERVAL_MILLIS / 1000, e.getMessage());
+    }
+    
+    private static boolean containsVisit(PatientTimelineDTO timeline, Long visitId) {
+        for (Patient visit : timeline.getVisits()) {
+            if (visitId.equals(visit.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 构建时间线，加载期间该患者未被清除时放入缓存
+     * 
+     * @param sharedVersion 加载前读到的Redis版本号
+     */
+    private PatientTimelineDTO cache(List<Patient> visits, boolean unchanged, long sharedVersion) {
+        if (visits.isEmpty()) {
+            return null;
+        }
+        String patientId = visits.get(0).getPatientId();
+        PatientTimelineDTO timeline = build(patientId, visits);
+        if (unchanged) {
+            long expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+            timelines.putUntil(patientId, new CachedTimeline(timeline, sharedVersion), expireAt);
+            for (Patient visit : visits) {
+                visitPatients.putUntil(visit.getId(), patientId, expireAt);
+            }
+        }
+        return timeline;
+    }
+    
+    /**
+     * 合并归档中的就诊记录，保持与SQL相同的顺序（就诊日期、ID倒序）
+     */
+    private List<Patient> withArchived(String patientId, List<Patient> visits) {
+        if (!coldArchiveStore.hasSegments(ArchiveTable.VISIT)) {
+            return visits;
+        }
+        List<Patient> archived = coldArchiveStore.selectVisitsByPatientId(patientId);
+        if (archived.isEmpty()) {
+            return visits;
+        }
+        List<Patient> merged = new ArrayList<>(visits.size() + archived.size());
+        merged.addAll(visits);
+        merged.addAll(archived);
+        merged.sort(Comparator.comparing(Patient::getVisitDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Patient::getId, Comparator.nullsLast(Comparator.reverseOrder())));
+        return merged;
+    }
+    
+    private static PatientTimelineDTO build(String patientId, List<Patient> visits) {
+        BigDecimal totalCost = BigDecimal.ZERO;
+        Date first = null;
+        Date last = null;
+        for (Patient visit : visits) {
+            if (visit.getCost() != null) {
+                totalCost = totalCost.add(visit.getCost());
+            }
+            Date date = visit.getVisitDate();
+            if (date != null) {
+                first = first == null || date.before(first) ? date : first;
+                last = last == null || date.after(last) ? date : last;
+            }
+        }
+        PatientTimelineDTO timeline = new PatientTimelineDTO();
+        timeline.setPatientId(patientId);
+        timeline.setVisitCount(visits.size());
+        timeline.setTotalCost(totalCost);
+        timeline.setFirstVisitDate(first);
+        timeline.setLastVisitDate(last);
+        timeline.setVisits(Collections.unmodifiableList(visits));
+        return timeline;
+    }
+    
+    private static int stripe(String patientId) {
+        int h = patientId.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+    
+    /**
+     * 缓存的时间线及加载前读到的Redis版本号
+     */
+    private static final class CachedTimeline {
+        
+        private final PatientTimelineDTO timeline;
+        
+        private final long sharedVersion;
+        
+        CachedTimeline(PatientTimelineDTO timeline, long sharedVersion) {
+            this.timeline = timeline;
+            this.sharedVersion = sharedVersion;
+        }
+    }
+}
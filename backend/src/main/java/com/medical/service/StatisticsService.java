@@ -1,214 +1,386 @@
 package com.medical.service;
 
+import com.medical.analytics.ColumnarVisitStore;
+import com.medical.analytics.GroupStats;
+import com.medical.analytics.VisitAggregateIndex;
+import com.medical.analytics.VisitDimension;
+import com.medical.analytics.VisitFilter;
+import com.medical.archive.ArchiveTable;
+import com.medical.archive.ColdArchiveStore;
+import com.medical.cache.TwoLevelCacheManager;
+import com.medical.datasource.ReadOnlyRoute;
+import com.medical.dto.InsuranceGroupStatDTO;
+import com.medical.dto.OverviewDTO;
 import com.medical.dto.TrendDataDTO;
-import com.medical.entity.Patient;
-import com.medical.mapper.PatientMapper;
+import com.medical.mapper.InsuranceSettlementMapper;
 import com.medical.mapper.StatisticsMapper;
+import com.medical.util.DateConvertUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
  * 统计分析Service
+ * 查询都可以接受复制延迟，开启读写分离时走只读从库
  */
+@ReadOnlyRoute
 @Service
 @Slf4j
 public class StatisticsService {
     
+    public static final String CACHE_OUTPATIENT_TREND = "outpatient-trend";
+    public static final String CACHE_OVERVIEW = "overview";
+    public static final String CACHE_DEPARTMENT_DISTRIBUTION = "department-distribution";
+    public static final String CACHE_INSURANCE_MONTH_CLOSED = "insurance-month-closed";
+    public static final String CACHE_INSURANCE_MONTH_CURRENT = "insurance-month-current";
+    
+    /**
+     * 医保控费分析未指定起始月份时查询的月数（含结束月份）
+     */
+    private static final int DEFAULT_INSURANCE_MONTHS = 6;
+    
+    /**
+     * 医保控费分析一次最多查询的月数
+     */
+    private static final int MAX_INSURANCE_MONTHS = 120;
+    
     @Autowired
     private StatisticsMapper statisticsMapper;
     
     @Autowired
-    private PatientMapper patientMapper;
+    private InsuranceSettlementMapper insuranceSettlementMapper;
+    
+    /**
+     * 两级缓存（L1本地 + L2 Redis），Redis不可用时自动只用L1
+     */
+    @Autowired
+    private TwoLevelCacheManager cacheManager;
+    
+    /**
+     * 列式分析副本：就绪时直接在内存中扫描，不查库也不走缓存
+     */
+    @Autowired
+    private ColumnarVisitStore columnarVisitStore;
+    
+    /**
+     * 就诊实时聚合：由就诊记录变更事件增量维护，就绪时概览、趋势、科室分布直接读取，写入提交后立即可见
+     */
+    @Autowired
+    private VisitAggregateIndex visitAggregateIndex;
+    
+    /**
+     * 冷数据归档：已归档月份的明细不在在线表中，查询涉及这些月份时合并段文件中的数据
+     */
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
     
-    @Autowired(required = false)  // Redis不可用时，redisTemplate可以为null
-    private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
     
     /**
      * 获取门诊量趋势数据
      * 
      * 流程：
-     * 1. 先查Redis缓存
-     * 2. 缓存没有 → 查数据库
-     * 3. 存入Redis缓存（5分钟过期）
+     * 1. 先查本地缓存（L1）
+     * 2. 再查Redis缓存（L2）
+     * 3. 都没有 → 查数据库，回填两级缓存（同一时刻只有一个线程查库）
+     * 列式副本就绪时直接按天扫描副本，实时聚合就绪时直接读取最近各天的计数
      */
     public List<TrendDataDTO> getOutpatientTrend() {
-        String cacheKey = "statistics:outpatient-trend";
-        
-        // 1. 先查缓存（如果Redis可用）
-        if (redisTemplate != null) {
-            try {
-                @SuppressWarnings("unchecked")
-                List<TrendDataDTO> cached = (List<TrendDataDTO>) redisTemplate.opsForValue().get(cacheKey);
-                
-                if (cached != null) {
-                    log.info("从Redis缓存获取门诊量趋势数据");
-                    return cached;
-                }
-            } catch (Exception e) {
-                log.warn("Redis缓存不可用，直接查询数据库: {}", e.getMessage());
-            }
+        if (columnarVisitStore.isReady()) {
+            return columnarOutpatientTrend();
         }
-        
-        // 2. 缓存没有，查数据库
-        log.info("从数据库查询门诊量趋势数据");
-        List<TrendDataDTO> data = statisticsMapper.selectOutpatientTrend();
-        
-        // 3. 存入缓存（5分钟过期，如果Redis可用）
-        if (redisTemplate != null) {
-            try {
-                if (data != null && !data.isEmpty()) {
-                    redisTemplate.opsForValue().set(cacheKey, data, 5, TimeUnit.MINUTES);
-                }
-            } catch (Exception e) {
-                log.warn("Redis缓存写入失败，跳过缓存: {}", e.getMessage());
-            }
+        if (visitAggregateIndex.isReady()) {
+            return visitAggregateIndex.outpatientTrend(LocalDate.now());
         }
-        
-        return data;
+        List<TrendDataDTO> data = cacheManager.getCache(CACHE_OUTPATIENT_TREND).get("latest", () -> {
+            log.info("从数据库查询门诊量趋势数据");
+            List<TrendDataDTO> rows = statisticsMapper.selectOutpatientTrend();
+            // 空结果不缓存
+            return rows != null && !rows.isEmpty() ? rows : null;
+        });
+        return data != null ? data : Collections.emptyList();
     }
     
     /**
      * 获取统计数据概览
+     * 
+     * 总人次、去重患者数、今日门诊量、科室数由数据库一次聚合得出，
+     * 不再把patient_visit全表加载到内存中做多次stream遍历；实时聚合就绪时不查库
      */
-    public Map<String, Object> getOverview() {
-        List<Patient> allPatients = patientMapper.selectAll();
-        
-        // 总患者数（去重）
-        long totalPatients = allPatients.stream()
-            .map(Patient::getPatientId)
-            .distinct()
-            .count();
-        
-        // 今日门诊量
+    public OverviewDTO getOverview() {
+        if (columnarVisitStore.isReady()) {
+            return columnarVisitStore.overview(LocalDate.now());
+        }
+        if (visitAggregateIndex.isReady()) {
+            return visitAggregateIndex.overview(LocalDate.now());
+        }
         String today = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        long todayVisits = allPatients.stream()
-            .filter(p -> p.getVisitDate() != null && 
-                p.getVisitDate().toString().startsWith(today))
-            .count();
-        
-        // 科室数量（去重）
-        long departmentCount = allPatients.stream()
-            .map(Patient::getDepartment)
-            .filter(d -> d != null && !d.isEmpty())
-            .distinct()
-            .count();
-        
-        Map<String, Object> overview = new HashMap<>();
-        overview.put("totalPatients", totalPatients);
-        overview.put("todayVisits", todayVisits);
-        overview.put("departmentCount", departmentCount);
-        overview.put("totalVisits", allPatients.size());
-        
+        // 今日门诊量与日期有关，按日期区分缓存key
+        return cacheManager.getCache(CACHE_OVERVIEW).get(today, () -> loadOverview(today));
+    }
+    
+    /**
+     * 在线表的概览合并归档数据：总人次相加，科室取并集，
+     * 去重患者数 = 归档中的患者数 + 只出现在在线表中的患者数（流式读取在线表去重患者ID逐个判断）
+     */
+    private OverviewDTO loadOverview(String today) {
+        OverviewDTO overview = statisticsMapper.selectOverview(today);
+        if (overview == null || !coldArchiveStore.hasSegments(ArchiveTable.VISIT)) {
+            return overview;
+        }
+        ColdArchiveStore.VisitTotals archived = coldArchiveStore.getVisitTotals();
+        Set<String> departments = new HashSet<>(archived.getDepartments());
+        departments.addAll(statisticsMapper.selectVisitDepartments());
+        long[] onlineOnly = new long[1];
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.execute(status -> {
+            try (Cursor<String> cursor = statisticsMapper.selectDistinctPatientIds()) {
+                for (String patientId : cursor) {
+                    if (!archived.containsPatient(patientId)) {
+                        onlineOnly[0]++;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        long onlineVisits = overview.getTotalVisits() != null ? overview.getTotalVisits() : 0;
+        overview.setTotalVisits(onlineVisits + archived.getRows());
+        overview.setTotalPatients(archived.getPatientCount() + onlineOnly[0]);
+        overview.setDepartmentCount((long) departments.size());
         return overview;
     }
     
     /**
      * 获取科室分布统计
+     * 读取department_operation日汇总（由就诊记录增量维护），不再加载全部就诊记录；实时聚合就绪时不查库
      */
     public List<Map<String, Object>> getDepartmentDistribution() {
-        List<Patient> allPatients = patientMapper.selectAll();
-        
-        // 按科室分组统计
-        Map<String, Long> departmentMap = allPatients.stream()
-            .filter(p -> p.getDepartment() != null && !p.getDepartment().isEmpty())
-            .collect(Collectors.groupingBy(
-                Patient::getDepartment,
-                Collectors.counting()
-            ));
-        
-        // 转换为List<Map>
-        return departmentMap.entrySet().stream()
-            .map(entry -> {
+        if (columnarVisitStore.isReady()) {
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (GroupStats stats : columnarVisitStore.groupBy(VisitDimension.DEPARTMENT, VisitFilter.all())) {
                 Map<String, Object> item = new HashMap<>();
-                item.put("name", entry.getKey());
-                item.put("value", entry.getValue());
-                return item;
-            })
-            .collect(Collectors.toList());
+                item.put("name", stats.getKey());
+                item.put("value", stats.getCount());
+                result.add(item);
+            }
+            return result;
+        }
+        if (visitAggregateIndex.isReady()) {
+            return visitAggregateIndex.departmentDistribution();
+        }
+        return cacheManager.getCache(CACHE_DEPARTMENT_DISTRIBUTION).get("all",
+            () -> statisticsMapper.selectDepartmentDistribution());
     }
     
     /**
-     * 获取医保控费分析数据（最近6个月）
+     * 门诊量趋势（列式副本）：与selectOutpatientTrend口径一致，最近2年内有就诊的最近30天，按日期倒序
      */
-    public Map<String, Object> getInsuranceCostControl() {
-        // 查询最近6个月的医保结算数据
-        // 这里简化处理，直接查询数据库
-        // 实际应该通过Mapper查询，但为了快速实现，我们使用Service直接查询
-        
-        Map<String, Object> result = new HashMap<>();
-        
-        // 模拟数据（实际应该从数据库查询）
-        // 这里返回一个结构化的数据，前端可以展示
-        List<Map<String, Object>> monthlyData = new java.util.ArrayList<>();
+    private List<TrendDataDTO> columnarOutpatientTrend() {
+        LocalDate today = LocalDate.now();
+        List<GroupStats> days = columnarVisitStore.groupBy(VisitDimension.DAY,
+            VisitFilter.between(today.minusDays(730), null));
+        List<TrendDataDTO> result = new ArrayList<>(Math.min(30, days.size()));
+        for (int i = days.size() - 1; i >= 0 && result.size() < 30; i--) {
+            GroupStats stats = days.get(i);
+            TrendDataDTO dto = new TrendDataDTO();
+            dto.setDate(DateConvertUtil.toDate(LocalDate.parse(stats.getKey())));
+            dto.setCount((int) stats.getCount());
+            dto.setAmount(stats.getCost().doubleValue());
+            result.add(dto);
+        }
+        return result;
+    }
+    
+    /**
+     * 获取医保控费分析数据
+     * 
+     * 按月从insurance_settlement汇总（医保类型 × DRG病组），每个月的汇总单独缓存：
+     * 已结束的月份数据不再变化，放在长时间缓存中；当月数据仍在增加，只做短时间缓存
+     * 
+     * @param startMonth 起始月份（yyyy-MM，含），为空时取到结束月份共DEFAULT_INSURANCE_MONTHS个月
+     * @param endMonth   结束月份（yyyy-MM，含），为空时取当月
+     */
+    public Map<String, Object> getInsuranceCostControl(String startMonth, String endMonth) {
+        YearMonth current = YearMonth.now();
+        YearMonth end = endMonth == null || endMonth.isEmpty() ? current : parseMonth(endMonth);
+        YearMonth start = startMonth == null || startMonth.isEmpty()
+            ? end.minusMonths(DEFAULT_INSURANCE_MONTHS - 1) : parseMonth(startMonth);
+        if (start.isAfter(end)) {
+            throw new RuntimeException("起始月份不能晚于结束月份");
+        }
+        if (ChronoUnit.MONTHS.between(start, end) >= MAX_INSURANCE_MONTHS) {
+            throw new RuntimeException("月份范围不能超过" + MAX_INSURANCE_MONTHS + "个月");
+        }
         
-        // 生成最近6个月的数据
-        for (int i = 5; i >= 0; i--) {
-            LocalDate date = LocalDate.now().minusMonths(i);
-            String month = date.format(DateTimeFormatter.ofPattern("yyyy-MM"));
-            
-            Map<String, Object> monthData = new HashMap<>();
-            monthData.put("month", month);
-            // 模拟数据，实际应该从insurance_settlement表查询
-            monthData.put("insurancePay", 100 + i * 10); // 医保支付（万元）
-            monthData.put("personalPay", 60 + i * 5);    // 个人支付（万元）
+        List<Map<String, Object>> monthlyData = new ArrayList<>();
+        Map<String, Amount> byInsuranceType = new HashMap<>();
+        Map<String, Amount> byDrgGroup = new HashMap<>();
+        Amount total = new Amount("合计");
+        for (YearMonth month = start; !month.isAfter(end); month = month.plusMonths(1)) {
+            Amount monthTotal = new Amount(month.toString());
+            for (InsuranceGroupStatDTO row : loadInsuranceMonth(month, current)) {
+                monthTotal.add(row);
+                byInsuranceType.computeIfAbsent(row.getInsuranceType() != null ? row.getInsuranceType() : "未知",
+                    Amount::new).add(row);
+                byDrgGroup.computeIfAbsent(row.getDrgGroup() != null ? row.getDrgGroup() : "未分组",
+                    Amount::new).add(row);
+            }
+            total.merge(monthTotal);
+            Map<String, Object> monthData = monthTotal.toMap("month");
             monthlyData.add(monthData);
         }
         
+        Map<String, Object> result = new HashMap<>();
+        result.put("startMonth", start.toString());
+        result.put("endMonth", end.toString());
         result.put("monthlyData", monthlyData);
-        result.put("totalInsurancePay", monthlyData.stream()
-            .mapToDouble(m -> ((Number) m.get("insurancePay")).doubleValue())
-            .sum());
-        result.put("totalPersonalPay", monthlyData.stream()
-            .mapToDouble(m -> ((Number) m.get("personalPay")).doubleValue())
-            .sum());
-        
+        result.put("totalInsurancePay", total.insurancePay);
+        result.put("totalPersonalPay", total.personalPay);
+        result.put("totalCost", total.totalCost);
+        result.put("settlementCount", total.settlementCount);
+        // 医保支付占比（医保支付 / 总费用）
+        result.put("insurancePayRatio", total.totalCost.signum() > 0
+            ? total.insurancePay.divide(total.totalCost, 4, RoundingMode.HALF_UP)
+            : BigDecimal.ZERO);
+        result.put("byInsuranceType", sortedByCost(byInsuranceType));
+        result.put("byDrgGroup", sortedByCost(byDrgGroup));
         return result;
     }
     
     /**
-     * 获取设备使用率数据
+     * 读取某个月按(医保类型, DRG病组)的汇总
+     * 未来月份没有数据，不查库；当月与已结束月份使用不同过期时间的缓存；已归档的月份合并段文件中的汇总
      */
-    public List<Map<String, Object>> getEquipmentUsage() {
-        // 模拟数据，实际应该从equipment_usage表查询
-        // 计算每个设备的使用率（使用时长/总时长 * 100）
-        List<Map<String, Object>> equipmentList = new java.util.ArrayList<>();
-        
-        Map<String, Object> equipment1 = new HashMap<>();
-        equipment1.put("name", "CT机");
-        equipment1.put("usageRate", 85);
-        equipmentList.add(equipment1);
+    private List<InsuranceGroupStatDTO> loadInsuranceMonth(YearMonth month, YearMonth current) {
+        if (month.isAfter(current)) {
+            return Collections.emptyList();
+        }
+        String cacheName = month.equals(current) ? CACHE_INSURANCE_MONTH_CURRENT : CACHE_INSURANCE_MONTH_CLOSED;
+        return cacheManager.getCache(cacheName).get(month.toString(), () -> {
+            log.info("从数据库汇总医保结算数据: {}", month);
+            List<InsuranceGroupStatDTO> rows =
+                insuranceSettlementMapper.selectGroupStats(month.atDay(1), month.plusMonths(1).atDay(1));
+            if (coldArchiveStore.isArchived(ArchiveTable.SETTLEMENT, month)) {
+                rows = mergeGroupStats(rows, coldArchiveStore.selectSettlementGroupStats(month));
+            }
+            return rows;
+        });
+    }
+    
+    /**
+     * 按(医保类型, DRG病组)合并两组汇总
+     */
+    private static List<InsuranceGroupStatDTO> mergeGroupStats(List<InsuranceGroupStatDTO> online,
+                                                               List<InsuranceGroupStatDTO> archived) {
+        Map<List<String>, InsuranceGroupStatDTO> merged = new LinkedHashMap<>();
+        for (List<InsuranceGroupStatDTO> rows : Arrays.asList(online, archived)) {
+            for (InsuranceGroupStatDTO row : rows) {
+                List<String> key = Arrays.asList(row.getInsuranceType(), row.getDrgGroup());
+                InsuranceGroupStatDTO sum = merged.get(key);
+                if (sum == null) {
+                    sum = new InsuranceGroupStatDTO();
+                    sum.setInsuranceType(row.getInsuranceType());
+                    sum.setDrgGroup(row.getDrgGroup());
+                    sum.setSettlementCount(0L);
+                    sum.setTotalCost(BigDecimal.ZERO);
+                    sum.setInsurancePay(BigDecimal.ZERO);
+                    sum.setPersonalPay(BigDecimal.ZERO);
+                    merged.put(key, sum);
+                }
+                sum.setSettlementCount(sum.getSettlementCount()
+                    + (row.getSettlementCount() != null ? row.getSettlementCount() : 0));
+                sum.setTotalCost(sum.getTotalCost().add(Amount.nullToZero(row.getTotalCost())));
+                sum.setInsurancePay(sum.getInsurancePay().add(Amount.nullToZero(row.getInsurancePay())));
+                sum.setPersonalPay(sum.getPersonalPay().add(Amount.nullToZero(row.getPersonalPay())));
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+    
+    private static YearMonth parseMonth(String month) {
+        try {
+            return YearMonth.parse(month);
+        } catch (DateTimeParseException e) {
+            throw new RuntimeException("月份格式应为yyyy-MM: " + month);
+        }
+    }
+    
+    private static List<Map<String, Object>> sortedByCost(Map<String, Amount> amounts) {
+        List<Amount> list = new ArrayList<>(amounts.values());
+        list.sort((a, b) -> b.totalCost.compareTo(a.totalCost));
+        List<Map<String, Object>> result = new ArrayList<>(list.size());
+        for (Amount amount : list) {
+            result.add(amount.toMap("name"));
+        }
+        return result;
+    }
+    
+    /**
+     * 医保结算金额累加器
+     */
+    private static final class Amount {
+        private final String key;
+        private long settlementCount;
+        private BigDecimal totalCost = BigDecimal.ZERO;
+        private BigDecimal insurancePay = BigDecimal.ZERO;
+        private BigDecimal personalPay = BigDecimal.ZERO;
         
-        Map<String, Object> equipment2 = new HashMap<>();
-        equipment2.put("name", "MRI");
-        equipment2.put("usageRate", 75);
-        equipmentList.add(equipment2);
+        private Amount(String key) {
+            this.key = key;
+        }
         
-        Map<String, Object> equipment3 = new HashMap<>();
-        equipment3.put("name", "B超");
-        equipment3.put("usageRate", 90);
-        equipmentList.add(equipment3);
+        private void add(InsuranceGroupStatDTO row) {
+            settlementCount += row.getSettlementCount() != null ? row.getSettlementCount() : 0;
+            totalCost = totalCost.add(nullToZero(row.getTotalCost()));
+            insurancePay = insurancePay.add(nullToZero(row.getInsurancePay()));
+            personalPay = personalPay.add(nullToZero(row.getPersonalPay()));
+        }
         
-        Map<String, Object> equipment4 = new HashMap<>();
-        equipment4.put("name", "X光机");
-        equipment4.put("usageRate", 65);
-        equipmentList.add(equipment4);
+        private void merge(Amount other) {
+            settlementCount += other.settlementCount;
+            totalCost = totalCost.add(other.totalCost);
+            insurancePay = insurancePay.add(other.insurancePay);
+            personalPay = personalPay.add(other.personalPay);
+        }
         
-        Map<String, Object> equipment5 = new HashMap<>();
-        equipment5.put("name", "心电图");
-        equipment5.put("usageRate", 80);
-        equipmentList.add(equipment5);
+        private Map<String, Object> toMap(String keyName) {
+            Map<String, Object> map = new HashMap<>();
+            map.put(keyName, key);
+            map.put("settlementCount", settlementCount);
+            map.put("totalCost", totalCost);
+            map.put("insurancePay", insurancePay);
+            map.put("personalPay", personalPay);
+            return map;
+        }
         
-        return equipmentList;
+        private static BigDecimal nullToZero(BigDecimal value) {
+            return value != null ? value : BigDecimal.ZERO;
+        }
     }
 }
-
@@ -0,0 +1,225 @@
+package com.medical.service;
+
+import com.medical.analytics.ConditionTopKIndex;
+import com.medical.analytics.SpaceSaving;
+import com.medical.analytics.VisitDimension;
+import com.medical.archive.ArchiveTable;
+import com.medical.archive.ColdArchiveStore;
+import com.medical.datasource.ReadOnlyRoute;
+import com.medical.dto.VisitConditionCountDTO;
+import com.medical.mapper.ConditionSummaryMapper;
+import com.medical.mapper.StatisticsMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 高频疾病Service
+ * 
+ * 作用：统计任意日期范围、科室组合内就诊人次最多的疾病编码或诊断（Top-K）
+ * 
+ * 优先合并ConditionTopKIndex中每个(日期, 科室)的Space-Saving摘要，每项给出人次上界和下界；
+ * 当天种类不超过摘要容量时结果是精确的（exact=true）。摘要未加载完成时改为GROUP BY精确统计，只允许较短的日期范围，
+ * 范围涉及已归档月份时在线表按(日期, 科室, 编码, 诊断)读出人次，与段文件中的记录合并计数
+ */
+@ReadOnlyRoute
+@Slf4j
+@Service
+public class TopConditionService {
+    
+    private static final String DIMENSION_DISEASE_CODE = "diseaseCode";
+    private static final String DIMENSION_DIAGNOSIS = "diagnosis";
+    
+    private static final int DEFAULT_K = 20;
+    
+    @Autowired
+    private ConditionTopKIndex conditionTopKIndex;
+    
+    @Autowired
+    private StatisticsMapper statisticsMapper;
+    
+    @Autowired
+    private ConditionSummaryMapper conditionSummaryMapper;
+    
+    @Autowired
+    private ColdArchiveStore coldArchiveStore;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    /**
+     * 单次查询允许的最大K
+     */
+    @Value("${analytics.topk.max-k:100}")
+    private int maxK;
+    
+    /**
+     * 摘要未就绪时精确统计允许的最大天数
+     */
+    @Value("${analytics.topk.exact-max-days:366}")
+    private int exactMaxDays;
+    
+    /**
+     * 查询高频疾病
+     * 
+     * @param dimension   diseaseCode（疾病编码，默认）/diagnosis（诊断）
+     * @param startDate   起始日期（含），为空时取结束日期前29天
+     * @param endDate     结束日期（含），为空时取当天
+     * @param departments 科室，为空表示全部科室
+     * @param k           返回的项数，默认20
+     */
+    public Map<String, Object> getTopConditions(String dimension, LocalDate startDate, LocalDate endDate,
+                                                List<String> departments, Integer k) {
+        VisitDimension visitDimension = parseDimension(dimension);
+        LocalDate end = endDate != null ? endDate : LocalDate.now();
+        LocalDate start = startDate != null ? startDate : end.minusDays(29);
+        if (start.isAfter(end)) {
+            throw new RuntimeException("起始日期不能晚于结束日期");
+        }
+        int limit = k != null ? k : DEFAULT_K;
+        if (limit <= 0 || limit > maxK) {
+            throw new RuntimeException("返回项数必须在1到" + maxK + "之间");
+        }
+        Set<String> departmentSet = departments != null ? new LinkedHashSet<>(departments) : new LinkedHashSet<>();
+        departmentSet.remove("");
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("dimension", visitDimension == VisitDimension.DISEASE_CODE ? DIMENSION_DISEASE_CODE : DIMENSION_DIAGNOSIS);
+        result.put("startDate", start.toString());
+        result.put("endDate", end.toString());
+        result.put("departments", new ArrayList<>(departmentSet));
+        result.put("k", limit);
+        if (conditionTopKIndex.isReady()) {
+            summaryTop(result, visitDimension, start, end, departmentSet, limit);
+        } else {
+            long days = ChronoUnit.DAYS.between(start, end) + 1;
+            if (days > exactMaxDays) {
+                throw new RuntimeException("高频疾病摘要尚未加载完成，请稍后再试或缩小日期范围至"
+                    + exactMaxDays + "天以内");
+            }
+            exactTop(result, visitDimension, start, end, departmentSet, limit);
+        }
+        return result;
+    }
+    
+    private void summaryTop(Map<String, Object> result, VisitDimension dimension, LocalDate start, LocalDate end,
+                            Set<String> departments, int k) {
+        SpaceSaving summary = conditionTopKIndex.merge(dimension, start, end, departments, Math.max(k * 4, 64));
+        List<SpaceSaving.Item> top = summary.top(k);
+        // 第k+1项的上界：排名之外的值人次都不超过它，下界不小于它的项一定在真实Top-K中
+        List<SpaceSaving.Item> next = summary.top(k + 1);
+        long outsideBound = Math.max(summary.getFloor(), next.size() > k ? next.get(k).getCount() : 0);
+        long maxError = 0;
+        List<Map<String, Object>> items = new ArrayList<>(top.size());
+        for (SpaceSaving.Item item : top) {
+            maxError = Math.max(maxError, item.getError());
+            Map<String, Object> row = new HashMap<>();
+            row.put("name", item.getValue());
+            row.put("value", item.getCount());
+            row.put("lowerBound", item.getLowerBound());
+            row.put("error", item.getError());
+            row.put("guaranteed", item.getLowerBound() >= outsideBound);
+            items.add(row);
+        }
+        result.put("items", items);
+        result.put("total", summary.getTotal());
+        result.put("maxError", maxError);
+        result.put("unlistedBound", outsideBound);
+        result.put("exact", summary.isExact());
+    }
+    
+    private void exactTop(Map<String, Object> result, VisitDimension dimension, LocalDate start, LocalDate end,
+                          Set<String> departments, int k) {
+        String column = dimension == VisitDimension.DISEASE_CODE ? "disease_code" : "diagnosis";
+        List<Map<String, Object>> rows = coldArchiveStore.overlaps(ArchiveTable.VISIT, start, end)
+            ? mergedCounts(dimension, start, end, departments, k)
+            : statisticsMapper.selectTopConditions(column, start, end, departments, k);
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            long value = ((Number) row.get("value")).longValue();
+            Map<String, Object> item = new HashMap<>();
+            item.put("name", String.valueOf(row.get("name")));
+            item.put("value", value);
+            item.put("lowerBound", value);
+            item.put("error", 0L);
+            item.put("guaranteed", true);
+            items.add(item);
+        }
+        result.put("items", items);
+        result.put("maxError", 0L);
+        result.put("exact", true);
+    }
+    
+    /**
+     * 在线表与归档合并计数，返回与selectTopConditions相同格式的前k行
+     */
+    private List<Map<String, Object>> mergedCounts(VisitDimension dimension, LocalDate start, LocalDate end,
+                                                   Set<String> departments, int k) {
+        boolean diseaseCode = dimension == VisitDimension.DISEASE_CODE;
+        Map<String, Long> counts = new HashMap<>();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.execute(status -> {
+            try (Cursor<VisitConditionCountDTO> cursor = conditionSummaryMapper.selectDailyCounts(start, end)) {
+                for (VisitConditionCountDTO row : cursor) {
+                    if (departments.isEmpty() || departments.contains(row.getDepartment())) {
+                        count(counts, diseaseCode ? row.getDiseaseCode() : row.getDiagnosis(),
+                            row.getVisitCount() != null ? row.getVisitCount() : 0);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        coldArchiveStore.scanVisits(start, end, visit -> {
+            if (departments.isEmpty() || departments.contains(visit.getDepartment())) {
+                count(counts, diseaseCode ? visit.getDiseaseCode() : visit.getDiagnosis(), 1);
+            }
+        });
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> {
+            int c = Long.compare(b.getValue(), a.getValue());
+            return c != 0 ? c : a.getKey().compareTo(b.getKey());
+        });
+        List<Map<String, Object>> rows = new ArrayList<>(Math.min(k, entries.size()));
+        for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(k, entries.size()))) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("name", entry.getKey());
+            row.put("value", entry.getValue());
+            rows.add(row);
+        }
+        return rows;
+    }
+    
+    private static void count(Map<String, Long> counts, String name, long visits) {
+        if (name != null && !name.trim().isEmpty()) {
+            counts.merge(name, visits, Long::sum);
+        }
+    }
+    
+    private static VisitDimension parseDimension(String dimension) {
+        if (dimension == null || dimension.isEmpty() || DIMENSION_DISEASE_CODE.equalsIgnoreCase(dimension)) {
+            return VisitDimension.DISEASE_CODE;
+        }
+        if (DIMENSION_DIAGNOSIS.equalsIgnoreCase(dimension)) {
+            return VisitDimension.DIAGNOSIS;
+        }
+        throw new RuntimeException("维度只能是diseaseCode/diagnosis: " + dimension);
+    }
+}
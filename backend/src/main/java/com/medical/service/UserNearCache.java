@@ -0,0 +1,232 @@
+package com.medical.service;
+
+import com.medical.cache.LocalCache;
+import com.medical.entity.User;
+import com.medical.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 用户查询近端缓存（进程内）
+ * 
+ * 作用：登录、注册、鉴权时按ID/用户名/邮箱查用户不再每次访问数据库
+ * 
+ * 实现方式：
+ * 1. 用户行按ID缓存一份，用户名、邮箱只缓存到ID的映射，一个用户只有一份数据
+ * 2. 查不到的用户名/邮箱短时间缓存为"不存在"，注册时的唯一性检查不必查库
+ * 3. UserService写库后立即写入或清除缓存（write-through），禁用等状态变化在本实例立即生效；
+ *    多实例部署时其他实例的鉴权最多延迟ttl-seconds（登录另按主键读取status，不受此影响）
+ * 4. 返回的都是副本，调用方修改（如清空密码）不会影响缓存
+ * 5. 加载期间发生过写入时不回填，避免把写入前读到的旧数据放回缓存
+ */
+@Slf4j
+@Component
+public class UserNearCache {
+    
+    /**
+     * 不存在标记
+     */
+    private static final Long NOT_FOUND = -1L;
+    
+    @Autowired
+    private UserMapper userMapper;
+    
+    @Value("${user.cache.max-size:10000}")
+    private int maxSize;
+    
+    /**
+     * 用户数据存活时间（秒）
+     */
+    @Value("${user.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+    
+    /**
+     * "不存在"的存活时间（秒）
+     */
+    @Value("${user.cache.negative-ttl-seconds:5}")
+    private long negativeTtlSeconds;
+    
+    private LocalCache<Long, User> byId;
+    
+    private LocalCache<String, Long> idByUsername;
+    
+    private LocalCache<String, Long> idByEmail;
+    
+    /**
+     * 写入次数，加载前后不一致说明期间有写入
+     */
+    private final AtomicLong writes = new AtomicLong();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        byId = new LocalCache<>(maxSize);
+        idByUsername = new LocalCache<>(maxSize);
+        idByEmail = new LocalCache<>(maxSize);
+    }
+    
+    public User findById(Long id) {
+        if (id == null) {
+            return null;
+        }
+        User user = byId.get(id);
+        if (user != null) {
+            hits.increment();
+            return copyOf(user);
+        }
+        misses.increment();
+        return load(() -> userMapper.selectById(id), null, null);
+    }
+    
+    public User findByUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        User user = lookup(idByUsername, username);
+        if (user != null || isNegative(idByUsername, username)) {
+            return user;
+        }
+        misses.increment();
+        return load(() -> userMapper.selectByUsername(username), idByUsername, username);
+    }
+    
+    public User findByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        User user = lookup(idByEmail, email);
+        if (user != null || isNegative(idByEmail, email)) {
+            return user;
+        }
+        misses.increment();
+        return load(() -> userMapper.selectByEmail(email), idByEmail, email);
+    }
+    
+    /**
+     * 写库成功后写入缓存（新增、修改后的完整用户行）
+     * 
+     * @param previous 修改前的用户，用户名/邮箱有变化时清除旧映射；新增时为null
+     */
+    public void put(User user, User previous) {
+        writes.incrementAndGet();
+        if (previous != null) {
+            removeKeys(previous);
+        }
+        long expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        byId.putUntil(user.getId(), copyOf(user), expireAt);
+        if (user.getUsername() != null) {
+            idByUsername.putUntil(user.getUsername(), user.getId(), expireAt);
+        }
+        if (user.getEmail() != null) {
+            idByEmail.putUntil(user.getEmail(), user.getId(), expireAt);
+        }
+    }
+    
+    /**
+     * 写库后清除用户（删除，或无法得到完整新值的修改）
+     */
+    public void evict(User user) {
+        writes.incrementAndGet();
+        if (user != null) {
+            byId.remove(user.getId());
+            removeKeys(user);
+        }
+    }
+    
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum() + negativeHits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("users", byId.size());
+        stats.put("usernames", idByUsername.size());
+        stats.put("emails", idByEmail.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.sum());
+        stats.put("negativeHits", negativeHits.sum());
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+        stats.put("writes", writes.get());
+        return stats;
+    }
+    
+    private User lookup(LocalCache<String, Long> index, String key) {
+        Long id = index.get(key);
+        if (id == null || NOT_FOUND.equals(id)) {
+            return null;
+        }
+        User user = byId.get(id);
+        if (user == null) {
+            return null;
+        }
+        hits.increment();
+        return copyOf(user);
+    }
+    
+    private boolean isNegative(LocalCache<String, Long> index, String key) {
+        if (NOT_FOUND.equals(index.get(key))) {
+            negativeHits.increment();
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * 查库并回填；查不到时按key缓存"不存在"
+     */
+    private User load(Supplier<User> loader, LocalCache<String, Long> index, String key) {
+        long version = writes.get();
+        User user = loader.get();
+        if (writes.get() == version) {
+            if (user != null) {
+                long expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+                byId.putUntil(user.getId(), copyOf(user), expireAt);
+                if (user.getUsername() != null) {
+                    idByUsername.putUntil(user.getUsername(), user.getId(), expireAt);
+                }
+                if (user.getEmail() != null) {
+                    idByEmail.putUntil(user.getEmail(), user.getId(), expireAt);
+                }
+            } else if (index != null) {
+                index.put(key, NOT_FOUND, negativeTtlSeconds * 1000);
+            }
+        }
+        return user;
+    }
+    
+    private void removeKeys(User user) {
+        if (user.getUsername() != null) {
+            idByUsername.remove(user.getUsername());
+        }
+        if (user.getEmail() != null) {
+            idByEmail.remove(user.getEmail());
+        }
+    }
+    
+    private static User copyOf(User user) {
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setUsername(user.getUsername());
+        copy.setPassword(user.getPassword());
+        copy.setEmail(user.getEmail());
+        copy.setPhone(user.getPhone());
+        copy.setRealName(user.getRealName());
+        copy.setRole(user.getRole());
+        copy.setStatus(user.getStatus());
+        copy.setCreateTime(user.getCreateTime() != null ? new Date(user.getCreateTime().getTime()) : null);
+        copy.setUpdateTime(user.getUpdateTime() != null ? new Date(user.getUpdateTime().getTime()) : null);
+        return copy;
+    }
+}
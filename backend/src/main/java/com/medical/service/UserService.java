@@ -1,12 +1,13 @@
 package com.medical.service;
 
+import com.medical.datasource.ReadOnlyRoute;
 import com.medical.dto.LoginRequest;
 import com.medical.dto.RegisterRequest;
 import com.medical.entity.User;
 import com.medical.mapper.UserMapper;
+import com.medical.util.DiagnosticLog;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
@@ -22,20 +23,30 @@ public class UserService {
     @Autowired
     private UserMapper userMapper;
     
-    private BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    /**
+     * BCrypt在专用线程池上执行，不占用请求线程
+     */
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+    
+    /**
+     * 按ID/用户名/邮箱查询走进程内近端缓存，本类写库后同步更新
+     */
+    @Autowired
+    private UserNearCache userNearCache;
     
     /**
      * 用户注册
      */
     public User register(RegisterRequest request) {
         // 检查用户名是否已存在
-        User existingUser = userMapper.selectByUsername(request.getUsername());
+        User existingUser = userNearCache.findByUsername(request.getUsername());
         if (existingUser != null) {
             throw new RuntimeException("用户名已存在");
         }
         
         // 检查邮箱是否已存在
-        existingUser = userMapper.selectByEmail(request.getEmail());
+        existingUser = userNearCache.findByEmail(request.getEmail());
         if (existingUser != null) {
             throw new RuntimeException("邮箱已被注册");
         }
@@ -43,7 +54,7 @@ public class UserService {
         // 创建新用户
         User user = new User();
         user.setUsername(request.getUsername());
-        user.setPassword(passwordEncoder.encode(request.getPassword())); // 加密密码
+        user.setPassword(passwordHashingService.encode(request.getPassword())); // 加密密码
         user.setEmail(request.getEmail());
         user.setPhone(request.getPhone());
         user.setRealName(request.getRealName());
@@ -59,6 +70,7 @@ public class UserService {
         user.setUpdateTime(new Date());
         
         userMapper.insert(user);
+        userNearCache.put(user, null);
         log.info("用户注册成功: {}", request.getUsername());
         
         return user;
@@ -66,96 +78,70 @@ public class UserService {
     
     /**
      * 用户登录
+     * 
+     * @param clientIp 客户端地址，用于限制同一IP同时进行的密码校验数
      */
-    public User login(LoginRequest request) {
+    public User login(LoginRequest request, String clientIp) {
         // #region agent log
-        try {
-            java.io.FileWriter fw = new java.io.FileWriter("d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log", true);
-            fw.write(String.format("{\"sessionId\":\"debug-session\",\"runId\":\"login-debug\",\"hypothesisId\":\"A\",\"location\":\"UserService.java:69\",\"message\":\"登录请求开始\",\"data\":{\"username\":\"%s\",\"passwordLength\":%d},\"timestamp\":%d}\n", 
-                request.getUsername() != null ? request.getUsername() : "null", 
-                request.getPassword() != null ? request.getPassword().length() : 0,
-                System.currentTimeMillis()));
-            fw.close();
-        } catch (Exception e) {}
+        DiagnosticLog.event("UserService.login", "登录请求开始", "username", request.getUsername());
         // #endregion
         log.info("开始验证用户: username={}", request.getUsername());
         
-        User user = userMapper.selectByUsername(request.getUsername());
+        User user = userNearCache.findByUsername(request.getUsername());
         // #region agent log
-        try {
-            java.io.FileWriter fw = new java.io.FileWriter("d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log", true);
-            fw.write(String.format("{\"sessionId\":\"debug-session\",\"runId\":\"login-debug\",\"hypothesisId\":\"B\",\"location\":\"UserService.java:73\",\"message\":\"数据库查询结果\",\"data\":{\"userFound\":%s,\"username\":\"%s\"},\"timestamp\":%d}\n", 
-                user != null ? "true" : "false",
-                request.getUsername() != null ? request.getUsername() : "null",
-                System.currentTimeMillis()));
-            fw.close();
-        } catch (Exception e) {}
+        DiagnosticLog.event("UserService.login", "数据库查询结果", "userFound", user != null, "username", request.getUsername());
         // #endregion
         if (user == null) {
             log.warn("用户不存在: username={}", request.getUsername());
             throw new RuntimeException("用户名或密码错误");
         }
         
-        // #region agent log
-        try {
-            java.io.FileWriter fw = new java.io.FileWriter("d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log", true);
-            fw.write(String.format("{\"sessionId\":\"debug-session\",\"runId\":\"login-debug\",\"hypothesisId\":\"C\",\"location\":\"UserService.java:78\",\"message\":\"用户密码hash信息\",\"data\":{\"username\":\"%s\",\"passwordHashLength\":%d,\"passwordHashPrefix\":\"%s\"},\"timestamp\":%d}\n", 
-                user.getUsername(),
-                user.getPassword() != null ? user.getPassword().length() : 0,
-                user.getPassword() != null && user.getPassword().length() > 20 ? user.getPassword().substring(0, 20) : (user.getPassword() != null ? user.getPassword() : "null"),
-                System.currentTimeMillis()));
-            fw.close();
-        } catch (Exception e) {}
-        // #endregion
         log.info("找到用户: username={}, passwordHash={}", user.getUsername(), 
             user.getPassword() != null ? user.getPassword().substring(0, Math.min(20, user.getPassword().length())) : "null");
         
-        // #region agent log
-        try {
-            java.io.FileWriter fw = new java.io.FileWriter("d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log", true);
-            fw.write(String.format("{\"sessionId\":\"debug-session\",\"runId\":\"login-debug\",\"hypothesisId\":\"D\",\"location\":\"UserService.java:82\",\"message\":\"密码验证前\",\"data\":{\"inputPassword\":\"%s\",\"storedHashPrefix\":\"%s\"},\"timestamp\":%d}\n", 
-                request.getPassword() != null ? request.getPassword() : "null",
-                user.getPassword() != null && user.getPassword().length() > 20 ? user.getPassword().substring(0, 20) : (user.getPassword() != null ? user.getPassword() : "null"),
-                System.currentTimeMillis()));
-            fw.close();
-        } catch (Exception e) {}
-        // #endregion
         // 验证密码
-        boolean passwordMatches = passwordEncoder.matches(request.getPassword(), user.getPassword());
+        boolean passwordMatches = passwordHashingService.matches(
+            request.getUsername(), clientIp, request.getPassword(), user.getPassword());
         // #region agent log
-        try {
-            java.io.FileWriter fw = new java.io.FileWriter("d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log", true);
-            fw.write(String.format("{\"sessionId\":\"debug-session\",\"runId\":\"login-debug\",\"hypothesisId\":\"E\",\"location\":\"UserService.java:83\",\"message\":\"密码验证结果\",\"data\":{\"matches\":%s,\"username\":\"%s\"},\"timestamp\":%d}\n", 
-                passwordMatches ? "true" : "false",
-                user.getUsername(),
-                System.currentTimeMillis()));
-            fw.close();
-        } catch (Exception e) {}
+        DiagnosticLog.event("UserService.login", "密码验证结果", "matches", passwordMatches, "username", user.getUsername());
         // #endregion
         log.info("密码验证结果: matches={}", passwordMatches);
         
         if (!passwordMatches) {
             // #region agent log
-            try {
-                java.io.FileWriter fw = new java.io.FileWriter("d:\\code\\java\\MDEICAL-PLATFORM\\.cursor\\debug.log", true);
-                fw.write(String.format("{\"sessionId\":\"debug-session\",\"runId\":\"login-debug\",\"hypothesisId\":\"F\",\"location\":\"UserService.java:86\",\"message\":\"密码验证失败\",\"data\":{\"username\":\"%s\",\"inputPassword\":\"%s\",\"storedHash\":\"%s\"},\"timestamp\":%d}\n", 
-                    user.getUsername(),
-                    request.getPassword() != null ? request.getPassword() : "null",
-                    user.getPassword() != null ? user.getPassword() : "null",
-                    System.currentTimeMillis()));
-                fw.close();
-            } catch (Exception e) {}
+            DiagnosticLog.event("UserService.login", "密码验证失败", "username", user.getUsername());
             // #endregion
             log.warn("密码错误: username={}", request.getUsername());
             throw new RuntimeException("用户名或密码错误");
         }
         
-        // 检查用户状态
-        if (user.getStatus() == null || user.getStatus() != 1) {
+        // 检查用户状态：近端缓存在其他实例禁用后最多旧ttl-seconds，按主键重新读取status
+        Integer status = userMapper.selectStatusById(user.getId());
+        if (status == null) {
+            userNearCache.evict(user);
+            log.warn("用户不存在: username={}", request.getUsername());
+            throw new RuntimeException("用户名或密码错误");
+        }
+        if (!status.equals(user.getStatus())) {
+            userNearCache.evict(user);
+            user.setStatus(status);
+        }
+        if (status != 1) {
             log.warn("用户已被禁用: username={}, status={}", request.getUsername(), user.getStatus());
             throw new RuntimeException("用户已被禁用");
         }
         
+        // BCrypt强度调整后，登录成功时按新强度重新加密（异步，不影响本次登录耗时）
+        if (passwordHashingService.needsRehash(user.getPassword())) {
+            String oldPassword = user.getPassword();
+            passwordHashingService.rehashAsync(request.getPassword(), newPassword -> {
+                if (userMapper.updatePassword(user.getId(), oldPassword, newPassword) > 0) {
+                    userNearCache.evict(user);
+                    log.info("已按新的BCrypt强度重新加密密码: username={}", user.getUsername());
+                }
+            });
+        }
+        
         log.info("用户登录成功: username={}, role={}", request.getUsername(), user.getRole());
         return user;
     }
@@ -164,19 +150,27 @@ public class UserService {
      * 根据用户名查询用户
      */
     public User findByUsername(String username) {
-        return userMapper.selectByUsername(username);
+        return userNearCache.findByUsername(username);
+    }
+    
+    /**
+     * 用户是否存在且未被禁用（经过近端缓存，供每个请求的鉴权使用）
+     */
+    public static boolean isEnabled(User user) {
+        return user != null && user.getStatus() != null && user.getStatus() == 1;
     }
     
     /**
      * 根据ID查询用户
      */
     public User findById(Long id) {
-        return userMapper.selectById(id);
+        return userNearCache.findById(id);
     }
     
     /**
      * 查询所有用户
      */
+    @ReadOnlyRoute
     public List<User> getAllUsers() {
         List<User> users = userMapper.selectAll();
         // 不返回密码
@@ -186,6 +180,9 @@ public class UserService {
     
     /**
      * 更新用户信息
+     * 
+     * 修改前的用户从数据库读取（近端缓存可能比库中旧ttl-seconds），
+     * 未提供新密码时不写password列，不会用旧hash覆盖期间的改密或重新加密
      */
     public User updateUser(User user) {
         User existingUser = userMapper.selectById(user.getId());
@@ -195,18 +192,19 @@ public class UserService {
         
         // 如果提供了新密码，则加密
         if (user.getPassword() != null && !user.getPassword().isEmpty()) {
-            user.setPassword(passwordEncoder.encode(user.getPassword()));
+            user.setPassword(passwordHashingService.encode(user.getPassword()));
         } else {
             // 保持原密码
-            user.setPassword(existingUser.getPassword());
+            user.setPassword(null);
         }
         
         user.setUpdateTime(new Date());
         userMapper.update(user);
         log.info("用户信息更新成功: id={}, username={}", user.getId(), user.getUsername());
         
-        // 返回更新后的用户（不包含密码）
+        // 返回更新后的用户（不包含密码），同时写入缓存
         User updatedUser = userMapper.selectById(user.getId());
+        userNearCache.put(updatedUser, existingUser);
         updatedUser.setPassword(null);
         return updatedUser;
     }
@@ -215,28 +213,34 @@ public class UserService {
      * 删除用户
      */
     public void deleteUser(Long id) {
-        User user = userMapper.selectById(id);
+        User user = userNearCache.findById(id);
         if (user == null) {
             throw new RuntimeException("用户不存在");
         }
         userMapper.deleteById(id);
+        userNearCache.evict(user);
         log.info("用户删除成功: id={}, username={}", id, user.getUsername());
     }
     
     /**
      * 切换用户状态
+     * 
+     * 在数据库中按当前值切换，只改status和update_time；
+     * 登录按主键重新读取status，禁用在所有实例立即生效；
+     * 已登录的Token在本实例立即失效，其他实例在其近端缓存过期（最多ttl-seconds）后失效
      */
     public User toggleUserStatus(Long id) {
-        User user = userMapper.selectById(id);
-        if (user == null) {
+        if (userMapper.toggleStatus(id, new Date()) == 0) {
             throw new RuntimeException("用户不存在");
         }
-        user.setStatus(user.getStatus() == 1 ? 0 : 1);
-        user.setUpdateTime(new Date());
-        userMapper.update(user);
-        log.info("用户状态切换成功: id={}, username={}, status={}", id, user.getUsername(), user.getStatus());
-        
         User updatedUser = userMapper.selectById(id);
+        if (updatedUser == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        log.info("用户状态切换成功: id={}, username={}, status={}", id, updatedUser.getUsername(), updatedUser.getStatus());
+        
+        // 只改了状态，用户名、邮箱映射不变
+        userNearCache.put(updatedUser, null);
         updatedUser.setPassword(null);
         return updatedUser;
     }
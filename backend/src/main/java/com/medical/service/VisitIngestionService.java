@@ -0,0 +1,333 @@
+package com.medical.service;
+
+import cn.hutool.core.io.BOMInputStream;
+import cn.hutool.core.text.csv.CsvReadConfig;
+import cn.hutool.core.text.csv.CsvReader;
+import cn.hutool.core.text.csv.CsvRow;
+import cn.hutool.core.text.csv.CsvUtil;
+import com.medical.dto.IngestionReport;
+import com.medical.entity.Patient;
+import com.medical.event.VisitChangeEvent;
+import com.medical.mapper.DepartmentOperationMapper;
+import com.medical.mapper.PatientMapper;
+import com.medical.util.DateConvertUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 就诊记录批量导入Service
+ * 
+ * 作用：一次导入大量就诊记录（JSON数组或CSV流），避免逐条请求、逐条插入
+ * 
+ * 处理方式：
+ * 1. 逐行校验，不合格的行记录原因后跳过，不中断整个文件
+ * 2. 合格行攒满一块（chunk-size）后在一个事务内写入：
+ *    多行INSERT（每条rows-per-statement行），通过BATCH执行器一次发送，
+ *    同一事务内按(科室, 日期)合并累加科室运营日汇总
+ * 3. 某一块写库失败只回滚该块，其余块照常提交
+ * 4. 每块发布一个批量新增的就诊记录变更事件，提交后由订阅方更新派生数据
+ */
+@Slf4j
+@Service
+public class VisitIngestionService {
+    
+    /**
+     * 合法的就诊类型
+     */
+    private static final Set<String> VISIT_TYPES = new HashSet<>(Arrays.asList("门诊", "急诊", "住院"));
+    
+    /**
+     * 费用上限（DECIMAL(10,2)）
+     */
+    private static final BigDecimal MAX_COST = new BigDecimal("99999999.99");
+    
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private DepartmentRollupService departmentRollupService;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    /**
+     * 每个事务写入的行数
+     */
+    @Value("${patient.ingest.chunk-size:5000}")
+    private int chunkSize;
+    
+    /**
+     * 每条多行INSERT包含的行数
+     */
+    @Value("${patient.ingest.rows-per-statement:500}")
+    private int rowsPerStatement;
+    
+    /**
+     * 报告中最多记录的失败明细条数
+     */
+    @Value("${patient.ingest.max-errors:1000}")
+    private int maxErrors;
+    
+    /**
+     * BATCH执行器的SqlSessionTemplate，只在本类使用；
+     * 不注册为Bean，以免替换MyBatis自动配置的默认SqlSessionTemplate
+     */
+    private SqlSessionTemplate batchSqlSession;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    @PostConstruct
+    public void init() {
+        batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+    
+    /**
+     * 导入JSON数组形式的就诊记录
+     */
+    public IngestionReport ingest(List<Patient> visits) {
+        Ingestion ingestion = new Ingestion();
+        if (visits != null) {
+            for (Patient visit : visits) {
+                ingestion.accept(visit);
+            }
+        }
+        return ingestion.finish();
+    }
+    
+    /**
+     * 流式导入CSV（UTF-8，首行为表头）
+     * 
+     * 表头支持数据库列名或属性名：patient_id/patientId、visit_date/visitDate、department、
+     * diagnosis、disease_code/diseaseCode、cost、visit_type/visitType；日期格式yyyy-MM-dd
+     * 边读边写，内存占用只与块大小有关
+     */
+    public IngestionReport ingestCsv(InputStream in) {
+        Ingestion ingestion = new Ingestion();
+        CsvReadConfig config = CsvReadConfig.defaultConfig();
+        config.setContainsHeader(true);
+        config.setSkipEmptyRows(true);
+        config.setTrimField(true);
+        CsvReader reader = CsvUtil.getReader(config);
+        reader.read(new InputStreamReader(new BOMInputStream(in), StandardCharsets.UTF_8), row -> {
+            Patient visit;
+            try {
+                visit = fromCsv(row);
+            } catch (IllegalArgumentException e) {
+                ingestion.reject(e.getMessage());
+                return;
+            }
+            ingestion.accept(visit);
+        });
+        return ingestion.finish();
+    }
+    
+    private static Patient fromCsv(CsvRow row) {
+        Patient visit = new Patient();
+        visit.setPatientId(field(row, "patient_id", "patientId"));
+        visit.setDepartment(field(row, "department", "department"));
+        visit.setDiagnosis(field(row, "diagnosis", "diagnosis"));
+        visit.setDiseaseCode(field(row, "disease_code", "diseaseCode"));
+        visit.setVisitType(field(row, "visit_type", "visitType"));
+        
+        String visitDate = field(row, "visit_date", "visitDate");
+        if (visitDate != null) {
+            try {
+                visit.setVisitDate(DateConvertUtil.toDate(LocalDate.parse(visitDate)));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("就诊日期格式错误（应为yyyy-MM-dd）: " + visitDate);
+            }
+        }
+        String cost = field(row, "cost", "cost");
+        if (cost != null) {
+            try {
+                visit.setCost(new BigDecimal(cost));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("费用格式错误: " + cost);
+            }
+        }
+        return visit;
+    }
+    
+    private static String field(CsvRow row, String column, String property) {
+        String value = row.getByName(column);
+        if (value == null && !column.equals(property)) {
+            value = row.getByName(property);
+        }
+        return value == null || value.isEmpty() ? null : value;
+    }
+    
+    /**
+     * 校验单行，合格返回null，否则返回原因
+     */
+    private static String validate(Patient visit) {
+        if (visit == null) {
+            return "记录为空";
+        }
+        if (isBlank(visit.getPatientId())) {
+            return "患者ID不能为空";
+        }
+        if (visit.getPatientId().length() > 50) {
+            return "患者ID长度不能超过50";
+        }
+        if (visit.getVisitDate() == null) {
+            return "就诊日期不能为空";
+        }
+        if (isBlank(visit.getDepartment())) {
+            return "科室不能为空";
+        }
+        if (visit.getDepartment().length() > 50) {
+            return "科室长度不能超过50";
+        }
+        if (visit.getDiagnosis() != null && visit.getDiagnosis().length() > 200) {
+            return "诊断长度不能超过200";
+        }
+        if (visit.getDiseaseCode() != null && visit.getDiseaseCode().length() > 50) {
+            return "疾病编码长度不能超过50";
+        }
+        if (visit.getVisitType() != null && !VISIT_TYPES.contains(visit.getVisitType())) {
+            return "就诊类型只能是门诊/急诊/住院: " + visit.getVisitType();
+        }
+        BigDecimal cost = visit.getCost();
+        if (cost != null && (cost.signum() < 0 || cost.compareTo(MAX_COST) > 0 || cost.scale() > 2)) {
+            return "费用必须在0~99999999.99之间且最多两位小数: " + cost.toPlainString();
+        }
+        return null;
+    }
+    
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+    
+    /**
+     * 在一个事务内写入一块：多行INSERT + 汇总增量，统一flush后提交，失败时整块回滚
+     * flush后生成的ID已回填，此时发布的事件在提交后带着完整的记录交给订阅方
+     */
+    private void writeChunk(List<Patient> chunk) {
+        transactionTemplate.executeWithoutResult(status -> {
+            PatientMapper patientMapper = batchSqlSession.getMapper(PatientMapper.class);
+            for (int from = 0; from < chunk.size(); from += rowsPerStatement) {
+                patientMapper.insertBatch(chunk.subList(from, Math.min(chunk.size(), from + rowsPerStatement)));
+            }
+            departmentRollupService.applyInsertAll(chunk, batchSqlSession.getMapper(DepartmentOperationMapper.class));
+            batchSqlSession.flushStatements();
+            eventPublisher.publishEvent(VisitChangeEvent.insertedAll(chunk));
+        });
+    }
+    
+    /**
+     * 单次导入的状态：当前块缓冲区与结果统计
+     */
+    private final class Ingestion {
+        
+        private final long startNanos = System.nanoTime();
+        
+        private final IngestionReport report = new IngestionReport();
+        
+        private final List<Patient> buffer = new ArrayList<>(chunkSize);
+        
+        /**
+         * 缓冲区第一行的行号
+         */
+        private long bufferFirstRow;
+        
+        void accept(Patient visit) {
+            long row = report.getTotalRows() + 1;
+            report.setTotalRows(row);
+            String error = validate(visit);
+            if (error != null) {
+                fail(row, error);
+                return;
+            }
+            visit.setId(null);
+            if (buffer.isEmpty()) {
+                bufferFirstRow = row;
+            }
+            buffer.add(visit);
+            if (buffer.size() >= chunkSize) {
+                flush();
+            }
+        }
+        
+        void reject(String error) {
+            long row = report.getTotalRows() + 1;
+            report.setTotalRows(row);
+            fail(row, error);
+        }
+        
+        IngestionReport finish() {
+            flush();
+            long elapsedNanos = System.nanoTime() - startNanos;
+            report.setElapsedMillis(elapsedNanos / 1_000_000);
+            report.setRowsPerSecond(elapsedNanos > 0 ? report.getInsertedRows() * 1_000_000_000L / elapsedNanos : 0);
+            log.info("批量导入完成：读取 {} 行，写入 {} 行，失败 {} 行，{} 块，耗时 {} ms，{} 行/秒",
+                report.getTotalRows(), report.getInsertedRows(), report.getFailedRows(),
+                report.getChunks(), report.getElapsedMillis(), report.getRowsPerSecond());
+            return report;
+        }
+        
+        private void flush() {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            List<Patient> chunk = new ArrayList<>(buffer);
+            long firstRow = bufferFirstRow;
+            long lastRow = report.getTotalRows();
+            buffer.clear();
+            report.setChunks(report.getChunks() + 1);
+            try {
+                writeChunk(chunk);
+                report.setInsertedRows(report.getInsertedRows() + chunk.size());
+            } catch (RuntimeException e) {
+                log.error("批量导入第 {}~{} 行写入失败，该块已回滚", firstRow, lastRow, e);
+                report.setFailedRows(report.getFailedRows() + chunk.size());
+                addError(firstRow, "第" + firstRow + "~" + lastRow + "行所在块写入失败，已回滚: " + rootMessage(e));
+            }
+        }
+        
+        private void fail(long row, String error) {
+            report.setFailedRows(report.getFailedRows() + 1);
+            addError(row, error);
+        }
+        
+        private void addError(long row, String message) {
+            if (report.getErrors().size() < maxErrors) {
+                report.getErrors().add(new IngestionReport.RowError(row, message));
+            } else {
+                report.setErrorsTruncated(true);
+            }
+        }
+    }
+    
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+}
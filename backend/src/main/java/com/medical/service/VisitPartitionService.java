@@ -0,0 +1,380 @@
+package com.medical.service;
+
+import com.medical.dto.VisitPartitionDTO;
+import com.medical.mapper.VisitPartitionMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 就诊记录分区维护Service
+ * 
+ * 作用：patient_visit按visit_date每月一个RANGE COLUMNS分区（p_history在最前，p_future为MAXVALUE），
+ * 定时维护分区，并向查询提供分区边界，使分页等查询只访问需要的月份
+ * 
+ * - 预建分区：把p_future拆分出当前月之后future-months个月的分区（p_future为空时只修改元数据）
+ * - 分离过期分区：retention-months > 0 时，把早于保留期的分区交换到patient_visit_archive_YYYYMM表后删除，
+ *   明细移出在线表但不丢失；日汇总、草图等派生数据不受影响
+ * 
+ * 表未分区（未执行升级脚本）时只记录日志，查询按未分区处理
+ */
+@Slf4j
+@Service
+public class VisitPartitionService {
+    
+    private static final String HISTORY_PARTITION = "p_history";
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final String ARCHIVE_TABLE_PREFIX = "patient_visit_archive_";
+    
+    /**
+     * 多实例维护时的MySQL命名锁
+     */
+    private static final String LOCK_NAME = "medical_platform.patient_visit.partition";
+    
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    
+    /**
+     * 拼接到DDL中的名称只允许以下格式
+     */
+    private static final Pattern PARTITION_NAME = Pattern.compile("p_history|p_future|p\\d{6}");
+    private static final Pattern ARCHIVE_TABLE = Pattern.compile("patient_visit_archive_(before_)?\\d{6}");
+    
+    @Value("${patient.partition.enabled:true}")
+    private boolean enabled;
+    
+    /**
+     * 当前月之后预建的月份数
+     */
+    @Value("${patient.partition.future-months:3}")
+    private int futureMonths;
+    
+    /**
+     * 在线保留的月份数（含当前月），0表示不分离
+     */
+    @Value("${patient.partition.retention-months:0}")
+    private int retentionMonths;
+    
+    @Autowired
+    private VisitPartitionMapper visitPartitionMapper;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    
+    /**
+     * 最近一次读取的分区（按顺序），未分区时为空
+     */
+    private volatile List<Partition> partitions = Collections.emptyList();
+    
+    private volatile boolean partitioned;
+    
+    private volatile LocalDateTime lastMaintenance;
+    
+    private volatile String lastError;
+    
+    private final AtomicLong createdPartitions = new AtomicLong();
+    private final AtomicLong detachedPartitions = new AtomicLong();
+    
+    /**
+     * 应用启动完成后在后台线程维护一次，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void maintainOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread worker = new Thread(this::maintainQuietly, "visit-partition-maintainer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    @Scheduled(fixedDelayString = "${patient.partition.maintenance-interval-ms:21600000}",
+               initialDelayString = "${patient.partition.maintenance-interval-ms:21600000}")
+    public void scheduledMaintain() {
+        if (enabled) {
+            maintainQuietly();
+        }
+    }
+    
+    /**
+     * 预建分区、分离过期分区，返回本次新建和分离的分区名
+     */
+    public Map<String, Object> maintain() {
+        if (!enabled) {
+            throw new RuntimeException("就诊记录分区维护未启用");
+        }
+        if (!maintenanceLock.tryLock()) {
+            throw new RuntimeException("分区维护正在进行，请稍后再试");
+        }
+        try {
+            List<String> created = new ArrayList<>();
+            List<String> detached = new ArrayList<>();
+            // DDL会隐式提交，事务只用于让命名锁和DDL使用同一个连接
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                Integer locked = visitPartitionMapper.acquireLock(LOCK_NAME);
+                if (locked == null || locked != 1) {
+                    log.info("其他实例正在维护就诊记录分区，本次跳过");
+                    refresh();
+                    return;
+                }
+                try {
+                    refresh();
+                    if (!partitioned) {
+                        return;
+                    }
+                    created.addAll(createFuturePartitions());
+                    detached.addAll(detachExpiredPartitions());
+                } finally {
+                    visitPartitionMapper.releaseLock(LOCK_NAME);
+                }
+            });
+            lastMaintenance = LocalDateTime.now();
+            lastError = null;
+            Map<String, Object> result = new HashMap<>();
+            result.put("partitioned", partitioned);
+            result.put("created", created);
+            result.put("detached", detached);
+            return result;
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+            throw e;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+    
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+    
+    /**
+     * 第一个按月分区的起始日期：早于该日期的数据都在p_history一个分区中，按月缩小查询范围到此为止
+     * 表未分区时返回null
+     */
+    public LocalDate getMonthlyFloor() {
+        List<Partition> current = partitions;
+        if (!partitioned || current.isEmpty()) {
+            return null;
+        }
+        return current.get(0).upperBound;
+    }
+    
+    public Map<String, Object> stats() {
+        List<Map<String, Object>> items = new ArrayList<>();
+        long rows = 0;
+        for (Partition partition : partitions) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("name", partition.name);
+            item.put("from", partition.lowerBound != null ? partition.lowerBound.toString() : null);
+            item.put("to", partition.upperBound != null ? partition.upperBound.toString() : null);
+            item.put("rows", partition.rows);
+            item.put("dataBytes", partition.dataBytes);
+            item.put("indexBytes", partition.indexBytes);
+            items.add(item);
+            rows += partition.rows;
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("partitioned", partitioned);
+        stats.put("futureMonths", futureMonths);
+        stats.put("retentionMonths", retentionMonths);
+        stats.put("partitionCount", items.size());
+        stats.put("estimatedRows", rows);
+        stats.put("partitions", items);
+        stats.put("createdPartitions", createdPartitions.get());
+        stats.put("detachedPartitions", detachedPartitions.get());
+        stats.put("lastMaintenance", lastMaintenance != null ? lastMaintenance.toString() : null);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+    
+    private void maintainQuietly() {
+        try {
+            Map<String, Object> result = maintain();
+            log.info("就诊记录分区维护完成: {}", result);
+        } catch (RuntimeException e) {
+            log.warn("就诊记录分区维护失败，稍后重试: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 重新读取分区信息
+     */
+    private void refresh() {
+        List<VisitPartitionDTO> rows = visitPartitionMapper.selectPartitions();
+        if (rows.isEmpty() || rows.get(0).getPartitionName() == null) {
+            if (partitioned || partitions.isEmpty()) {
+                log.warn("patient_visit未分区，请执行database/update_patient_visit_partition.sql");
+            }
+            partitioned = false;
+            partitions = Collections.emptyList();
+            return;
+        }
+        List<Partition> list = new ArrayList<>(rows.size());
+        LocalDate lowerBound = null;
+        for (VisitPartitionDTO row : rows) {
+            LocalDate upperBound = parseBound(row.getPartitionDescription());
+            list.add(new Partition(row.getPartitionName(), lowerBound, upperBound,
+                valueOf(row.getTableRows()), valueOf(row.getDataLength()), valueOf(row.getIndexLength())));
+            lowerBound = upperBound;
+        }
+        partitions = Collections.unmodifiableList(list);
+        partitioned = true;
+    }
+    
+    /**
+     * 从最后一个按月分区的上界起，补齐到当前月 + futureMonths
+     */
+    private List<String> createFuturePartitions() {
+        List<Partition> current = partitions;
+        Partition last = current.get(current.size() - 1);
+        if (!FUTURE_PARTITION.equals(last.name) || last.upperBound != null || current.size() < 2) {
+            log.warn("patient_visit最后一个分区不是p_future（MAXVALUE），无法预建分区");
+            return Collections.emptyList();
+        }
+        YearMonth next = YearMonth.from(last.lowerBound);
+        YearMonth target = YearMonth.now().plusMonths(futureMonths);
+        List<Map<String, String>> specs = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (YearMonth month = next; !month.isAfter(target); month = month.plusMonths(1)) {
+            String name = checkedPartition("p" + month.format(MONTH_SUFFIX));
+            Map<String, String> spec = new HashMap<>();
+            spec.put("name", name);
+            spec.put("bound", month.plusMonths(1).atDay(1).toString());
+            specs.add(spec);
+            names.add(name);
+        }
+        if (specs.isEmpty()) {
+            return names;
+        }
+        log.info("新建就诊记录分区: {}", names);
+        visitPartitionMapper.splitFuture(specs);
+        createdPartitions.addAndGet(specs.size());
+        refresh();
+        return names;
+    }
+    
+    /**
+     * 上界不晚于保留期起点的分区依次交换到归档表后删除（从最早的开始，始终保留p_future）
+     * 
+     * 中途失败可重复执行：归档表已存在且有数据而分区已空时直接删除分区；两者都有数据时跳过，需人工处理
+     */
+    private List<String> detachExpiredPartitions() {
+        if (retentionMonths <= 0) {
+            return Collections.emptyList();
+        }
+        LocalDate cutoff = YearMonth.now().minusMonths(retentionMonths - 1L).atDay(1);
+        List<String> detached = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.upperBound == null || partition.upperBound.isAfter(cutoff)) {
+                break;
+            }
+            String name = checkedPartition(partition.name);
+            String table = archiveTableOf(partition);
+            String options = visitPartitionMapper.selectTableOptions(table);
+            if (options == null) {
+                visitPartitionMapper.createArchiveTable(table);
+                visitPartitionMapper.removePartitioning(table);
+            } else if (options.toLowerCase().contains("partitioned")) {
+                visitPartitionMapper.removePartitioning(table);
+            }
+            if (visitPartitionMapper.tableHasRows(table)) {
+                if (visitPartitionMapper.partitionHasRows(name)) {
+                    log.warn("归档表{}和分区{}都有数据，跳过分离，请人工核对", table, name);
+                    break;
+                }
+            } else {
+                visitPartitionMapper.exchangePartition(name, table);
+            }
+            visitPartitionMapper.dropPartition(name);
+            detachedPartitions.incrementAndGet();
+            detached.add(name);
+            log.info("就诊记录分区{}已分离到{}", name, table);
+        }
+        if (!detached.isEmpty()) {
+            refresh();
+        }
+        return detached;
+    }
+    
+    private static String archiveTableOf(Partition partition) {
+        String table;
+        if (HISTORY_PARTITION.equals(partition.name)) {
+            table = ARCHIVE_TABLE_PREFIX + "before_" + YearMonth.from(partition.upperBound).format(MONTH_SUFFIX);
+        } else {
+            table = ARCHIVE_TABLE_PREFIX + partition.name.substring(1);
+        }
+        if (!ARCHIVE_TABLE.matcher(table).matches()) {
+            throw new IllegalStateException("归档表名不正确: " + table);
+        }
+        return table;
+    }
+    
+    private static String checkedPartition(String name) {
+        if (name == null || !PARTITION_NAME.matcher(name).matches()) {
+            throw new IllegalStateException("分区名不正确: " + name);
+        }
+        return name;
+    }
+    
+    /**
+     * RANGE COLUMNS分区的上界形如 '2024-02-01'，最后一个分区为 MAXVALUE
+     */
+    private static LocalDate parseBound(String description) {
+        if (description == null || "MAXVALUE".equalsIgnoreCase(description.trim())) {
+            return null;
+        }
+        return LocalDate.parse(description.trim().replace("'", ""));
+    }
+    
+    private static long valueOf(Long value) {
+        return value != null ? value : 0L;
+    }
+    
+    /**
+     * 一个分区：[lowerBound, upperBound)，第一个分区lowerBound为null，p_future的upperBound为null
+     */
+    private static final class Partition {
+        
+        private final String name;
+        
+        private final LocalDate lowerBound;
+        
+        private final LocalDate upperBound;
+        
+        private final long rows;
+        
+        private final long dataBytes;
+        
+        private final long indexBytes;
+        
+        Partition(String name, LocalDate lowerBound, LocalDate upperBound, long rows, long dataBytes, long indexBytes) {
+            this.name = name;
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.rows = rows;
+            this.dataBytes = dataBytes;
+            this.indexBytes = indexBytes;
+        }
+    }
+}
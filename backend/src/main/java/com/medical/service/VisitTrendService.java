@@ -0,0 +1,290 @@
+package com.medical.service;
+
+import com.medical.analytics.DailyPrefixSums;
+import com.medical.analytics.VisitTrendIndex;
+import com.medical.datasource.ReadOnlyRoute;
+import com.medical.mapper.DepartmentOperationMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 就诊趋势Service
+ * 
+ * 作用：按日/周/月/季度统计任意日期范围的就诊人次与收入，可选按科室过滤，并支持环比、同比
+ * 
+ * 已结束的日期从VisitTrendIndex的前缀和读取，每个时间段两次数组读取；
+ * 当天（以及索引未就绪时的整个范围）从department_operation读取一次后在内存中汇总，不扫描就诊明细
+ * 开启读写分离时该读取走只读从库（前缀和索引本身仍从主库加载，避免漏掉刚提交的修改）
+ */
+@ReadOnlyRoute
+@Slf4j
+@Service
+public class VisitTrendService {
+    
+    public static final String COMPARE_PREVIOUS = "previous";
+    public static final String COMPARE_YEAR = "year";
+    
+    @Autowired
+    private VisitTrendIndex visitTrendIndex;
+    
+    @Autowired
+    private DepartmentOperationMapper departmentOperationMapper;
+    
+    /**
+     * 一次查询最多返回的时间段数
+     */
+    @Value("${analytics.trend.max-points:5000}")
+    private int maxPoints;
+    
+    /**
+     * 时间粒度
+     */
+    private enum Granularity {
+        DAY, WEEK, MONTH, QUARTER;
+        
+        LocalDate periodStart(LocalDate date) {
+            switch (this) {
+                case WEEK:
+                    return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH:
+                    return date.withDayOfMonth(1);
+                case QUARTER:
+                    return date.withDayOfMonth(1).withMonth((date.getMonthValue() - 1) / 3 * 3 + 1);
+                default:
+                    return date;
+            }
+        }
+        
+        /**
+         * 向后（amount为负时向前）移动若干个时间段；date应为时间段的起始日期，
+         * 月、季度的其他日期移动后会被截断到月末（如3月31日前移一个月为2月28日）
+         */
+        LocalDate shift(LocalDate date, long amount) {
+            switch (this) {
+                case WEEK:
+                    return date.plusWeeks(amount);
+                case MONTH:
+                    return date.plusMonths(amount);
+                case QUARTER:
+                    return date.plusMonths(amount * 3);
+                default:
+                    return date.plusDays(amount);
+            }
+        }
+        
+        String label(LocalDate periodStart) {
+            switch (this) {
+                case WEEK:
+                    return String.format("%d-W%02d", periodStart.get(IsoFields.WEEK_BASED_YEAR),
+                        periodStart.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+                case MONTH:
+                    return YearMonth.from(periodStart).toString();
+                case QUARTER:
+                    return periodStart.getYear() + "-Q" + periodStart.get(IsoFields.QUARTER_OF_YEAR);
+                default:
+                    return periodStart.toString();
+            }
+        }
+        
+        static Granularity parse(String value) {
+            if (value == null || value.isEmpty()) {
+                return DAY;
+            }
+            try {
+                return valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("粒度只能是day/week/month/quarter: " + value);
+            }
+        }
+    }
+    
+    /**
+     * 查询趋势
+     * 
+     * @param granularity day/week/month/quarter，默认day
+     * @param startDate   起始日期（含），为空时取最近30天（按日）或最近12个时间段
+     * @param endDate     结束日期（含），为空时取当天
+     * @param department  科室，为空时为全院
+     * @param compare     对比方式：previous（环比，与上一个时间段比）、year（同比，与去年同期比），为空时不对比；
+     *                    环比的对比区间按时间段边界取上一个完整时间段，首尾被查询范围截断的时间段
+     *                    取上一个时间段中相同天数偏移的部分（不超出该时间段）
+     */
+    public Map<String, Object> getTrend(String granularity, LocalDate startDate, LocalDate endDate,
+                                        String department, String compare) {
+        Granularity unit = Granularity.parse(granularity);
+        LocalDate end = endDate != null ? endDate : LocalDate.now();
+        LocalDate start = startDate != null ? startDate
+            : unit.periodStart(unit.shift(end, unit == Granularity.DAY ? -29 : -11));
+        if (start.isAfter(end)) {
+            throw new RuntimeException("起始日期不能晚于结束日期");
+        }
+        if (compare != null && compare.isEmpty()) {
+            compare = null;
+        }
+        if (compare != null && !COMPARE_PREVIOUS.equals(compare) && !COMPARE_YEAR.equals(compare)) {
+            throw new RuntimeException("对比方式只能是previous/year: " + compare);
+        }
+        String dept = department != null && !department.isEmpty() ? department : null;
+        
+        // 各时间段（按查询范围截断）
+        List<LocalDate[]> periods = new ArrayList<>();
+        for (LocalDate periodStart = unit.periodStart(start); !periodStart.isAfter(end);
+             periodStart = unit.shift(periodStart, 1)) {
+            if (periods.size() >= maxPoints) {
+                throw new RuntimeException("时间段数量超过" + maxPoints + "，请缩小日期范围或使用更粗的粒度");
+            }
+            LocalDate from = periodStart.isBefore(start) ? start : periodStart;
+            LocalDate periodEnd = unit.shift(periodStart, 1).minusDays(1);
+            LocalDate to = periodEnd.isAfter(end) ? end : periodEnd;
+            periods.add(new LocalDate[] {periodStart, from, to});
+        }
+        
+        LocalDate spanStart = start;
+        if (COMPARE_PREVIOUS.equals(compare)) {
+            spanStart = unit.shift(unit.periodStart(start), -1);
+        } else if (COMPARE_YEAR.equals(compare)) {
+            spanStart = start.minusYears(1);
+        }
+        RangeSums sums = new RangeSums(spanStart, end);
+        
+        List<Map<String, Object>> points = new ArrayList<>(periods.size());
+        long totalCount = 0;
+        long totalCents = 0;
+        for (LocalDate[] period : periods) {
+            long[] current = sums.sum(dept, period[1], period[2]);
+            totalCount += current[0];
+            totalCents += current[1];
+            Map<String, Object> point = new HashMap<>();
+            point.put("period", unit.label(period[0]));
+            point.put("startDate", period[1].toString());
+            point.put("endDate", period[2].toString());
+            point.put("count", current[0]);
+            point.put("amount", BigDecimal.valueOf(current[1], 2));
+            if (compare != null) {
+                LocalDate[] window = COMPARE_YEAR.equals(compare)
+                    ? new LocalDate[] {period[1].minusYears(1), period[2].minusYears(1)}
+                    : previousWindow(unit, period);
+                LocalDate compareFrom = window[0];
+                LocalDate compareTo = window[1];
+                long[] previous = sums.sum(dept, compareFrom, compareTo);
+                point.put("compareStartDate", compareFrom.toString());
+                point.put("compareEndDate", compareTo.toString());
+                point.put("compareCount", previous[0]);
+                point.put("compareAmount", BigDecimal.valueOf(previous[1], 2));
+                point.put("countChangeRate", changeRate(current[0], previous[0]));
+                point.put("amountChangeRate", changeRate(current[1], previous[1]));
+            }
+            points.add(point);
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("granularity", unit.name().toLowerCase());
+        result.put("startDate", start.toString());
+        result.put("endDate", end.toString());
+        result.put("department", dept);
+        result.put("compare", compare);
+        result.put("points", points);
+        result.put("totalCount", totalCount);
+        result.put("totalAmount", BigDecimal.valueOf(totalCents, 2));
+        result.put("source", sums.closedThrough != null ? "index" : "rollup");
+        return result;
+    }
+    
+    /**
+     * 环比的对比区间：上一个时间段从起始日期起、与本时间段相同天数偏移的部分，结束日期不超过上一个时间段的最后一天
+     * （2月1日~28日对比1月1日~31日，3月1日~30日对比2月1日~28日，3月10日~31日对比2月10日~28日）
+     * 
+     * @param period [时间段起始日期, 截断后的起始日期, 截断后的结束日期]
+     */
+    private static LocalDate[] previousWindow(Granularity unit, LocalDate[] period) {
+        LocalDate periodStart = period[0];
+        LocalDate previousStart = unit.shift(periodStart, -1);
+        LocalDate previousEnd = periodStart.minusDays(1);
+        LocalDate periodEnd = unit.shift(periodStart, 1).minusDays(1);
+        LocalDate from = previousStart.plusDays(ChronoUnit.DAYS.between(periodStart, period[1]));
+        LocalDate to = period[2].equals(periodEnd) ? previousEnd
+            : previousStart.plusDays(ChronoUnit.DAYS.between(periodStart, period[2]));
+        if (to.isAfter(previousEnd)) {
+            to = previousEnd;
+        }
+        if (from.isAfter(to)) {
+            from = to;
+        }
+        return new LocalDate[] {from, to};
+    }
+    
+    /**
+     * 变化率 = (本期 - 对比期) / 对比期，对比期为0时为null
+     */
+    private static BigDecimal changeRate(long current, long previous) {
+        if (previous == 0) {
+            return null;
+        }
+        return BigDecimal.valueOf(current - previous).divide(BigDecimal.valueOf(previous), 4, RoundingMode.HALF_UP);
+    }
+    
+    /**
+     * 一次查询的区间合计：不晚于closedThrough的部分读前缀和索引，之后的日期（当天）读一次汇总表
+     */
+    private final class RangeSums {
+        
+        /**
+         * 索引已覆盖的最后一天，索引未就绪时为null
+         */
+        private final LocalDate closedThrough;
+        
+        /**
+         * 索引未覆盖部分的前缀和（按本次查询范围临时构建）
+         */
+        private final DailyPrefixSums tail;
+        
+        RangeSums(LocalDate spanStart, LocalDate spanEnd) {
+            this.closedThrough = visitTrendIndex.isReady() ? visitTrendIndex.getClosedThrough() : null;
+            LocalDate today = LocalDate.now();
+            LocalDate tailStart = closedThrough != null ? closedThrough.plusDays(1) : spanStart;
+            if (tailStart.isBefore(spanStart)) {
+                tailStart = spanStart;
+            }
+            LocalDate tailEnd = spanEnd.isAfter(today) ? today : spanEnd;
+            if (tailStart.isAfter(tailEnd)) {
+                this.tail = null;
+            } else {
+                if (closedThrough == null) {
+                    log.info("就诊趋势前缀和未就绪，读取汇总表: {} ~ {}", tailStart, tailEnd);
+                }
+                this.tail = DailyPrefixSums.build(tailStart, tailEnd,
+                    departmentOperationMapper.selectDailyStats(tailStart, tailEnd));
+            }
+        }
+        
+        long[] sum(String department, LocalDate from, LocalDate to) {
+            long[] result = new long[2];
+            if (closedThrough != null && !from.isAfter(closedThrough)) {
+                long[] closed = visitTrendIndex.sum(department, from, to.isAfter(closedThrough) ? closedThrough : to);
+                result[0] += closed[0];
+                result[1] += closed[1];
+            }
+            if (tail != null) {
+                long[] open = tail.sum(department, from, to);
+                result[0] += open[0];
+                result[1] += open[1];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.medical.util;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * 日期转换工具类
+ * MyBatis把DATE列映射成java.util.Date（时间部分为0点），统计模块统一按LocalDate处理
+ */
+public class DateConvertUtil {
+    
+    private DateConvertUtil() {
+    }
+    
+    /**
+     * java.util.Date / java.sql.Date 转 LocalDate（按JVM默认时区）
+     */
+    public static LocalDate toLocalDate(Date date) {
+        if (date == null) {
+            return null;
+        }
+        return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+    
+    /**
+     * LocalDate 转 java.util.Date（当天0点）
+     */
+    public static Date toDate(LocalDate localDate) {
+        if (localDate == null) {
+            return null;
+        }
+        return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,203 @@
+package com.medical.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 结构化诊断事件日志
+ * 
+ * 替代原来在请求线程里每次new FileWriter写debug.log的做法：
+ * - 请求线程只把事件放入无锁有界环形缓冲区，永远不做磁盘IO、不阻塞
+ * - 缓冲区满时直接丢弃事件并计数
+ * - 后台线程批量取出，以JSON行格式追加写入文件
+ * 
+ * Spring启动前产生的事件先留在缓冲区，DiagnosticLogConfig调用start后开始落盘
+ */
+@Slf4j
+public final class DiagnosticLog {
+    
+    private static final int DEFAULT_CAPACITY = 8192;
+    
+    private static volatile RingBuffer<Map<String, Object>> buffer = new RingBuffer<>(DEFAULT_CAPACITY);
+    
+    private static volatile boolean enabled = true;
+    
+    private static final LongAdder PUBLISHED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder WRITTEN = new LongAdder();
+    private static final LongAdder WRITE_ERRORS = new LongAdder();
+    
+    private static Thread writerThread;
+    
+    private static volatile boolean running;
+    
+    private DiagnosticLog() {
+    }
+    
+    /**
+     * 记录一条诊断事件（不阻塞）
+     * 
+     * @param location  代码位置，如 "UserService.login"
+     * @param message   事件描述
+     * @param keyValues 附加数据，按 key1, value1, key2, value2 ... 传入
+     */
+    public static void event(String location, String message, Object... keyValues) {
+        if (!enabled) {
+            return;
+        }
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("timestamp", System.currentTimeMillis());
+        event.put("thread", Thread.currentThread().getName());
+        event.put("location", location);
+        event.put("message", message);
+        if (keyValues != null && keyValues.length > 1) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                Object value = keyValues[i + 1];
+                data.put(String.valueOf(keyValues[i]), value instanceof Throwable ? value.toString() : value);
+            }
+            event.put("data", data);
+        }
+        if (buffer.offer(event)) {
+            PUBLISHED.increment();
+        } else {
+            DROPPED.increment();
+        }
+    }
+    
+    /**
+     * 启动后台写入线程
+     * 
+     * @param file            输出文件（JSON行格式，追加写入）
+     * @param capacity        缓冲区容量
+     * @param batchSize       每批最多写入条数
+     * @param flushIntervalMs 空闲时轮询间隔
+     */
+    public static synchronized void start(Path file, int capacity, int batchSize, long flushIntervalMs) {
+        if (running) {
+            return;
+        }
+        if (capacity != buffer.capacity()) {
+            // 保留启动阶段已缓冲的事件
+            RingBuffer<Map<String, Object>> resized = new RingBuffer<>(capacity);
+            List<Map<String, Object>> pending = new ArrayList<>();
+            buffer.drainTo(pending, Integer.MAX_VALUE);
+            pending.forEach(resized::offer);
+            buffer = resized;
+        }
+        running = true;
+        writerThread = new Thread(() -> writeLoop(file, batchSize, flushIntervalMs), "diagnostic-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("诊断事件日志已启动: file={}, capacity={}", file.toAbsolutePath(), buffer.capacity());
+    }
+    
+    /**
+     * 停止后台线程，写完缓冲区中剩余的事件
+     */
+    public static synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 关闭后event直接返回，不再产生事件对象
+     */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+    
+    /**
+     * 运行统计
+     */
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running);
+        stats.put("capacity", buffer.capacity());
+        stats.put("pending", buffer.size());
+        stats.put("published", PUBLISHED.sum());
+        stats.put("dropped", DROPPED.sum());
+        stats.put("written", WRITTEN.sum());
+        stats.put("writeErrors", WRITE_ERRORS.sum());
+        return stats;
+    }
+    
+    private static void writeLoop(Path file, int batchSize, long flushIntervalMs) {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+        Writer writer = null;
+        while (true) {
+            batch.clear();
+            buffer.drainTo(batch, batchSize);
+            if (batch.isEmpty()) {
+                if (!running) {
+                    break;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+                continue;
+            }
+            try {
+                if (writer == null) {
+                    writer = open(file);
+                }
+                for (Map<String, Object> event : batch) {
+                    writer.write(mapper.writeValueAsString(event));
+                    writer.write('\n');
+                }
+                writer.flush();
+                WRITTEN.add(batch.size());
+            } catch (IOException e) {
+                WRITE_ERRORS.increment();
+                DROPPED.add(batch.size());
+                writer = closeQuietly(writer);
+                // 文件不可写时降速重试，避免空转
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+        closeQuietly(writer);
+    }
+    
+    private static Writer open(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE), 64 * 1024);
+    }
+    
+    private static Writer closeQuietly(Writer writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+                // 忽略关闭错误
+            }
+        }
+        return null;
+    }
+}
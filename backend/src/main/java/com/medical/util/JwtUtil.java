@@ -1,20 +1,32 @@
 package com.medical.util;
 
+import com.medical.cache.LocalCache;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * JWT工具类
  * 用于生成和解析JWT Token
+ * 
+ * 签名密钥和解析器在启动时构建一次；验签通过的Token按SHA-256摘要缓存其Claims，
+ * 条目在Token过期时刻失效，重复请求无需再做HMAC-SHA512验签和JSON解析
  */
 @Component
 public class JwtUtil {
@@ -25,6 +37,45 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private Long expiration;
     
+    /**
+     * 已验证Token缓存的最大条目数
+     */
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+    
+    private SecretKey key;
+    
+    private JwtParser parser;
+    
+    private LocalCache<String, Claims> verifiedCache;
+    
+    private final LongAdder cacheHits = new LongAdder();
+    
+    private final LongAdder cacheMisses = new LongAdder();
+    
+    private final LongAdder verifyFailures = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        // 确保密钥长度至少64字节（HS512要求）
+        byte[] keyBytes = secret.getBytes();
+        if (keyBytes.length < 64) {
+            // 如果密钥太短，重复填充到至少64字节
+            byte[] paddedKey = new byte[64];
+            System.arraycopy(keyBytes, 0, paddedKey, 0, Math.min(keyBytes.length, 64));
+            for (int i = keyBytes.length; i < 64; i++) {
+                paddedKey[i] = (byte) (i % 256);
+            }
+            keyBytes = paddedKey;
+        }
+        this.key = Keys.hmacShaKeyFor(keyBytes);
+        // JwtParser构建后不可变，可在多线程间共享
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
+        this.verifiedCache = new LocalCache<>(cacheMaxSize);
+    }
+    
     /**
      * 生成Token
      */
@@ -42,19 +93,6 @@ public class JwtUtil {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + expiration);
         
-        // 确保密钥长度至少64字节（HS512要求）
-        byte[] keyBytes = secret.getBytes();
-        if (keyBytes.length < 64) {
-            // 如果密钥太短，重复填充到至少64字节
-            byte[] paddedKey = new byte[64];
-            System.arraycopy(keyBytes, 0, paddedKey, 0, Math.min(keyBytes.length, 64));
-            for (int i = keyBytes.length; i < 64; i++) {
-                paddedKey[i] = (byte) (i % 256);
-            }
-            keyBytes = paddedKey;
-        }
-        SecretKey key = Keys.hmacShaKeyFor(keyBytes);
-        
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
@@ -64,6 +102,23 @@ public class JwtUtil {
                 .compact();
     }
     
+    /**
+     * 验证Token并返回Claims，签名错误、格式错误或已过期返回null
+     * 
+     * 每个Token只做一次验签，结果缓存到Token过期为止
+     */
+    public Claims verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return getAllClaimsFromToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            verifyFailures.increment();
+            return null;
+        }
+    }
+    
     /**
      * 从Token中获取用户名
      */
@@ -95,26 +150,23 @@ public class JwtUtil {
     }
     
     /**
-     * 获取Token中的所有Claims
+     * 获取Token中的所有Claims，优先读取已验证缓存
      */
     private Claims getAllClaimsFromToken(String token) {
-        // 确保密钥长度至少64字节（HS512要求）
-        byte[] keyBytes = secret.getBytes();
-        if (keyBytes.length < 64) {
-            // 如果密钥太短，重复填充到至少64字节
-            byte[] paddedKey = new byte[64];
-            System.arraycopy(keyBytes, 0, paddedKey, 0, Math.min(keyBytes.length, 64));
-            for (int i = keyBytes.length; i < 64; i++) {
-                paddedKey[i] = (byte) (i % 256);
-            }
-            keyBytes = paddedKey;
+        String cacheKey = sha256(token);
+        Claims cached = verifiedCache.get(cacheKey);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
         }
-        SecretKey key = Keys.hmacShaKeyFor(keyBytes);
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        cacheMisses.increment();
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        // 只缓存带过期时间的Token，条目随Token一起失效
+        Date exp = claims.getExpiration();
+        if (exp != null) {
+            verifiedCache.putUntil(cacheKey, claims, exp.getTime());
+        }
+        return claims;
     }
     
     /**
@@ -129,8 +181,42 @@ public class JwtUtil {
      * 验证Token
      */
     public Boolean validateToken(String token, String username) {
-        final String tokenUsername = getUsernameFromToken(token);
-        return (tokenUsername.equals(username) && !isTokenExpired(token));
+        Claims claims = verify(token);
+        if (claims == null) {
+            return false;
+        }
+        Date exp = claims.getExpiration();
+        return username.equals(claims.getSubject()) && (exp == null || exp.after(new Date()));
+    }
+    
+    /**
+     * 已验证Token缓存的运行统计
+     */
+    public Map<String, Object> cacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", verifiedCache.size());
+        stats.put("maxSize", verifiedCache.getMaxSize());
+        stats.put("hits", cacheHits.sum());
+        stats.put("misses", cacheMisses.sum());
+        stats.put("verifyFailures", verifyFailures.sum());
+        return stats;
+    }
+    
+    /**
+     * 缓存键使用Token的SHA-256摘要，避免在内存中长期保留原始Token
+     */
+    private static String sha256(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
     }
 }
-
@@ -0,0 +1,114 @@
+package com.medical.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图（微秒，对数-线性分桶）
+ * 
+ * 分桶方式：
+ * - 0~63微秒每微秒一个桶
+ * - 之后每个2的幂区间再均分32个桶，相对误差不超过约3%
+ * - 上限约76小时，超过的记入最后一个桶
+ * 
+ * 记录只做一次数组原子自增和两次LongAdder累加，无锁、不分配对象；
+ * 百分位在读取时扫描全部桶计算（1088个桶）
+ */
+public final class LatencyHistogram {
+    
+    private static final int SUB_BITS = 5;
+    
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    
+    /**
+     * 小于该值时一个值一个桶
+     */
+    private static final int LINEAR_LIMIT = SUB_COUNT << 1;
+    
+    private static final int MAX_EXPONENT = 37;
+    
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BITS) * SUB_COUNT;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    
+    private final LongAdder count = new LongAdder();
+    
+    private final LongAdder sum = new LongAdder();
+    
+    private final AtomicLong max = new AtomicLong();
+    
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+    
+    public long getCount() {
+        return count.sum();
+    }
+    
+    public long getSum() {
+        return sum.sum();
+    }
+    
+    public long getMax() {
+        return max.get();
+    }
+    
+    /**
+     * 计算百分位（返回所在桶的上界，不超过最大值）
+     * 
+     * @param percentiles 取值0~100，须从小到大排列
+     */
+    public long[] percentiles(double... percentiles) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        long[] result = new long[percentiles.length];
+        if (total == 0) {
+            return result;
+        }
+        long maxValue = max.get();
+        long seen = 0;
+        int bucket = 0;
+        for (int p = 0; p < percentiles.length; p++) {
+            long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100.0 * total));
+            while (bucket < BUCKET_COUNT - 1 && seen + snapshot[bucket] < rank) {
+                seen += snapshot[bucket];
+                bucket++;
+            }
+            result[p] = Math.min(upperBound(bucket), maxValue);
+        }
+        return result;
+    }
+    
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_COUNT;
+        return LINEAR_LIMIT + (exponent - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+    
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_COUNT + SUB_BITS + 1;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_COUNT;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((long) (SUB_COUNT + sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+}
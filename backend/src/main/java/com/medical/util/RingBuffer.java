@@ -0,0 +1,93 @@
+package com.medical.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 无锁有界环形缓冲区（多生产者、单消费者）
+ * 
+ * - 生产者通过CAS抢占写入位置，缓冲区满时offer直接返回false，不阻塞、不等待
+ * - 消费者只有一个线程，按写入顺序批量取出
+ */
+public class RingBuffer<E> {
+    
+    private final AtomicReferenceArray<E> slots;
+    
+    private final int mask;
+    
+    /**
+     * 下一个写入位置（生产者CAS递增）
+     */
+    private final AtomicLong tail = new AtomicLong();
+    
+    /**
+     * 下一个读取位置（只有消费者写）
+     */
+    private final AtomicLong head = new AtomicLong();
+    
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+    
+    /**
+     * 写入元素，缓冲区满时返回false
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long t = tail.get();
+            if (t - head.get() >= slots.length()) {
+                return false;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.lazySet((int) (t & mask), element);
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * 批量取出最多max个元素（仅限消费者线程调用）
+     * 
+     * @return 实际取出的个数
+     */
+    public int drainTo(List<E> target, int max) {
+        long h = head.get();
+        int count = 0;
+        while (count < max) {
+            int index = (int) (h & mask);
+            E element = slots.get(index);
+            if (element == null) {
+                // 为空，或生产者已占位但还未写入
+                break;
+            }
+            slots.lazySet(index, null);
+            target.add(element);
+            h++;
+            count++;
+        }
+        if (count > 0) {
+            head.lazySet(h);
+        }
+        return count;
+    }
+    
+    /**
+     * 当前积压的元素个数（近似值）
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+    
+    public int capacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,106 @@
+package com.medical.analytics;
+
+import com.medical.entity.Patient;
+import com.medical.util.DateConvertUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 列式副本的乱序写入：迟到行有界、归并后按ID仍能定位到原行
+ */
+class ColumnarVisitStoreTest {
+    
+    private static final String[] DEPARTMENTS = {"内科", "外科", "儿科", "眼科"};
+    
+    private static final LocalDate BASE_DAY = LocalDate.of(2024, 1, 1);
+    
+    private ColumnarVisitStore store;
+    
+    @BeforeEach
+    void setUp() {
+        store = new ColumnarVisitStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "parallelThreshold", Integer.MAX_VALUE);
+        store.init();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+    
+    @Test
+    void lateRowsStayBoundedAndRemainAddressable() {
+        int rows = 30000;
+        List<Long> arrival = new ArrayList<>(rows);
+        for (long id = 1; id <= rows; id++) {
+            arrival.add(id);
+        }
+        // 每16个ID为一个窗口打乱提交顺序，约一半的行比已追加的最大ID小
+        Random random = new Random(7L);
+        for (int from = 0; from < rows; from += 16) {
+            Collections.shuffle(arrival.subList(from, Math.min(from + 16, rows)), random);
+        }
+        for (long id : arrival) {
+            store.upsert(visit(id, DEPARTMENTS[(int) (id % DEPARTMENTS.length)]));
+            assertTrue(overflow() <= 4096, "overflow超过合并阈值: " + overflow());
+        }
+        assertEquals(rows, store.count(VisitFilter.all()));
+        
+        // 再次写入同一批ID（修改科室）不产生新行，说明归并后仍能按ID找到
+        for (long id : arrival) {
+            store.upsert(visit(id, DEPARTMENTS[(int) ((id + 1) % DEPARTMENTS.length)]));
+        }
+        assertEquals(rows, store.count(VisitFilter.all()));
+        
+        Map<String, long[]> expected = new HashMap<>();
+        for (long id = 1; id <= rows; id++) {
+            if (id % 3 == 0) {
+                store.delete(id);
+                continue;
+            }
+            long[] e = expected.computeIfAbsent(DEPARTMENTS[(int) ((id + 1) % DEPARTMENTS.length)], k -> new long[2]);
+            e[0]++;
+            e[1] += id;
+        }
+        assertEquals(rows - rows / 3, store.count(VisitFilter.all()));
+        assertEquals(0, overflow());
+        
+        List<GroupStats> departments = store.groupBy(VisitDimension.DEPARTMENT, VisitFilter.all());
+        assertEquals(expected.size(), departments.size());
+        for (GroupStats stats : departments) {
+            long[] e = expected.get(stats.getKey());
+            assertEquals(e[0], stats.getCount(), stats.getKey());
+            assertEquals(BigDecimal.valueOf(e[1], 2), stats.getCost(), stats.getKey());
+        }
+    }
+    
+    private int overflow() {
+        return (Integer) store.stats().get("overflow");
+    }
+    
+    private static Patient visit(long id, String department) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.setPatientId("P" + (id % 997));
+        patient.setVisitDate(DateConvertUtil.toDate(BASE_DAY.plusDays(id % 365)));
+        patient.setDepartment(department);
+        patient.setCost(BigDecimal.valueOf(id, 2));
+        patient.setVisitType("门诊");
+        return patient;
+    }
+}
@@ -0,0 +1,86 @@
+package com.medical.analytics;
+
+import com.medical.dto.DepartmentDailyStatDTO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 前缀和：区间合计、按科室过滤、追加新日期、修正历史日期（含新出现的科室）
+ */
+class DailyPrefixSumsTest {
+    
+    private static final LocalDate ORIGIN = LocalDate.of(2023, 1, 1);
+    
+    @Test
+    void sumsRangesPerDepartmentAndOverall() {
+        DailyPrefixSums sums = DailyPrefixSums.build(ORIGIN, ORIGIN.plusDays(9), Arrays.asList(
+            row("内科", 0, 3, "30.50"),
+            row("外科", 0, 1, "100.00"),
+            row("内科", 4, 2, "20.00"),
+            row("外科", 9, 5, "0.25")));
+        
+        assertEquals(10, sums.getDays());
+        assertEquals(ORIGIN.plusDays(9), sums.getLastDay());
+        assertArrayEquals(new long[] {11, 15075}, sums.sum(null, ORIGIN, ORIGIN.plusDays(9)));
+        assertArrayEquals(new long[] {5, 5050}, sums.sum("内科", ORIGIN, ORIGIN.plusDays(9)));
+        assertArrayEquals(new long[] {2, 2000}, sums.sum("内科", ORIGIN.plusDays(1), ORIGIN.plusDays(4)));
+        assertArrayEquals(new long[] {0, 0}, sums.sum("儿科", ORIGIN, ORIGIN.plusDays(9)));
+        // 超出覆盖范围的部分按0计
+        assertArrayEquals(new long[] {6, 10025}, sums.sum("外科", ORIGIN.minusDays(5), ORIGIN.plusDays(30)));
+        assertArrayEquals(new long[] {0, 0}, sums.sum(null, ORIGIN.plusDays(5), ORIGIN.plusDays(4)));
+    }
+    
+    @Test
+    void appendsNewDaysBeyondInitialCapacity() {
+        DailyPrefixSums sums = DailyPrefixSums.build(ORIGIN, ORIGIN, Collections.singletonList(row("内科", 0, 1, "1.00")));
+        sums.appendThrough(ORIGIN.plusDays(199), Arrays.asList(
+            row("内科", 0, 99, "99.00"),
+            row("内科", 100, 2, "2.00"),
+            row("急诊科", 199, 4, "4.00")));
+        
+        assertEquals(200, sums.getDays());
+        // 已覆盖的日期不再追加
+        assertArrayEquals(new long[] {1, 100}, sums.sum("内科", ORIGIN, ORIGIN));
+        assertArrayEquals(new long[] {7, 700}, sums.sum(null, ORIGIN, ORIGIN.plusDays(199)));
+        assertArrayEquals(new long[] {4, 400}, sums.sum("急诊科", ORIGIN.plusDays(101), ORIGIN.plusDays(199)));
+    }
+    
+    @Test
+    void repairsHistoricalDay() {
+        DailyPrefixSums sums = DailyPrefixSums.build(ORIGIN, ORIGIN.plusDays(4), Arrays.asList(
+            row("内科", 1, 2, "20.00"),
+            row("内科", 3, 1, "10.00")));
+        
+        assertTrue(sums.repairDay(ORIGIN.plusDays(1), Arrays.asList(
+            row("内科", 1, 5, "50.00"),
+            row("儿科", 1, 1, "8.00"))));
+        assertArrayEquals(new long[] {6, 5800}, sums.sum(null, ORIGIN, ORIGIN.plusDays(1)));
+        assertArrayEquals(new long[] {7, 6800}, sums.sum(null, ORIGIN, ORIGIN.plusDays(4)));
+        assertArrayEquals(new long[] {1, 800}, sums.sum("儿科", ORIGIN, ORIGIN.plusDays(4)));
+        assertArrayEquals(new long[] {1, 1000}, sums.sum("内科", ORIGIN.plusDays(2), ORIGIN.plusDays(4)));
+        
+        // 该天的汇总行被删除
+        assertTrue(sums.repairDay(ORIGIN.plusDays(3), Collections.emptyList()));
+        assertArrayEquals(new long[] {6, 5800}, sums.sum(null, ORIGIN, ORIGIN.plusDays(4)));
+        
+        assertFalse(sums.repairDay(ORIGIN.plusDays(5), Collections.emptyList()));
+    }
+    
+    private static DepartmentDailyStatDTO row(String department, int day, long count, String revenue) {
+        DepartmentDailyStatDTO row = new DepartmentDailyStatDTO();
+        row.setDepartment(department);
+        row.setStatDate(ORIGIN.plusDays(day));
+        row.setVisitCount(count);
+        row.setRevenue(new BigDecimal(revenue));
+        return row;
+    }
+}
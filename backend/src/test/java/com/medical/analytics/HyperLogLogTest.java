@@ -0,0 +1,183 @@
+package com.medical.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HyperLogLog：各基数下的误差、稀疏转稠密、序列化往返、合并（并集）
+ */
+class HyperLogLogTest {
+    
+    /**
+     * 每个基数用不同前缀生成的几组互不相关的ID；单个草图的误差是随机的（标准误差约0.81%），
+     * 平均误差应在1%以内，单个草图在3倍标准误差以内
+     */
+    private static final String[] SALTS = {"A", "B", "C", "D", "E", "F"};
+    
+    @Test
+    void estimateWithinOnePercent() {
+        for (int n : new int[] {1_000, 100_000, 1_000_000}) {
+            double errorSum = 0;
+            for (String salt : SALTS) {
+                HyperLogLog sketch = new HyperLogLog();
+                for (int i = 0; i < n; i++) {
+                    sketch.add(salt + "-P" + i);
+                }
+                double error = (sketch.estimate() - n) / (double) n;
+                assertTrue(Math.abs(error) < 3 * HyperLogLog.RELATIVE_STANDARD_ERROR,
+                    () -> n + "/" + salt + " 误差 " + error);
+                errorSum += error;
+            }
+            double meanError = errorSum / SALTS.length;
+            assertTrue(Math.abs(meanError) < 0.01, n + " 平均误差 " + meanError);
+        }
+    }
+    
+    @Test
+    void smallCardinalityIsNearlyExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        assertTrue(sketch.isEmpty());
+        assertEquals(0, sketch.estimate());
+        for (int i = 0; i < 100; i++) {
+            sketch.add("P" + i);
+            // 重复添加不改变寄存器
+            assertFalse(sketch.add("P" + i));
+        }
+        assertFalse(sketch.add(null));
+        assertEquals(100, sketch.estimate());
+    }
+    
+    @Test
+    void switchesFromSparseToDenseWithoutChangingEstimate() {
+        HyperLogLog sketch = new HyperLogLog();
+        HyperLogLog previous = null;
+        int i = 0;
+        while (sketch.isSparse()) {
+            previous = sketch.copy();
+            sketch.add("P" + i++);
+        }
+        // 最后一次添加触发转换：转换前后只相差这一个值
+        assertTrue(previous.isSparse());
+        assertTrue(i > 1000, "非零寄存器超过2048个才转换，实际 " + i);
+        HyperLogLog converted = previous.copy();
+        converted.merge(emptyDense());
+        assertFalse(converted.isSparse());
+        assertEquals(previous.estimate(), converted.estimate());
+        assertTrue(Math.abs(sketch.estimate() - previous.estimate()) <= 1);
+        assertTrue(sketch.memoryBytes() > previous.memoryBytes());
+    }
+    
+    @Test
+    void roundTripsSparseAndDense() {
+        HyperLogLog sparse = new HyperLogLog();
+        HyperLogLog dense = new HyperLogLog();
+        for (int i = 0; i < 50_000; i++) {
+            if (i < 500) {
+                sparse.add("P" + i);
+            }
+            dense.add("P" + i);
+        }
+        assertTrue(sparse.isSparse());
+        assertFalse(dense.isSparse());
+        
+        for (HyperLogLog sketch : Arrays.asList(sparse, dense, new HyperLogLog())) {
+            byte[] bytes = sketch.toBytes();
+            HyperLogLog copy = HyperLogLog.fromBytes(bytes);
+            assertEquals(sketch.isSparse(), copy.isSparse());
+            assertEquals(sketch.estimate(), copy.estimate());
+            assertArrayEquals(bytes, copy.toBytes());
+        }
+        // 稀疏表示每个条目只占2~3字节
+        assertTrue(sparse.toBytes().length < 500 * 3 + 8);
+        
+        // 反序列化后仍可继续添加
+        HyperLogLog restored = HyperLogLog.fromBytes(sparse.toBytes());
+        restored.add("新患者");
+        sparse.add("新患者");
+        assertArrayEquals(sparse.toBytes(), restored.toBytes());
+    }
+    
+    @Test
+    void rejectsCorruptBytes() {
+        byte[] dense = dense().toBytes();
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(null));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {1, 14}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {2, 14, 0, 0}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {1, 12, 0, 0}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(Arrays.copyOf(dense, dense.length - 1)));
+        // 稀疏条目数超出上限、内容被截断
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {1, 14, 0, (byte) 0xFF, 0x7F}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {1, 14, 0, 3, 1}));
+    }
+    
+    @Test
+    void mergeIsUnionAndOrderIndependent() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        HyperLogLog all = new HyperLogLog();
+        for (int i = 0; i < 30_000; i++) {
+            a.add("P" + i);
+            all.add("P" + i);
+        }
+        // 与a重叠600个
+        for (int i = 20_000; i < 20_600; i++) {
+            b.add("P" + i);
+        }
+        for (int i = 30_000; i < 31_000; i++) {
+            b.add("P" + i);
+            all.add("P" + i);
+        }
+        assertTrue(b.isSparse());
+        
+        HyperLogLog ab = a.copy();
+        ab.merge(b);
+        HyperLogLog ba = b.copy();
+        ba.merge(a);
+        assertFalse(ba.isSparse());
+        assertArrayEquals(all.toBytes(), ab.toBytes());
+        assertArrayEquals(all.toBytes(), ba.toBytes());
+        
+        // 稀疏与稀疏合并保持稀疏
+        HyperLogLog small = new HyperLogLog();
+        small.add("X");
+        HyperLogLog merged = b.copy();
+        merged.merge(small);
+        assertTrue(merged.isSparse());
+        b.add("X");
+        assertArrayEquals(b.toBytes(), merged.toBytes());
+        
+        // 合并自身不变，合并不修改参数
+        ab.merge(ab.copy());
+        assertArrayEquals(all.toBytes(), ab.toBytes());
+        byte[] before = small.toBytes();
+        ab.merge(small);
+        assertArrayEquals(before, small.toBytes());
+    }
+    
+    /**
+     * 全部寄存器为0的稠密草图，合并后只转换表示方式
+     */
+    private static HyperLogLog emptyDense() {
+        byte[] bytes = new byte[3 + (1 << HyperLogLog.PRECISION)];
+        bytes[0] = 1;
+        bytes[1] = HyperLogLog.PRECISION;
+        bytes[2] = 1;
+        return HyperLogLog.fromBytes(bytes);
+    }
+    
+    private static HyperLogLog dense() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 5_000; i++) {
+            sketch.add("D" + i);
+        }
+        assertFalse(sketch.isSparse());
+        return sketch;
+    }
+}
@@ -0,0 +1,196 @@
+package com.medical.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Space-Saving摘要：单个摘要及Merger合并结果中真实次数都在 [count - error, count] 内，
+ * 不在摘要中的值不超过floor；值的种类不超过容量时精确
+ */
+class SpaceSavingTest {
+    
+    private static final int DISTINCT = 2_000;
+    
+    @Test
+    void streamingSummaryBoundsTrueCounts() {
+        Random random = new Random(7);
+        Map<String, Long> exact = new HashMap<>();
+        SpaceSaving summary = new SpaceSaving(64);
+        for (int i = 0; i < 50_000; i++) {
+            String item = zipf(random);
+            summary.add(item);
+            exact.merge(item, 1L, Long::sum);
+        }
+        assertEquals(64, summary.size());
+        assertFalse(summary.isExact());
+        assertBounds(exact, summary);
+    }
+    
+    @Test
+    void mergedDaysBoundTrueCounts() {
+        Random random = new Random(42);
+        Map<String, Long> exact = new HashMap<>();
+        SpaceSaving.Merger merger = new SpaceSaving.Merger();
+        for (int day = 0; day < 60; day++) {
+            Map<String, Long> dayCounts = new HashMap<>();
+            SpaceSaving streamed = new SpaceSaving(32);
+            int visits = 1_000 + random.nextInt(1_000);
+            for (int i = 0; i < visits; i++) {
+                String item = zipf(random);
+                dayCounts.merge(item, 1L, Long::sum);
+                exact.merge(item, 1L, Long::sum);
+                streamed.add(item);
+            }
+            // 库中的摘要由精确计数生成，内存中新增的按流式计入，两种都会参与合并
+            merger.add(day % 2 == 0 ? SpaceSaving.fromCounts(dayCounts, 32) : streamed);
+        }
+        merger.add(new SpaceSaving(32));
+        merger.add(null);
+        assertEquals(60, merger.getMerged());
+        
+        SpaceSaving merged = merger.toSummary(64);
+        assertEquals(64, merged.size());
+        assertEquals(exact.values().stream().mapToLong(Long::longValue).sum(), merged.getTotal());
+        assertBounds(exact, merged);
+        
+        // 次数最多的值远超floor，合并后仍排在前面
+        List<SpaceSaving.Item> top = merged.top(3);
+        assertEquals(Arrays.asList("C1", "C2", "C3"),
+            Arrays.asList(top.get(0).getValue(), top.get(1).getValue(), top.get(2).getValue()));
+        assertTrue(top.get(2).getLowerBound() > merged.getFloor());
+    }
+    
+    @Test
+    void valueMissingFromSomeSummariesGetsTheirFloor() {
+        Map<String, Long> first = new HashMap<>();
+        first.put("A", 10L);
+        first.put("B", 5L);
+        first.put("C", 3L);
+        Map<String, Long> second = new HashMap<>();
+        second.put("C", 8L);
+        second.put("D", 6L);
+        second.put("E", 4L);
+        SpaceSaving.Merger merger = new SpaceSaving.Merger();
+        merger.add(SpaceSaving.fromCounts(first, 2));
+        merger.add(SpaceSaving.fromCounts(second, 2));
+        
+        SpaceSaving merged = merger.toSummary(10);
+        Map<String, SpaceSaving.Item> items = new HashMap<>();
+        for (SpaceSaving.Item item : merged.top(10)) {
+            items.put(item.getValue(), item);
+        }
+        // A只在第一个摘要中：上界加上第二个的floor（4），误差同样为4
+        assertEquals(14, items.get("A").getCount());
+        assertEquals(4, items.get("A").getError());
+        // C在第一个摘要中被截断（floor = 3），在第二个中为8
+        assertEquals(11, items.get("C").getCount());
+        assertEquals(3, items.get("C").getError());
+        assertEquals(7, merged.getFloor());
+        assertEquals(36, merged.getTotal());
+        
+        Map<String, Long> exact = new HashMap<>(first);
+        second.forEach((item, count) -> exact.merge(item, count, Long::sum));
+        assertBounds(exact, merged);
+        
+        // 截断到2个时，被丢弃的值的上界计入floor
+        SpaceSaving truncated = merger.toSummary(2);
+        assertEquals(2, truncated.size());
+        assertEquals(9, truncated.getFloor());
+        assertBounds(exact, truncated);
+    }
+    
+    @Test
+    void exactWhenDistinctValuesFitCapacity() {
+        SpaceSaving.Merger merger = new SpaceSaving.Merger();
+        for (int day = 0; day < 3; day++) {
+            SpaceSaving summary = new SpaceSaving(8);
+            for (int i = 0; i <= day; i++) {
+                summary.add("X");
+            }
+            summary.add("Y");
+            assertTrue(summary.isExact());
+            merger.add(summary);
+        }
+        SpaceSaving merged = merger.toSummary(8);
+        assertTrue(merged.isExact());
+        List<SpaceSaving.Item> top = merged.top(2);
+        assertEquals("X", top.get(0).getValue());
+        assertEquals(6, top.get(0).getCount());
+        assertEquals(0, top.get(0).getError());
+        assertEquals(3, top.get(1).getCount());
+    }
+    
+    @Test
+    void roundTripsThroughBytes() {
+        Random random = new Random(3);
+        SpaceSaving summary = new SpaceSaving(16);
+        for (int i = 0; i < 5_000; i++) {
+            summary.add(zipf(random));
+        }
+        SpaceSaving copy = SpaceSaving.fromBytes(summary.toBytes());
+        assertEquals(summary.getTotal(), copy.getTotal());
+        assertEquals(summary.getFloor(), copy.getFloor());
+        assertEquals(toString(summary.top(16)), toString(copy.top(16)));
+        
+        assertThrows(IllegalArgumentException.class, () -> SpaceSaving.fromBytes(new byte[] {9}));
+        byte[] bytes = summary.toBytes();
+        assertThrows(IllegalArgumentException.class, () -> SpaceSaving.fromBytes(Arrays.copyOf(bytes, bytes.length - 3)));
+        assertThrows(IllegalArgumentException.class, () -> new SpaceSaving(0));
+    }
+    
+    /**
+     * 摘要中的值：真实次数在 [count - error, count] 内；其余的值（包括从未出现在摘要中的）不超过floor
+     */
+    private static void assertBounds(Map<String, Long> exact, SpaceSaving summary) {
+        Set<String> kept = new HashSet<>();
+        for (SpaceSaving.Item item : summary.top(Integer.MAX_VALUE)) {
+            long actual = exact.getOrDefault(item.getValue(), 0L);
+            assertTrue(item.getLowerBound() <= actual && actual <= item.getCount(),
+                item.getValue() + " 真实次数 " + actual + " 不在 [" + item.getLowerBound() + ", " + item.getCount() + "] 内");
+            kept.add(item.getValue());
+        }
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            if (!kept.contains(entry.getKey())) {
+                assertTrue(entry.getValue() <= summary.getFloor(),
+                    entry.getKey() + " 真实次数 " + entry.getValue() + " 超过floor " + summary.getFloor());
+            }
+        }
+    }
+    
+    /**
+     * 近似Zipf分布（s = 1）：C1最多，Cn的次数约为C1的1/n
+     */
+    private static String zipf(Random random) {
+        double harmonic = Math.log(DISTINCT) + 0.5772;
+        double target = random.nextDouble() * harmonic;
+        double sum = 0;
+        for (int n = 1; n <= DISTINCT; n++) {
+            sum += 1.0 / n;
+            if (sum >= target) {
+                return "C" + n;
+            }
+        }
+        return "C" + DISTINCT;
+    }
+    
+    private static List<String> toString(List<SpaceSaving.Item> items) {
+        List<String> values = new ArrayList<>(items.size());
+        for (SpaceSaving.Item item : items) {
+            values.add(item.getValue() + ":" + item.getCount() + ":" + item.getError());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,143 @@
+package com.medical.analytics;
+
+import com.medical.archive.ColdArchiveStore;
+import com.medical.cache.ClusterMembership;
+import com.medical.dto.VisitAggregateDTO;
+import com.medical.entity.Patient;
+import com.medical.event.VisitChangeEvent;
+import com.medical.mapper.VisitAggregateMapper;
+import com.medical.util.DateConvertUtil;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 实时聚合与写入事务的衔接：事务以任何状态结束后都不再阻止加载快照，只有提交的事件被应用
+ */
+class VisitAggregateIndexTest {
+    
+    private VisitAggregateIndex index;
+    
+    private ClusterMembership membership;
+    
+    @BeforeEach
+    void setUp() {
+        VisitAggregateMapper mapper = mock(VisitAggregateMapper.class);
+        VisitAggregateDTO totals = new VisitAggregateDTO();
+        totals.setVisitCount(0L);
+        totals.setCost(BigDecimal.ZERO);
+        when(mapper.selectTotals()).thenReturn(totals);
+        when(mapper.selectDepartmentTotals()).thenReturn(Collections.emptyList());
+        when(mapper.selectDailyTotals(any())).thenReturn(Collections.emptyList());
+        when(mapper.selectPatientVisitCounts()).thenAnswer(invocation -> emptyCursor());
+        
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        
+        membership = mock(ClusterMembership.class);
+        when(membership.isSingleInstance()).thenReturn(true);
+        when(membership.isSingleInstanceSince(anyLong())).thenReturn(true);
+        
+        index = new VisitAggregateIndex();
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "inFlightTimeoutMillis", 600000L);
+        ReflectionTestUtils.setField(index, "visitAggregateMapper", mapper);
+        ReflectionTestUtils.setField(index, "coldArchiveStore", mock(ColdArchiveStore.class));
+        ReflectionTestUtils.setField(index, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(index, "clusterMembership", membership);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+    
+    @Test
+    void transactionWithUnknownOutcomeDoesNotBlockLoading() {
+        List<TransactionSynchronization> open = publishInTransaction(visit("P001"));
+        assertEquals(1, index.stats().get("inFlightEvents"));
+        assertFalse(index.isReady());
+        
+        complete(open, TransactionSynchronization.STATUS_UNKNOWN);
+        index.reconcile();
+        assertTrue(index.isReady());
+        assertEquals(0L, index.overview(LocalDate.now()).getTotalVisits());
+        assertEquals(0, index.stats().get("inFlightEvents"));
+    }
+    
+    @Test
+    void onlyCommittedEventsAreApplied() {
+        index.reconcile();
+        complete(publishInTransaction(visit("P001")), TransactionSynchronization.STATUS_ROLLED_BACK);
+        complete(publishInTransaction(visit("P002")), TransactionSynchronization.STATUS_COMMITTED);
+        
+        Map<String, Object> stats = index.stats();
+        assertEquals(1L, stats.get("visits"));
+        assertEquals(1, stats.get("patients"));
+        assertEquals(0, stats.get("inFlightEvents"));
+    }
+    
+    @Test
+    void notReadyWhileOtherInstancesRun() {
+        index.reconcile();
+        assertTrue(index.isReady());
+        
+        // 其他实例运行期间的写入本实例看不到，回退到SQL；只剩本实例后要重新加载才能使用
+        when(membership.isSingleInstanceSince(anyLong())).thenReturn(false);
+        assertFalse(index.isReady());
+        when(membership.isSingleInstance()).thenReturn(false);
+        assertFalse(index.isReady());
+    }
+    
+    private List<TransactionSynchronization> publishInTransaction(Patient visit) {
+        TransactionSynchronizationManager.initSynchronization();
+        index.onPublished(VisitChangeEvent.inserted(visit));
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        return synchronizations;
+    }
+    
+    private static void complete(List<TransactionSynchronization> synchronizations, int status) {
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(status);
+        }
+    }
+    
+    private static Patient visit(String patientId) {
+        Patient visit = new Patient();
+        visit.setPatientId(patientId);
+        visit.setVisitDate(DateConvertUtil.toDate(LocalDate.now()));
+        visit.setDepartment("内科");
+        visit.setCost(new BigDecimal("80.00"));
+        return visit;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Cursor<VisitAggregateDTO> emptyCursor() {
+        Cursor<VisitAggregateDTO> cursor = mock(Cursor.class);
+        when(cursor.iterator()).thenReturn(Collections.emptyIterator());
+        return cursor;
+    }
+}
@@ -0,0 +1,111 @@
+package com.medical.archive;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 多实例共享段文件目录：其他实例归档、隔离的段文件通过重新扫描加入、移出，只删除本实例或过期的临时文件
+ */
+class ColdArchiveStoreRescanTest {
+    
+    private static final YearMonth MONTH = YearMonth.of(2023, 3);
+    
+    @TempDir
+    Path directory;
+    
+    private ColdArchiveStore exporter;
+    
+    private ColdArchiveStore reader;
+    
+    @BeforeEach
+    void setUp() {
+        exporter = store("node-a");
+        reader = store("node-b");
+    }
+    
+    @Test
+    void rescanPicksUpSegmentsArchivedByAnotherInstance() throws IOException {
+        Segment segment = Segment.open(writeSegment(exporter, 1L));
+        exporter.register(segment);
+        assertFalse(reader.hasSegments(ArchiveTable.VISIT));
+        long version = reader.getVersion();
+        
+        // 归档事务未提交（行仍在在线表中）时不加入，下次扫描再判断
+        assertTrue(reader.rescan(s -> false).isEmpty());
+        assertFalse(reader.isArchived(ArchiveTable.VISIT, MONTH));
+        
+        List<Segment> added = reader.rescan(s -> true);
+        assertEquals(1, added.size());
+        assertTrue(reader.isArchived(ArchiveTable.VISIT, MONTH));
+        assertEquals(3, reader.getVisitTotals().getRows());
+        assertTrue(reader.getVersion() > version);
+        
+        exporter.quarantine(segment);
+        assertTrue(reader.rescan(s -> true).isEmpty());
+        assertFalse(reader.hasSegments(ArchiveTable.VISIT));
+    }
+    
+    @Test
+    void onlyOwnOrAbandonedTempFilesAreDeleted() throws IOException {
+        Path foreignFresh = Files.createFile(directory.resolve("visit-202303-1.seg.node-a.tmp"));
+        Path foreignStale = Files.createFile(directory.resolve("visit-202304-1.seg.node-a.tmp"));
+        Files.setLastModifiedTime(foreignStale, FileTime.from(Instant.now().minus(7, ChronoUnit.HOURS)));
+        Path own = Files.createFile(directory.resolve("visit-202305-1.seg.node-b.tmp"));
+        
+        // 运行中扫描：本实例的临时文件可能正在写出，其他实例的未过期
+        reader.rescan(s -> true);
+        assertTrue(Files.exists(foreignFresh));
+        assertFalse(Files.exists(foreignStale));
+        assertTrue(Files.exists(own));
+        
+        // 重启：本实例的临时文件是上次运行中断留下的
+        store("node-b");
+        assertTrue(Files.exists(foreignFresh));
+        assertFalse(Files.exists(own));
+    }
+    
+    private ColdArchiveStore store(String instanceId) {
+        ColdArchiveStore store = new ColdArchiveStore();
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "columnCacheMb", 16L);
+        ReflectionTestUtils.setField(store, "instanceId", instanceId);
+        ReflectionTestUtils.setField(store, "tempFileMaxAgeMinutes", 360L);
+        store.init();
+        return store;
+    }
+    
+    private Path writeSegment(ColdArchiveStore store, long firstId) throws IOException {
+        SegmentWriter writer = new SegmentWriter(ArchiveTable.VISIT, MONTH);
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", firstId + i);
+            row.put("patient_id", "P00" + i);
+            row.put("visit_date", LocalDate.of(2023, 3, 10 + i));
+            row.put("department", "内科");
+            row.put("cost", new BigDecimal("120.50"));
+            row.put("visit_type", "门诊");
+            writer.add(row);
+        }
+        Path temp = writer.write(directory, store.getTempSuffix());
+        return Files.move(temp, directory.resolve(writer.getFileName()));
+    }
+}
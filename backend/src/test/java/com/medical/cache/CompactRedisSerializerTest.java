@@ -0,0 +1,155 @@
+package com.medical.cache;
+
+import com.medical.config.RedisConfig;
+import com.medical.config.StatisticsCacheProperties;
+import com.medical.dto.InsuranceGroupStatDTO;
+import com.medical.dto.TrendDataDTO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Redis值序列化：二进制与LZ4两种写法往返不变，旧JSON值可读，损坏或未知版本的值按未命中处理
+ */
+class CompactRedisSerializerTest {
+    
+    private static final int THRESHOLD = 1024;
+    
+    private final CompactRedisSerializer binary = serializer("binary");
+    
+    private final CompactRedisSerializer json = serializer("json");
+    
+    @Test
+    void smallValuesAreNotCompressed() {
+        TrendDataDTO trend = new TrendDataDTO();
+        trend.setDate(new Date(1_700_000_000_000L));
+        trend.setCount(3);
+        trend.setAmount(9.5);
+        
+        byte[] bytes = binary.serialize(trend);
+        assertEquals((byte) 0xC7, bytes[0]);
+        assertEquals(0, bytes[2]);
+        assertEquals(trend, binary.deserialize(bytes));
+        assertEquals(0L, binary.stats().get("compressedWriteCount"));
+    }
+    
+    @Test
+    void largeValuesRoundTripThroughLz4() {
+        List<InsuranceGroupStatDTO> rows = rows(500);
+        byte[] bytes = binary.serialize(rows);
+        assertEquals(1, bytes[2]);
+        assertTrue(bytes.length < (Long) binary.stats().get("binaryEncodedBytes"));
+        assertEquals(rows, binary.deserialize(bytes));
+        assertEquals(1L, binary.stats().get("compressedWriteCount"));
+        assertEquals(1L, binary.stats().get("binaryReadCount"));
+    }
+    
+    @Test
+    void incompressibleValuesAreStoredUncompressed() {
+        Random random = new Random(1);
+        List<Long> values = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            values.add(random.nextLong());
+        }
+        byte[] bytes = binary.serialize(values);
+        assertEquals(0, bytes[2]);
+        assertEquals(values, binary.deserialize(bytes));
+    }
+    
+    @Test
+    void readsLegacyJsonAndFallsBackToJsonForUnsupportedTypes() {
+        List<InsuranceGroupStatDTO> rows = rows(3);
+        byte[] legacy = json.serialize(rows);
+        assertEquals('[', legacy[0]);
+        assertEquals(rows, binary.deserialize(legacy));
+        assertEquals(1L, binary.stats().get("jsonReadCount"));
+        
+        // 二进制写入的值关闭二进制写入后仍能读取（滚动回退）
+        assertEquals(rows, json.deserialize(binary.serialize(rows)));
+        
+        StringBuilder unsupported = new StringBuilder("x");
+        byte[] bytes = binary.serialize(unsupported);
+        assertEquals(1L, binary.stats().get("jsonWriteCount"));
+        assertEquals("x", binary.deserialize(bytes).toString());
+    }
+    
+    @Test
+    void unknownVersionOrCorruptValueIsAMiss() {
+        byte[] valid = binary.serialize(rows(500));
+        
+        byte[] newerVersion = valid.clone();
+        newerVersion[1] = 2;
+        assertNull(binary.deserialize(newerVersion));
+        assertNull(binary.deserialize(new byte[] {(byte) 0xC7}));
+        
+        // 压缩数据被截断、内容被改写
+        assertNull(binary.deserialize(Arrays.copyOf(valid, valid.length - 10)));
+        byte[] garbled = valid.clone();
+        for (int i = 7; i < garbled.length; i += 3) {
+            garbled[i] ^= 0x5A;
+        }
+        assertNull(binary.deserialize(garbled));
+        
+        // 未压缩的编码后面多出字节
+        byte[] small = binary.serialize("value");
+        assertNull(binary.deserialize(Arrays.copyOf(small, small.length + 1)));
+        assertEquals(5L, binary.stats().get("unreadableCount"));
+    }
+    
+    @Test
+    void implausibleDecompressedLengthIsRejectedBeforeAllocating() {
+        byte[] valid = binary.serialize(rows(500));
+        for (int length : new int[] {0, -1, Integer.MAX_VALUE, CompactRedisSerializer.MAX_DECOMPRESSED_LENGTH + 1,
+                                     (valid.length - 7) * 255 + 1}) {
+            byte[] bytes = valid.clone();
+            bytes[3] = (byte) (length >>> 24);
+            bytes[4] = (byte) (length >>> 16);
+            bytes[5] = (byte) (length >>> 8);
+            bytes[6] = (byte) length;
+            assertNull(binary.deserialize(bytes), "length " + length);
+        }
+        // 长度可信但与压缩数据不一致
+        byte[] shorter = valid.clone();
+        shorter[6]--;
+        assertNull(binary.deserialize(shorter));
+        assertEquals(6L, binary.stats().get("unreadableCount"));
+    }
+    
+    @Test
+    void nullAndEmpty() {
+        assertEquals(0, binary.serialize(null).length);
+        assertNull(binary.deserialize(null));
+        assertNull(binary.deserialize(new byte[0]));
+    }
+    
+    private static CompactRedisSerializer serializer(String codec) {
+        StatisticsCacheProperties properties = new StatisticsCacheProperties();
+        properties.setRedisCodec(codec);
+        properties.setCompressionThresholdBytes(THRESHOLD);
+        return new RedisConfig().compactRedisSerializer(properties);
+    }
+    
+    private static List<InsuranceGroupStatDTO> rows(int count) {
+        List<InsuranceGroupStatDTO> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            InsuranceGroupStatDTO row = new InsuranceGroupStatDTO();
+            row.setInsuranceType(i % 2 == 0 ? "城镇职工" : "城乡居民");
+            row.setDrgGroup("DRG-" + i);
+            row.setSettlementCount((long) i);
+            row.setTotalCost(new BigDecimal(i).movePointLeft(2));
+            row.setInsurancePay(BigDecimal.ZERO);
+            row.setPersonalPay(new BigDecimal("0.00"));
+            rows.add(row);
+        }
+        return rows;
+    }
+}
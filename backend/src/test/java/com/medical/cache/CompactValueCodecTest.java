@@ -0,0 +1,170 @@
+package com.medical.cache;
+
+import com.medical.dto.EquipmentUsageStatDTO;
+import com.medical.dto.InsuranceGroupStatDTO;
+import com.medical.dto.OverviewDTO;
+import com.medical.dto.TrendDataDTO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 紧凑二进制编码：已注册的DTO及支持的类型往返不变，损坏的输入抛出IllegalArgumentException
+ */
+class CompactValueCodecTest {
+    
+    @Test
+    void roundTripsEveryRegisteredDto() {
+        TrendDataDTO trend = new TrendDataDTO();
+        trend.setDate(new Date(1_700_000_000_000L));
+        trend.setCount(42);
+        trend.setAmount(1234.5);
+        
+        OverviewDTO overview = new OverviewDTO();
+        overview.setTotalPatients(10_000_000L);
+        overview.setTodayVisits(0L);
+        overview.setDepartmentCount(12L);
+        overview.setTotalVisits(null);
+        
+        InsuranceGroupStatDTO insurance = new InsuranceGroupStatDTO();
+        insurance.setInsuranceType("城镇职工");
+        insurance.setDrgGroup("GB19");
+        insurance.setSettlementCount(321L);
+        insurance.setTotalCost(new BigDecimal("98765.43"));
+        insurance.setInsurancePay(new BigDecimal("80000.00"));
+        insurance.setPersonalPay(new BigDecimal("18765.430"));
+        
+        EquipmentUsageStatDTO equipment = new EquipmentUsageStatDTO();
+        equipment.setEquipmentId("EQ-001");
+        equipment.setEquipmentName("CT机");
+        equipment.setDepartment("影像科");
+        equipment.setFirstDate(new Date(1_600_000_000_000L));
+        equipment.setUsageHours(new BigDecimal("12.75"));
+        equipment.setUsageCount(-3L);
+        
+        for (Object dto : Arrays.asList(trend, overview, insurance, equipment, new TrendDataDTO())) {
+            assertEquals(dto, roundTrip(dto));
+        }
+    }
+    
+    @Test
+    void roundTripsSupportedTypes() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("nothing", null);
+        map.put("yes", true);
+        map.put("no", false);
+        map.put("int", Integer.MIN_VALUE);
+        map.put("long", Long.MAX_VALUE);
+        map.put("double", -0.125);
+        map.put("empty", "");
+        map.put("list", Arrays.asList(1, 2L, "三", Collections.emptyList()));
+        map.put("nested", Collections.singletonMap("key", Collections.singletonMap(7, "value")));
+        map.put("date", new Date(-1L));
+        
+        Object decoded = roundTrip(map);
+        assertEquals(map, decoded);
+        // Map按写入顺序读出
+        assertEquals(new ArrayList<>(map.keySet()), new ArrayList<>(((Map<?, ?>) decoded).keySet()));
+    }
+    
+    @Test
+    void preservesBigDecimalScale() {
+        List<BigDecimal> values = Arrays.asList(
+            new BigDecimal("1.10"),
+            new BigDecimal("1.1"),
+            new BigDecimal("0.000"),
+            new BigDecimal("-12345.6789"),
+            new BigDecimal("1E+3"),
+            // unscaled值超出long范围
+            new BigDecimal("123456789012345678901234567890.12"),
+            new BigDecimal("-98765432109876543210987654321"));
+        List<?> decoded = (List<?>) roundTrip(values);
+        for (int i = 0; i < values.size(); i++) {
+            BigDecimal expected = values.get(i);
+            BigDecimal actual = (BigDecimal) decoded.get(i);
+            assertEquals(expected.scale(), actual.scale());
+            assertEquals(expected, actual);
+        }
+    }
+    
+    @Test
+    void repeatedStringsAreWrittenOnce() {
+        List<InsuranceGroupStatDTO> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            InsuranceGroupStatDTO row = new InsuranceGroupStatDTO();
+            row.setInsuranceType(i % 2 == 0 ? "城镇职工基本医疗保险" : "城乡居民基本医疗保险");
+            row.setDrgGroup("DRG-" + (i % 5));
+            row.setSettlementCount((long) i);
+            rows.add(row);
+        }
+        byte[] encoded = CompactValueCodec.encode(rows);
+        assertEquals(rows, CompactValueCodec.decode(encoded, 0));
+        // 两个医保类型各30字节，每行重复时只写1~2字节引用
+        assertTrue(encoded.length < 100 * 16, "编码长度 " + encoded.length);
+    }
+    
+    @Test
+    void rejectsUnsupportedTypes() {
+        assertThrows(CompactValueCodec.UnsupportedTypeException.class,
+            () -> CompactValueCodec.encode(Collections.singletonList(new java.sql.Timestamp(0))));
+        assertThrows(CompactValueCodec.UnsupportedTypeException.class,
+            () -> CompactValueCodec.encode(new StringBuilder("x")));
+    }
+    
+    @Test
+    void corruptInputThrowsWithoutLargeAllocations() {
+        byte[] valid = CompactValueCodec.encode(Arrays.asList("a", "a", new BigDecimal("1.5")));
+        for (int length = 0; length < valid.length; length++) {
+            byte[] truncated = Arrays.copyOf(valid, length);
+            assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(truncated, 0));
+        }
+        byte[] trailing = Arrays.copyOf(valid, valid.length + 1);
+        assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(trailing, 0));
+        
+        // 未知类型标记、未注册的DTO、比本实例新的DTO版本
+        assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(new byte[] {99}, 0));
+        assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(new byte[] {13, 15, 1}, 0));
+        assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(new byte[] {13, 1, 9}, 0));
+        // 列表、Map声称有约2^31个元素，字符串声称有约2^31字节
+        byte[] hugeCount = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(concat(11, hugeCount), 0));
+        assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(concat(12, hugeCount), 0));
+        assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(concat(6, hugeCount), 0));
+        // 引用尚未出现的字符串
+        assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(new byte[] {7, 0}, 0));
+        // DTO字段类型不匹配：TrendDataDTO.date写成了字符串
+        assertThrows(IllegalArgumentException.class, () -> CompactValueCodec.decode(new byte[] {13, 1, 1, 6, 1, 'x', 0, 0}, 0));
+    }
+    
+    @Test
+    void decodesFromOffset() {
+        byte[] encoded = CompactValueCodec.encode("值");
+        byte[] framed = new byte[encoded.length + 3];
+        System.arraycopy(encoded, 0, framed, 3, encoded.length);
+        assertEquals("值", CompactValueCodec.decode(framed, 3));
+        assertArrayEquals(encoded, CompactValueCodec.encode(CompactValueCodec.decode(framed, 3)));
+    }
+    
+    private static Object roundTrip(Object value) {
+        return CompactValueCodec.decode(CompactValueCodec.encode(value), 0);
+    }
+    
+    private static byte[] concat(int tag, byte[] rest) {
+        byte[] bytes = new byte[rest.length + 1];
+        bytes[0] = (byte) tag;
+        System.arraycopy(rest, 0, bytes, 1, rest.length);
+        return bytes;
+    }
+}
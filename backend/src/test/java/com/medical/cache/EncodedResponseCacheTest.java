@@ -0,0 +1,118 @@
+package com.medical.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * 已编码响应：ETag只由指定部分计算，不缓存的结果每次重新计算，计算抛出Error时等待的请求不会一直阻塞
+ */
+class EncodedResponseCacheTest {
+    
+    private EncodedResponseCache cache;
+    
+    @BeforeEach
+    void setUp() {
+        cache = new EncodedResponseCache();
+        ReflectionTestUtils.setField(cache, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(cache, "ttlMillis", 60_000L);
+        ReflectionTestUtils.setField(cache, "gzipMinBytes", 1024);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        cache.init();
+    }
+    
+    @Test
+    void etagIgnoresFieldsOutsideEtagSource() {
+        AtomicInteger calls = new AtomicInteger();
+        ResponseEntity<byte[]> first = cache.respond("k", new MockHttpServletRequest(),
+            () -> payload("a", calls.incrementAndGet(), true), data -> data.get("content"), data -> false);
+        String etag = first.getHeaders().getETag();
+        
+        // 耗时变了、内容没变：仍然304
+        MockHttpServletRequest conditional = new MockHttpServletRequest();
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        ResponseEntity<byte[]> second = cache.respond("k", conditional,
+            () -> payload("a", calls.incrementAndGet(), true), data -> data.get("content"), data -> false);
+        assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+        assertEquals(etag, second.getHeaders().getETag());
+        assertEquals(2, calls.get());
+    }
+    
+    @Test
+    void uncacheableResultIsRecomputedOnNextRequest() {
+        AtomicInteger calls = new AtomicInteger();
+        cache.respond("k", new MockHttpServletRequest(),
+            () -> payload("a", calls.incrementAndGet(), false), data -> data, data -> !Boolean.TRUE.equals(data.get("partial")));
+        cache.respond("k", new MockHttpServletRequest(),
+            () -> payload("a", calls.incrementAndGet(), false), data -> data, data -> !Boolean.TRUE.equals(data.get("partial")));
+        assertEquals(1, calls.get());
+        
+        cache.respond("p", new MockHttpServletRequest(),
+            () -> payload("a", calls.incrementAndGet(), true), data -> data, data -> !Boolean.TRUE.equals(data.get("partial")));
+        cache.respond("p", new MockHttpServletRequest(),
+            () -> payload("a", calls.incrementAndGet(), true), data -> data, data -> !Boolean.TRUE.equals(data.get("partial")));
+        assertEquals(3, calls.get());
+    }
+    
+    @Test
+    void errorInLoaderReleasesWaiters() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            CountDownLatch loading = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Object> loader = CompletableFuture.supplyAsync(() -> cache.respond("k", new MockHttpServletRequest(), () -> {
+                loading.countDown();
+                await(release);
+                throw new OutOfMemoryError("loader");
+            }));
+            loading.await();
+            CompletableFuture<Object> waiter = CompletableFuture.supplyAsync(() -> cache.respond("k", new MockHttpServletRequest(), () -> "other"));
+            waitForInFlightWaiter();
+            release.countDown();
+            
+            assertInstanceOf(OutOfMemoryError.class, assertThrows(ExecutionException.class, loader::get).getCause());
+            assertInstanceOf(OutOfMemoryError.class, assertThrows(ExecutionException.class, waiter::get).getCause());
+        });
+    }
+    
+    private static Map<String, Object> payload(String content, long elapsedMillis, boolean partial) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("content", content);
+        data.put("elapsedMillis", elapsedMillis);
+        data.put("partial", partial);
+        return data;
+    }
+    
+    /**
+     * 等待者在putIfAbsent之后阻塞，无法从外部观察，给它一点时间进入等待
+     */
+    private static void waitForInFlightWaiter() throws InterruptedException {
+        Thread.sleep(200);
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.medical.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * 同一key的并发加载：等待的线程拿到加载者的结果或异常，加载者抛出Error时也不会一直阻塞
+ */
+class TwoLevelCacheTest {
+    
+    private final TwoLevelCache cache = new TwoLevelCache("test", 100, 60_000L, 0L, 0.0, null);
+    
+    @Test
+    void waitersShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> loader = CompletableFuture.supplyAsync(() -> cache.get("k", () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "v";
+        }));
+        loading.await();
+        CompletableFuture<Object> waiter = CompletableFuture.supplyAsync(() -> cache.get("k", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        waitForCoalescedWait();
+        release.countDown();
+        
+        assertEquals("v", loader.get());
+        assertEquals("v", waiter.get());
+        assertEquals(1, loads.get());
+    }
+    
+    @Test
+    void errorInLoaderReleasesWaiters() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            CountDownLatch loading = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Object> loader = CompletableFuture.supplyAsync(() -> cache.get("k", () -> {
+                loading.countDown();
+                await(release);
+                throw new StackOverflowError("loader");
+            }));
+            loading.await();
+            CompletableFuture<Object> waiter = CompletableFuture.supplyAsync(() -> cache.get("k", () -> "other"));
+            waitForCoalescedWait();
+            release.countDown();
+            
+            ExecutionException loaderError = assertThrows(ExecutionException.class, loader::get);
+            assertInstanceOf(StackOverflowError.class, loaderError.getCause());
+            // 等待者拿到包装在CompletionException中的Error，get()已解开外层
+            ExecutionException waiterError = assertThrows(ExecutionException.class, waiter::get);
+            assertInstanceOf(StackOverflowError.class, waiterError.getCause());
+            
+            // 失败不缓存，下一次重新加载
+            assertEquals("v", cache.get("k", () -> "v"));
+        });
+    }
+    
+    private void waitForCoalescedWait() throws InterruptedException {
+        while (((Number) cache.stats().get("coalescedWaits")).longValue() == 0) {
+            Thread.sleep(5);
+        }
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
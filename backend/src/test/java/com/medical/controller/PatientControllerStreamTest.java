@@ -0,0 +1,71 @@
+package com.medical.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medical.entity.Patient;
+import com.medical.service.PatientService;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * NDJSON流式导出：每一行都是一条完整的JSON记录
+ */
+class PatientControllerStreamTest {
+    
+    private static final int ROWS = 5000;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void everyLineOfStreamIsJson() throws Exception {
+        PatientService patientService = mock(PatientService.class);
+        doAnswer(invocation -> {
+            Consumer<Patient> consumer = invocation.getArgument(0);
+            for (long i = 1; i <= ROWS; i++) {
+                Patient patient = new Patient();
+                patient.setId(i);
+                patient.setPatientId("P" + (i % 700));
+                patient.setVisitDate(new Date(1700000000000L + i * 86400000L));
+                patient.setDepartment("内科");
+                patient.setDiagnosis("诊断\"" + i + "\"\n换行");
+                patient.setCost(BigDecimal.valueOf(i, 2));
+                patient.setVisitType("门诊");
+                consumer.accept(patient);
+            }
+            return (long) ROWS;
+        }).when(patientService).streamVisits(any(Consumer.class));
+        
+        PatientController controller = new PatientController();
+        ReflectionTestUtils.setField(controller, "patientService", patientService);
+        ReflectionTestUtils.setField(controller, "objectMapper", objectMapper);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        controller.streamPatientList(response);
+        
+        assertEquals("application/x-ndjson;charset=UTF-8", response.getContentType());
+        String body = new String(response.getContentAsByteArray(), StandardCharsets.UTF_8);
+        assertTrue(body.endsWith("\n"));
+        String[] lines = body.split("\n", -1);
+        // 末尾换行之后是空串
+        assertEquals(ROWS + 1, lines.length);
+        assertEquals("", lines[ROWS]);
+        for (int i = 0; i < ROWS; i++) {
+            JsonNode node = objectMapper.readTree(lines[i]);
+            assertTrue(node.isObject(), "第" + (i + 1) + "行不是JSON对象: " + lines[i]);
+            assertEquals(i + 1L, node.get("id").asLong());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.medical.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.DruidPooledConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 读写分离路由：事务外的@ReadOnlyRoute走从库，事务内留在主库，复制延迟超限时回退主库
+ */
+class RoutingDataSourceTest {
+    
+    private static final long MAX_LAG_SECONDS = 30;
+    
+    private DataSource primary;
+    
+    private Connection primaryConnection;
+    
+    private DruidDataSource replicaPool;
+    
+    private DruidPooledConnection replicaConnection;
+    
+    private RoutingDataSource routing;
+    
+    private Reader reader;
+    
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = mock(DataSource.class);
+        primaryConnection = mock(Connection.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        
+        replicaPool = mock(DruidDataSource.class);
+        replicaConnection = mock(DruidPooledConnection.class);
+        when(replicaPool.getConnection()).thenReturn(replicaConnection);
+        
+        routing = new RoutingDataSource(primary, Collections.singletonList(replicaPool), 1000, MAX_LAG_SECONDS);
+        
+        AspectJProxyFactory factory = new AspectJProxyFactory(new Reader(routing));
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ReadOnlyRouteAspect());
+        reader = factory.getProxy();
+    }
+    
+    @Test
+    void annotatedCallOutsideTransactionUsesReplica() throws SQLException {
+        assertSame(replicaConnection, reader.readOnlyConnection());
+        // 方法返回后恢复为主库路由
+        assertFalse(RoutingDataSource.isReadOnlyRoute());
+        assertSame(primaryConnection, routing.getConnection());
+    }
+    
+    @Test
+    void annotatedCallInsideTransactionStaysOnPrimary() throws SQLException {
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(routing));
+        Connection connection = tx.execute(status -> {
+            try {
+                return reader.readOnlyConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        
+        assertSame(primaryConnection, connection);
+        verify(replicaPool, never()).getConnection();
+    }
+    
+    @Test
+    void replicationLagAboveThresholdFallsBackToPrimary() throws SQLException {
+        DruidPooledConnection checkConnection = mock(DruidPooledConnection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet status = mock(ResultSet.class);
+        when(replicaPool.getConnection(anyLong())).thenReturn(checkConnection);
+        when(checkConnection.isValid(anyInt())).thenReturn(true);
+        when(checkConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(status);
+        when(status.next()).thenReturn(true);
+        when(status.getLong("Seconds_Behind_Source")).thenReturn(MAX_LAG_SECONDS + 90);
+        
+        routing.checkReplicas();
+        
+        assertSame(primaryConnection, reader.readOnlyConnection());
+        verify(replicaPool, never()).getConnection();
+        assertEquals(1L, routing.stats().get("readOnlyOnPrimary"));
+        
+        // 延迟恢复后重新参与读路由
+        when(status.getLong("Seconds_Behind_Source")).thenReturn(MAX_LAG_SECONDS - 1);
+        routing.checkReplicas();
+        assertSame(replicaConnection, reader.readOnlyConnection());
+    }
+    
+    /**
+     * 被切面代理的只读查询方
+     */
+    static class Reader {
+        
+        private final DataSource dataSource;
+        
+        Reader(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+        
+        @ReadOnlyRoute
+        public Connection readOnlyConnection() throws SQLException {
+            return dataSource.getConnection();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.medical.mapper;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Mapper SQL测试支撑：H2内存库（MySQL兼容模式）+ 与application.yml一致的MyBatis配置
+ */
+final class H2MapperSupport {
+    
+    private H2MapperSupport() {
+    }
+    
+    /**
+     * 新建一个独立的内存库并建好patient_visit表
+     */
+    static JdbcDataSource newDataSource(String name) throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE patient_visit ("
+                + " id BIGINT AUTO_INCREMENT,"
+                + " patient_id VARCHAR(50) NOT NULL,"
+                + " visit_date DATE NOT NULL,"
+                + " department VARCHAR(50) NOT NULL,"
+                + " diagnosis VARCHAR(200),"
+                + " disease_code VARCHAR(50),"
+                + " cost DECIMAL(10,2) DEFAULT 0.00,"
+                + " visit_type VARCHAR(20),"
+                + " PRIMARY KEY (id, visit_date))");
+        }
+        return dataSource;
+    }
+    
+    /**
+     * 按application.yml的mybatis配置构建会话工厂，只加载给定的Mapper XML
+     */
+    static SqlSessionFactory newSessionFactory(JdbcDataSource dataSource, String... mapperResources) throws Exception {
+        Configuration configuration = new Configuration(
+            new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.getTypeAliasRegistry().registerAliases("com.medical.entity");
+        for (String resource : mapperResources) {
+            try (InputStream in = Resources.getResourceAsStream(resource)) {
+                new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+            }
+        }
+        return new SqlSessionFactoryBuilder().build(configuration);
+    }
+}
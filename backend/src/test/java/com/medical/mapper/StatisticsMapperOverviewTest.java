@@ -0,0 +1,107 @@
+package com.medical.mapper;
+
+import com.medical.dto.OverviewDTO;
+import com.medical.entity.Patient;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * selectOverview数据库端聚合与原selectAll+内存流式统计的等价性
+ */
+class StatisticsMapperOverviewTest {
+    
+    private static final String[] DEPARTMENTS = {"内科", "外科", "儿科", "妇产科", "眼科", "骨科", ""};
+    
+    private static SqlSessionFactory sessionFactory;
+    
+    private static String today;
+    
+    @BeforeAll
+    static void setUp() throws Exception {
+        JdbcDataSource dataSource = H2MapperSupport.newDataSource("overview");
+        sessionFactory = H2MapperSupport.newSessionFactory(dataSource,
+            "mapper/PatientMapper.xml", "mapper/StatisticsMapper.xml");
+        
+        LocalDate now = LocalDate.now();
+        today = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        Random random = new Random(20240101L);
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                 "INSERT INTO patient_visit (patient_id, visit_date, department, diagnosis, cost, visit_type)"
+                     + " VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < 5000; i++) {
+                ps.setString(1, "P" + random.nextInt(1200));
+                // 约五分之一落在今天，其余分布在近一年
+                LocalDate visitDate = random.nextInt(5) == 0 ? now : now.minusDays(1 + random.nextInt(365));
+                ps.setDate(2, Date.valueOf(visitDate));
+                ps.setString(3, DEPARTMENTS[random.nextInt(DEPARTMENTS.length)]);
+                ps.setString(4, "诊断" + random.nextInt(50));
+                ps.setBigDecimal(5, java.math.BigDecimal.valueOf(random.nextInt(100000), 2));
+                ps.setString(6, random.nextBoolean() ? "门诊" : "急诊");
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+    
+    @Test
+    void overviewAggregateMatchesInMemoryStream() {
+        try (SqlSession session = sessionFactory.openSession()) {
+            OverviewDTO overview = session.getMapper(StatisticsMapper.class).selectOverview(today);
+            List<Patient> allPatients = session.getMapper(PatientMapper.class).selectAll();
+            
+            // 原实现：selectAll后在内存中流式统计
+            long totalPatients = allPatients.stream()
+                .map(Patient::getPatientId)
+                .distinct()
+                .count();
+            // 原实现用visitDate.toString().startsWith(today)，java.util.Date的toString不是yyyy-MM-dd格式，
+            // 这里按其本意比较日期
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+            long todayVisits = allPatients.stream()
+                .filter(p -> p.getVisitDate() != null &&
+                    dateFormat.format(p.getVisitDate()).equals(today))
+                .count();
+            long departmentCount = allPatients.stream()
+                .map(Patient::getDepartment)
+                .filter(d -> d != null && !d.isEmpty())
+                .distinct()
+                .count();
+            
+            assertTrue(todayVisits > 0);
+            assertEquals(totalPatients, overview.getTotalPatients().longValue());
+            assertEquals(todayVisits, overview.getTodayVisits().longValue());
+            assertEquals(departmentCount, overview.getDepartmentCount().longValue());
+            assertEquals(allPatients.size(), overview.getTotalVisits().longValue());
+        }
+    }
+    
+    @Test
+    void overviewOfEmptyTableIsZero() throws Exception {
+        JdbcDataSource empty = H2MapperSupport.newDataSource("overview_empty");
+        SqlSessionFactory emptyFactory = H2MapperSupport.newSessionFactory(empty, "mapper/StatisticsMapper.xml");
+        try (SqlSession session = emptyFactory.openSession()) {
+            OverviewDTO overview = session.getMapper(StatisticsMapper.class).selectOverview(today);
+            
+            assertEquals(0L, overview.getTotalPatients().longValue());
+            assertEquals(0L, overview.getTodayVisits().longValue());
+            assertEquals(0L, overview.getDepartmentCount().longValue());
+            assertEquals(0L, overview.getTotalVisits().longValue());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.medical.service;
+
+import com.medical.archive.ColdArchiveStore;
+import com.medical.cache.ClusterMembership;
+import com.medical.entity.Patient;
+import com.medical.event.VisitChangeEvent;
+import com.medical.mapper.PatientMapper;
+import com.medical.util.DateConvertUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 多实例共享Redis中的患者版本号：其他实例提交的写入在下一次读取时生效，Redis不可用时不使用缓存
+ */
+class PatientTimelineServiceTest {
+    
+    /**
+     * 两个实例共享的Redis中的键值
+     */
+    private final Map<String, Long> redis = new ConcurrentHashMap<>();
+    
+    /**
+     * 两个实例共享的数据库中P001的就诊记录
+     */
+    private final List<Patient> visits = new ArrayList<>();
+    
+    private ClusterMembership membership;
+    
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    private PatientTimelineService writer;
+    
+    private PatientTimelineService reader;
+    
+    @BeforeEach
+    void setUp() {
+        membership = mock(ClusterMembership.class);
+        when(membership.isSingleInstance()).thenReturn(false);
+        redisTemplate = fakeRedis();
+        visits.add(visit(1L, "80.00"));
+        writer = service(redisTemplate);
+        reader = service(redisTemplate);
+    }
+    
+    @Test
+    void writeOnAnotherInstanceIsVisibleOnNextRead() {
+        assertEquals(1, reader.getByPatientId("P001").getVisitCount());
+        assertEquals(1, reader.getByVisitId(1L).getVisitCount());
+        assertEquals(1L, reader.stats().get("hits"));
+        
+        Patient added = visit(2L, "120.00");
+        visits.add(added);
+        writer.onVisitChange(VisitChangeEvent.inserted(added));
+        
+        assertEquals(2, reader.getByPatientId("P001").getVisitCount());
+        assertEquals(1L, reader.stats().get("staleHits"));
+        assertEquals(2, reader.getByVisitId(2L).getVisitCount());
+        assertEquals(2L, reader.stats().get("hits"));
+    }
+    
+    @Test
+    void singleInstanceTrustsLocalInvalidation() {
+        when(membership.isSingleInstance()).thenReturn(true);
+        reader.getByPatientId("P001");
+        redis.put("medical:timeline:version:P001", 99L);
+        
+        assertEquals(1, reader.getByPatientId("P001").getVisitCount());
+        assertEquals(1L, reader.stats().get("hits"));
+    }
+    
+    @Test
+    void redisFailureDisablesCacheWhileOtherInstancesRun() {
+        when(redisTemplate.execute(any(RedisCallback.class))).thenThrow(new IllegalStateException("down"));
+        reader.getByPatientId("P001");
+        reader.getByPatientId("P001");
+        
+        assertEquals(0L, reader.stats().get("hits"));
+        assertEquals(2L, reader.stats().get("misses"));
+        assertEquals(1L, reader.stats().get("redisErrors"));
+    }
+    
+    private PatientTimelineService service(RedisTemplate<String, Object> redisTemplate) {
+        PatientMapper mapper = mock(PatientMapper.class);
+        when(mapper.selectByPatientId("P001")).thenAnswer(invocation -> new ArrayList<>(visits));
+        when(mapper.selectTimelineByVisitId(any())).thenAnswer(invocation -> new ArrayList<>(visits));
+        
+        PatientTimelineService service = new PatientTimelineService();
+        ReflectionTestUtils.setField(service, "patientMapper", mapper);
+        ReflectionTestUtils.setField(service, "coldArchiveStore", mock(ColdArchiveStore.class));
+        ReflectionTestUtils.setField(service, "clusterMembership", membership);
+        ReflectionTestUtils.setField(service, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(service, "cacheSize", 100);
+        ReflectionTestUtils.setField(service, "ttlSeconds", 600L);
+        service.init();
+        return service;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private RedisTemplate<String, Object> fakeRedis() {
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.get(any(byte[].class))).thenAnswer(invocation -> {
+            Long value = redis.get(new String((byte[]) invocation.getArgument(0), StandardCharsets.UTF_8));
+            return value != null ? value.toString().getBytes(StandardCharsets.US_ASCII) : null;
+        });
+        ValueOperations<String, Object> values = mock(ValueOperations.class);
+        when(values.increment(anyString())).thenAnswer(invocation -> redis.merge(invocation.getArgument(0), 1L, Long::sum));
+        
+        RedisTemplate<String, Object> template = mock(RedisTemplate.class);
+        when(template.opsForValue()).thenReturn(values);
+        when(template.execute(any(RedisCallback.class)))
+            .thenAnswer(invocation -> ((RedisCallback<?>) invocation.getArgument(0)).doInRedis(connection));
+        return template;
+    }
+    
+    private static Patient visit(Long id, String cost) {
+        Patient visit = new Patient();
+        visit.setId(id);
+        visit.setPatientId("P001");
+        visit.setVisitDate(DateConvertUtil.toDate(LocalDate.now().minusDays(id)));
+        visit.setDepartment("内科");
+        visit.setCost(new BigDecimal(cost));
+        return visit;
+    }
+}
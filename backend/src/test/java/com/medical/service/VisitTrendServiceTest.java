@@ -0,0 +1,98 @@
+package com.medical.service;
+
+import com.medical.analytics.VisitTrendIndex;
+import com.medical.dto.DepartmentDailyStatDTO;
+import com.medical.mapper.DepartmentOperationMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 环比的对比区间按时间段边界取上一个完整时间段，月末天数不同时不截短
+ * 
+ * 汇总表每天一行、1人次、1元，人次即为区间天数
+ */
+class VisitTrendServiceTest {
+    
+    private VisitTrendService service;
+    
+    @BeforeEach
+    void setUp() {
+        VisitTrendIndex index = mock(VisitTrendIndex.class);
+        when(index.isReady()).thenReturn(false);
+        DepartmentOperationMapper mapper = mock(DepartmentOperationMapper.class);
+        when(mapper.selectDailyStats(any(), any())).thenAnswer(invocation -> {
+            List<DepartmentDailyStatDTO> rows = new ArrayList<>();
+            LocalDate end = invocation.getArgument(1);
+            for (LocalDate day = invocation.getArgument(0); !day.isAfter(end); day = day.plusDays(1)) {
+                DepartmentDailyStatDTO row = new DepartmentDailyStatDTO();
+                row.setDepartment("内科");
+                row.setStatDate(day);
+                row.setVisitCount(1L);
+                row.setRevenue(BigDecimal.ONE);
+                rows.add(row);
+            }
+            return rows;
+        });
+        service = new VisitTrendService();
+        ReflectionTestUtils.setField(service, "visitTrendIndex", index);
+        ReflectionTestUtils.setField(service, "departmentOperationMapper", mapper);
+        ReflectionTestUtils.setField(service, "maxPoints", 5000);
+    }
+    
+    @Test
+    void dayComparesWithPreviousDayAcrossMonthEnd() {
+        Map<String, Object> point = onlyPoint("day", "2023-03-01", "2023-03-01");
+        assertWindow(point, "2023-02-28", "2023-02-28", 1);
+    }
+    
+    @Test
+    void monthComparesWithWholePreviousMonth() {
+        // 2月（28天）对比1月全月（31天），4月（30天）对比3月全月
+        assertWindow(onlyPoint("month", "2023-02-01", "2023-02-28"), "2023-01-01", "2023-01-31", 31);
+        assertWindow(onlyPoint("month", "2023-04-01", "2023-04-30"), "2023-03-01", "2023-03-31", 31);
+        assertWindow(onlyPoint("month", "2023-03-01", "2023-03-31"), "2023-02-01", "2023-02-28", 28);
+    }
+    
+    @Test
+    void quarterComparesWithWholePreviousQuarter() {
+        Map<String, Object> point = onlyPoint("quarter", "2023-04-01", "2023-06-30");
+        assertWindow(point, "2023-01-01", "2023-03-31", 90);
+        // 91天对比90天
+        assertEquals(BigDecimal.valueOf(111, 4), point.get("countChangeRate"));
+    }
+    
+    @Test
+    void partialPeriodsUseSameOffsetWithinPreviousPeriod() {
+        assertWindow(onlyPoint("month", "2023-03-10", "2023-03-31"), "2023-02-10", "2023-02-28", 19);
+        assertWindow(onlyPoint("month", "2023-03-01", "2023-03-30"), "2023-02-01", "2023-02-28", 28);
+        assertWindow(onlyPoint("month", "2023-05-01", "2023-05-15"), "2023-04-01", "2023-04-15", 15);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> onlyPoint(String granularity, String start, String end) {
+        Map<String, Object> trend = service.getTrend(granularity, LocalDate.parse(start), LocalDate.parse(end),
+            null, VisitTrendService.COMPARE_PREVIOUS);
+        List<Map<String, Object>> points = (List<Map<String, Object>>) trend.get("points");
+        assertEquals(1, points.size());
+        return points.get(0);
+    }
+    
+    private static void assertWindow(Map<String, Object> point, String from, String to, long count) {
+        assertEquals(from, point.get("compareStartDate"));
+        assertEquals(to, point.get("compareEndDate"));
+        assertEquals(count, point.get("compareCount"));
+        assertEquals(new BigDecimal(count).setScale(2), point.get("compareAmount"));
+    }
+}
@@ -0,0 +1,218 @@
+-- ============================================
+-- 就诊记录分区基准脚本
+-- 用途：在独立库medical_platform_bench中生成5000万条就诊记录（2016-01 ~ 2026-12），
+--       分别写入未分区表patient_visit_flat和按月分区表patient_visit，
+--       对应用中的主要查询执行EXPLAIN（partitions列为实际访问的分区）和EXPLAIN ANALYZE（实际耗时）
+-- 运行：mysql -uroot -p < benchmark_patient_visit_partition.sql > benchmark_result.txt
+-- 注意：生成数据约需30 ~ 60分钟、30GB磁盘空间；不要在生产库执行
+-- ============================================
+
+CREATE DATABASE IF NOT EXISTS medical_platform_bench
+DEFAULT CHARACTER SET utf8mb4
+DEFAULT COLLATE utf8mb4_unicode_ci;
+
+USE medical_platform_bench;
+
+DROP TABLE IF EXISTS patient_visit_flat;
+DROP TABLE IF EXISTS patient_visit;
+DROP TABLE IF EXISTS bench_digit;
+
+-- 未分区（升级前）的表结构
+CREATE TABLE patient_visit_flat (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    patient_id VARCHAR(50) NOT NULL,
+    visit_date DATE NOT NULL,
+    visit_time TIME,
+    department VARCHAR(50) NOT NULL,
+    doctor_id VARCHAR(50),
+    diagnosis VARCHAR(200),
+    disease_code VARCHAR(50),
+    cost DECIMAL(10,2) DEFAULT 0.00,
+    payment_method VARCHAR(20),
+    visit_type VARCHAR(20),
+    status VARCHAR(20) DEFAULT '正常',
+    create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    
+    INDEX idx_patient_id (patient_id),
+    INDEX idx_visit_date (visit_date),
+    INDEX idx_department (department),
+    INDEX idx_visit_type (visit_type)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE bench_digit (d INT PRIMARY KEY);
+INSERT INTO bench_digit VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9);
+
+-- ============================================
+-- 1. 生成数据：先由7个数字表的笛卡尔积生成1000万行，再复制扩展到5000万行
+-- ============================================
+INSERT INTO patient_visit_flat (patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type)
+SELECT
+    CONCAT('P', LPAD((n * 7919) % 5000000, 7, '0')),
+    DATE '2016-01-01' + INTERVAL (n % 4018) DAY,
+    ELT(1 + n % 8, '内科', '外科', '儿科', '妇科', '急诊科', '眼科', '口腔科', '皮肤科'),
+    ELT(1 + (n * 31) % 10, '高血压', '糖尿病', '上呼吸道感染', '冠心病', '腹泻', '外伤', '复查', '急性腹痛', '肺炎', '妇科检查'),
+    ELT(1 + (n * 31) % 10, 'I10', 'E11', 'J06', 'I25', 'A09', 'S00', 'Z00', 'R10', 'J18', 'Z01'),
+    50 + (n % 500),
+    ELT(1 + n % 20, '住院', '急诊', '门诊', '门诊', '门诊', '门诊', '门诊', '门诊', '门诊', '门诊',
+        '门诊', '门诊', '门诊', '门诊', '门诊', '门诊', '门诊', '门诊', '门诊', '门诊')
+FROM (
+    SELECT a.d + b.d * 10 + c.d * 100 + e.d * 1000 + f.d * 10000 + g.d * 100000 + h.d * 1000000 AS n
+    FROM bench_digit a, bench_digit b, bench_digit c, bench_digit e, bench_digit f, bench_digit g, bench_digit h
+) numbers;
+INSERT INTO patient_visit_flat (patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type)
+SELECT patient_id, visit_date + INTERVAL 1 DAY, department, diagnosis, disease_code, cost, visit_type
+FROM patient_visit_flat WHERE id <= 10000000 AND visit_date < '2026-12-31';
+INSERT INTO patient_visit_flat (patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type)
+SELECT patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type
+FROM patient_visit_flat WHERE id <= 20000000;
+INSERT INTO patient_visit_flat (patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type)
+SELECT CONCAT('Q', SUBSTRING(patient_id, 2)), visit_date, department, diagnosis, disease_code, cost, visit_type
+FROM patient_visit_flat WHERE id <= 10000000;
+
+-- 分区表：与database/init.sql中的patient_visit相同，每月一个分区
+CREATE TABLE patient_visit LIKE patient_visit_flat;
+ALTER TABLE patient_visit DROP PRIMARY KEY, ADD PRIMARY KEY (id, visit_date),
+    DROP INDEX idx_visit_date, ADD INDEX idx_visit_date (visit_date, id);
+
+SET SESSION group_concat_max_len = 1048576;
+SELECT GROUP_CONCAT(
+           CONCAT('PARTITION p', DATE_FORMAT(m, '%Y%m'), ' VALUES LESS THAN (''', m + INTERVAL 1 MONTH, ''')')
+           ORDER BY m SEPARATOR ', ')
+INTO @monthly_partitions
+FROM (
+    WITH RECURSIVE months (m) AS (
+        SELECT DATE '2016-01-01'
+        UNION ALL
+        SELECT m + INTERVAL 1 MONTH FROM months WHERE m < DATE '2027-03-01'
+    )
+    SELECT m FROM months
+) t;
+SET @ddl = CONCAT('ALTER TABLE patient_visit PARTITION BY RANGE COLUMNS(visit_date) (',
+    'PARTITION p_history VALUES LESS THAN (''2016-01-01''), ', @monthly_partitions, ', ',
+    'PARTITION p_future VALUES LESS THAN (MAXVALUE))');
+PREPARE partition_stmt FROM @ddl;
+EXECUTE partition_stmt;
+DEALLOCATE PREPARE partition_stmt;
+
+INSERT INTO patient_visit SELECT * FROM patient_visit_flat;
+
+ANALYZE TABLE patient_visit_flat, patient_visit;
+
+SELECT COUNT(*) AS '就诊记录数' FROM patient_visit;
+SELECT COUNT(*) AS '分区数' FROM information_schema.PARTITIONS
+WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'patient_visit';
+
+-- ============================================
+-- 2. 日期范围查询（StatisticsMapper.selectOutpatientTrendByDateRange，30天）
+-- 预期：patient_visit只访问p202609,p202610
+-- ============================================
+EXPLAIN SELECT DATE(visit_date) as date, COUNT(*) as count FROM patient_visit
+WHERE visit_date >= '2026-09-15' AND visit_date <= '2026-10-14' GROUP BY DATE(visit_date) ORDER BY date ASC;
+EXPLAIN ANALYZE SELECT DATE(visit_date) as date, COUNT(*) as count FROM patient_visit_flat
+WHERE visit_date >= '2026-09-15' AND visit_date <= '2026-10-14' GROUP BY DATE(visit_date) ORDER BY date ASC;
+EXPLAIN ANALYZE SELECT DATE(visit_date) as date, COUNT(*) as count FROM patient_visit
+WHERE visit_date >= '2026-09-15' AND visit_date <= '2026-10-14' GROUP BY DATE(visit_date) ORDER BY date ASC;
+
+-- ============================================
+-- 3. 两年趋势（按天汇总730天，department_operation重建的范围查询形式）
+-- 预期：patient_visit只访问最近25个月的分区
+-- ============================================
+EXPLAIN SELECT department, visit_date, COUNT(*), COALESCE(SUM(cost), 0) FROM patient_visit
+WHERE visit_date >= CURDATE() - INTERVAL 730 DAY AND visit_date <= CURDATE() GROUP BY department, visit_date;
+EXPLAIN ANALYZE SELECT department, visit_date, COUNT(*), COALESCE(SUM(cost), 0) FROM patient_visit_flat
+WHERE visit_date >= CURDATE() - INTERVAL 730 DAY AND visit_date <= CURDATE() GROUP BY department, visit_date;
+EXPLAIN ANALYZE SELECT department, visit_date, COUNT(*), COALESCE(SUM(cost), 0) FROM patient_visit
+WHERE visit_date >= CURDATE() - INTERVAL 730 DAY AND visit_date <= CURDATE() GROUP BY department, visit_date;
+
+-- ============================================
+-- 4. 精确去重患者数（StatisticsMapper.selectDistinctPatients，一个季度按月分组）
+-- 预期：patient_visit只访问p202607,p202608,p202609
+-- ============================================
+EXPLAIN SELECT DATE_FORMAT(visit_date, '%Y-%m') as name, COUNT(DISTINCT patient_id) as value FROM patient_visit
+WHERE visit_date >= '2026-07-01' AND visit_date <= '2026-09-30' AND department IN ('内科', '外科') GROUP BY name;
+EXPLAIN ANALYZE SELECT DATE_FORMAT(visit_date, '%Y-%m') as name, COUNT(DISTINCT patient_id) as value FROM patient_visit_flat
+WHERE visit_date >= '2026-07-01' AND visit_date <= '2026-09-30' AND department IN ('内科', '外科') GROUP BY name;
+EXPLAIN ANALYZE SELECT DATE_FORMAT(visit_date, '%Y-%m') as name, COUNT(DISTINCT patient_id) as value FROM patient_visit
+WHERE visit_date >= '2026-07-01' AND visit_date <= '2026-09-30' AND department IN ('内科', '外科') GROUP BY name;
+
+-- ============================================
+-- 5. 键集分页（PatientMapper.selectPage）：第一页只查当前月及以后，翻页到某一天时只查该月
+-- 预期：第一页访问p202610及之后的分区，翻页访问p202403；key为idx_visit_date，Extra中没有Using filesort
+-- ============================================
+EXPLAIN SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit
+WHERE visit_date >= '2026-10-01' ORDER BY visit_date DESC, id DESC LIMIT 51;
+EXPLAIN SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit
+WHERE visit_date <= '2024-03-15' AND (visit_date < '2024-03-15' OR id < 30000000) AND visit_date >= '2024-03-01'
+ORDER BY visit_date DESC, id DESC LIMIT 51;
+EXPLAIN ANALYZE SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit_flat
+WHERE visit_date >= '2026-10-01' ORDER BY visit_date DESC, id DESC LIMIT 51;
+EXPLAIN ANALYZE SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit
+WHERE visit_date >= '2026-10-01' ORDER BY visit_date DESC, id DESC LIMIT 51;
+EXPLAIN ANALYZE SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit_flat
+WHERE visit_date <= '2024-03-15' AND (visit_date < '2024-03-15' OR id < 30000000)
+ORDER BY visit_date DESC, id DESC LIMIT 51;
+EXPLAIN ANALYZE SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit
+WHERE visit_date <= '2024-03-15' AND (visit_date < '2024-03-15' OR id < 30000000) AND visit_date >= '2024-03-01'
+ORDER BY visit_date DESC, id DESC LIMIT 51;
+
+-- ============================================
+-- 6. 按ID修改/删除（PatientMapper.selectByIdForUpdate、update、deleteById）：带上原就诊日期只锁定一个分区
+-- 预期：只带id时partitions为全部分区，带visit_date时只有一个分区
+-- ============================================
+SELECT id, visit_date INTO @bench_id, @bench_date FROM patient_visit WHERE visit_date = '2025-06-15' LIMIT 1;
+EXPLAIN SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit
+WHERE id = @bench_id FOR UPDATE;
+EXPLAIN SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit
+WHERE id = @bench_id AND visit_date = @bench_date FOR UPDATE;
+START TRANSACTION;
+EXPLAIN ANALYZE SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit_flat
+WHERE id = @bench_id FOR UPDATE;
+EXPLAIN ANALYZE SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit
+WHERE id = @bench_id FOR UPDATE;
+EXPLAIN ANALYZE SELECT id, patient_id, visit_date, department, diagnosis, disease_code, cost, visit_type FROM patient_visit
+WHERE id = @bench_id AND visit_date = @bench_date FOR UPDATE;
+ROLLBACK;
+EXPLAIN UPDATE patient_visit SET cost = cost WHERE id = @bench_id;
+EXPLAIN UPDATE patient_visit SET cost = cost WHERE id = @bench_id AND visit_date = @bench_date;
+EXPLAIN DELETE FROM patient_visit WHERE id = @bench_id AND visit_date = @bench_date;
+
+-- ============================================
+-- 实测记录（2026-10-18）
+-- 环境：MariaDB 11.4.5（无MySQL 8环境），单机默认配置；数据量缩小到约495万行
+--       （数字表只用6个，扩展步骤的id上限同比缩小），137个分区；
+--       MariaDB没有EXPLAIN ANALYZE，用ANALYZE FORMAT=JSON代替，EXPLAIN加PARTITIONS显示访问的分区；
+--       耗时为缓存预热后第二次执行的r_total_time_ms
+--
+-- 查询                              访问分区    未分区表      分区表
+-- 2. 30天趋势                        2           34.1 ms      36.2 ms
+-- 3. 两年按天汇总                    25        7369.4 ms    2321.0 ms
+-- 4. 季度去重患者                    3          724.5 ms     122.5 ms
+-- 5. 键集分页翻页（2024-03-15）      1            3.4 ms       2.9 ms   （idx_visit_date为(visit_date, id)）
+--    第一页（2026-10-01起）          7            0.38 ms      0.31 ms
+--    idx_visit_date只有(visit_date)时：翻页14.0 ~ 23.5 ms、第一页40.3 ~ 69.4 ms，
+--    EXPLAIN为type=ALL、Using filesort（分区表上二级索引隐含的主键列不能用于排序）
+-- 6. 按id SELECT ... FOR UPDATE      137         0.004 ms     1.334 ms
+--    带visit_date                    1                        0.003 ms
+--    UPDATE/DELETE只带id             137（EXPLAIN rows=137，每个分区探测一次主键）
+--    UPDATE/DELETE带visit_date       1（rows=1）
+--
+-- 按本脚本完整数据量复测（约4997万行，137个分区，idx_visit_date为(visit_date, id)）：
+-- 数据约为缓冲池（1GB）的十几倍，第二次执行仍有大量磁盘读取，耗时同样取第二次
+--
+-- 查询                              访问分区    未分区表      分区表
+-- 2. 30天趋势                        2          321.9 ms     385.8 ms
+-- 3. 两年按天汇总                    25       96125.9 ms   29134.9 ms
+-- 4. 季度去重患者                    3         9379.5 ms    1875.7 ms
+-- 5. 键集分页翻页（2024-03-15）      1          272.9 ms     122.3 ms   （两表均按idx_visit_date倒序读取，没有filesort）
+--    第一页（2026-10-01起）          7            2.3 ms       2.6 ms
+-- 6. 按id SELECT ... FOR UPDATE      137         0.004 ms     1.641 ms
+--    带visit_date                    1                        0.004 ms
+--
+-- 结论：带visit_date的按id读取、修改、删除只访问一个分区，与未分区表相当；只带id时探测全部分区，
+--       单条约慢两个数量级（仍在毫秒级），修改、删除接口因此支持传入原就诊日期作为分区提示；
+--       键集分页在idx_visit_date显式包含id后按索引倒序读取51行，不再对该月约3.8万行filesort，与未分区表相当；
+--       5000万行时跨月的汇总、去重只读取涉及的分区，比未分区表快3 ~ 5倍
+-- ============================================
+
+-- 清理：DROP DATABASE medical_platform_bench;
@@ -14,7 +14,7 @@ USE medical_platform;
 -- 1. 患者诊疗表
 -- ============================================
 CREATE TABLE IF NOT EXISTS patient_visit (
-    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
+    id BIGINT NOT NULL AUTO_INCREMENT COMMENT '主键ID',
     patient_id VARCHAR(50) NOT NULL COMMENT '患者ID（脱敏后）',
     visit_date DATE NOT NULL COMMENT '就诊日期',
     visit_time TIME COMMENT '就诊时间',
@@ -29,11 +29,73 @@ CREATE TABLE IF NOT EXISTS patient_visit (
     create_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     
+    -- 分区表的主键必须包含分区键visit_date
+    PRIMARY KEY (id, visit_date),
     INDEX idx_patient_id (patient_id),
-    INDEX idx_visit_date (visit_date),
+    -- 显式包含id：分区表上二级索引隐含的主键列不能用于排序，键集分页按(visit_date, id)倒序需要它
+    INDEX idx_visit_date (visit_date, id),
     INDEX idx_department (department),
     INDEX idx_visit_type (visit_type)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='患者诊疗表';
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='患者诊疗表'
+-- 按就诊日期每月一个分区，日期范围查询只访问涉及的月份；
+-- 之后的月份由应用定时从p_future拆分（patient.partition.future-months）
+PARTITION BY RANGE COLUMNS(visit_date) (
+    PARTITION p_history VALUES LESS THAN ('2024-01-01'),
+    PARTITION p202401 VALUES LESS THAN ('2024-02-01'),
+    PARTITION p202402 VALUES LESS THAN ('2024-03-01'),
+    PARTITION p202403 VALUES LESS THAN ('2024-04-01'),
+    PARTITION p202404 VALUES LESS THAN ('2024-05-01'),
+    PARTITION p202405 VALUES LESS THAN ('2024-06-01'),
+    PARTITION p202406 VALUES LESS THAN ('2024-07-01'),
+    PARTITION p202407 VALUES LESS THAN ('2024-08-01'),
+    PARTITION p202408 VALUES LESS THAN ('2024-09-01'),
+    PARTITION p202409 VALUES LESS THAN ('2024-10-01'),
+    PARTITION p202410 VALUES LESS THAN ('2024-11-01'),
+    PARTITION p202411 VALUES LESS THAN ('2024-12-01'),
+    PARTITION p202412 VALUES LESS THAN ('2025-01-01'),
+    PARTITION p202501 VALUES LESS THAN ('2025-02-01'),
+    PARTITION p202502 VALUES LESS THAN ('2025-03-01'),
+    PARTITION p202503 VALUES LESS THAN ('2025-04-01'),
+    PARTITION p202504 VALUES LESS THAN ('2025-05-01'),
+    PARTITION p202505 VALUES LESS THAN ('2025-06-01'),
+    PARTITION p202506 VALUES LESS THAN ('2025-07-01'),
+    PARTITION p202507 VALUES LESS THAN ('2025-08-01'),
+    PARTITION p202508 VALUES LESS THAN ('2025-09-01'),
+    PARTITION p202509 VALUES LESS THAN ('2025-10-01'),
+    PARTITION p202510 VALUES LESS THAN ('2025-11-01'),
+    PARTITION p202511 VALUES LESS THAN ('2025-12-01'),
+    PARTITION p202512 VALUES LESS THAN ('2026-01-01'),
+    PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- ============================================
+-- 1.1 去重患者草图表（每个日期×科室一个HyperLogLog，由就诊写入增量维护）
+-- ============================================
+CREATE TABLE IF NOT EXISTS patient_visit_sketch (
+    stat_date DATE NOT NULL COMMENT '就诊日期',
+    department VARCHAR(50) NOT NULL COMMENT '科室',
+    sketch BLOB NOT NULL COMMENT 'HyperLogLog序列化内容',
+    estimate INT NOT NULL DEFAULT 0 COMMENT '去重患者数估计值（便于排查）',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    
+    PRIMARY KEY (stat_date, department),
+    INDEX idx_update_time (update_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='去重患者草图表';
+
+-- ============================================
+-- 1.2 高频疾病摘要表（每个日期×科室的疾病编码、诊断各一个Space-Saving摘要，按天从就诊记录重新统计）
+-- ============================================
+CREATE TABLE IF NOT EXISTS patient_visit_condition (
+    stat_date DATE NOT NULL COMMENT '就诊日期',
+    department VARCHAR(50) NOT NULL COMMENT '科室',
+    dimension VARCHAR(20) NOT NULL COMMENT '维度：disease_code/diagnosis',
+    summary MEDIUMBLOB NOT NULL COMMENT 'Space-Saving摘要序列化内容',
+    total INT NOT NULL DEFAULT 0 COMMENT '就诊人次（便于排查）',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    
+    PRIMARY KEY (stat_date, department, dimension),
+    INDEX idx_update_time (update_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='高频疾病摘要表';
 
 -- ============================================
 -- 2. 科室运营表
@@ -75,7 +137,7 @@ CREATE TABLE IF NOT EXISTS insurance_settlement (
     
     UNIQUE KEY uk_settlement_no (settlement_no),
     INDEX idx_patient_id (patient_id),
-    INDEX idx_settlement_date (settlement_date),
+    INDEX idx_settlement_cover (settlement_date, insurance_type, drg_group, total_cost, insurance_pay, personal_pay),
     INDEX idx_drg_group (drg_group)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='医保结算表';
 
@@ -99,6 +161,42 @@ CREATE TABLE IF NOT EXISTS equipment_usage (
     INDEX idx_department (department)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='设备使用表';
 
+-- ============================================
+-- 4.1 设备使用日汇总表（由equipment_usage按主键水位增量汇总）
+-- ============================================
+CREATE TABLE IF NOT EXISTS equipment_usage_daily (
+    equipment_id VARCHAR(50) NOT NULL COMMENT '设备ID',
+    stat_date DATE NOT NULL COMMENT '统计日期',
+    usage_hours DECIMAL(10,2) NOT NULL DEFAULT 0.00 COMMENT '当日使用时长（小时）',
+    usage_count INT NOT NULL DEFAULT 0 COMMENT '当日使用次数',
+    cumulative_hours DECIMAL(14,2) NOT NULL DEFAULT 0.00 COMMENT '截至当日的累计使用时长',
+    cumulative_count BIGINT NOT NULL DEFAULT 0 COMMENT '截至当日的累计使用次数',
+    
+    PRIMARY KEY (equipment_id, stat_date),
+    INDEX idx_stat_date (stat_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='设备使用日汇总表';
+
+-- ============================================
+-- 4.2 设备维表（由equipment_usage增量汇总）
+-- ============================================
+CREATE TABLE IF NOT EXISTS equipment_device (
+    equipment_id VARCHAR(50) PRIMARY KEY COMMENT '设备ID',
+    equipment_name VARCHAR(100) NOT NULL COMMENT '设备名称',
+    department VARCHAR(50) COMMENT '所属科室',
+    first_date DATE NOT NULL COMMENT '首次使用日期',
+    last_date DATE NOT NULL COMMENT '最近使用日期',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='设备维表';
+
+-- ============================================
+-- 4.3 汇总水位表（记录各增量汇总已处理到的明细主键）
+-- ============================================
+CREATE TABLE IF NOT EXISTS aggregate_watermark (
+    name VARCHAR(50) PRIMARY KEY COMMENT '汇总名称',
+    last_id BIGINT NOT NULL DEFAULT 0 COMMENT '已汇总的最大明细ID',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='汇总水位表';
+
 -- ============================================
 -- 5. 药品库存表
 -- ============================================
@@ -0,0 +1,44 @@
+-- ============================================
+-- 设备使用率汇总升级脚本
+-- 用途：新增设备使用日汇总表、设备维表和汇总水位表；
+--       建表后调用 POST /api/statistics/equipment-usage/rebuild 从现有明细生成汇总，
+--       之后由定时任务按主键水位增量汇总
+-- ============================================
+
+USE medical_platform;
+
+-- ============================================
+-- 4.1 设备使用日汇总表（由equipment_usage按主键水位增量汇总）
+-- ============================================
+CREATE TABLE IF NOT EXISTS equipment_usage_daily (
+    equipment_id VARCHAR(50) NOT NULL COMMENT '设备ID',
+    stat_date DATE NOT NULL COMMENT '统计日期',
+    usage_hours DECIMAL(10,2) NOT NULL DEFAULT 0.00 COMMENT '当日使用时长（小时）',
+    usage_count INT NOT NULL DEFAULT 0 COMMENT '当日使用次数',
+    cumulative_hours DECIMAL(14,2) NOT NULL DEFAULT 0.00 COMMENT '截至当日的累计使用时长',
+    cumulative_count BIGINT NOT NULL DEFAULT 0 COMMENT '截至当日的累计使用次数',
+    
+    PRIMARY KEY (equipment_id, stat_date),
+    INDEX idx_stat_date (stat_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='设备使用日汇总表';
+
+-- ============================================
+-- 4.2 设备维表（由equipment_usage增量汇总）
+-- ============================================
+CREATE TABLE IF NOT EXISTS equipment_device (
+    equipment_id VARCHAR(50) PRIMARY KEY COMMENT '设备ID',
+    equipment_name VARCHAR(100) NOT NULL COMMENT '设备名称',
+    department VARCHAR(50) COMMENT '所属科室',
+    first_date DATE NOT NULL COMMENT '首次使用日期',
+    last_date DATE NOT NULL COMMENT '最近使用日期',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='设备维表';
+
+-- ============================================
+-- 4.3 汇总水位表（记录各增量汇总已处理到的明细主键）
+-- ============================================
+CREATE TABLE IF NOT EXISTS aggregate_watermark (
+    name VARCHAR(50) PRIMARY KEY COMMENT '汇总名称',
+    last_id BIGINT NOT NULL DEFAULT 0 COMMENT '已汇总的最大明细ID',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='汇总水位表';
@@ -0,0 +1,17 @@
+-- ============================================
+-- 医保结算表索引升级脚本
+-- 用途：医保控费分析按结算日期范围汇总，
+--       用覆盖索引替换单列索引idx_settlement_date，聚合只读索引不回表
+-- ============================================
+
+USE medical_platform;
+
+ALTER TABLE insurance_settlement
+    ADD INDEX idx_settlement_cover (settlement_date, insurance_type, drg_group, total_cost, insurance_pay, personal_pay),
+    DROP INDEX idx_settlement_date;
+
+-- 验证：Extra应显示Using index
+EXPLAIN SELECT insurance_type, drg_group, COUNT(*), SUM(total_cost), SUM(insurance_pay), SUM(personal_pay)
+FROM insurance_settlement
+WHERE settlement_date >= '2024-11-01' AND settlement_date < '2024-12-01'
+GROUP BY insurance_type, drg_group;
@@ -0,0 +1,23 @@
+-- ============================================
+-- 高频疾病摘要升级脚本
+-- 用途：新增高频疾病摘要表；建表后调用
+--       POST /api/statistics/top-conditions/rebuild?startDate=...&endDate=...
+--       从现有就诊记录生成摘要，之后由就诊写入增量维护
+-- ============================================
+
+USE medical_platform;
+
+-- ============================================
+-- 1.2 高频疾病摘要表（每个日期×科室的疾病编码、诊断各一个Space-Saving摘要，按天从就诊记录重新统计）
+-- ============================================
+CREATE TABLE IF NOT EXISTS patient_visit_condition (
+    stat_date DATE NOT NULL COMMENT '就诊日期',
+    department VARCHAR(50) NOT NULL COMMENT '科室',
+    dimension VARCHAR(20) NOT NULL COMMENT '维度：disease_code/diagnosis',
+    summary MEDIUMBLOB NOT NULL COMMENT 'Space-Saving摘要序列化内容',
+    total INT NOT NULL DEFAULT 0 COMMENT '就诊人次（便于排查）',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    
+    PRIMARY KEY (stat_date, department, dimension),
+    INDEX idx_update_time (update_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='高频疾病摘要表';
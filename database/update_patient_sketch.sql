@@ -0,0 +1,22 @@
+-- ============================================
+-- 去重患者草图升级脚本
+-- 用途：新增去重患者草图表；建表后调用
+--       POST /api/statistics/distinct-patients/rebuild?startDate=...&endDate=...
+--       从现有就诊记录生成草图，之后由就诊写入增量维护
+-- ============================================
+
+USE medical_platform;
+
+-- ============================================
+-- 1.1 去重患者草图表（每个日期×科室一个HyperLogLog，由就诊写入增量维护）
+-- ============================================
+CREATE TABLE IF NOT EXISTS patient_visit_sketch (
+    stat_date DATE NOT NULL COMMENT '就诊日期',
+    department VARCHAR(50) NOT NULL COMMENT '科室',
+    sketch BLOB NOT NULL COMMENT 'HyperLogLog序列化内容',
+    estimate INT NOT NULL DEFAULT 0 COMMENT '去重患者数估计值（便于排查）',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    
+    PRIMARY KEY (stat_date, department),
+    INDEX idx_update_time (update_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='去重患者草图表';
@@ -0,0 +1,49 @@
+-- ============================================
+-- 就诊记录分区升级脚本
+-- 用途：patient_visit改为按visit_date每月一个分区（RANGE COLUMNS），
+--       主键改为(id, visit_date)（分区表的主键必须包含分区键）；
+--       idx_visit_date改为(visit_date, id)：分区后二级索引隐含的主键列不再用于排序，
+--       键集分页（ORDER BY visit_date DESC, id DESC）否则要对整月的行filesort；
+--       分区从现有最早月份建到当前月之后3个月，之后由应用定时从p_future拆分新月份
+-- 注意：ALTER会复制整张表并阻塞写入，大表请在维护窗口执行或使用在线DDL工具
+-- ============================================
+
+USE medical_platform;
+
+SET @first_month = (SELECT DATE_FORMAT(COALESCE(MIN(visit_date), CURDATE()), '%Y-%m-01') FROM patient_visit);
+SET @last_month = DATE_FORMAT(CURDATE() + INTERVAL 3 MONTH, '%Y-%m-01');
+SET SESSION group_concat_max_len = 1048576;
+
+-- 生成 PARTITION pYYYYMM VALUES LESS THAN ('下月1日') 列表
+SELECT GROUP_CONCAT(
+           CONCAT('PARTITION p', DATE_FORMAT(m, '%Y%m'), ' VALUES LESS THAN (''', m + INTERVAL 1 MONTH, ''')')
+           ORDER BY m SEPARATOR ', ')
+INTO @monthly_partitions
+FROM (
+    WITH RECURSIVE months (m) AS (
+        SELECT CAST(@first_month AS DATE)
+        UNION ALL
+        SELECT m + INTERVAL 1 MONTH FROM months WHERE m < @last_month
+    )
+    SELECT m FROM months
+) t;
+
+-- 主键、索引调整与分区在同一条ALTER中完成，只复制一次表
+SET @ddl = CONCAT(
+    'ALTER TABLE patient_visit ',
+    'MODIFY id BIGINT NOT NULL AUTO_INCREMENT COMMENT ''主键ID'', ',
+    'DROP PRIMARY KEY, ADD PRIMARY KEY (id, visit_date), ',
+    'DROP INDEX idx_visit_date, ADD INDEX idx_visit_date (visit_date, id) ',
+    'PARTITION BY RANGE COLUMNS(visit_date) (',
+    'PARTITION p_history VALUES LESS THAN (''', @first_month, '''), ',
+    @monthly_partitions, ', ',
+    'PARTITION p_future VALUES LESS THAN (MAXVALUE))');
+PREPARE partition_stmt FROM @ddl;
+EXECUTE partition_stmt;
+DEALLOCATE PREPARE partition_stmt;
+
+-- 查看分区
+SELECT PARTITION_NAME, PARTITION_DESCRIPTION, TABLE_ROWS
+FROM information_schema.PARTITIONS
+WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'patient_visit'
+ORDER BY PARTITION_ORDINAL_POSITION;